@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures decoding recorded record values into events, as JSON and re-encoded in the binary format
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+
+    private final OpenwhiskEventDecoder decoder = new OpenwhiskEventDecoder();
+    private final BinaryEventCodec binaryCodec = new BinaryEventCodec();
+    private final EventCodec detectingCodec = EventFormat.AUTO.newCodec("");
+    private byte[][] records;
+    private byte[][] binaryRecords;
+    private int next;
+    private int nextBinary;
+
+    @Setup
+    public void setup() {
+        records = Fixtures.records();
+        binaryRecords = Fixtures.binaryRecords();
+    }
+
+    private byte[] nextRecord() {
+        byte[] record = records[next];
+        next = next + 1 == records.length ? 0 : next + 1;
+        return record;
+    }
+
+    private byte[] nextBinaryRecord() {
+        byte[] record = binaryRecords[nextBinary];
+        nextBinary = nextBinary + 1 == binaryRecords.length ? 0 : nextBinary + 1;
+        return record;
+    }
+
+    /**
+     * Decodes a record into a typed event
+     */
+    @Benchmark
+    public OpenwhiskEvent decode() {
+        return decoder.decode(nextRecord());
+    }
+
+    /**
+     * Decodes a binary record into a typed event, for comparison with {@link #decode()}
+     */
+    @Benchmark
+    public OpenwhiskEvent decodeBinary() {
+        return binaryCodec.decode(nextBinaryRecord());
+    }
+
+    /**
+     * Decodes a JSON record with the format detected per record, to measure the cost of detection
+     */
+    @Benchmark
+    public OpenwhiskEvent decodeDetectedJson() {
+        return detectingCodec.decode(nextRecord());
+    }
+
+    /**
+     * Decodes a binary record with the format detected per record
+     */
+    @Benchmark
+    public OpenwhiskEvent decodeDetectedBinary() {
+        return detectingCodec.decode(nextBinaryRecord());
+    }
+
+    /**
+     * Parses a record into a full JSON object, for comparison with {@link #decode()}
+     */
+    @Benchmark
+    public JSONObject parseJson() {
+        return new JSONObject(new String(nextRecord(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.serverless.stats.listeners.OpenwhiskEventListener;
+import org.wso2.serverless.stats.listeners.OverflowPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures handing decoded events from the collector to its listeners, either on the calling thread
+ * or through the per-listener ring buffers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchBenchmark {
+
+    @Param({"1", "4"})
+    public int listeners;
+
+    /**
+     * Listener buffer size, 0 calls the listeners on the benchmark thread
+     */
+    @Param({"0", "8192"})
+    public int dispatchBuffer;
+
+    private OpenwhiskEventCollector collector;
+    private final List<OpenwhiskEventListener> added = new ArrayList<>();
+    private OpenwhiskEvent[] events;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        collector = new OpenwhiskEventCollector(Constants.DEFAULT_APPLICATION_ID, Constants.DEFAULT_KAFKA_TOPIC,
+                "localhost:9092");
+        collector.setAsyncDispatch(dispatchBuffer, OverflowPolicy.BLOCK, Constants.DEFAULT_SAMPLE_RATE);
+        for (int i = 0; i < listeners; i++) {
+            OpenwhiskEventListener listener = new SummingListener();
+            collector.addListener(listener);
+            added.add(listener);
+        }
+
+        List<OpenwhiskEvent> recorded = Fixtures.events();
+        events = recorded.toArray(new OpenwhiskEvent[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        added.forEach(collector::removeListener);
+        added.clear();
+    }
+
+    @Benchmark
+    public void dispatch() {
+        collector.dispatch(events[next]);
+        next = next + 1 == events.length ? 0 : next + 1;
+    }
+
+    /**
+     * Listener doing a minimal amount of work per event
+     */
+    private static class SummingListener implements OpenwhiskEventListener {
+
+        private long sum;
+
+        @Override
+        public void onActivation(ActivationEvent event) {
+            sum += event.getDuration();
+        }
+
+        @Override
+        public void onMetric(MetricEvent event) {
+            sum += event.getMetricValue();
+        }
+    }
+}
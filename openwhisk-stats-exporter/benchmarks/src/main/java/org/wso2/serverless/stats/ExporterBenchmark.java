@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import io.prometheus.client.CollectorRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link OpenwhiskStatsExporter#onActivation(ActivationEvent)}, i.e. the counter and histogram updates
+ * done for every activation, with different numbers of label tuples. Run with -t to add stream threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExporterBenchmark {
+
+    private static final int EVENTS = 1 << 16;
+
+    /**
+     * Exporter shared by all benchmark threads, like by the stream threads
+     */
+    @State(Scope.Benchmark)
+    public static class Exporter {
+
+        @Param({"10", "100"})
+        public int namespaces;
+
+        @Param({"10", "1000"})
+        public int actionsPerNamespace;
+
+        @Param({"1000"})
+        public int maxActionsPerNamespace;
+
+        OpenwhiskStatsExporter exporter;
+        ActivationEvent[] activations;
+
+        @Setup
+        public void setup() {
+            OpenwhiskStatsExporter.Config config = new OpenwhiskStatsExporter.Config();
+            config.setPushGateway("localhost:9091");
+            config.setMaxActionsPerNamespace(maxActionsPerNamespace);
+            exporter = new OpenwhiskStatsExporter(config);
+            exporter.initMetrics(new CollectorRegistry());
+            activations = Fixtures.activations(EVENTS, namespaces, actionsPerNamespace);
+            // Creates the series up front, so the measurement covers the steady state
+            for (ActivationEvent activation : activations) {
+                exporter.onActivation(activation);
+            }
+        }
+    }
+
+    /**
+     * Position of a benchmark thread in the activations
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+    }
+
+    @Benchmark
+    public void onActivation(Exporter state, Cursor cursor) {
+        state.exporter.onActivation(state.activations[cursor.next++ & (EVENTS - 1)]);
+    }
+}
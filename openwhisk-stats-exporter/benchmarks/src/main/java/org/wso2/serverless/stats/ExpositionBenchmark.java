@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.wso2.serverless.stats.exposition.ExpositionBuffer;
+import org.wso2.serverless.stats.exposition.ExpositionEncoder;
+import org.wso2.serverless.stats.exposition.ExpositionFormat;
+import org.wso2.serverless.stats.exposition.ExpositionRegistry;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering the registry in the Prometheus text format, as done for every scrape and every push.
+ * The samples path builds every sample, the cached paths encode the pre-rendered lines of idle series.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpositionBenchmark {
+
+    @Param({"10", "100"})
+    public int namespaces;
+
+    @Param({"10", "100"})
+    public int actionsPerNamespace;
+
+    private CollectorRegistry registry;
+    private OpenwhiskStatsExporter exporter;
+    private ActivationEvent[] updates;
+    private final CountingWriter writer = new CountingWriter();
+    private final ExpositionBuffer buffer = new ExpositionBuffer(1 << 20);
+
+    @Setup
+    public void setup() {
+        OpenwhiskStatsExporter.Config config = new OpenwhiskStatsExporter.Config();
+        config.setPushGateway("localhost:9091");
+        exporter = new OpenwhiskStatsExporter(config);
+        registry = new ExpositionRegistry(null);
+        exporter.initMetrics(registry);
+
+        for (ActivationEvent activation : Fixtures.activations(1 << 18, namespaces, actionsPerNamespace)) {
+            exporter.onActivation(activation);
+        }
+        for (OpenwhiskEvent event : Fixtures.events()) {
+            event.dispatchTo(exporter);
+        }
+        // About one percent of the activations of a scrape interval
+        updates = Fixtures.activations(Math.max(1, namespaces * actionsPerNamespace / 100), namespaces,
+                actionsPerNamespace);
+    }
+
+    /**
+     * Renders all metric families and returns the number of rendered characters
+     */
+    @Benchmark
+    public long render() throws IOException {
+        writer.count = 0;
+        TextFormat.write004(writer, registry.metricFamilySamples());
+        return writer.count;
+    }
+
+    /**
+     * Encodes all metric families from the cache when no series changed
+     */
+    @Benchmark
+    public int encodeCached() {
+        buffer.clear();
+        ExpositionEncoder.encode(registry, ExpositionFormat.TEXT, buffer);
+        return buffer.size();
+    }
+
+    /**
+     * Records activations of a few series and encodes all metric families, re-rendering only those series
+     */
+    @Benchmark
+    public int encodeCachedWithUpdates() {
+        for (ActivationEvent activation : updates) {
+            exporter.onActivation(activation);
+        }
+        buffer.clear();
+        ExpositionEncoder.encode(registry, ExpositionFormat.TEXT, buffer);
+        return buffer.size();
+    }
+
+    /**
+     * Writer counting characters without keeping them, so only the rendering is measured
+     */
+    private static class CountingWriter extends Writer {
+
+        private long count;
+
+        @Override
+        public void write(int c) {
+            count++;
+        }
+
+        @Override
+        public void write(String str) {
+            count += str.length();
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(char[] buffer, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recorded event payloads used by the benchmarks
+ */
+final class Fixtures {
+
+    private static final String EVENTS = "/fixtures/events.jsonl";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Loads the recorded record values, one JSON event per line
+     *
+     * @return Raw record values
+     */
+    static byte[][] records() {
+        InputStream in = Fixtures.class.getResourceAsStream(EVENTS);
+        if (in == null) {
+            throw new IllegalStateException("Fixture " + EVENTS + " is missing");
+        }
+
+        List<byte[]> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    records.add(line.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read fixture " + EVENTS, e);
+        }
+        return records.toArray(new byte[0][]);
+    }
+
+    /**
+     * Decodes the recorded events
+     *
+     * @return Decoded events
+     */
+    static List<OpenwhiskEvent> events() {
+        OpenwhiskEventDecoder decoder = new OpenwhiskEventDecoder();
+        List<OpenwhiskEvent> events = new ArrayList<>();
+        for (byte[] record : records()) {
+            OpenwhiskEvent event = decoder.decode(record);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Encodes the recorded events in the binary format of {@link BinaryEventCodec}
+     *
+     * @return Binary record values
+     */
+    static byte[][] binaryRecords() {
+        BinaryEventCodec codec = new BinaryEventCodec();
+        List<byte[]> records = new ArrayList<>();
+        for (OpenwhiskEvent event : events()) {
+            records.add(codec.encode(event));
+        }
+        return records.toArray(new byte[0][]);
+    }
+
+    /**
+     * Builds activations spreading the recorded activations over the given number of namespaces and actions.
+     * Like in a real deployment each namespace has one user and each action one kind, while source, status code
+     * and timings are taken from the recordings. The number of label tuples is therefore a small multiple of
+     * namespaces * actionsPerNamespace.
+     *
+     * @param count               Number of activations, a power of two
+     * @param namespaces          Number of distinct namespaces
+     * @param actionsPerNamespace Number of distinct actions per namespace
+     * @return Activations
+     */
+    static ActivationEvent[] activations(int count, int namespaces, int actionsPerNamespace) {
+        List<ActivationEvent> recorded = new ArrayList<>();
+        for (OpenwhiskEvent event : events()) {
+            if (event instanceof ActivationEvent) {
+                recorded.add((ActivationEvent) event);
+            }
+        }
+
+        String[] namespaceNames = new String[namespaces];
+        String[] userIds = new String[namespaces];
+        String[][] actionNames = new String[namespaces][actionsPerNamespace];
+        String[][] kinds = new String[namespaces][actionsPerNamespace];
+        for (int i = 0; i < namespaces; i++) {
+            namespaceNames[i] = "namespace-" + i;
+            userIds[i] = recorded.get(i % recorded.size()).getUserId() + "-" + i;
+            for (int j = 0; j < actionsPerNamespace; j++) {
+                actionNames[i][j] = namespaceNames[i] + "/action-" + j;
+                kinds[i][j] = recorded.get((i * 31 + j) % recorded.size()).getKind();
+            }
+        }
+
+        ActivationEvent[] activations = new ActivationEvent[count];
+        long seed = 42;
+        for (int i = 0; i < count; i++) {
+            seed = seed * 6364136223846793005L + 1442695040888963407L;
+            int namespace = (int) ((seed >>> 33) % namespaces);
+            int action = (int) ((seed >>> 13) % actionsPerNamespace);
+            ActivationEvent template = recorded.get(i % recorded.size());
+            activations[i] = new ActivationEvent(template.getSource(), namespaceNames[namespace],
+                    userIds[namespace], template.getStatusCode(), actionNames[namespace][action],
+                    kinds[namespace][action], template.getDuration(), template.getWaitTime(),
+                    template.getInitTime());
+        }
+        return activations;
+    }
+}
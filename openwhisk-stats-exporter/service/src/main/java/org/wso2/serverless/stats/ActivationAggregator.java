@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.PunctuationType;
+import org.wso2.serverless.stats.metrics.DurationBuckets;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Pre-aggregates activation events in tumbling processing time windows.
+ * <p>
+ * Activations with the same label tuple (namespace, source, userId, action, statusCode, kind) are reduced
+ * to a single event holding the number of activations, the sum of their durations and optionally their
+ * duration distribution. The aggregates are
+ * dispatched when the window closes. Other events are dispatched immediately. With durable totals, every
+ * activation is added to the totals of the task as it is processed, so the totals are committed with the offsets
+ * of the activations they hold even while the activations wait in a window.
+ * <p>
+ * While the exporter catches up with a backlog, the larger catch-up window is used. Without a normal window,
+ * activations are then only aggregated in catch-up mode and passed through otherwise.
+ * <p>
+ * Kafka Streams creates one processor per task, so instances are only accessed by a single stream thread.
+ */
+class ActivationAggregator extends AbstractProcessor<byte[], OpenwhiskEvent> {
+
+    private final long windowMillis;
+    private final long catchUpWindowMillis;
+    private final BooleanSupplier catchingUp;
+    private final Consumer<OpenwhiskEvent> dispatcher;
+    private final DurationBuckets durationBuckets;
+    private final ActivationTotals totals;
+
+    private final Map<ActivationKey, Aggregate> aggregates = new HashMap<>();
+    private final ActivationKey probe = new ActivationKey();
+
+    private long lastFlushMillis;
+
+    /**
+     * ActivationAggregator reduces activations per window before dispatching them
+     *
+     * @param windowMillis    Window size in milliseconds
+     * @param durationBuckets Buckets to keep the duration distribution of aggregates in, or null
+     * @param totals          Durable totals of the task, or null
+     * @param dispatcher      Receives the aggregated and the passed through events
+     */
+    ActivationAggregator(long windowMillis, DurationBuckets durationBuckets, ActivationTotals totals,
+                         Consumer<OpenwhiskEvent> dispatcher) {
+        this(windowMillis, 0, null, durationBuckets, totals, dispatcher);
+    }
+
+    /**
+     * ActivationAggregator which switches to a larger window while the exporter catches up
+     *
+     * @param windowMillis        Window size in milliseconds, 0 to only aggregate while catching up
+     * @param catchUpWindowMillis Window size in milliseconds while catching up
+     * @param catchingUp          Tells whether the exporter is catching up, or null without catch-up mode
+     * @param durationBuckets     Buckets to keep the duration distribution of aggregates in, or null
+     * @param totals              Durable totals of the task, or null
+     * @param dispatcher          Receives the aggregated and the passed through events
+     */
+    ActivationAggregator(long windowMillis, long catchUpWindowMillis, BooleanSupplier catchingUp,
+                         DurationBuckets durationBuckets, ActivationTotals totals,
+                         Consumer<OpenwhiskEvent> dispatcher) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Aggregation window cannot be negative");
+        }
+
+        if (catchingUp == null && windowMillis == 0) {
+            throw new IllegalArgumentException("Aggregation window should be positive");
+        }
+
+        if (catchingUp != null && catchUpWindowMillis <= 0) {
+            throw new IllegalArgumentException("Catch-up window should be positive");
+        }
+
+        this.windowMillis = windowMillis;
+        this.catchUpWindowMillis = Math.max(windowMillis, catchUpWindowMillis);
+        this.catchingUp = catchingUp;
+        this.durationBuckets = durationBuckets;
+        this.totals = totals;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void init(ProcessorContext context) {
+        super.init(context);
+        if (totals != null) {
+            totals.init(context);
+        }
+        long interval = windowMillis > 0 ? windowMillis : catchUpWindowMillis;
+        context.schedule(interval, PunctuationType.WALL_CLOCK_TIME, this::flushIfDue);
+    }
+
+    /**
+     * Flushes if the window of the current mode elapsed
+     *
+     * @param timestamp Wall clock time
+     */
+    private void flushIfDue(long timestamp) {
+        if (timestamp - lastFlushMillis >= currentWindowMillis()) {
+            flush();
+            lastFlushMillis = timestamp;
+        }
+    }
+
+    private boolean isCatchingUp() {
+        return catchingUp != null && catchingUp.getAsBoolean();
+    }
+
+    private long currentWindowMillis() {
+        return isCatchingUp() ? catchUpWindowMillis : windowMillis;
+    }
+
+    @Override
+    public void process(byte[] key, OpenwhiskEvent event) {
+        if (!(event instanceof ActivationEvent)) {
+            dispatcher.accept(event);
+            return;
+        }
+
+        ActivationEvent activation = (ActivationEvent) event;
+        if (totals != null) {
+            totals.add(activation);
+        }
+        if (windowMillis == 0 && !isCatchingUp()) {
+            // Caught up: the aggregates of the catch-up window go out first, then activations pass through
+            flush();
+            dispatcher.accept(totals != null ? totals.own(activation) : activation);
+            return;
+        }
+
+        probe.set(activation);
+        Aggregate aggregate = aggregates.get(probe);
+        if (aggregate == null) {
+            aggregate = new Aggregate(activation, durationBuckets);
+            aggregates.put(new ActivationKey().set(activation), aggregate);
+        }
+        aggregate.add(activation);
+    }
+
+    /**
+     * Dispatches the aggregates of the current window and starts a new window
+     */
+    private void flush() {
+        if (aggregates.isEmpty()) {
+            return;
+        }
+        for (Aggregate aggregate : aggregates.values()) {
+            ActivationEvent event = aggregate.toEvent();
+            dispatcher.accept(totals != null ? totals.own(event) : event);
+        }
+        aggregates.clear();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    /**
+     * Label tuple of an activation
+     */
+    private static class ActivationKey {
+
+        private String namespace;
+        private String source;
+        private String userId;
+        private String actionName;
+        private int statusCode;
+        private String kind;
+        private int hash;
+
+        ActivationKey set(ActivationEvent event) {
+            namespace = event.getNamespace();
+            source = event.getSource();
+            userId = event.getUserId();
+            actionName = event.getActionName();
+            statusCode = event.getStatusCode();
+            kind = event.getKind();
+            int result = Objects.hashCode(namespace);
+            result = 31 * result + Objects.hashCode(source);
+            result = 31 * result + Objects.hashCode(userId);
+            result = 31 * result + Objects.hashCode(actionName);
+            result = 31 * result + statusCode;
+            result = 31 * result + Objects.hashCode(kind);
+            hash = result;
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ActivationKey)) {
+                return false;
+            }
+            ActivationKey that = (ActivationKey) o;
+            return statusCode == that.statusCode
+                    && Objects.equals(namespace, that.namespace)
+                    && Objects.equals(source, that.source)
+                    && Objects.equals(userId, that.userId)
+                    && Objects.equals(actionName, that.actionName)
+                    && Objects.equals(kind, that.kind);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Sums of the activations with the same label tuple seen in the current window
+     */
+    private static class Aggregate {
+
+        private final ActivationEvent first;
+        private final DurationBuckets durationBuckets;
+        private long count;
+        private long duration;
+        private long waitTime;
+        private long initTime;
+        private long coldStarts;
+        private long[] durationBucketCounts;
+        private long[] waitTimeBucketCounts;
+        private long[] initTimeBucketCounts;
+
+        Aggregate(ActivationEvent first, DurationBuckets durationBuckets) {
+            this.first = first;
+            this.durationBuckets = durationBuckets;
+            if (durationBuckets != null) {
+                durationBucketCounts = new long[durationBuckets.size()];
+                waitTimeBucketCounts = new long[durationBuckets.size()];
+                initTimeBucketCounts = new long[durationBuckets.size()];
+            }
+        }
+
+        /**
+         * Adds a single activation. Sampled activations stand for several and are counted in the buckets of
+         * their means.
+         */
+        void add(ActivationEvent activation) {
+            long activations = activation.getCount();
+            long activationColdStarts = activation.getColdStarts();
+            count += activations;
+            duration += activation.getDuration();
+            waitTime += activation.getWaitTime();
+            initTime += activation.getInitTime();
+            coldStarts += activationColdStarts;
+            if (durationBuckets != null) {
+                durationBucketCounts[durationBuckets.indexOf(activation.getDuration() / activations)] += activations;
+                waitTimeBucketCounts[durationBuckets.indexOf(activation.getWaitTime() / activations)] += activations;
+                if (activationColdStarts > 0) {
+                    initTimeBucketCounts[durationBuckets.indexOf(activation.getInitTime() / activationColdStarts)]
+                            += activationColdStarts;
+                }
+            }
+        }
+
+        ActivationEvent toEvent() {
+            return new ActivationEvent(null, first.getCluster(), first.getSource(), first.getNamespace(),
+                    first.getUserId(), first.getStatusCode(), first.getActionName(), first.getKind(), duration,
+                    waitTime, initTime, count, coldStarts, durationBucketCounts, waitTimeBucketCounts,
+                    initTimeBucketCounts);
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.json.JSONObject;
+import org.wso2.serverless.stats.listeners.OpenwhiskEventListener;
+
+import java.util.Objects;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Immutable Activation event. An event either describes a single activation, a sampled activation standing for
+ * several while the exporter sheds load, or the aggregate of the activations with the same labels seen in an
+ * aggregation window, see {@link #getCount()}.
+ */
+public final class ActivationEvent extends OpenwhiskEvent {
+
+    private final int statusCode;
+    private final String actionName;
+    private final String kind;
+    private final long duration;
+    private final long waitTime;
+    private final long initTime;
+    private final long count;
+    private final long coldStarts;
+    private final long[] durationBucketCounts;
+    private final long[] waitTimeBucketCounts;
+    private final long[] initTimeBucketCounts;
+    private final int activationIdHash;
+    private final String task;
+    private final int taskEpoch;
+
+    /**
+     * Constructor of ActivationEvent describing a single activation
+     *
+     * @param source     Source which emitted the event
+     * @param namespace  Namespace
+     * @param userId     User ID
+     * @param statusCode Activation status code
+     * @param actionName Action name
+     * @param kind       Action kind
+     * @param duration   Duration in milliseconds
+     * @param waitTime   Wait time in milliseconds
+     * @param initTime   Init time in milliseconds, 0 for warm starts
+     */
+    public ActivationEvent(String source, String namespace, String userId, int statusCode, String actionName,
+                           String kind, long duration, long waitTime, long initTime) {
+        this(null, "", source, namespace, userId, statusCode, actionName, kind, duration, waitTime, initTime,
+                Objects.hash(source, namespace, actionName, statusCode, duration, waitTime, initTime));
+    }
+
+    /**
+     * Constructor of ActivationEvent describing a single activation read from a record
+     *
+     * @param activationIdHash {@link #hashActivationId(byte[], int, int)} of the activation ID, or of the whole
+     *                         record if it has none
+     */
+    ActivationEvent(byte[] data, String cluster, String source, String namespace, String userId, int statusCode,
+                    String actionName, String kind, long duration, long waitTime, long initTime,
+                    int activationIdHash) {
+        this(data, cluster, source, namespace, userId, statusCode, actionName, kind, duration, waitTime, initTime,
+                1, initTime > 0 ? 1 : 0, null, null, null, activationIdHash, "", 0);
+    }
+
+    /**
+     * Constructor of ActivationEvent describing aggregated activations. Duration, wait time and init time
+     * are sums over all activations. The bucket count arrays are owned by the event afterwards.
+     */
+    ActivationEvent(byte[] data, String cluster, String source, String namespace, String userId, int statusCode,
+                    String actionName, String kind, long duration, long waitTime, long initTime, long count,
+                    long coldStarts, long[] durationBucketCounts, long[] waitTimeBucketCounts,
+                    long[] initTimeBucketCounts) {
+        this(data, cluster, source, namespace, userId, statusCode, actionName, kind, duration, waitTime, initTime,
+                count, coldStarts, durationBucketCounts, waitTimeBucketCounts, initTimeBucketCounts, 0, "", 0);
+    }
+
+    private ActivationEvent(byte[] data, String cluster, String source, String namespace, String userId,
+                            int statusCode, String actionName, String kind, long duration, long waitTime,
+                            long initTime, long count, long coldStarts, long[] durationBucketCounts,
+                            long[] waitTimeBucketCounts, long[] initTimeBucketCounts, int activationIdHash,
+                            String task, int taskEpoch) {
+        super(data, cluster, source, namespace, userId);
+        this.statusCode = statusCode;
+        this.actionName = actionName;
+        this.kind = kind;
+        this.duration = duration;
+        this.waitTime = waitTime;
+        this.initTime = initTime;
+        this.count = count;
+        this.coldStarts = coldStarts;
+        this.durationBucketCounts = durationBucketCounts;
+        this.waitTimeBucketCounts = waitTimeBucketCounts;
+        this.initTimeBucketCounts = initTimeBucketCounts;
+        this.activationIdHash = activationIdHash;
+        this.task = task;
+        this.taskEpoch = taskEpoch;
+    }
+
+    /**
+     * Hashes the UTF-8 bytes of an activation ID with FNV-1a, so every codec derives the same hash
+     * without materializing the ID
+     *
+     * @param data  Bytes
+     * @param start Start of the ID
+     * @param end   End of the ID, exclusive
+     * @return Hash
+     */
+    static int hashActivationId(byte[] data, int start, int end) {
+        int hash = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (data[i] & 0xFF)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * Scales a sampled single activation so that it stands for the given number of activations. Sums and counts
+     * are multiplied, so the means stay those of the activation.
+     *
+     * @param factor Number of activations the event stands for
+     * @return Scaled event
+     */
+    ActivationEvent scaled(long factor) {
+        return new ActivationEvent(null, getCluster(), getSource(), getNamespace(), getUserId(), statusCode,
+                actionName, kind, duration * factor, waitTime * factor, initTime * factor, count * factor,
+                coldStarts * factor, null, null, null, activationIdHash, task, taskEpoch);
+    }
+
+    /**
+     * Attributes the event to the durable totals of a task, so its activations are counted in the series of
+     * the task's ownership on this instance
+     *
+     * @param task      Task label
+     * @param taskEpoch Ownership epoch of the task
+     * @return Event of the task
+     */
+    ActivationEvent ownedBy(String task, int taskEpoch) {
+        return new ActivationEvent(null, getCluster(), getSource(), getNamespace(), getUserId(), statusCode,
+                actionName, kind, duration, waitTime, initTime, count, coldStarts, durationBucketCounts,
+                waitTimeBucketCounts, initTimeBucketCounts, activationIdHash, task, taskEpoch);
+    }
+
+    @Override
+    public void dispatchTo(OpenwhiskEventListener listener) {
+        listener.onActivation(this);
+    }
+
+    @Override
+    public String getEventType() {
+        return EVENT_TYPE_ACTIVATION;
+    }
+
+    @Override
+    JSONObject bodyToJson() {
+        JSONObject body = new JSONObject();
+        body.put(STATUS_CODE, statusCode);
+        body.put(ACTION_NAME, actionName);
+        body.put(ACTION_KIND, kind);
+        body.put(DURATION, duration);
+        body.put(WAIT_TIME, waitTime);
+        body.put(INIT_TIME, initTime);
+        body.put(COUNT, count);
+        return body;
+    }
+
+    /**
+     * Gets activation status code
+     *
+     * @return Status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Gets activated action name
+     *
+     * @return Action name
+     */
+    public String getActionName() {
+        return actionName;
+    }
+
+    /**
+     * Gets activated action kind
+     *
+     * @return Action kind
+     */
+    public String getKind() {
+        return kind;
+    }
+
+    /**
+     * Gets activation duration. For aggregated events this is the sum of all durations.
+     *
+     * @return Duration in milliseconds
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Gets the time the activation waited before it was started. For aggregated events this is the sum.
+     *
+     * @return Wait time in milliseconds
+     */
+    public long getWaitTime() {
+        return waitTime;
+    }
+
+    /**
+     * Gets the time spent initializing the action container. Only cold starts have an init time.
+     * For aggregated events this is the sum.
+     *
+     * @return Init time in milliseconds
+     */
+    public long getInitTime() {
+        return initTime;
+    }
+
+    /**
+     * Gets the number of cold starts, i.e. activations with an init time
+     *
+     * @return Number of cold starts
+     */
+    public long getColdStarts() {
+        return coldStarts;
+    }
+
+    /**
+     * Gets the number of activations this event represents. Greater than one for aggregated events.
+     *
+     * @return Number of activations
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the number of aggregated activations per duration bucket. The array should not be modified.
+     *
+     * @return Bucket counts, or null if the event is not aggregated
+     */
+    public long[] getDurationBucketCounts() {
+        return durationBucketCounts;
+    }
+
+    /**
+     * Gets the number of aggregated activations per wait time bucket. The array should not be modified.
+     *
+     * @return Bucket counts, or null if the event is not aggregated
+     */
+    public long[] getWaitTimeBucketCounts() {
+        return waitTimeBucketCounts;
+    }
+
+    /**
+     * Gets the number of aggregated cold starts per init time bucket. The array should not be modified.
+     *
+     * @return Bucket counts, or null if the event is not aggregated
+     */
+    public long[] getInitTimeBucketCounts() {
+        return initTimeBucketCounts;
+    }
+
+    /**
+     * Gets the hash the activation is sampled by when the exporter sheds load
+     *
+     * @return Hash of the activation ID, 0 for aggregated events
+     */
+    int getActivationIdHash() {
+        return activationIdHash;
+    }
+
+    /**
+     * Gets the task whose durable totals hold the activations
+     *
+     * @return Task label, empty without durable totals
+     */
+    public String getTask() {
+        return task;
+    }
+
+    /**
+     * Gets the ownership epoch of the task on this instance. Every time a task is assigned to the instance,
+     * it gets a new epoch, unique within the process.
+     *
+     * @return Epoch, 0 without durable totals
+     */
+    public int getTaskEpoch() {
+        return taskEpoch;
+    }
+}
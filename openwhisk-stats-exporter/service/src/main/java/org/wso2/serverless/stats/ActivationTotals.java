@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.streams.KeyValue;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.state.KeyValueIterator;
+import org.apache.kafka.streams.state.KeyValueStore;
+import org.wso2.serverless.stats.metrics.DurationBuckets;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.wso2.serverless.stats.Constants.ACTIVATION_TOTALS_STORE;
+
+/**
+ * Keeps the cumulative totals of every activation series of a task in a changelogged state store.
+ * <p>
+ * The store is local and backed by a compacted changelog topic, with caching so that a series is written at most
+ * once per commit. When a task is initialized, after Kafka Streams restored the store from a standby replica or
+ * the changelog, its totals are replayed to the restorer, so a restarted exporter continues its counters instead
+ * of starting from zero. Only the first initialization replays: a rebalance which suspends and resumes the task
+ * initializes the same processors again, and the counters still hold their totals, see {@link OwnedTasks}.
+ * Restored totals and the activations dispatched afterwards are attributed to the task and its ownership epoch.
+ * <p>
+ * The totals hold what the counters were given. While load is shed, a kept activation is added scaled by the
+ * sampling factor, so the totals include estimated activations, see {@link OverloadController}. Series are kept
+ * under their own action names, even if the cardinality guard folds them into the other action series. Restored
+ * totals go through the guard again, which folds them according to the heavy hitters at that time.
+ * <p>
+ * Like the processors using it, an instance belongs to a single task and is only accessed by its stream thread.
+ */
+class ActivationTotals {
+
+    private static final Log log = LogFactory.getLog(ActivationTotals.class);
+
+    private static final int FIELD_COUNT = 0;
+    private static final int FIELD_DURATION = 1;
+    private static final int FIELD_WAIT_TIME = 2;
+    private static final int FIELD_INIT_TIME = 3;
+    private static final int FIELD_COLD_STARTS = 4;
+    private static final int FIELDS = 5;
+
+    private final String cluster;
+    private final DurationBuckets durationBuckets;
+    private final OwnedTasks ownedTasks;
+    private final Consumer<ActivationEvent> restorer;
+    private final int bucketCount;
+    private final long[] totals;
+    private KeyValueStore<Bytes, byte[]> store;
+    private String task;
+    private int epoch;
+    private ByteBuffer keyBuffer = ByteBuffer.allocate(256);
+
+    /**
+     * ActivationTotals for a task
+     *
+     * @param cluster         Label of the event source of the task, set on the restored totals
+     * @param durationBuckets Buckets of the duration, wait time and init time distributions, or null
+     * @param ownedTasks      Ownerships of the tasks of the source, shared by all its tasks
+     * @param restorer        Receives the restored totals of a series as a single aggregated activation
+     */
+    ActivationTotals(String cluster, DurationBuckets durationBuckets, OwnedTasks ownedTasks,
+                     Consumer<ActivationEvent> restorer) {
+        this.cluster = cluster;
+        this.durationBuckets = durationBuckets;
+        this.ownedTasks = ownedTasks;
+        this.restorer = restorer;
+        this.bucketCount = durationBuckets == null ? 0 : durationBuckets.size();
+        this.totals = new long[FIELDS + 3 * bucketCount];
+    }
+
+    /**
+     * Opens the store of the task. The first time, a new ownership of the task is opened and its totals are
+     * replayed.
+     *
+     * @param context Processor context of the task
+     */
+    @SuppressWarnings("unchecked")
+    void init(ProcessorContext context) {
+        store = (KeyValueStore<Bytes, byte[]>) context.getStateStore(ACTIVATION_TOTALS_STORE);
+        if (task != null) {
+            return;
+        }
+
+        task = context.taskId().toString();
+        epoch = ownedTasks.opened(task);
+        List<ActivationEvent> totals = readAll();
+        totals.forEach(restorer);
+        if (!totals.isEmpty()) {
+            log.info(String.format("Restored the totals of %d activation series of task %s", totals.size(), task));
+        }
+    }
+
+    /**
+     * Attributes an activation to the ownership of the task, so it is counted in the task's series
+     *
+     * @param activation Activation of the task
+     * @return Activation of the task's ownership
+     */
+    ActivationEvent own(ActivationEvent activation) {
+        return activation.ownedBy(task, epoch);
+    }
+
+    private List<ActivationEvent> readAll() {
+        List<ActivationEvent> events = new ArrayList<>();
+        try (KeyValueIterator<Bytes, byte[]> iterator = store.all()) {
+            while (iterator.hasNext()) {
+                KeyValue<Bytes, byte[]> entry = iterator.next();
+                events.add(toEvent(entry.key.get(), entry.value));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Adds an activation, which may be an aggregate, to the totals of its series
+     *
+     * @param activation Activation
+     */
+    void add(ActivationEvent activation) {
+        Bytes key = encodeKey(activation);
+        byte[] current = store.get(key);
+        if (current == null) {
+            Arrays.fill(totals, 0);
+        } else {
+            decodeValue(current);
+        }
+
+        long count = activation.getCount();
+        totals[FIELD_COUNT] += count;
+        totals[FIELD_DURATION] += activation.getDuration();
+        totals[FIELD_WAIT_TIME] += activation.getWaitTime();
+        totals[FIELD_INIT_TIME] += activation.getInitTime();
+        totals[FIELD_COLD_STARTS] += activation.getColdStarts();
+        if (bucketCount > 0) {
+            addBuckets(FIELDS, activation.getDurationBucketCounts(), count, activation.getDuration());
+            addBuckets(FIELDS + bucketCount, activation.getWaitTimeBucketCounts(), count,
+                    activation.getWaitTime());
+            if (activation.getColdStarts() > 0) {
+                addBuckets(FIELDS + 2 * bucketCount, activation.getInitTimeBucketCounts(),
+                        activation.getColdStarts(), activation.getInitTime());
+            }
+        }
+        store.put(key, encodeValue());
+    }
+
+    /**
+     * Adds bucket counts, or counts all observations in the bucket of the mean like the metric stores do
+     */
+    private void addBuckets(int offset, long[] bucketCounts, long count, long sum) {
+        if (bucketCounts == null) {
+            long mean = count == 1 ? sum : sum / Math.max(count, 1);
+            totals[offset + durationBuckets.indexOf(mean)] += count;
+            return;
+        }
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            totals[offset + bucket] += bucketCounts[bucket];
+        }
+    }
+
+    private Bytes encodeKey(ActivationEvent activation) {
+        keyBuffer.clear();
+        putString(activation.getNamespace());
+        putString(activation.getSource());
+        putString(activation.getUserId());
+        putString(activation.getActionName());
+        putString(activation.getKind());
+        ensureKeyRemaining(Integer.BYTES);
+        keyBuffer.putInt(activation.getStatusCode());
+
+        byte[] key = new byte[keyBuffer.position()];
+        keyBuffer.flip();
+        keyBuffer.get(key);
+        return Bytes.wrap(key);
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            ensureKeyRemaining(Integer.BYTES);
+            keyBuffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureKeyRemaining(Integer.BYTES + bytes.length);
+        keyBuffer.putInt(bytes.length);
+        keyBuffer.put(bytes);
+    }
+
+    private void ensureKeyRemaining(int bytes) {
+        if (keyBuffer.remaining() < bytes) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(keyBuffer.capacity() * 2, keyBuffer.position() + bytes));
+            keyBuffer.flip();
+            grown.put(keyBuffer);
+            keyBuffer = grown;
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    private byte[] encodeValue() {
+        ByteBuffer value = ByteBuffer.allocate(Integer.BYTES + totals.length * Long.BYTES);
+        value.putInt(bucketCount);
+        for (long total : totals) {
+            value.putLong(total);
+        }
+        return value.array();
+    }
+
+    /**
+     * Reads stored totals into {@link #totals}. Bucket counts stored with a different number of buckets are
+     * dropped, as they cannot be mapped to the current buckets.
+     *
+     * @return False if the buckets were dropped
+     */
+    private boolean decodeValue(byte[] bytes) {
+        ByteBuffer value = ByteBuffer.wrap(bytes);
+        int storedBuckets = value.getInt();
+        for (int field = 0; field < FIELDS; field++) {
+            totals[field] = value.getLong();
+        }
+        if (storedBuckets != bucketCount) {
+            Arrays.fill(totals, FIELDS, totals.length, 0);
+            return false;
+        }
+        for (int field = FIELDS; field < totals.length; field++) {
+            totals[field] = value.getLong();
+        }
+        return true;
+    }
+
+    private ActivationEvent toEvent(byte[] key, byte[] value) {
+        ByteBuffer labels = ByteBuffer.wrap(key);
+        String namespace = getString(labels);
+        String source = getString(labels);
+        String userId = getString(labels);
+        String actionName = getString(labels);
+        String kind = getString(labels);
+        int statusCode = labels.getInt();
+
+        boolean withBuckets = decodeValue(value) && bucketCount > 0;
+        return new ActivationEvent(null, cluster, source, namespace, userId, statusCode, actionName, kind,
+                totals[FIELD_DURATION], totals[FIELD_WAIT_TIME], totals[FIELD_INIT_TIME], totals[FIELD_COUNT],
+                totals[FIELD_COLD_STARTS], withBuckets ? copy(FIELDS) : null,
+                withBuckets ? copy(FIELDS + bucketCount) : null, withBuckets ? copy(FIELDS + 2 * bucketCount) : null)
+                .ownedBy(task, epoch);
+    }
+
+    private long[] copy(int offset) {
+        long[] buckets = new long[bucketCount];
+        System.arraycopy(totals, offset, buckets, 0, bucketCount);
+        return buckets;
+    }
+}
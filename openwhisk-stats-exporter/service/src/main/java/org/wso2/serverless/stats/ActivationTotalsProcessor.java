@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.apache.kafka.streams.processor.AbstractProcessor;
+import org.apache.kafka.streams.processor.ProcessorContext;
+
+import java.util.function.Consumer;
+
+/**
+ * Adds every activation to the durable totals of its task before dispatching it as an activation of the task's
+ * ownership. Used when activations are not aggregated, otherwise {@link ActivationAggregator} adds them as
+ * they are processed.
+ */
+class ActivationTotalsProcessor extends AbstractProcessor<byte[], OpenwhiskEvent> {
+
+    private final ActivationTotals totals;
+    private final Consumer<OpenwhiskEvent> dispatcher;
+
+    /**
+     * ActivationTotalsProcessor records activations in the totals of the task
+     *
+     * @param totals     Totals of the task
+     * @param dispatcher Receives all events
+     */
+    ActivationTotalsProcessor(ActivationTotals totals, Consumer<OpenwhiskEvent> dispatcher) {
+        if (totals == null) {
+            throw new IllegalArgumentException("Totals are required");
+        }
+        this.totals = totals;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void init(ProcessorContext context) {
+        super.init(context);
+        totals.init(context);
+    }
+
+    @Override
+    public void process(byte[] key, OpenwhiskEvent event) {
+        if (event instanceof ActivationEvent) {
+            ActivationEvent activation = (ActivationEvent) event;
+            totals.add(activation);
+            dispatcher.accept(totals.own(activation));
+            return;
+        }
+        dispatcher.accept(event);
+    }
+}
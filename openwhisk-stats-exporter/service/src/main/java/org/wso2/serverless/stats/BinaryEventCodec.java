@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary format of the Activation and Metric events, without a schema runtime:
+ * <pre>
+ * event      := MAGIC VERSION type source namespace userId body
+ * activation := statusCode actionName kind duration waitTime initTime activationIdHash   (type 1)
+ * metric     := metricName metricValue                                                   (type 2)
+ * </pre>
+ * Strings are a varint of the UTF-8 length plus one followed by the bytes, where 0 stands for a missing value.
+ * Status codes are unsigned varints and times and metric values are zigzag encoded varints, as in protobuf.
+ * The activation ID is only needed to sample activations, so just its hash is kept as 4 little-endian bytes.
+ * <p>
+ * Values are decoded straight into the events. Repeated strings are served from a {@link StringCache}, so the
+ * common case allocates nothing but the event. Decoded events are not backed by the record value and build
+ * their JSON representation from the typed fields. Instances are not thread safe.
+ */
+public class BinaryEventCodec implements EventCodec {
+
+    /**
+     * First byte of every binary event. It is neither valid UTF-8 on its own nor JSON whitespace.
+     */
+    public static final byte MAGIC = (byte) 0xEB;
+
+    /**
+     * Version of the format written by this codec
+     */
+    public static final byte VERSION = 1;
+
+    private static final byte TYPE_ACTIVATION = 1;
+    private static final byte TYPE_METRIC = 2;
+    private static final int HEADER_LENGTH = 3;
+    private static final int MAX_VARINT_LENGTH = 10;
+
+    private final String cluster;
+    private final StringCache strings = new StringCache();
+
+    private byte[] data;
+    private int pos;
+
+    private byte[] buffer = new byte[128];
+    private int size;
+
+    /**
+     * BinaryEventCodec for records of the default event source
+     */
+    public BinaryEventCodec() {
+        this("");
+    }
+
+    /**
+     * BinaryEventCodec for records of an event source
+     *
+     * @param cluster Label of the event source set on every decoded event
+     */
+    public BinaryEventCodec(String cluster) {
+        this.cluster = cluster;
+    }
+
+    @Override
+    public boolean detects(byte[] value) {
+        return value.length > 0 && value[0] == MAGIC;
+    }
+
+    @Override
+    public OpenwhiskEvent decode(byte[] value) {
+        if (value == null || value.length == 0) {
+            throw new PoisonRecordException(PoisonReason.EMPTY, "Event value is empty");
+        }
+        if (value.length < HEADER_LENGTH || value[0] != MAGIC) {
+            throw new PoisonRecordException(PoisonReason.MALFORMED, "Not a binary event");
+        }
+        if (value[1] != VERSION) {
+            throw new PoisonRecordException(PoisonReason.MALFORMED, "Unsupported binary event version " + value[1]);
+        }
+
+        data = value;
+        pos = HEADER_LENGTH;
+        try {
+            byte type = value[2];
+            if (type != TYPE_ACTIVATION && type != TYPE_METRIC) {
+                return null;
+            }
+            String source = readString();
+            String namespace = readString();
+            String userId = readString();
+            OpenwhiskEvent event;
+            if (type == TYPE_ACTIVATION) {
+                int statusCode = (int) readVarint();
+                String actionName = readString();
+                String kind = readString();
+                long duration = readSignedVarint();
+                long waitTime = readSignedVarint();
+                long initTime = readSignedVarint();
+                int activationIdHash = readFixed32();
+                if (namespace == null || actionName == null) {
+                    throw missing("Activation event without namespace or action name");
+                }
+                event = new ActivationEvent(null, cluster, source, namespace, userId, statusCode, actionName, kind,
+                        duration, waitTime, initTime, activationIdHash);
+            } else {
+                String metricName = readString();
+                long metricValue = readSignedVarint();
+                if (namespace == null || metricName == null) {
+                    throw missing("Metric event without namespace or metric name");
+                }
+                event = new MetricEvent(null, cluster, source, namespace, userId, metricName, metricValue);
+            }
+            if (pos != value.length) {
+                throw error("Unexpected trailing content");
+            }
+            return event;
+        } finally {
+            data = null;
+        }
+    }
+
+    /**
+     * Encodes an Activation or Metric event
+     *
+     * @param event Event
+     * @return Record value
+     * @throws IllegalArgumentException If the event is of another type
+     */
+    @Override
+    public byte[] encode(OpenwhiskEvent event) {
+        size = 0;
+        put(MAGIC);
+        put(VERSION);
+        if (event instanceof ActivationEvent) {
+            ActivationEvent activation = (ActivationEvent) event;
+            put(TYPE_ACTIVATION);
+            putCommon(event);
+            putVarint(activation.getStatusCode() & 0xFFFFFFFFL);
+            putString(activation.getActionName());
+            putString(activation.getKind());
+            putSignedVarint(activation.getDuration());
+            putSignedVarint(activation.getWaitTime());
+            putSignedVarint(activation.getInitTime());
+            putFixed32(activation.getActivationIdHash());
+        } else if (event instanceof MetricEvent) {
+            MetricEvent metric = (MetricEvent) event;
+            put(TYPE_METRIC);
+            putCommon(event);
+            putString(metric.getMetricName());
+            putSignedVarint(metric.getMetricValue());
+        } else {
+            throw new IllegalArgumentException("Unsupported event type " + event.getEventType());
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private void putCommon(OpenwhiskEvent event) {
+        putString(event.getSource());
+        putString(event.getNamespace());
+        putString(event.getUserId());
+    }
+
+    private String readString() {
+        long encodedLength = readVarint();
+        if (encodedLength == 0) {
+            return null;
+        }
+        long length = encodedLength - 1;
+        // Lengths above Long.MAX_VALUE wrap around to negative values
+        if (length < 0 || length > data.length - pos) {
+            throw error("String length " + length + " exceeds the event");
+        }
+        int start = pos;
+        pos += (int) length;
+        if (length > StringCache.MAX_LENGTH) {
+            return new String(data, start, (int) length, StandardCharsets.UTF_8);
+        }
+
+        int slot = StringCache.slot(data, start, (int) length);
+        String cached = strings.get(slot, data, start, (int) length);
+        if (cached != null) {
+            return cached;
+        }
+        return strings.put(slot, data, start, (int) length,
+                new String(data, start, (int) length, StandardCharsets.UTF_8));
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int i = 0; i < MAX_VARINT_LENGTH; i++) {
+            if (pos >= data.length) {
+                throw error("Unexpected end of event");
+            }
+            byte b = data[pos++];
+            value |= (long) (b & 0x7F) << (i * 7);
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw error("Varint is too long");
+    }
+
+    private int readFixed32() {
+        if (data.length - pos < Integer.BYTES) {
+            throw error("Unexpected end of event");
+        }
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value |= (data[pos++] & 0xFF) << (i * 8);
+        }
+        return value;
+    }
+
+    private long readSignedVarint() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            putVarint(0);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putVarint(bytes.length + 1L);
+        ensureRemaining(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void putSignedVarint(long value) {
+        putVarint((value << 1) ^ (value >> 63));
+    }
+
+    private void putVarint(long value) {
+        ensureRemaining(MAX_VARINT_LENGTH);
+        while ((value & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void putFixed32(int value) {
+        ensureRemaining(Integer.BYTES);
+        for (int i = 0; i < Integer.BYTES; i++) {
+            buffer[size++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    private void put(byte b) {
+        ensureRemaining(1);
+        buffer[size++] = b;
+    }
+
+    private void ensureRemaining(int length) {
+        if (buffer.length - size < length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+    }
+
+    private PoisonRecordException error(String message) {
+        return new PoisonRecordException(PoisonReason.MALFORMED,
+                String.format("Malformed binary event at position %d: %s", pos, message));
+    }
+
+    private static PoisonRecordException missing(String message) {
+        return new PoisonRecordException(PoisonReason.MISSING_FIELD, message);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.serverless.stats.metrics.PipelineMetrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.wso2.serverless.stats.Constants.CATCH_UP_CHECK_INTERVAL_MILLIS;
+import static org.wso2.serverless.stats.Constants.CATCH_UP_EXIT_RATIO;
+
+/**
+ * Switches the exporter into catch-up mode while the consumer lag is high, e.g. when replaying a backlog
+ * after an outage, and back into normal mode once it caught up.
+ * <p>
+ * The lag summed over all assigned partitions is checked every {@link Constants#CATCH_UP_CHECK_INTERVAL_MILLIS}.
+ * Catch-up mode is entered when it reaches the threshold and left when it falls below a tenth of it, so the mode
+ * does not flap around the threshold. In catch-up mode activations are aggregated in larger windows and pushes
+ * are suspended until the exporter caught up. Mode listeners are called on the controller thread.
+ */
+public class CatchUpController {
+
+    private static final Log log = LogFactory.getLog(CatchUpController.class);
+
+    private final PipelineMetrics pipelineMetrics;
+    private final long enterLag;
+    private final long exitLag;
+    private final List<Consumer<Boolean>> modeListeners = new CopyOnWriteArrayList<>();
+
+    private volatile boolean catchingUp;
+    private long lastConsumed;
+    private long lastCheckNanos;
+    private ScheduledExecutorService executor;
+
+    /**
+     * CatchUpController watching the consumer lag reported by the pipeline metrics
+     *
+     * @param pipelineMetrics Pipeline metrics to read the lag from and to record mode switches in
+     * @param enterLag        Lag in records at which catch-up mode is entered
+     */
+    public CatchUpController(PipelineMetrics pipelineMetrics, long enterLag) {
+        if (pipelineMetrics == null) {
+            throw new IllegalArgumentException("Pipeline metrics are required");
+        }
+
+        if (enterLag <= 0) {
+            throw new IllegalArgumentException("Catch-up lag should be positive");
+        }
+
+        this.pipelineMetrics = pipelineMetrics;
+        this.enterLag = enterLag;
+        this.exitLag = enterLag / CATCH_UP_EXIT_RATIO;
+    }
+
+    /**
+     * Checks whether the exporter is catching up. Cheap enough to be called for every event.
+     *
+     * @return True in catch-up mode
+     */
+    public boolean isCatchingUp() {
+        return catchingUp;
+    }
+
+    /**
+     * Adds a listener called with true when catch-up mode is entered and with false when it is left
+     *
+     * @param listener Mode listener
+     */
+    public void addModeListener(Consumer<Boolean> listener) {
+        modeListeners.add(listener);
+    }
+
+    /**
+     * Starts checking the lag periodically
+     */
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catch-up-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastConsumed = pipelineMetrics.consumed();
+        lastCheckNanos = System.nanoTime();
+        executor.scheduleWithFixedDelay(this::check, CATCH_UP_CHECK_INTERVAL_MILLIS, CATCH_UP_CHECK_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compares the lag with the thresholds and updates the catch-up rate
+     */
+    void check() {
+        long lag = pipelineMetrics.totalLag();
+        long consumed = pipelineMetrics.consumed();
+        long now = System.nanoTime();
+        if (catchingUp) {
+            pipelineMetrics.setCatchUpRate((consumed - lastConsumed) * 1e9 / Math.max(1, now - lastCheckNanos));
+        }
+        lastConsumed = consumed;
+        lastCheckNanos = now;
+
+        if (!catchingUp && lag >= enterLag) {
+            log.info(String.format("Consumer lag of %d records, switching to catch-up mode", lag));
+            switchMode(true);
+        } else if (catchingUp && lag <= exitLag) {
+            log.info(String.format("Consumer lag down to %d records, switching back to normal mode", lag));
+            switchMode(false);
+        }
+    }
+
+    private void switchMode(boolean catchUp) {
+        catchingUp = catchUp;
+        pipelineMetrics.modeSwitched(catchUp);
+        for (Consumer<Boolean> listener : modeListeners) {
+            try {
+                listener.accept(catchUp);
+            } catch (RuntimeException e) {
+                log.error("Catch-up mode listener failed", e);
+            }
+        }
+    }
+
+    /**
+     * Stops checking the lag and switches back to normal mode, so suspended work is resumed
+     */
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(CATCH_UP_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (catchingUp) {
+            switchMode(false);
+        }
+    }
+}
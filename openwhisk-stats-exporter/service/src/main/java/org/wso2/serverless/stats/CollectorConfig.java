@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+import org.kohsuke.args4j.Option;
+import org.wso2.serverless.stats.listeners.OverflowPolicy;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Maps the CLI options of the event collector: decoding, threading, aggregation, dispatch, durable totals,
+ * catch-up mode and load shedding
+ */
+public class CollectorConfig {
+
+    @Option(name = CMD_OPTION_NAME_FORMAT, usage = "Format of the event records: JSON, BINARY, or AUTO to detect it per record")
+    private EventFormat format = EventFormat.AUTO;
+
+    @Option(name = CMD_OPTION_NAME_STREAM_THREADS, usage = "Number of threads processing Kafka partitions. Up to one thread per partition is useful")
+    private int streamThreads = 1;
+
+    @Option(name = CMD_OPTION_NAME_AGGREGATION_WINDOW, usage = "Window in milliseconds in which activations are aggregated before updating metrics. 0 disables aggregation")
+    private long aggregationWindow;
+
+    @Option(name = CMD_OPTION_NAME_DISPATCH_BUFFER, usage = "Number of events buffered for each listener, which then runs on its own thread. 0 calls listeners on the stream threads")
+    private int dispatchBuffer;
+
+    @Option(name = CMD_OPTION_NAME_OVERFLOW_POLICY, usage = "What to do with new events when a listener buffer is full: BLOCK, DROP_NEWEST or SAMPLE")
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    @Option(name = CMD_OPTION_NAME_SAMPLE_RATE, usage = "Every how many events one is kept by the SAMPLE overflow policy")
+    private int sampleRate = DEFAULT_SAMPLE_RATE;
+
+    @Option(name = CMD_OPTION_NAME_DURABLE_TOTALS, usage = "Keep activation totals in a changelogged state store, so counters survive restarts")
+    private boolean durableTotals;
+
+    @Option(name = CMD_OPTION_NAME_STANDBY_REPLICAS, usage = "Number of standby replicas of the activation totals store")
+    private int standbyReplicas = DEFAULT_STANDBY_REPLICAS;
+
+    @Option(name = CMD_OPTION_NAME_STATE_DIR, usage = "Directory of the local state stores. Should be on a volume which survives restarts")
+    private String stateDir;
+
+    @Option(name = CMD_OPTION_NAME_CATCH_UP_LAG, usage = "Consumer lag in records from which a backlog is consumed in catch-up mode, with larger fetches, a longer aggregation window and no pushes. 0 disables catch-up mode")
+    private long catchUpLag = DEFAULT_CATCH_UP_LAG;
+
+    @Option(name = CMD_OPTION_NAME_CATCH_UP_WINDOW, usage = "Window in milliseconds in which activations are aggregated in catch-up mode")
+    private long catchUpWindow = DEFAULT_CATCH_UP_WINDOW_MILLIS;
+
+    @Option(name = CMD_OPTION_NAME_SHED_LAG, usage = "Consumer lag in records from which only a sample of the activations is processed, each counted for the dropped ones. Should be above the catch-up lag. 0 ignores the lag")
+    private long shedLag;
+
+    @Option(name = CMD_OPTION_NAME_SHED_DELAY, usage = "Time in milliseconds from producing an event until processing it from which only a sample of the activations is processed. 0 ignores the delay")
+    private long shedDelay;
+
+    /**
+     * Applies the options to a collector which was not started yet
+     *
+     * @param collector Event collector
+     */
+    public void configure(OpenwhiskEventCollector collector) {
+        collector.setEventFormat(format);
+        collector.setStreamThreads(streamThreads);
+        collector.setAggregationWindow(aggregationWindow);
+        if (durableTotals) {
+            collector.setDurableTotals(true);
+            collector.setStandbyReplicas(standbyReplicas);
+            if (stateDir != null) {
+                collector.setStateDirectory(stateDir);
+            }
+        }
+        if (catchUpLag > 0) {
+            collector.setCatchUp(catchUpLag, catchUpWindow);
+        }
+        if (shedLag > 0 || shedDelay > 0) {
+            collector.setLoadShedding(shedLag, shedDelay);
+        }
+        collector.setAsyncDispatch(dispatchBuffer, overflowPolicy, sampleRate);
+    }
+
+    /**
+     * Gets the format of the event records
+     *
+     * @return Event format
+     */
+    public EventFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the format of the event records
+     *
+     * @param format Event format
+     */
+    public void setFormat(EventFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Gets number of stream threads
+     *
+     * @return Number of stream threads
+     */
+    public int getStreamThreads() {
+        return streamThreads;
+    }
+
+    /**
+     * Sets number of stream threads
+     *
+     * @param streamThreads Number of stream threads
+     */
+    public void setStreamThreads(int streamThreads) {
+        this.streamThreads = streamThreads;
+    }
+
+    /**
+     * Gets activation aggregation window
+     *
+     * @return Aggregation window in milliseconds
+     */
+    public long getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    /**
+     * Sets activation aggregation window
+     *
+     * @param aggregationWindow Aggregation window in milliseconds
+     */
+    public void setAggregationWindow(long aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+    }
+
+    /**
+     * Gets number of events buffered for each listener
+     *
+     * @return Dispatch buffer size
+     */
+    public int getDispatchBuffer() {
+        return dispatchBuffer;
+    }
+
+    /**
+     * Sets number of events buffered for each listener
+     *
+     * @param dispatchBuffer Dispatch buffer size
+     */
+    public void setDispatchBuffer(int dispatchBuffer) {
+        this.dispatchBuffer = dispatchBuffer;
+    }
+
+    /**
+     * Gets listener buffer overflow policy
+     *
+     * @return Overflow policy
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Sets listener buffer overflow policy
+     *
+     * @param overflowPolicy Overflow policy
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Gets sample rate of the SAMPLE overflow policy
+     *
+     * @return Sample rate
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Sets sample rate of the SAMPLE overflow policy
+     *
+     * @param sampleRate Sample rate
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Checks whether activation totals are kept in a state store
+     *
+     * @return True if totals survive restarts
+     */
+    public boolean isDurableTotals() {
+        return durableTotals;
+    }
+
+    /**
+     * Sets whether activation totals are kept in a state store
+     *
+     * @param durableTotals True to keep totals durably
+     */
+    public void setDurableTotals(boolean durableTotals) {
+        this.durableTotals = durableTotals;
+    }
+
+    /**
+     * Gets the number of standby replicas of the totals store
+     *
+     * @return Number of standby replicas
+     */
+    public int getStandbyReplicas() {
+        return standbyReplicas;
+    }
+
+    /**
+     * Sets the number of standby replicas of the totals store
+     *
+     * @param standbyReplicas Number of standby replicas
+     */
+    public void setStandbyReplicas(int standbyReplicas) {
+        this.standbyReplicas = standbyReplicas;
+    }
+
+    /**
+     * Gets the directory of the local state stores
+     *
+     * @return State directory, or null for the Kafka Streams default
+     */
+    public String getStateDir() {
+        return stateDir;
+    }
+
+    /**
+     * Sets the directory of the local state stores
+     *
+     * @param stateDir State directory
+     */
+    public void setStateDir(String stateDir) {
+        this.stateDir = stateDir;
+    }
+
+    /**
+     * Gets the consumer lag from which catch-up mode is entered
+     *
+     * @return Lag in records, 0 if catch-up mode is disabled
+     */
+    public long getCatchUpLag() {
+        return catchUpLag;
+    }
+
+    /**
+     * Sets the consumer lag from which catch-up mode is entered
+     *
+     * @param catchUpLag Lag in records, 0 to disable catch-up mode
+     */
+    public void setCatchUpLag(long catchUpLag) {
+        this.catchUpLag = catchUpLag;
+    }
+
+    /**
+     * Gets the aggregation window in catch-up mode
+     *
+     * @return Aggregation window in milliseconds
+     */
+    public long getCatchUpWindow() {
+        return catchUpWindow;
+    }
+
+    /**
+     * Sets the aggregation window in catch-up mode
+     *
+     * @param catchUpWindow Aggregation window in milliseconds
+     */
+    public void setCatchUpWindow(long catchUpWindow) {
+        this.catchUpWindow = catchUpWindow;
+    }
+
+    /**
+     * Gets the consumer lag from which load is shed
+     *
+     * @return Lag in records, 0 if the lag is ignored
+     */
+    public long getShedLag() {
+        return shedLag;
+    }
+
+    /**
+     * Sets the consumer lag from which load is shed
+     *
+     * @param shedLag Lag in records, 0 to ignore the lag
+     */
+    public void setShedLag(long shedLag) {
+        this.shedLag = shedLag;
+    }
+
+    /**
+     * Gets the processing delay from which load is shed
+     *
+     * @return Delay in milliseconds, 0 if the delay is ignored
+     */
+    public long getShedDelay() {
+        return shedDelay;
+    }
+
+    /**
+     * Sets the processing delay from which load is shed
+     *
+     * @param shedDelay Delay in milliseconds, 0 to ignore the delay
+     */
+    public void setShedDelay(long shedDelay) {
+        this.shedDelay = shedDelay;
+    }
+}
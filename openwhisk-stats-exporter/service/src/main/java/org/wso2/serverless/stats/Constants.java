@@ -24,6 +24,11 @@ package org.wso2.serverless.stats;
 public class Constants {
 
     public static final String ACTIVATION_DURATION_COUNTER = "activation_duration_counter";
+    public static final String ACTIVATION_DURATION_HISTOGRAM = "activation_duration_histogram";
+    public static final String BUCKET_SUFFIX = "_bucket";
+    public static final String COUNT_SUFFIX = "_count";
+    public static final String SUM_SUFFIX = "_sum";
+    public static final String LE = "le";
     public static final String NAMESPACE = "namespace";
     public static final String SOURCE = "source";
     public static final String USER_ID = "userId";
@@ -32,25 +37,194 @@ public class Constants {
     public static final String KIND = "kind";
 
     public static final String ACTIVATIONS_TOTAL_COUNTER = "activations_total_counter";
+    public static final String ACTIVATION_COLD_STARTS_COUNTER = "activation_cold_starts_counter";
+    public static final String ACTIVATION_WAIT_TIME_HISTOGRAM = "activation_wait_time_histogram";
+    public static final String ACTIVATION_INIT_TIME_HISTOGRAM = "activation_init_time_histogram";
+    public static final String CONCURRENT_ACTIVATIONS_GAUGE = "concurrent_activations_gauge";
+    public static final String RATE_LIMITED_ACTIVATIONS_COUNTER = "rate_limited_activations_counter";
+    public static final String METRIC_EVENTS_VALUE_COUNTER = "metric_events_value_counter";
+    public static final String ACTION_INVOCATION_RATE_GAUGE = "action_invocation_rate_gauge";
+    public static final String ACTION_ERROR_RATIO_GAUGE = "action_error_ratio_gauge";
+    public static final String ACTION_DURATION_EWMA_GAUGE = "action_duration_ewma_gauge";
+    public static final String WINDOW = "window";
+    public static final String STATUS_CLASS = "statusClass";
+    public static final String STATUS_CLASS_SUCCESS = "success";
+    public static final String STATUS_CLASS_APPLICATION_ERROR = "application_error";
+    public static final String STATUS_CLASS_DEVELOPER_ERROR = "developer_error";
+    public static final String STATUS_CLASS_INTERNAL_ERROR = "internal_error";
+    public static final String LIMIT = "limit";
+    public static final String METRIC = "metric";
+    public static final String LISTENER_QUEUE_DEPTH_GAUGE = "listener_queue_depth_gauge";
+    public static final String LISTENER_DROPPED_EVENTS_COUNTER = "listener_dropped_events_counter";
+    public static final String LISTENER = "listener";
+    public static final String EXPORTER_EVENTS_CONSUMED_COUNTER = "exporter_events_consumed_counter";
+    public static final String EXPORTER_DECODE_LATENCY_HISTOGRAM = "exporter_decode_latency_histogram";
+    public static final String EXPORTER_LISTENER_LATENCY_HISTOGRAM = "exporter_listener_latency_histogram";
+    public static final String EXPORTER_PUSH_LATENCY_HISTOGRAM = "exporter_push_latency_histogram";
+    public static final String EXPORTER_PUSH_FAILURES_COUNTER = "exporter_push_failures_counter";
+    public static final String EXPORTER_CONSUMER_LAG_GAUGE = "exporter_consumer_lag_gauge";
+    public static final String EXPORTER_SERIES_GAUGE = "exporter_series_gauge";
+    public static final String EXPORTER_RESTORED_RECORDS_COUNTER = "exporter_restored_records_counter";
+    public static final String EXPORTER_READY_TIME_GAUGE = "exporter_ready_time_gauge";
+    public static final String EXPORTER_CATCH_UP_GAUGE = "exporter_catch_up_gauge";
+    public static final String EXPORTER_MODE_SWITCHES_COUNTER = "exporter_mode_switches_counter";
+    public static final String EXPORTER_CATCH_UP_RATE_GAUGE = "exporter_catch_up_rate_gauge";
+    public static final String EXPORTER_SAMPLING_RATE_GAUGE = "exporter_activation_sampling_rate_gauge";
+    public static final String EXPORTER_SHED_ACTIVATIONS_COUNTER = "exporter_shed_activations_counter";
+    public static final String EXPORTER_ESTIMATED_ACTIVATIONS_COUNTER = "exporter_estimated_activations_counter";
+    public static final String EXPORTER_PROCESSING_DELAY_GAUGE = "exporter_processing_delay_gauge";
+    public static final String TYPE = "type";
+    public static final String TOPIC = "topic";
+    public static final String PARTITION = "partition";
+    public static final String STORE = "store";
+    public static final String MODE = "mode";
+    public static final String MODE_CATCH_UP = "catch_up";
+    public static final String MODE_NORMAL = "normal";
+    public static final String UNKNOWN = "unknown";
+    public static final String MALFORMED = "malformed";
+    public static final String EXPORTER_STATSD_PACKETS_COUNTER = "exporter_statsd_packets_counter";
+    public static final String EXPORTER_STATSD_DROPPED_PACKETS_COUNTER = "exporter_statsd_dropped_packets_counter";
+    public static final String EXPORTER_REMOTE_WRITE_SAMPLES_COUNTER = "exporter_remote_write_samples_counter";
+    public static final String EXPORTER_REMOTE_WRITE_RETRIES_COUNTER = "exporter_remote_write_retries_counter";
+    public static final String EXPORTER_POISON_RECORDS_COUNTER = "exporter_poison_records_counter";
+    public static final String EXPORTER_DEAD_LETTERS_COUNTER = "exporter_dead_letters_counter";
+    public static final String REASON = "reason";
+    public static final String RESULT = "result";
+    public static final String REMOTE_WRITE_SENT = "sent";
+    public static final String REMOTE_WRITE_DROPPED = "dropped";
+    public static final String REMOTE_WRITE_FAILED = "failed";
+    public static final String DEAD_LETTER_WRITTEN = "written";
+    public static final String DEAD_LETTER_DROPPED = "dropped";
+    public static final String DEAD_LETTER_FAILED = "failed";
+    public static final String METRIC_NAME_LABEL = "__name__";
+    public static final String JOB = "job";
+    public static final String INSTANCE = "instance";
+    public static final String CLUSTER = "cluster";
+    public static final String TASK = "task";
+    public static final String FOLDED_ACTIVATIONS_TOTAL_COUNTER = "folded_activations_total_counter";
+    public static final String FOLDED_ACTIONS_GAUGE = "folded_actions_gauge";
+
+    public static final String STATSD_ACTIVATIONS = "activations";
+    public static final String STATSD_DURATION = "duration";
+    public static final String STATSD_WAIT_TIME = "wait_time";
+    public static final String STATSD_COLD_STARTS = "cold_starts";
+    public static final String STATSD_INIT_TIME = "init_time";
+    public static final String STATSD_CONCURRENT_ACTIVATIONS = "concurrent_activations";
+    public static final String STATSD_RATE_LIMITED_ACTIVATIONS = "rate_limited_activations";
+    public static final String STATSD_METRIC_EVENTS_VALUE = "metric_events_value";
 
     public static final String EVENT_TYPE_ACTIVATION = "Activation";
     public static final String EVENT_TYPE_METRIC = "Metric";
 
+    public static final String METRIC_CONCURRENT_ACTIVATIONS = "ConcurrentActivations";
+    public static final String METRIC_CONCURRENT_RATE_LIMIT = "ConcurrentRateLimit";
+    public static final String METRIC_TIMED_RATE_LIMIT = "TimedRateLimit";
+
     public static final String EVENT_TYPE = "eventType";
 
     public static final String JSON_BODY = "body";
     public static final String ACTION_NAME = "name";
     public static final String ACTION_KIND = "kind";
     public static final String DURATION = "duration";
+    public static final String WAIT_TIME = "waitTime";
+    public static final String INIT_TIME = "initTime";
+    public static final String ACTIVATION_ID = "activationId";
+    public static final String METRIC_NAME = "metricName";
+    public static final String METRIC_VALUE = "metricValue";
+    public static final String COUNT = "count";
     public static final String OPENWHISK = "openwhisk";
 
     public static final String DEFAULT_KAFKA_TOPIC = "events";
     public static final String DEFAULT_APPLICATION_ID = "openwhisk-stats-collector";
+    public static final String TOPIC_PATTERN_PREFIX = "regex:";
 
     public static final String CMD_OPTION_NAME_KAFKA = "-kafka";
     public static final String CMD_OPTION_NAME_TOPIC = "-topic";
+    public static final String CMD_OPTION_NAME_SOURCE = "-source";
     public static final String CMD_OPTION_NAME_APP = "-app";
     public static final String CMD_OPTION_NAME_PUSHGATEWAY = "-pushGateway";
+    public static final String CMD_OPTION_NAME_STREAM_THREADS = "-streamThreads";
+    public static final String CMD_OPTION_NAME_AGGREGATION_WINDOW = "-aggregationWindow";
+    public static final String CMD_OPTION_NAME_MAX_ACTIONS = "-maxActionsPerNamespace";
+    public static final String CMD_OPTION_NAME_DURATION_BUCKETS = "-durationBuckets";
+    public static final String CMD_OPTION_NAME_DISPATCH_BUFFER = "-dispatchBuffer";
+    public static final String CMD_OPTION_NAME_OVERFLOW_POLICY = "-overflowPolicy";
+    public static final String CMD_OPTION_NAME_SAMPLE_RATE = "-sampleRate";
+    public static final String CMD_OPTION_NAME_PULL_ONLY = "-pullOnly";
+    public static final String CMD_OPTION_NAME_DURABLE_TOTALS = "-durableTotals";
+    public static final String CMD_OPTION_NAME_STANDBY_REPLICAS = "-standbyReplicas";
+    public static final String CMD_OPTION_NAME_STATE_DIR = "-stateDir";
+    public static final String CMD_OPTION_NAME_CATCH_UP_LAG = "-catchUpLag";
+    public static final String CMD_OPTION_NAME_CATCH_UP_WINDOW = "-catchUpWindow";
+    public static final String CMD_OPTION_NAME_STATSD = "-statsd";
+    public static final String CMD_OPTION_NAME_STATSD_FORMAT = "-statsdFormat";
+    public static final String CMD_OPTION_NAME_STATSD_PACKET_SIZE = "-statsdPacketSize";
+    public static final String CMD_OPTION_NAME_REMOTE_WRITE = "-remoteWrite";
+    public static final String CMD_OPTION_NAME_REMOTE_WRITE_INTERVAL = "-remoteWriteInterval";
+    public static final String CMD_OPTION_NAME_REMOTE_WRITE_SHARDS = "-remoteWriteShards";
+    public static final String CMD_OPTION_NAME_REMOTE_WRITE_BATCH_SIZE = "-remoteWriteBatchSize";
+    public static final String CMD_OPTION_NAME_INSTANCE = "-instance";
+    public static final String CMD_OPTION_NAME_PUSH_INTERVAL = "-pushInterval";
+    public static final String CMD_OPTION_NAME_PUSH_THRESHOLD = "-pushThreshold";
+    public static final String CMD_OPTION_NAME_DEAD_LETTER_TOPIC = "-deadLetterTopic";
+    public static final String CMD_OPTION_NAME_DEAD_LETTER_DIR = "-deadLetterDir";
+    public static final String CMD_OPTION_NAME_FORMAT = "-format";
+    public static final String CMD_OPTION_NAME_SHED_LAG = "-shedLag";
+    public static final String CMD_OPTION_NAME_SHED_DELAY = "-shedDelay";
+
+    public static final long DEFAULT_PUSH_INTERVAL_MILLIS = 5000;
+    public static final long DEFAULT_PUSH_THRESHOLD = 1000;
+    public static final long PUSH_MIN_BACKOFF_MILLIS = 250;
+    public static final long PUSH_MAX_BACKOFF_MILLIS = 30000;
+    public static final int DEFAULT_MAX_ACTIONS_PER_NAMESPACE = 1000;
+    public static final long CARDINALITY_GUARD_EVALUATION_MILLIS = 60 * 1000;
+    public static final long CARDINALITY_GUARD_MIN_ACTIVATIONS = 100;
+    public static final int DEFAULT_SAMPLE_RATE = 10;
+    public static final long LISTENER_DRAIN_TIMEOUT_MILLIS = 5000;
+    public static final int TIMER_SAMPLE_RATE = 64;
+    public static final int METRICS_RENDER_THREADS = 2;
+    public static final String ACTIVATION_TOTALS_STORE = "activation-totals";
+    public static final int DEFAULT_STANDBY_REPLICAS = 1;
+    public static final long CHANGELOG_SEGMENT_MILLIS = 60 * 60 * 1000;
+    public static final String CHANGELOG_MIN_CLEANABLE_DIRTY_RATIO = "0.1";
+    public static final long DEFAULT_CATCH_UP_LAG = 100000;
+    public static final long DEFAULT_CATCH_UP_WINDOW_MILLIS = 5000;
+    public static final long CATCH_UP_CHECK_INTERVAL_MILLIS = 1000;
+    public static final int CATCH_UP_EXIT_RATIO = 10;
+    public static final int CATCH_UP_MAX_POLL_RECORDS = 5000;
+    public static final int CATCH_UP_MAX_PARTITION_FETCH_BYTES = 4 * 1024 * 1024;
+    public static final long SHEDDING_CHECK_INTERVAL_MILLIS = 1000;
+    public static final int SHEDDING_EXIT_RATIO = 4;
+    public static final int MAX_SAMPLING_FACTOR = 64;
+    public static final int DEFAULT_STATSD_PACKET_SIZE = 1432;
+    public static final long STATSD_FLUSH_INTERVAL_MILLIS = 100;
+    public static final long DEFAULT_REMOTE_WRITE_INTERVAL_MILLIS = 5000;
+    public static final int DEFAULT_REMOTE_WRITE_SHARDS = 4;
+    public static final int DEFAULT_REMOTE_WRITE_BATCH_SIZE = 500;
+    public static final int REMOTE_WRITE_SHARD_CAPACITY = 100000;
+    public static final int REMOTE_WRITE_MAX_ATTEMPTS = 5;
+    public static final long REMOTE_WRITE_MIN_BACKOFF_MILLIS = 100;
+    public static final long REMOTE_WRITE_MAX_BACKOFF_MILLIS = 5000;
+    public static final String REMOTE_WRITE_VERSION = "0.1.0";
+    public static final String CONTENT_TYPE_PROTOBUF = "application/x-protobuf";
+    public static final long RATE_BUCKET_MILLIS = 5000;
+    public static final long DURATION_EWMA_WINDOW_MILLIS = 60 * 1000;
+    public static final String METRICS_PATH = "/metrics";
+    public static final String CONTENT_TYPE_TEXT = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String CONTENT_TYPE_OPEN_METRICS = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    public static final int DEAD_LETTER_QUEUE_CAPACITY = 10000;
+    public static final int DEAD_LETTER_BATCH_SIZE = 500;
+    public static final long DEAD_LETTER_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final long DEAD_LETTER_FILE_BYTES = 64 * 1024 * 1024;
+    public static final int DEAD_LETTER_FILES = 5;
+    public static final String DEAD_LETTER_FILE_NAME = "dead-letters.jsonl";
+    public static final String DEAD_LETTER_HEADER_REASON = "dead-letter-reason";
+    public static final String DEAD_LETTER_HEADER_ERROR = "dead-letter-error";
+    public static final String DEAD_LETTER_HEADER_CLUSTER = "dead-letter-cluster";
+    public static final String DEAD_LETTER_HEADER_TOPIC = "dead-letter-topic";
+    public static final String DEAD_LETTER_HEADER_PARTITION = "dead-letter-partition";
+    public static final String DEAD_LETTER_HEADER_OFFSET = "dead-letter-offset";
+    public static final String DEFAULT_DURATION_BUCKETS = "5,10,25,50,100,250,500,1000,2500,5000,10000,30000,60000";
 
     public static final int HTTP_SERVER_PORT = 8080;
 }
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+/**
+ * Decodes every record with the first codec which detects its format, so producers can move between formats
+ * without a coordinated switch of the exporter. Records no codec detects go to the first codec, which reports
+ * them as malformed. Events are encoded with the first codec.
+ */
+public class DetectingEventCodec implements EventCodec {
+
+    private final EventCodec[] codecs;
+
+    /**
+     * DetectingEventCodec trying codecs in order
+     *
+     * @param codecs Codecs, the first one being the fallback
+     */
+    public DetectingEventCodec(EventCodec... codecs) {
+        if (codecs.length == 0) {
+            throw new IllegalArgumentException("At least one codec is required");
+        }
+        this.codecs = codecs.clone();
+    }
+
+    @Override
+    public OpenwhiskEvent decode(byte[] value) {
+        if (value != null) {
+            for (EventCodec codec : codecs) {
+                if (codec.detects(value)) {
+                    return codec.decode(value);
+                }
+            }
+        }
+        return codecs[0].decode(value);
+    }
+
+    @Override
+    public byte[] encode(OpenwhiskEvent event) {
+        return codecs[0].encode(event);
+    }
+
+    @Override
+    public boolean detects(byte[] value) {
+        for (EventCodec codec : codecs) {
+            if (codec.detects(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
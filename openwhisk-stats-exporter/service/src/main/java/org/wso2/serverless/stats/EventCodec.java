@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+/**
+ * Wire format of the event records. A codec decodes record values straight into {@link OpenwhiskEvent}s and
+ * tells whether a value is in its format, so records of several formats can share a topic.
+ * <p>
+ * Codecs may keep reusable buffers and are not required to be thread safe. Use one codec per thread.
+ */
+public interface EventCodec {
+
+    /**
+     * Decodes a record value
+     *
+     * @param value Raw record value
+     * @return Decoded event, or null if the event type is missing or unknown
+     * @throws PoisonRecordException If the value is empty or malformed, or the event lacks a field its metrics
+     *                               are built from
+     */
+    OpenwhiskEvent decode(byte[] value);
+
+    /**
+     * Encodes an event as a record value
+     *
+     * @param event Event
+     * @return Record value
+     */
+    byte[] encode(OpenwhiskEvent event);
+
+    /**
+     * Checks whether a record value is in the format of this codec, looking only at its first bytes
+     *
+     * @param value Non-null raw record value
+     * @return true if the value should be decoded by this codec
+     */
+    boolean detects(byte[] value);
+}
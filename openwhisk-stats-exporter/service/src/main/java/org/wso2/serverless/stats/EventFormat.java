@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+/**
+ * Format of the event records read by the collector
+ */
+public enum EventFormat {
+
+    /**
+     * JSON events as published by OpenWhisk
+     */
+    JSON {
+        @Override
+        public EventCodec newCodec(String cluster) {
+            return new OpenwhiskEventDecoder(cluster);
+        }
+    },
+
+    /**
+     * Compact binary events of {@link BinaryEventCodec}
+     */
+    BINARY {
+        @Override
+        public EventCodec newCodec(String cluster) {
+            return new BinaryEventCodec(cluster);
+        }
+    },
+
+    /**
+     * JSON or binary events, detected per record by the first byte
+     */
+    AUTO {
+        @Override
+        public EventCodec newCodec(String cluster) {
+            return new DetectingEventCodec(new OpenwhiskEventDecoder(cluster), new BinaryEventCodec(cluster));
+        }
+    };
+
+    /**
+     * Creates a codec of this format. Codecs are not thread safe.
+     *
+     * @param cluster Label of the event source set on every decoded event
+     * @return New codec
+     */
+    public abstract EventCodec newCodec(String cluster);
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.wso2.serverless.stats.Constants.TOPIC_PATTERN_PREFIX;
+
+/**
+ * A Kafka cluster and the event topics read from it, with the cluster label which keeps its events apart
+ * in the metrics.
+ * <p>
+ * On the command line a source is written as {@code cluster=bootstrap servers/topics}, e.g.
+ * {@code eu=kafka-eu-0:9092,kafka-eu-1:9092/events}. Topics are comma separated, or a pattern when prefixed with
+ * {@link Constants#TOPIC_PATTERN_PREFIX}, e.g. {@code us=kafka-us:9092/regex:events-.*}. The default source has
+ * an empty cluster label, so its series keep the labels they had before sources were labelled.
+ */
+public final class EventSource {
+
+    private static final Pattern CLUSTER_PATTERN = Pattern.compile("[a-zA-Z0-9._-]*");
+
+    private final String cluster;
+    private final String bootstrapServers;
+    private final List<String> topics;
+    private final Pattern topicPattern;
+
+    /**
+     * EventSource reading a list of topics
+     *
+     * @param cluster          Cluster label, empty for the default source
+     * @param bootstrapServers Comma separated bootstrap servers of the cluster
+     * @param topics           Topics
+     */
+    public EventSource(String cluster, String bootstrapServers, List<String> topics) {
+        this(cluster, bootstrapServers, topics, null);
+        if (topics == null || topics.isEmpty()) {
+            throw new IllegalArgumentException("At least one topic is required");
+        }
+    }
+
+    /**
+     * EventSource reading all topics matching a pattern, including topics created later
+     *
+     * @param cluster          Cluster label, empty for the default source
+     * @param bootstrapServers Comma separated bootstrap servers of the cluster
+     * @param topicPattern     Pattern of the topic names
+     */
+    public EventSource(String cluster, String bootstrapServers, Pattern topicPattern) {
+        this(cluster, bootstrapServers, null, topicPattern);
+        if (topicPattern == null) {
+            throw new IllegalArgumentException("Topic pattern is required");
+        }
+    }
+
+    private EventSource(String cluster, String bootstrapServers, List<String> topics, Pattern topicPattern) {
+        if (cluster == null || !CLUSTER_PATTERN.matcher(cluster).matches()) {
+            throw new IllegalArgumentException(
+                    "Cluster label should only contain letters, digits, '.', '_' and '-', was " + cluster);
+        }
+
+        if (bootstrapServers == null || bootstrapServers.isEmpty()) {
+            throw new IllegalArgumentException("Bootstrap servers are required");
+        }
+
+        this.cluster = cluster;
+        this.bootstrapServers = bootstrapServers;
+        this.topics = topics == null ? null : Collections.unmodifiableList(new ArrayList<>(topics));
+        this.topicPattern = topicPattern;
+    }
+
+    /**
+     * Parses a source written as {@code cluster=bootstrap servers/topics}
+     *
+     * @param source Source
+     * @return Event source
+     */
+    public static EventSource parse(String source) {
+        int equals = source.indexOf('=');
+        int slash = source.indexOf('/', equals + 1);
+        if (equals < 0 || slash < 0 || slash == source.length() - 1) {
+            throw new IllegalArgumentException("Event source should be cluster=bootstrap servers/topics, was "
+                    + source);
+        }
+
+        return of(source.substring(0, equals), source.substring(equals + 1, slash), source.substring(slash + 1));
+    }
+
+    /**
+     * Creates a source from topics written like in {@link #parse(String)}
+     *
+     * @param cluster          Cluster label, empty for the default source
+     * @param bootstrapServers Comma separated bootstrap servers of the cluster
+     * @param topics           Comma separated topics, or a pattern prefixed with
+     *                         {@link Constants#TOPIC_PATTERN_PREFIX}
+     * @return Event source
+     */
+    public static EventSource of(String cluster, String bootstrapServers, String topics) {
+        if (topics.startsWith(TOPIC_PATTERN_PREFIX)) {
+            try {
+                return new EventSource(cluster, bootstrapServers,
+                        Pattern.compile(topics.substring(TOPIC_PATTERN_PREFIX.length())));
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid topic pattern " + topics, e);
+            }
+        }
+
+        List<String> topicList = new ArrayList<>();
+        for (String topic : topics.split(",")) {
+            if (!topic.trim().isEmpty()) {
+                topicList.add(topic.trim());
+            }
+        }
+        return new EventSource(cluster, bootstrapServers, topicList);
+    }
+
+    /**
+     * Gets the cluster label set on the events of the source
+     *
+     * @return Cluster label, empty for the default source
+     */
+    public String getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Gets the bootstrap servers of the cluster
+     *
+     * @return Comma separated bootstrap servers
+     */
+    public String getBootstrapServers() {
+        return bootstrapServers;
+    }
+
+    /**
+     * Gets the topics read from the cluster
+     *
+     * @return Topics, or null if topics are matched by a pattern
+     */
+    public List<String> getTopics() {
+        return topics;
+    }
+
+    /**
+     * Gets the pattern of the topics read from the cluster
+     *
+     * @return Topic pattern, or null if a list of topics is read
+     */
+    public Pattern getTopicPattern() {
+        return topicPattern;
+    }
+
+    @Override
+    public String toString() {
+        return cluster + "=" + bootstrapServers + "/"
+                + (topicPattern != null ? TOPIC_PATTERN_PREFIX + topicPattern.pattern() : String.join(",", topics));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.json.JSONObject;
+import org.wso2.serverless.stats.listeners.OpenwhiskEventListener;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Immutable Metric event, e.g. a rate limit hit or the number of concurrent activations of a namespace
+ */
+public final class MetricEvent extends OpenwhiskEvent {
+
+    private final String metricName;
+    private final long metricValue;
+
+    /**
+     * Constructor of MetricEvent
+     *
+     * @param source      Source which emitted the event
+     * @param namespace   Namespace
+     * @param userId      User ID
+     * @param metricName  Metric name
+     * @param metricValue Metric value
+     */
+    public MetricEvent(String source, String namespace, String userId, String metricName, long metricValue) {
+        this(null, "", source, namespace, userId, metricName, metricValue);
+    }
+
+    /**
+     * Constructor of MetricEvent read from a record
+     */
+    MetricEvent(byte[] data, String cluster, String source, String namespace, String userId, String metricName,
+                long metricValue) {
+        super(data, cluster, source, namespace, userId);
+        this.metricName = metricName;
+        this.metricValue = metricValue;
+    }
+
+    @Override
+    public void dispatchTo(OpenwhiskEventListener listener) {
+        listener.onMetric(this);
+    }
+
+    @Override
+    public String getEventType() {
+        return EVENT_TYPE_METRIC;
+    }
+
+    @Override
+    JSONObject bodyToJson() {
+        JSONObject body = new JSONObject();
+        body.put(METRIC_NAME, metricName);
+        body.put(METRIC_VALUE, metricValue);
+        return body;
+    }
+
+    /**
+     * Gets the metric name, e.g. {@link Constants#METRIC_CONCURRENT_ACTIVATIONS}
+     *
+     * @return Metric name
+     */
+    public String getMetricName() {
+        return metricName;
+    }
+
+    /**
+     * Gets the metric value
+     *
+     * @return Metric value
+     */
+    public long getMetricValue() {
+        return metricValue;
+    }
+}
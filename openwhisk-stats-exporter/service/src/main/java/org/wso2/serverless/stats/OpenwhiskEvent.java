@@ -19,36 +19,124 @@
 package org.wso2.serverless.stats;
 
 import org.json.JSONObject;
+import org.wso2.serverless.stats.listeners.OpenwhiskEventListener;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.wso2.serverless.stats.Constants.*;
 
 /**
- * Handles kafka events into JSON objects
+ * Immutable event read from Kafka. The fields used for metrics are decoded once by an {@link EventCodec}
+ * and available through typed accessors on the subclasses. The full event is parsed into a JSON object only
+ * when {@link #getEvent()} is called.
  */
-public class OpenwhiskEvent {
+public abstract class OpenwhiskEvent {
 
-    private JSONObject event;
+    private final byte[] data;
+    private final String cluster;
+    private final String source;
+    private final String namespace;
+    private final String userId;
+    private volatile JSONObject event;
 
     /**
      * Constructor of OpenwhiskEvent
      *
-     * @param event
+     * @param data      Raw UTF-8 encoded JSON record value, or null if the event was not read from a JSON record
+     * @param cluster   Label of the event source the event was read from, empty for the default source
+     * @param source    Source which emitted the event
+     * @param namespace Namespace
+     * @param userId    User ID
      */
-    public OpenwhiskEvent(JSONObject event) {
-        this.event = event;
+    OpenwhiskEvent(byte[] data, String cluster, String source, String namespace, String userId) {
+        this.data = data;
+        this.cluster = cluster == null ? "" : cluster;
+        this.source = source;
+        this.namespace = namespace;
+        this.userId = userId;
     }
 
     /**
-     * Gets events as a JSON object
+     * Passes the event to the callback of the listener matching its type
+     *
+     * @param listener Listener
+     */
+    public abstract void dispatchTo(OpenwhiskEventListener listener);
+
+    /**
+     * Gets event type
+     *
+     * @return Event type, one of {@link Constants#EVENT_TYPE_ACTIVATION} or {@link Constants#EVENT_TYPE_METRIC}
+     */
+    public abstract String getEventType();
+
+    /**
+     * Builds the body of the JSON representation from the typed fields
+     *
+     * @return JSON body
+     */
+    abstract JSONObject bodyToJson();
+
+    /**
+     * Gets events as a JSON object. The JSON object is parsed lazily from the raw record value,
+     * or built from the typed fields for events which were not read from a record.
+     * The returned object should not be modified.
      *
      * @return JSON object
      */
     public JSONObject getEvent() {
-        return event;
+        JSONObject result = event;
+        if (result == null) {
+            result = data != null ? new JSONObject(new String(data, StandardCharsets.UTF_8)) : toJson();
+            event = result;
+        }
+        return result;
+    }
+
+    private JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        json.put(EVENT_TYPE, getEventType());
+        json.put(SOURCE, source);
+        json.put(NAMESPACE, namespace);
+        json.put(USER_ID, userId);
+        json.put(JSON_BODY, bodyToJson());
+        return json;
     }
 
     /**
-     * Sets event
-     **/
-    public void setEvent(JSONObject event) {
-        this.event = event;
+     * Gets the label of the event source the event was read from, such as the OpenWhisk installation.
+     * It is not part of the record.
+     *
+     * @return Cluster label, empty for the default source
+     */
+    public String getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Gets source which emitted the event
+     *
+     * @return Source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Gets namespace
+     *
+     * @return Namespace
+     */
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Gets user ID
+     *
+     * @return User ID
+     */
+    public String getUserId() {
+        return userId;
     }
 }
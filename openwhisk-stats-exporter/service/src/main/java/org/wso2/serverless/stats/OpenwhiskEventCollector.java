@@ -20,35 +20,93 @@ package org.wso2.serverless.stats;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.TopicConfig;
 import org.apache.kafka.common.serialization.Serdes;
+import org.apache.kafka.streams.Consumed;
 import org.apache.kafka.streams.KafkaStreams;
+import org.apache.kafka.streams.StreamsBuilder;
 import org.apache.kafka.streams.StreamsConfig;
-import org.apache.kafka.streams.kstream.KStreamBuilder;
-import org.json.JSONObject;
+import org.apache.kafka.streams.Topology;
+import org.apache.kafka.streams.kstream.KStream;
+import org.apache.kafka.streams.kstream.ValueTransformer;
+import org.apache.kafka.streams.processor.ProcessorContext;
+import org.apache.kafka.streams.processor.StateRestoreListener;
+import org.apache.kafka.streams.processor.TaskMetadata;
+import org.apache.kafka.streams.processor.ThreadMetadata;
+import org.apache.kafka.streams.state.Stores;
+import org.apache.kafka.streams.state.StreamsMetadata;
+import org.wso2.serverless.stats.deadletter.DeadLetter;
+import org.wso2.serverless.stats.deadletter.DeadLetterQueue;
+import org.wso2.serverless.stats.listeners.ListenerQueueMetrics;
 import org.wso2.serverless.stats.listeners.OpenwhiskEventListener;
+import org.wso2.serverless.stats.listeners.OverflowPolicy;
+import org.wso2.serverless.stats.listeners.RingBufferEventListener;
+import org.wso2.serverless.stats.metrics.DurationBuckets;
+import org.wso2.serverless.stats.metrics.PipelineMetrics;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
 
+import static org.wso2.serverless.stats.Constants.ACTIVATION_TOTALS_STORE;
+import static org.wso2.serverless.stats.Constants.CATCH_UP_MAX_PARTITION_FETCH_BYTES;
+import static org.wso2.serverless.stats.Constants.CATCH_UP_MAX_POLL_RECORDS;
+import static org.wso2.serverless.stats.Constants.CHANGELOG_MIN_CLEANABLE_DIRTY_RATIO;
+import static org.wso2.serverless.stats.Constants.CHANGELOG_SEGMENT_MILLIS;
+import static org.wso2.serverless.stats.Constants.CLUSTER;
 import static org.wso2.serverless.stats.Constants.DEFAULT_APPLICATION_ID;
 import static org.wso2.serverless.stats.Constants.DEFAULT_KAFKA_TOPIC;
+import static org.wso2.serverless.stats.Constants.DEFAULT_SAMPLE_RATE;
+import static org.wso2.serverless.stats.Constants.LISTENER_DRAIN_TIMEOUT_MILLIS;
+import static org.wso2.serverless.stats.Constants.TIMER_SAMPLE_RATE;
 
 /**
- * Collects events from Kafka topic {@link #kafkaTopic}
+ * Collects events from the topics of one or more {@link EventSource}s. Every source is consumed by its own Kafka
+ * Streams instance, as bootstrap servers are per instance, and all sources dispatch to the same listeners.
+ * Events are stamped with the cluster label of their source. The default source, with an empty label, uses the
+ * configured application ID. Labelled sources append their label to it, so each has its own consumer group,
+ * changelog topics and state directory, even when several sources share a cluster.
  */
 public class OpenwhiskEventCollector {
 
     private static final Log log = LogFactory.getLog(OpenwhiskEventCollector.class);
 
     private String applicationId;
-    private String kafkaTopic;
-    private String kafkaServerIp;
+    private final List<Source> sources = new ArrayList<>();
+    private long aggregationWindowMillis;
+    private DurationBuckets durationBuckets;
+    private boolean durableTotals;
+    private CatchUpController catchUpController;
+    private long catchUpWindowMillis;
+    private OverloadController overloadController;
+    private final List<Consumer<Set<String>>> membershipListeners = new CopyOnWriteArrayList<>();
+    private String instance;
+    private DeadLetterQueue deadLetterQueue;
+    private EventFormat eventFormat = EventFormat.AUTO;
 
     private Properties config;
-    private KafkaStreams streams;
-    private Set<OpenwhiskEventListener> listeners = Collections.synchronizedSet(new HashSet<>());
+    private Set<OpenwhiskEventListener> listeners = new CopyOnWriteArraySet<>();
+    private Map<OpenwhiskEventListener, RingBufferEventListener> bufferedListeners = new ConcurrentHashMap<>();
+    private ListenerQueueMetrics listenerQueueMetrics = new ListenerQueueMetrics();
+    private PipelineMetrics pipelineMetrics = new PipelineMetrics(TIMER_SAMPLE_RATE);
+    private int dispatchBufferSize;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    private int sampleRate = DEFAULT_SAMPLE_RATE;
 
     /**
      * OpenwhiskEventCollector subscribes to a Kafka topic
@@ -67,56 +125,530 @@ public class OpenwhiskEventCollector {
      * @param kafkaServerIp IP of Kafka Server
      */
     public OpenwhiskEventCollector(String applicationId, String kafkaTopic, String kafkaServerIp) {
+        this(applicationId, Collections.singletonList(new EventSource("", checkServer(kafkaServerIp),
+                Collections.singletonList(checkTopic(kafkaTopic)))));
+    }
+
+    /**
+     * OpenwhiskEventCollector subscribes to the topics of several sources
+     *
+     * @param applicationId Application ID name
+     * @param eventSources  Event sources with distinct cluster labels
+     */
+    public OpenwhiskEventCollector(String applicationId, List<EventSource> eventSources) {
         if (applicationId == null) {
             throw new IllegalArgumentException("Application ID is required");
         }
 
+        if (eventSources == null || eventSources.isEmpty()) {
+            throw new IllegalArgumentException("At least one event source is required");
+        }
+
+        Set<String> clusters = new HashSet<>();
+        for (EventSource eventSource : eventSources) {
+            if (!clusters.add(eventSource.getCluster())) {
+                throw new IllegalArgumentException("Cluster label of event source " + eventSource + " is not unique");
+            }
+            sources.add(new Source(eventSource));
+        }
+        this.applicationId = applicationId;
+
+        config = new Properties();
+        config.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
+        config.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.ByteArray().getClass());
+        config.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.ByteArray().getClass());
+        pipelineMetrics.setConsumerMetrics(this::getStreamsMetrics);
+    }
+
+    private static String checkTopic(String kafkaTopic) {
         if (kafkaTopic == null) {
             throw new IllegalArgumentException("Kafka topic is required");
         }
+        return kafkaTopic;
+    }
 
+    private static String checkServer(String kafkaServerIp) {
         if (kafkaServerIp == null) {
             throw new IllegalArgumentException("Kafka Server IP is required");
         }
+        return kafkaServerIp;
+    }
 
-        this.applicationId = applicationId;
-        this.kafkaTopic = kafkaTopic;
-        this.kafkaServerIp = kafkaServerIp;
+    /**
+     * Sets the size of the windows in which activations are pre-aggregated before they are sent to listeners.
+     * Aggregation is disabled by default.
+     *
+     * @param aggregationWindowMillis Window size in milliseconds, 0 to disable aggregation
+     */
+    public void setAggregationWindow(long aggregationWindowMillis) {
+        if (aggregationWindowMillis < 0) {
+            throw new IllegalArgumentException("Aggregation window cannot be negative");
+        }
+        this.aggregationWindowMillis = aggregationWindowMillis;
+    }
 
-        config = new Properties();
-        config.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId);
-        config.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, kafkaServerIp);
-        config.put(StreamsConfig.DEFAULT_KEY_SERDE_CLASS_CONFIG, Serdes.String().getClass());
-        config.put(StreamsConfig.DEFAULT_VALUE_SERDE_CLASS_CONFIG, Serdes.String().getClass());
+    /**
+     * Sets the buckets in which aggregated activations keep their duration distribution
+     *
+     * @param durationBuckets Duration buckets, or null to keep only the duration sum
+     */
+    public void setDurationBuckets(DurationBuckets durationBuckets) {
+        this.durationBuckets = durationBuckets;
     }
 
     /**
-     * Starts collecting and processing events
+     * Sets where records which cannot be decoded into a valid event are sent. Such records are always skipped
+     * and counted by reason, so they do not stop the stream threads.
+     *
+     * @param deadLetterQueue Queue of the dead letter writer, or null to only count poison records
+     */
+    public void setDeadLetterQueue(DeadLetterQueue deadLetterQueue) {
+        this.deadLetterQueue = deadLetterQueue;
+    }
+
+    /**
+     * Sets the format of the event records. Should be set before the collector is started.
+     *
+     * @param eventFormat Event format, {@link EventFormat#AUTO} by default
+     */
+    public void setEventFormat(EventFormat eventFormat) {
+        this.eventFormat = eventFormat;
+    }
+
+    /**
+     * Keeps the cumulative activation totals in a local state store backed by a compacted changelog, and replays
+     * them to listeners whenever a task is assigned to this process. Activations are attributed to the task and
+     * its ownership epoch, and listeners are told when a task moved away, see {@link OwnedTasks}. While load is
+     * shed, the totals include the activations estimated by sampling, see {@link OverloadController}. Disabled
+     * by default.
+     *
+     * @param durableTotals Whether totals are kept durably
+     */
+    public void setDurableTotals(boolean durableTotals) {
+        this.durableTotals = durableTotals;
+    }
+
+    /**
+     * Enables catch-up mode: while the consumer lag is at least the given number of records, activations are
+     * aggregated in the catch-up window. The consumer fetches larger batches, which only fill up when there
+     * is a backlog, so they do not add latency in normal mode. Disabled by default.
+     *
+     * @param lagThreshold        Lag in records at which catch-up mode is entered
+     * @param catchUpWindowMillis Aggregation window in milliseconds while catching up
+     */
+    public void setCatchUp(long lagThreshold, long catchUpWindowMillis) {
+        if (catchUpWindowMillis <= 0) {
+            throw new IllegalArgumentException("Catch-up window should be positive");
+        }
+        this.catchUpController = new CatchUpController(pipelineMetrics, lagThreshold);
+        this.catchUpWindowMillis = catchUpWindowMillis;
+        config.put(StreamsConfig.consumerPrefix(ConsumerConfig.MAX_POLL_RECORDS_CONFIG), CATCH_UP_MAX_POLL_RECORDS);
+        config.put(StreamsConfig.consumerPrefix(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG),
+                CATCH_UP_MAX_PARTITION_FETCH_BYTES);
+    }
+
+    /**
+     * Gets the controller switching between catch-up and normal mode
+     *
+     * @return Catch-up controller, or null if catch-up mode is not enabled
+     */
+    public CatchUpController getCatchUpController() {
+        return catchUpController;
+    }
+
+    /**
+     * Enables load shedding: while the consumer lag or the processing delay grows beyond its threshold,
+     * only a deterministic sample of the activations is processed, each standing for the dropped ones.
+     * Metric events are never shed. Disabled by default.
+     *
+     * @param lagThreshold         Lag in records from which load is shed, 0 to ignore the lag
+     * @param delayThresholdMillis Processing delay in milliseconds from which load is shed, 0 to ignore the delay
+     */
+    public void setLoadShedding(long lagThreshold, long delayThresholdMillis) {
+        this.overloadController = new OverloadController(pipelineMetrics, lagThreshold, delayThresholdMillis);
+    }
+
+    /**
+     * Gets the controller sampling activations while the exporter falls behind
+     *
+     * @return Overload controller, or null if load shedding is not enabled
+     */
+    public OverloadController getOverloadController() {
+        return overloadController;
+    }
+
+    /**
+     * Advertises this instance to the other members of the consumer group, so that every member learns which
+     * instances are alive after a rebalance, see {@link #addMembershipListener(Consumer)}
+     *
+     * @param instance Instance name, unique in the consumer group
+     * @param port     Port of the instance's metrics server
+     */
+    public void setInstance(String instance, int port) {
+        if (instance == null || instance.isEmpty()) {
+            throw new IllegalArgumentException("Instance name is required");
+        }
+        this.instance = instance;
+        config.put(StreamsConfig.APPLICATION_SERVER_CONFIG, instance + ":" + port);
+    }
+
+    /**
+     * Adds a listener which receives the names of the instances owning partitions whenever a rebalance
+     * completed. Requires {@link #setInstance(String, int)} on every instance.
+     *
+     * @param listener Listener of the current members
+     */
+    public void addMembershipListener(Consumer<Set<String>> listener) {
+        membershipListeners.add(listener);
+    }
+
+    /**
+     * Sets the number of standby replicas which keep a copy of the state stores, so that a task can move
+     * to another instance without restoring the whole changelog
+     *
+     * @param standbyReplicas Number of standby replicas
+     */
+    public void setStandbyReplicas(int standbyReplicas) {
+        if (standbyReplicas < 0) {
+            throw new IllegalArgumentException("Number of standby replicas cannot be negative");
+        }
+        config.put(StreamsConfig.NUM_STANDBY_REPLICAS_CONFIG, standbyReplicas);
+    }
+
+    /**
+     * Sets the directory of the local state stores. It should outlive the process, so that a restart only
+     * restores the changelog records written since the last checkpoint.
+     *
+     * @param stateDirectory State directory
+     */
+    public void setStateDirectory(String stateDirectory) {
+        if (stateDirectory == null) {
+            throw new IllegalArgumentException("State directory is required");
+        }
+        config.put(StreamsConfig.STATE_DIR_CONFIG, stateDirectory);
+    }
+
+    /**
+     * Makes listeners added afterwards receive events through a ring buffer consumed by a thread per listener,
+     * instead of being called on the stream threads
+     *
+     * @param bufferSize     Number of events buffered per listener, 0 to call listeners on the stream threads
+     * @param overflowPolicy What to do with new events when a buffer is full
+     * @param sampleRate     Every how many events one is kept by {@link OverflowPolicy#SAMPLE}
+     */
+    public void setAsyncDispatch(int bufferSize, OverflowPolicy overflowPolicy, int sampleRate) {
+        if (bufferSize < 0) {
+            throw new IllegalArgumentException("Dispatch buffer size cannot be negative");
+        }
+        this.dispatchBufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Gets the metrics of the decoding and dispatching pipeline, including the consumer lag
+     *
+     * @return Pipeline metrics
+     */
+    public PipelineMetrics getPipelineMetrics() {
+        return pipelineMetrics;
+    }
+
+    /**
+     * Gets the metrics of the Kafka clients used by the streams of all sources. Metrics of a labelled source
+     * get its label as an additional tag, so the partitions of equally named topics stay apart.
+     *
+     * @return Kafka client metrics, empty before streaming is started
+     */
+    private Map<MetricName, ? extends Metric> getStreamsMetrics() {
+        if (sources.size() == 1 && sources.get(0).getCluster().isEmpty()) {
+            KafkaStreams current = sources.get(0).streams;
+            return current == null ? Collections.emptyMap() : current.metrics();
+        }
+
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        for (Source source : sources) {
+            KafkaStreams current = source.streams;
+            if (current == null) {
+                continue;
+            }
+            String cluster = source.getCluster();
+            for (Map.Entry<MetricName, ? extends Metric> entry : current.metrics().entrySet()) {
+                MetricName name = entry.getKey();
+                if (!cluster.isEmpty()) {
+                    Map<String, String> tags = new LinkedHashMap<>(name.tags());
+                    tags.put(CLUSTER, cluster);
+                    name = new MetricName(name.name(), name.group(), name.description(), tags);
+                }
+                metrics.put(name, entry.getValue());
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Gets the collector exposing the queue depth and dropped events of buffered listeners
+     *
+     * @return Listener queue metrics
+     */
+    public ListenerQueueMetrics getListenerQueueMetrics() {
+        return listenerQueueMetrics;
+    }
+
+    /**
+     * Sets the number of stream threads processing the partitions of each source.
+     * Threads beyond the number of partitions stay idle. Listeners are called concurrently
+     * from these threads and need to be thread safe.
+     *
+     * @param streamThreads Number of stream threads
+     */
+    public void setStreamThreads(int streamThreads) {
+        if (streamThreads <= 0) {
+            throw new IllegalArgumentException("Number of stream threads should be positive");
+        }
+        config.put(StreamsConfig.NUM_STREAM_THREADS_CONFIG, streamThreads);
+    }
+
+    /**
+     * Starts collecting and processing events. The streams are closed by {@link #stop()}
      */
     public void start() {
-        KStreamBuilder builder = new KStreamBuilder();
-        builder.stream(kafkaTopic)
-                .foreach((key, val) -> {
-                    if(log.isDebugEnabled()){
-                        log.debug(String.format("Received message %s -> %s", key, val));
-                    }
-                    process(val.toString());
-                });
+        for (Source source : sources) {
+            source.start();
+        }
+        if (catchUpController != null) {
+            catchUpController.start();
+        }
+        if (overloadController != null) {
+            overloadController.start();
+        }
+    }
+
+    /**
+     * Tells the membership listeners which instances own partitions of any source after the rebalance of a
+     * source completed. Membership is only known while the streams of all sources are running.
+     */
+    private void rebalanced() {
+        if (instance == null || membershipListeners.isEmpty()) {
+            return;
+        }
+        Set<String> members = new HashSet<>();
+        for (Source source : sources) {
+            KafkaStreams current = source.streams;
+            if (current == null || current.state() != KafkaStreams.State.RUNNING) {
+                return;
+            }
+            for (StreamsMetadata metadata : current.allMetadata()) {
+                members.add(metadata.host());
+            }
+        }
+        members.add(instance);
+        for (Consumer<Set<String>> listener : membershipListeners) {
+            listener.accept(members);
+        }
+    }
+
+    /**
+     * Builds the topology of the first source
+     *
+     * @return Topology
+     */
+    Topology buildTopology() {
+        return buildTopology(sources.get(0));
+    }
+
+    /**
+     * Builds the topology which decodes the events of a source and sends them to listeners
+     *
+     * @param source Source
+     * @return Topology
+     */
+    private Topology buildTopology(Source source) {
+        StreamsBuilder builder = new StreamsBuilder();
+        Consumed<byte[], byte[]> consumed = Consumed.with(Serdes.ByteArray(), Serdes.ByteArray());
+        EventSource eventSource = source.eventSource;
+        KStream<byte[], OpenwhiskEvent> events = (eventSource.getTopicPattern() != null
+                ? builder.stream(eventSource.getTopicPattern(), consumed)
+                : builder.stream(eventSource.getTopics(), consumed))
+                .transformValues(() -> new DecodeTransformer(source))
+                .filter((key, event) -> event != null);
+
+        String[] stores = new String[0];
+        if (durableTotals) {
+            Map<String, String> changelogConfig = new HashMap<>();
+            changelogConfig.put(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT);
+            // Short segments get compacted soon, so a restore reads little more than one record per series
+            changelogConfig.put(TopicConfig.SEGMENT_MS_CONFIG, String.valueOf(CHANGELOG_SEGMENT_MILLIS));
+            changelogConfig.put(TopicConfig.MIN_CLEANABLE_DIRTY_RATIO_CONFIG, CHANGELOG_MIN_CLEANABLE_DIRTY_RATIO);
+            builder.addStateStore(Stores.keyValueStoreBuilder(
+                    Stores.persistentKeyValueStore(ACTIVATION_TOTALS_STORE), Serdes.Bytes(), Serdes.ByteArray())
+                    .withCachingEnabled()
+                    .withLoggingEnabled(changelogConfig));
+            stores = new String[]{ACTIVATION_TOTALS_STORE};
+        }
+
+        if (catchUpController != null) {
+            events.process(() -> new ActivationAggregator(aggregationWindowMillis, catchUpWindowMillis,
+                    catchUpController::isCatchingUp, durationBuckets, newTotals(source), this::dispatch), stores);
+        } else if (aggregationWindowMillis > 0) {
+            events.process(() -> new ActivationAggregator(aggregationWindowMillis, durationBuckets, newTotals(source),
+                    this::dispatch), stores);
+        } else if (durableTotals) {
+            events.process(() -> new ActivationTotalsProcessor(newTotals(source), this::dispatch), stores);
+        } else {
+            events.foreach((key, event) -> dispatch(event));
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates the durable totals of a task
+     *
+     * @param source Source of the task
+     * @return Totals, or null if totals are not kept durably
+     */
+    private ActivationTotals newTotals(Source source) {
+        return durableTotals
+                ? new ActivationTotals(source.getCluster(), durationBuckets, source.ownedTasks, this::restore)
+                : null;
+    }
+
+    /**
+     * Sends restored totals to every listener
+     *
+     * @param totals Totals of an activation series
+     */
+    private void restore(ActivationEvent totals) {
+        for (OpenwhiskEventListener listener : listeners) {
+            listener.onRestore(totals);
+        }
+    }
+
+    /**
+     * Tells every listener that the ownership of a task ended
+     *
+     * @param task  Task label
+     * @param epoch Epoch of the ownership
+     */
+    private void revoke(String task, int epoch) {
+        log.info(String.format("Task %s moved to another instance, its series of epoch %d are revoked", task, epoch));
+        for (OpenwhiskEventListener listener : listeners) {
+            listener.onRevoke(task, epoch);
+        }
+    }
+
+    /**
+     * Decodes Kafka event values. Poison records are counted, sent to the dead letter queue if there is one and
+     * skipped, so a single bad record does not kill the stream thread. While load is shed, activations which
+     * are not sampled are skipped as well.
+     */
+    private class DecodeTransformer implements ValueTransformer<byte[], OpenwhiskEvent> {
 
-        streams = new KafkaStreams(builder, config);
-        Runtime.getRuntime().addShutdownHook(new Thread(streams::close));
+        private final Source source;
+        private ProcessorContext context;
 
-        streams.start();
+        DecodeTransformer(Source source) {
+            this.source = source;
+        }
+
+        @Override
+        public void init(ProcessorContext context) {
+            this.context = context;
+        }
+
+        /**
+         * Decodes a Kafka event value
+         *
+         * @param val Kafka event value
+         * @return Decoded event, or null if the event type is not known, the record is poison or the activation
+         * is shed
+         */
+        @Override
+        public OpenwhiskEvent transform(byte[] val) {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Received message %s",
+                        val == null ? null : new String(val, StandardCharsets.UTF_8)));
+            }
+
+            long start = pipelineMetrics.startTimer();
+            OpenwhiskEvent event;
+            try {
+                event = source.codec.get().decode(val);
+            } catch (PoisonRecordException e) {
+                poisoned(val, e.getReason(), e.getMessage());
+                return null;
+            } catch (RuntimeException e) {
+                poisoned(val, PoisonReason.MALFORMED, e.toString());
+                return null;
+            }
+            pipelineMetrics.decoded(event == null ? null : event.getEventType(), start);
+            if (event == null) {
+                log.warn("Received event without a known event type");
+            }
+            if (overloadController != null) {
+                if (start != 0) {
+                    overloadController.processed(context.timestamp());
+                }
+                if (event instanceof ActivationEvent) {
+                    return overloadController.sample((ActivationEvent) event);
+                }
+            }
+            return event;
+        }
+
+        private void poisoned(byte[] val, PoisonReason reason, String error) {
+            pipelineMetrics.poisoned(reason);
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Skipping %s record at %s-%d offset %d: %s", reason.label(), context.topic(),
+                        context.partition(), context.offset(), error));
+            }
+            if (deadLetterQueue != null) {
+                deadLetterQueue.offer(new DeadLetter(val, reason, error, source.getCluster(), context.topic(),
+                        context.partition(), context.offset(), context.timestamp()));
+            }
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public OpenwhiskEvent punctuate(long timestamp) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+        }
     }
 
     /**
-     * Process Kafka events and sends to listeners
+     * Sends events to the callback of each listener matching the event type
      *
-     * @param val Kafka event values
+     * @param event Decoded event
      */
-    private void process(String val) {
-        OpenwhiskEvent event = new OpenwhiskEvent(new JSONObject(val));
-        listeners.forEach(listener -> listener.onEvent(event));
+    void dispatch(OpenwhiskEvent event) {
+        if (pipelineMetrics.startTimer() == 0) {
+            for (OpenwhiskEventListener listener : listeners) {
+                event.dispatchTo(listener);
+            }
+            return;
+        }
+
+        for (OpenwhiskEventListener listener : listeners) {
+            long start = System.nanoTime();
+            event.dispatchTo(listener);
+            pipelineMetrics.listened(listener instanceof RingBufferEventListener
+                    ? ((RingBufferEventListener) listener).getName() : nameOf(listener), start);
+        }
+    }
+
+    /**
+     * Gets the name of a listener used for metrics and thread names
+     *
+     * @param listener Listener
+     * @return Simple class name, or the full class name for anonymous listeners
+     */
+    private static String nameOf(OpenwhiskEventListener listener) {
+        String name = listener.getClass().getSimpleName();
+        return name.isEmpty() ? listener.getClass().getName() : name;
     }
 
     /**
@@ -125,7 +657,16 @@ public class OpenwhiskEventCollector {
      * @param listener listener
      */
     public void addListener(OpenwhiskEventListener listener) {
-        listeners.add(listener);
+        if (dispatchBufferSize == 0) {
+            listeners.add(listener);
+            return;
+        }
+
+        RingBufferEventListener buffered = new RingBufferEventListener(nameOf(listener),
+                listener, dispatchBufferSize, overflowPolicy, sampleRate);
+        bufferedListeners.put(listener, buffered);
+        listenerQueueMetrics.add(buffered);
+        listeners.add(buffered);
     }
 
     /**
@@ -134,13 +675,124 @@ public class OpenwhiskEventCollector {
      * @param listener listener
      */
     public void removeListener(OpenwhiskEventListener listener) {
-        listeners.remove(listener);
+        RingBufferEventListener buffered = bufferedListeners.remove(listener);
+        if (buffered == null) {
+            listeners.remove(listener);
+            return;
+        }
+
+        listeners.remove(buffered);
+        listenerQueueMetrics.remove(buffered);
+        buffered.stop(LISTENER_DRAIN_TIMEOUT_MILLIS);
     }
 
     /**
-     * Stops streaming
+     * Stops streaming and lets buffered listeners process the remaining events
      */
     public void stop() {
-        streams.close();
+        for (Source source : sources) {
+            source.streams.close();
+        }
+        if (catchUpController != null) {
+            catchUpController.stop();
+        }
+        if (overloadController != null) {
+            overloadController.stop();
+        }
+        bufferedListeners.values().forEach(buffered -> buffered.stop(LISTENER_DRAIN_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * An event source with its Kafka Streams instance, its codecs and the tasks it owns
+     */
+    private class Source {
+
+        private final EventSource eventSource;
+        private final OwnedTasks ownedTasks = new OwnedTasks(OpenwhiskEventCollector.this::revoke);
+        private final ThreadLocal<EventCodec> codec;
+        private volatile KafkaStreams streams;
+
+        Source(EventSource eventSource) {
+            this.eventSource = eventSource;
+            this.codec = ThreadLocal.withInitial(() -> eventFormat.newCodec(eventSource.getCluster()));
+        }
+
+        String getCluster() {
+            return eventSource.getCluster();
+        }
+
+        /**
+         * Ends the ownerships of the tasks which moved to other instances in the last rebalance
+         *
+         * @param current Running streams of the source
+         */
+        private void retainActiveTasks(KafkaStreams current) {
+            int readEpoch = OwnedTasks.latestEpoch();
+            Set<String> active = new HashSet<>();
+            for (ThreadMetadata thread : current.localThreadsMetadata()) {
+                for (TaskMetadata task : thread.activeTasks()) {
+                    active.add(task.taskId());
+                }
+            }
+            ownedTasks.retain(active, readEpoch);
+        }
+
+        /**
+         * Starts the streams of the source with the shared configuration and the cluster of the source
+         */
+        void start() {
+            Properties sourceConfig = new Properties();
+            sourceConfig.putAll(config);
+            sourceConfig.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, eventSource.getBootstrapServers());
+            if (!getCluster().isEmpty()) {
+                sourceConfig.put(StreamsConfig.APPLICATION_ID_CONFIG, applicationId + "-" + getCluster());
+            }
+
+            KafkaStreams current = new KafkaStreams(buildTopology(this), sourceConfig);
+            current.setStateListener((newState, oldState) -> {
+                if (newState == KafkaStreams.State.REBALANCING) {
+                    pipelineMetrics.rebalancing();
+                } else if (newState == KafkaStreams.State.RUNNING) {
+                    pipelineMetrics.running();
+                    if (durableTotals) {
+                        retainActiveTasks(current);
+                    }
+                    rebalanced();
+                }
+            });
+            current.setGlobalStateRestoreListener(new RestoreListener());
+            streams = current;
+
+            current.start();
+            log.info("Consuming events of source " + eventSource);
+        }
+    }
+
+    /**
+     * Counts restored state store records and logs how long restoring a store partition took
+     */
+    private class RestoreListener implements StateRestoreListener {
+
+        private final Map<TopicPartition, Long> startNanos = new ConcurrentHashMap<>();
+
+        @Override
+        public void onRestoreStart(TopicPartition partition, String store, long startOffset, long endOffset) {
+            startNanos.put(partition, System.nanoTime());
+        }
+
+        @Override
+        public void onBatchRestored(TopicPartition partition, String store, long batchEndOffset,
+                                    long numRestored) {
+            pipelineMetrics.restored(store, numRestored);
+        }
+
+        @Override
+        public void onRestoreEnd(TopicPartition partition, String store, long totalRestored) {
+            Long start = startNanos.remove(partition);
+            if (start != null) {
+                log.info(String.format("Restored %d records of store %s from %s in %d ms", totalRestored, store,
+                        partition, (System.nanoTime() - start) / 1000000));
+            }
+        }
     }
 }
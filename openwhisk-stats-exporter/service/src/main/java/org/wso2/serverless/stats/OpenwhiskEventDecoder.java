@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Decodes raw Kafka record values in the JSON format of OpenWhisk into {@link ActivationEvent}s and
+ * {@link MetricEvent}s.
+ * <p>
+ * The record is scanned once and only the fields used for the metrics are extracted. All other values are
+ * skipped without being materialized. Repeated string values (namespaces, actions, kinds, ...) are served
+ * from a {@link StringCache} keyed by their raw bytes, so the common case does not allocate new Strings.
+ * <p>
+ * Instances keep reusable buffers and are not thread safe. Use one decoder per thread.
+ */
+public class OpenwhiskEventDecoder implements EventCodec {
+
+    private static final byte[] KEY_EVENT_TYPE = bytes(EVENT_TYPE);
+    private static final byte[] KEY_SOURCE = bytes(SOURCE);
+    private static final byte[] KEY_NAMESPACE = bytes(NAMESPACE);
+    private static final byte[] KEY_USER_ID = bytes(USER_ID);
+    private static final byte[] KEY_BODY = bytes(JSON_BODY);
+    private static final byte[] KEY_STATUS_CODE = bytes(STATUS_CODE);
+    private static final byte[] KEY_ACTION_NAME = bytes(ACTION_NAME);
+    private static final byte[] KEY_ACTION_KIND = bytes(ACTION_KIND);
+    private static final byte[] KEY_DURATION = bytes(DURATION);
+    private static final byte[] KEY_WAIT_TIME = bytes(WAIT_TIME);
+    private static final byte[] KEY_INIT_TIME = bytes(INIT_TIME);
+    private static final byte[] KEY_ACTIVATION_ID = bytes(ACTIVATION_ID);
+    private static final byte[] KEY_METRIC_NAME = bytes(METRIC_NAME);
+    private static final byte[] KEY_METRIC_VALUE = bytes(METRIC_VALUE);
+
+    private final String cluster;
+    private final StringCache strings = new StringCache();
+    private char[] chars = new char[64];
+
+    private byte[] data;
+    private int pos;
+    private int end;
+
+    private String eventType;
+    private String source;
+    private String namespace;
+    private String userId;
+    private int statusCode;
+    private String actionName;
+    private String kind;
+    private long duration;
+    private boolean hasDuration;
+    private long waitTime;
+    private long initTime;
+    private int activationIdHash;
+    private boolean hasActivationId;
+    private String metricName;
+    private long metricValue;
+    private boolean hasMetricValue;
+
+    /**
+     * OpenwhiskEventDecoder for records of the default event source
+     */
+    public OpenwhiskEventDecoder() {
+        this("");
+    }
+
+    /**
+     * OpenwhiskEventDecoder for records of an event source
+     *
+     * @param cluster Label of the event source set on every decoded event
+     */
+    public OpenwhiskEventDecoder(String cluster) {
+        this.cluster = cluster;
+    }
+
+    /**
+     * Decodes a record value
+     *
+     * @param value Raw UTF-8 encoded JSON record value
+     * @return Decoded event backed by the record value, or null if the event type is missing or unknown
+     * @throws PoisonRecordException If the value is empty or not a valid JSON object, or the event lacks a field
+     *                               its metrics are built from
+     */
+    @Override
+    public OpenwhiskEvent decode(byte[] value) {
+        if (value == null) {
+            throw new PoisonRecordException(PoisonReason.EMPTY, "Event value is empty");
+        }
+
+        data = value;
+        pos = 0;
+        end = value.length;
+        reset();
+        try {
+            skipWhitespace();
+            readObject(false);
+            skipWhitespace();
+            if (pos != end) {
+                throw error("Unexpected trailing content");
+            }
+        } finally {
+            data = null;
+        }
+
+        if (EVENT_TYPE_ACTIVATION.equals(eventType)) {
+            if (namespace == null || actionName == null || !hasDuration) {
+                throw missing("Activation event without namespace, action name or duration");
+            }
+            return new ActivationEvent(value, cluster, source, namespace, userId, statusCode, actionName, kind,
+                    duration, waitTime, initTime, hasActivationId ? activationIdHash
+                            : ActivationEvent.hashActivationId(value, 0, value.length));
+        }
+        if (EVENT_TYPE_METRIC.equals(eventType)) {
+            if (namespace == null || metricName == null || !hasMetricValue) {
+                throw missing("Metric event without namespace, metric name or value");
+            }
+            return new MetricEvent(value, cluster, source, namespace, userId, metricName, metricValue);
+        }
+        return null;
+    }
+
+    /**
+     * Detects JSON objects by their first non-whitespace byte
+     */
+    @Override
+    public boolean detects(byte[] value) {
+        for (byte b : value) {
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                return b == '{';
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes an event as JSON. Events read from a JSON record keep their original value.
+     */
+    @Override
+    public byte[] encode(OpenwhiskEvent event) {
+        return event.getEvent().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void reset() {
+        eventType = null;
+        source = null;
+        namespace = null;
+        userId = null;
+        statusCode = 0;
+        actionName = null;
+        kind = null;
+        duration = 0;
+        hasDuration = false;
+        waitTime = 0;
+        initTime = 0;
+        hasActivationId = false;
+        metricName = null;
+        metricValue = 0;
+        hasMetricValue = false;
+    }
+
+    /**
+     * Reads an object and keeps the fields of interest
+     *
+     * @param isBody Whether the object is the nested activation body
+     */
+    private void readObject(boolean isBody) {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            pos++;
+            return;
+        }
+
+        while (true) {
+            skipWhitespace();
+            int keyStart = pos + 1;
+            int keyEnd = skipString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (isBody) {
+                readBodyField(keyStart, keyEnd);
+            } else {
+                readEventField(keyStart, keyEnd);
+            }
+
+            skipWhitespace();
+            byte next = next();
+            if (next == '}') {
+                return;
+            }
+            if (next != ',') {
+                throw error("Expected ',' or '}'");
+            }
+        }
+    }
+
+    private void readEventField(int keyStart, int keyEnd) {
+        if (keyEquals(KEY_EVENT_TYPE, keyStart, keyEnd)) {
+            eventType = readString();
+        } else if (keyEquals(KEY_SOURCE, keyStart, keyEnd)) {
+            source = readString();
+        } else if (keyEquals(KEY_NAMESPACE, keyStart, keyEnd)) {
+            namespace = readString();
+        } else if (keyEquals(KEY_USER_ID, keyStart, keyEnd)) {
+            userId = readString();
+        } else if (keyEquals(KEY_BODY, keyStart, keyEnd) && peek() == '{') {
+            readObject(true);
+        } else {
+            skipValue();
+        }
+    }
+
+    private void readBodyField(int keyStart, int keyEnd) {
+        if (keyEquals(KEY_STATUS_CODE, keyStart, keyEnd)) {
+            statusCode = (int) readLong();
+        } else if (keyEquals(KEY_ACTION_NAME, keyStart, keyEnd)) {
+            actionName = readString();
+        } else if (keyEquals(KEY_ACTION_KIND, keyStart, keyEnd)) {
+            kind = readString();
+        } else if (keyEquals(KEY_DURATION, keyStart, keyEnd)) {
+            hasDuration = peek() != 'n';
+            duration = readLong();
+        } else if (keyEquals(KEY_WAIT_TIME, keyStart, keyEnd)) {
+            waitTime = readLong();
+        } else if (keyEquals(KEY_INIT_TIME, keyStart, keyEnd)) {
+            initTime = readLong();
+        } else if (keyEquals(KEY_ACTIVATION_ID, keyStart, keyEnd) && peek() == '"') {
+            int idStart = pos + 1;
+            activationIdHash = ActivationEvent.hashActivationId(data, idStart, skipString());
+            hasActivationId = true;
+        } else if (keyEquals(KEY_METRIC_NAME, keyStart, keyEnd)) {
+            metricName = readString();
+        } else if (keyEquals(KEY_METRIC_VALUE, keyStart, keyEnd)) {
+            hasMetricValue = peek() != 'n';
+            metricValue = readLong();
+        } else {
+            skipValue();
+        }
+    }
+
+    /**
+     * Reads a string value. Returns null for a JSON null.
+     *
+     * @return String value
+     */
+    private String readString() {
+        if (peek() == 'n') {
+            skipLiteral();
+            return null;
+        }
+
+        int start = pos + 1;
+        boolean escaped = false;
+        expect('"');
+        while (true) {
+            byte b = next();
+            if (b == '"') {
+                break;
+            }
+            if (b == '\\') {
+                escaped = true;
+                next();
+            }
+        }
+        int length = pos - 1 - start;
+
+        if (length > StringCache.MAX_LENGTH) {
+            return escaped ? unescape(start, length) : new String(data, start, length, StandardCharsets.UTF_8);
+        }
+
+        int slot = StringCache.slot(data, start, length);
+        String cached = strings.get(slot, data, start, length);
+        if (cached != null) {
+            return cached;
+        }
+        return strings.put(slot, data, start, length, escaped ? unescape(start, length)
+                : new String(data, start, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a string containing escape sequences into the reusable char buffer
+     */
+    private String unescape(int start, int length) {
+        String raw = new String(data, start, length, StandardCharsets.UTF_8);
+        if (chars.length < raw.length()) {
+            chars = new char[raw.length()];
+        }
+
+        int count = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                chars[count++] = c;
+                continue;
+            }
+
+            char escape = raw.charAt(++i);
+            switch (escape) {
+                case 'b':
+                    chars[count++] = '\b';
+                    break;
+                case 'f':
+                    chars[count++] = '\f';
+                    break;
+                case 'n':
+                    chars[count++] = '\n';
+                    break;
+                case 'r':
+                    chars[count++] = '\r';
+                    break;
+                case 't':
+                    chars[count++] = '\t';
+                    break;
+                case 'u':
+                    if (i + 4 >= raw.length()) {
+                        throw error("Invalid unicode escape");
+                    }
+                    int codeUnit = 0;
+                    for (int digit = i + 1; digit <= i + 4; digit++) {
+                        int value = Character.digit(raw.charAt(digit), 16);
+                        if (value < 0) {
+                            throw error("Invalid unicode escape");
+                        }
+                        codeUnit = codeUnit << 4 | value;
+                    }
+                    chars[count++] = (char) codeUnit;
+                    i += 4;
+                    break;
+                default:
+                    chars[count++] = escape;
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    /**
+     * Reads an integral number. The fraction and exponent of decimal numbers are ignored.
+     * Returns 0 for a JSON null.
+     *
+     * @return Number value
+     */
+    private long readLong() {
+        if (peek() == 'n') {
+            skipLiteral();
+            return 0;
+        }
+
+        boolean negative = false;
+        if (peek() == '-') {
+            negative = true;
+            pos++;
+        }
+
+        int start = pos;
+        long value = 0;
+        while (pos < end && data[pos] >= '0' && data[pos] <= '9') {
+            value = value * 10 + (data[pos++] - '0');
+        }
+        if (pos == start) {
+            throw error("Expected a number");
+        }
+
+        // Skip fraction and exponent parts of decimal numbers
+        while (pos < end && isNumberPart(data[pos])) {
+            pos++;
+        }
+        return negative ? -value : value;
+    }
+
+    private void skipValue() {
+        byte b = peek();
+        switch (b) {
+            case '"':
+                skipString();
+                break;
+            case '{':
+                skipContainer('{', '}');
+                break;
+            case '[':
+                skipContainer('[', ']');
+                break;
+            case 't':
+            case 'f':
+            case 'n':
+                skipLiteral();
+                break;
+            default:
+                readLong();
+        }
+    }
+
+    /**
+     * Skips a string
+     *
+     * @return Position of the closing quote
+     */
+    private int skipString() {
+        expect('"');
+        while (true) {
+            byte b = next();
+            if (b == '"') {
+                return pos - 1;
+            }
+            if (b == '\\') {
+                next();
+            }
+        }
+    }
+
+    private void skipContainer(char open, char close) {
+        int depth = 0;
+        do {
+            byte b = peek();
+            if (b == '"') {
+                skipString();
+                continue;
+            }
+            if (b == open) {
+                depth++;
+            } else if (b == close) {
+                depth--;
+            }
+            pos++;
+        } while (depth > 0);
+    }
+
+    private void skipLiteral() {
+        while (pos < end && data[pos] >= 'a' && data[pos] <= 'z') {
+            pos++;
+        }
+    }
+
+    private void skipWhitespace() {
+        while (pos < end && (data[pos] == ' ' || data[pos] == '\n' || data[pos] == '\r' || data[pos] == '\t')) {
+            pos++;
+        }
+    }
+
+    private boolean keyEquals(byte[] key, int keyStart, int keyEnd) {
+        return keyEnd - keyStart == key.length && regionEquals(key, keyStart);
+    }
+
+    private boolean regionEquals(byte[] expected, int start) {
+        for (int i = 0; i < expected.length; i++) {
+            if (data[start + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumberPart(byte b) {
+        return (b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-';
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw error("Expected '" + c + "'");
+        }
+    }
+
+    private byte peek() {
+        if (pos >= end) {
+            throw error("Unexpected end of event");
+        }
+        return data[pos];
+    }
+
+    private byte next() {
+        if (pos >= end) {
+            throw error("Unexpected end of event");
+        }
+        return data[pos++];
+    }
+
+    private PoisonRecordException error(String message) {
+        return new PoisonRecordException(PoisonReason.MALFORMED,
+                String.format("Malformed event at position %d: %s", pos, message));
+    }
+
+    private static PoisonRecordException missing(String message) {
+        return new PoisonRecordException(PoisonReason.MISSING_FIELD, message);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -18,18 +18,50 @@
 
 package org.wso2.serverless.stats;
 
-import io.prometheus.client.Counter;
+import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.exporter.HTTPServer;
-import io.prometheus.client.exporter.PushGateway;
+import io.prometheus.client.hotspot.BufferPoolsExports;
+import io.prometheus.client.hotspot.ClassLoadingExports;
+import io.prometheus.client.hotspot.GarbageCollectorExports;
+import io.prometheus.client.hotspot.MemoryPoolsExports;
+import io.prometheus.client.hotspot.StandardExports;
+import io.prometheus.client.hotspot.ThreadExports;
+import io.prometheus.client.hotspot.VersionInfoExports;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.json.JSONObject;
+import org.kohsuke.args4j.ClassParser;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
+import org.wso2.serverless.stats.deadletter.DeadLetterConfig;
+import org.wso2.serverless.stats.deadletter.DeadLetterQueue;
+import org.wso2.serverless.stats.exposition.ExpositionPushGateway;
+import org.wso2.serverless.stats.exposition.ExpositionRegistry;
+import org.wso2.serverless.stats.exposition.MetricsServer;
 import org.wso2.serverless.stats.listeners.OpenwhiskEventListener;
+import org.wso2.serverless.stats.metrics.ActionRateMetrics;
+import org.wso2.serverless.stats.metrics.ActivationMetricsCollector;
+import org.wso2.serverless.stats.metrics.ActivationMetricsStore;
+import org.wso2.serverless.stats.metrics.CardinalityGuard;
+import org.wso2.serverless.stats.metrics.ColdStartMetrics;
+import org.wso2.serverless.stats.metrics.DurationBuckets;
+import org.wso2.serverless.stats.metrics.NamespaceMetrics;
+import org.wso2.serverless.stats.metrics.PipelineMetrics;
+import org.wso2.serverless.stats.remotewrite.RemoteWriteConfig;
+import org.wso2.serverless.stats.remotewrite.RemoteWriteSink;
+import org.wso2.serverless.stats.statsd.StatsdConfig;
+import org.wso2.serverless.stats.statsd.StatsdSink;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.wso2.serverless.stats.Constants.*;
 
@@ -40,21 +72,22 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
 
     private static final Log log = LogFactory.getLog(OpenwhiskStatsExporter.class);
 
-    private static final Counter durationCounter = Counter.build()
-            .name(ACTIVATION_DURATION_COUNTER)
-            .labelNames(NAMESPACE, SOURCE, USER_ID, ACTION, STATUS_CODE, KIND)
-            .help("Activation Duration Counter")
-            .register();
-
-    private static final Counter activationsCounter = Counter.build()
-            .name(ACTIVATIONS_TOTAL_COUNTER)
-            .labelNames(NAMESPACE, SOURCE, USER_ID, ACTION, STATUS_CODE, KIND)
-            .help("Total Activations Counter")
-            .register();
-
     private Config config;
+    private final ExpositionRegistry registry = new ExpositionRegistry(null);
+    private final ExpositionRegistry scrapeRegistry = new ExpositionRegistry(registry);
     private OpenwhiskEventCollector collector;
-    private PushGateway pushGateway;
+    private ActivationMetricsStore activationMetrics;
+    private ColdStartMetrics coldStartMetrics;
+    private NamespaceMetrics namespaceMetrics;
+    private ActionRateMetrics actionRateMetrics;
+    private PushScheduler pushScheduler;
+    private CardinalityGuard cardinalityGuard;
+    private StatsdSink statsdSink;
+    private RemoteWriteSink remoteWriteSink;
+    private DeadLetterQueue deadLetterQueue;
+    private String instance;
+    private StaleInstances staleInstances;
+    private final AtomicBoolean stopped = new AtomicBoolean();
 
     /**
      * OpenwhiskStatsExporter exports statistics
@@ -65,6 +98,13 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
         if (config == null) {
             throw new IllegalArgumentException("Config is empty");
         }
+
+        if (!config.isPullOnly() && config.getPushGateway() == null && !config.getStatsdConfig().isEnabled()
+                && !config.getRemoteWriteConfig().isEnabled()) {
+            throw new IllegalArgumentException(
+                    "Pushgateway, StatsD or remote write is required unless running in pull-only mode");
+        }
+        config.getDeadLetterConfig().validate();
         this.config = config;
     }
 
@@ -72,20 +112,203 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
      * Sets configurations and starts OpenwhiskEventCollector
      */
     public void start() {
-        pushGateway = new PushGateway(config.getPushGateway());
-        collector = new OpenwhiskEventCollector(config.getApplicationId(),
-                config.getKafkaTopic(), config.getKafkaServer());
+        DurationBuckets durationBuckets = initMetrics(registry);
+        if (pushScheduler != null) {
+            pushScheduler.start();
+        }
+        if (config.getRemoteWriteConfig().isEnabled()) {
+            remoteWriteSink = config.getRemoteWriteConfig().newSink(registry, instance);
+            remoteWriteSink.register(registry);
+            remoteWriteSink.start();
+        }
+        List<EventSource> eventSources = eventSources();
+        collector = new OpenwhiskEventCollector(config.getApplicationId(), eventSources);
+        if (config.getDeadLetterConfig().isEnabled()) {
+            // The dead letter topic is produced to on the cluster of the first event source
+            deadLetterQueue = config.getDeadLetterConfig().newQueue(eventSources.get(0).getBootstrapServers());
+            deadLetterQueue.register(registry);
+            deadLetterQueue.start();
+            collector.setDeadLetterQueue(deadLetterQueue);
+        }
+        config.getCollectorConfig().configure(collector);
+        collector.setInstance(instance, HTTP_SERVER_PORT);
+        collector.setDurationBuckets(durationBuckets);
+        if (pushScheduler != null) {
+            staleInstances = new StaleInstances(instance);
+            collector.addMembershipListener(this::deleteStaleGroups);
+            if (collector.getCatchUpController() != null) {
+                collector.getCatchUpController().addModeListener(pushScheduler::setSuspended);
+            }
+        }
+        collector.getListenerQueueMetrics().register(registry);
+        PipelineMetrics pipelineMetrics = collector.getPipelineMetrics();
+        pipelineMetrics.addSeriesCount(ACTIVATIONS_TOTAL_COUNTER, activationMetrics::size);
+        pipelineMetrics.addSeriesCount(ACTIVATION_COLD_STARTS_COUNTER, coldStartMetrics::size);
+        pipelineMetrics.addSeriesCount(METRIC_EVENTS_VALUE_COUNTER, namespaceMetrics::size);
+        pipelineMetrics.addSeriesCount(ACTION_INVOCATION_RATE_GAUGE, actionRateMetrics::size);
+        pipelineMetrics.register(registry);
+        if (pushScheduler != null) {
+            pushScheduler.setPipelineMetrics(pipelineMetrics);
+        }
+        actionRateMetrics.start();
         collector.addListener(this);
+        if (config.getStatsdConfig().isEnabled()) {
+            statsdSink = config.getStatsdConfig().newSink();
+            statsdSink.register(registry);
+            statsdSink.start();
+            collector.addListener(statsdSink);
+        }
         collector.start();
-        Runtime.getRuntime().addShutdownHook(new Thread(this::stop));
     }
 
     /**
-     * Removes listeners and stops the process
+     * Deletes the Pushgateway groups of the instances which left the consumer group
+     *
+     * @param members Instances owning partitions after a rebalance
+     */
+    private void deleteStaleGroups(Set<String> members) {
+        for (String stale : staleInstances.update(members)) {
+            pushScheduler.deleteGroup(groupingKey(stale));
+        }
+    }
+
+    private static Map<String, String> groupingKey(String instance) {
+        return Collections.singletonMap(INSTANCE, instance);
+    }
+
+    /**
+     * Gets the event sources to consume: the unlabelled default source of the Kafka server option, if given,
+     * followed by the labelled sources
+     *
+     * @return Event sources
+     */
+    private List<EventSource> eventSources() {
+        if (config.getKafkaServer() == null && config.getSources().isEmpty()) {
+            throw new IllegalArgumentException("Kafka server or at least one event source is required");
+        }
+
+        List<EventSource> eventSources = new ArrayList<>();
+        if (config.getKafkaServer() != null) {
+            eventSources.add(EventSource.of("", config.getKafkaServer(), config.getKafkaTopic()));
+        }
+        for (String source : config.getSources()) {
+            eventSources.add(EventSource.parse(source));
+        }
+        return eventSources;
+    }
+
+    /**
+     * Gets the name of this instance from the configuration, the HOSTNAME environment variable, which
+     * Kubernetes sets to the pod name, or the local host name
+     *
+     * @return Instance name
+     */
+    private String resolveInstance() {
+        if (config.getInstance() != null) {
+            return config.getInstance();
+        }
+        String hostname = System.getenv("HOSTNAME");
+        if (hostname != null && !hostname.isEmpty()) {
+            return hostname;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Unable to resolve the host name, set " + CMD_OPTION_NAME_INSTANCE, e);
+        }
+    }
+
+    /**
+     * Creates the metrics and registers them. Kafka and the Pushgateway are not contacted,
+     * so the listener callbacks can be used without starting the exporter. No push scheduler is created
+     * in pull-only mode or without Pushgateway. The scheduler pushes under the grouping key of this instance.
+     *
+     * @param registry Registry to register the metrics in
+     * @return Duration histogram buckets
+     */
+    DurationBuckets initMetrics(CollectorRegistry registry) {
+        DurationBuckets durationBuckets = DurationBuckets.parse(config.getDurationBuckets());
+        instance = resolveInstance();
+        activationMetrics = new ActivationMetricsStore(durationBuckets);
+        new ActivationMetricsCollector(activationMetrics).register(registry);
+        coldStartMetrics = new ColdStartMetrics(durationBuckets).register(registry);
+        namespaceMetrics = new NamespaceMetrics().register(registry);
+        actionRateMetrics = new ActionRateMetrics().register(registry);
+        if (config.getMaxActionsPerNamespace() > 0) {
+            cardinalityGuard = new CardinalityGuard(config.getMaxActionsPerNamespace()).register(registry);
+        }
+        if (!config.isPullOnly() && config.getPushGateway() != null) {
+            pushScheduler = new PushScheduler(new ExpositionPushGateway(config.getPushGateway()), registry,
+                    OPENWHISK, groupingKey(instance), config.getPushInterval(), config.getPushThreshold());
+        }
+        return durationBuckets;
+    }
+
+    /**
+     * Gets the registry holding the exporter's metrics, which is pushed and remote written
+     *
+     * @return Registry
+     */
+    public CollectorRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Gets the registry served on the metrics endpoint. It holds the JVM metrics and includes the exporter's
+     * registry. JVM metrics describe this process only, so they are not pushed.
+     *
+     * @return Registry
+     */
+    public CollectorRegistry getScrapeRegistry() {
+        return scrapeRegistry;
+    }
+
+    /**
+     * Registers the JVM collectors on the scrape registry
+     */
+    void registerJvmMetrics() {
+        new StandardExports().register(scrapeRegistry);
+        new MemoryPoolsExports().register(scrapeRegistry);
+        new BufferPoolsExports().register(scrapeRegistry);
+        new GarbageCollectorExports().register(scrapeRegistry);
+        new ThreadExports().register(scrapeRegistry);
+        new ClassLoadingExports().register(scrapeRegistry);
+        new VersionInfoExports().register(scrapeRegistry);
+    }
+
+    /**
+     * Gets the push scheduler created by {@link #initMetrics(CollectorRegistry)}
+     *
+     * @return Push scheduler, null in pull-only mode or without Pushgateway
+     */
+    PushScheduler getPushScheduler() {
+        return pushScheduler;
+    }
+
+    /**
+     * Stops the process, removes listeners and pushes the remaining updates. Only the first call stops.
      */
     public void stop() {
-        collector.removeListener(this);
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+
         collector.stop();
+        collector.removeListener(this);
+        if (statsdSink != null) {
+            collector.removeListener(statsdSink);
+            statsdSink.stop();
+        }
+        if (pushScheduler != null) {
+            pushScheduler.stop();
+        }
+        if (remoteWriteSink != null) {
+            remoteWriteSink.stop();
+        }
+        if (deadLetterQueue != null) {
+            deadLetterQueue.stop();
+        }
+        actionRateMetrics.stop();
     }
 
     /**
@@ -96,7 +319,7 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
      */
     public static void main(String[] args) throws InterruptedException {
         Config options = new Config();
-        CmdLineParser parser = new CmdLineParser(options);
+        CmdLineParser parser = options.newParser();
         try {
             parser.parseArgument(args);
         } catch (CmdLineException e) {
@@ -105,9 +328,19 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
 
         OpenwhiskStatsExporter statsExporter = new OpenwhiskStatsExporter(options);
         statsExporter.start();
-        HTTPServer server;
+        statsExporter.registerJvmMetrics();
+        Runnable stopServer;
         try {
-            server = new HTTPServer(HTTP_SERVER_PORT);
+            if (options.isPullOnly()) {
+                MetricsServer server = new MetricsServer(HTTP_SERVER_PORT, statsExporter.getScrapeRegistry(),
+                        METRICS_RENDER_THREADS);
+                server.start();
+                stopServer = server::stop;
+            } else {
+                HTTPServer server = new HTTPServer(new InetSocketAddress(HTTP_SERVER_PORT),
+                        statsExporter.getScrapeRegistry());
+                stopServer = server::stop;
+            }
             log.info("Metrics HTTP server started on port " + HTTP_SERVER_PORT);
         } catch (IOException e) {
             log.error("Failed to start Metrics HTTP Server", e);
@@ -119,7 +352,7 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
 
         // If the program was closed forcefully, need to close the server and stats exporter
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            server.stop();
+            stopServer.run();
             statsExporter.stop();
         }));
 
@@ -127,66 +360,140 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
     }
 
     /**
-     * Receives events, processes counters and pushes metrics to Pushgateway
+     * Receives activations and processes counters. Pushing to Pushgateway is done by {@link PushScheduler}.
+     * Called concurrently by the stream threads; the metrics store and the push scheduler do not contend.
      *
-     * @param event
+     * @param event Activation event
      */
     @Override
-    public void onEvent(OpenwhiskEvent event) {
-        String source = event.getEvent().getString(SOURCE);
-        String namespace = event.getEvent().getString(NAMESPACE);
-        String userId = event.getEvent().getString(USER_ID);
+    public void onActivation(ActivationEvent event) {
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Received activation from source: %s, namespace: %s - %s",
+                    event.getSource(), event.getNamespace(), event.getEvent().toString()));
+        }
+        record(event, true);
+    }
 
+    /**
+     * Receives the restored totals of a series and adds them to the counters, so they continue where the
+     * previous process stopped
+     *
+     * @param totals Totals of the series
+     */
+    @Override
+    public void onRestore(ActivationEvent totals) {
+        record(totals, false);
+    }
+
+    /**
+     * Drops the series of a task which moved to another instance, so the totals of the task are only exported
+     * by their new owner
+     *
+     * @param task      Task id
+     * @param taskEpoch Ownership epoch of the task on this instance
+     */
+    @Override
+    public void onRevoke(String task, int taskEpoch) {
+        activationMetrics.retire(taskEpoch);
+        coldStartMetrics.retire(taskEpoch);
+        if (pushScheduler != null) {
+            pushScheduler.markDirty();
+        }
+    }
+
+    /**
+     * Adds an activation, which may be an aggregate, to the metrics. Restored totals happened before the
+     * restart, so they are left out of the windowed rates.
+     *
+     * @param event Activation event
+     * @param live  False for restored totals
+     */
+    private void record(ActivationEvent event, boolean live) {
+        String namespace = event.getNamespace();
+        String action = event.getActionName();
+        if (cardinalityGuard != null) {
+            action = cardinalityGuard.resolve(namespace, action, event.getCount());
+        }
+        activationMetrics.record(namespace, event.getSource(), event.getUserId(), action, event.getStatusCode(),
+                event.getKind(), event.getCluster(), event.getTask(), event.getTaskEpoch(), event.getCount(),
+                event.getDuration(), event.getDurationBucketCounts());
+        coldStartMetrics.record(namespace, action, event.getKind(), event.getCluster(), event.getTask(),
+                event.getTaskEpoch(), event.getCount(), event.getWaitTime(), event.getColdStarts(),
+                event.getInitTime(), event.getWaitTimeBucketCounts(), event.getInitTimeBucketCounts());
+        if (live) {
+            actionRateMetrics.record(namespace, action, event.getKind(), event.getCluster(), event.getStatusCode(),
+                    event.getCount(), event.getDuration());
+        }
+        if (pushScheduler != null) {
+            pushScheduler.markDirty();
+        }
+    }
+
+    /**
+     * Receives namespace metrics
+     *
+     * @param event Metric event
+     */
+    @Override
+    public void onMetric(MetricEvent event) {
         if (log.isDebugEnabled()) {
-            log.debug(String.format("Received event from source: %s, namespace: %s - %s",
-                    source, namespace, event.getEvent().toString()));
-        }
-
-        switch (event.getEvent().getString(EVENT_TYPE)) {
-            case EVENT_TYPE_ACTIVATION:
-                JSONObject body = event.getEvent().getJSONObject(JSON_BODY);
-                String statusCode = String.valueOf(body.getInt(STATUS_CODE));
-                String action = body.getString(ACTION_NAME);
-                String kind = body.getString(ACTION_KIND);
-                long duration = body.getLong(DURATION);
-
-                activationsCounter
-                        .labels(namespace, source, userId, action, statusCode, kind)
-                        .inc();
-                durationCounter
-                        .labels(namespace, source, userId, action, statusCode, kind)
-                        .inc(duration);
-                try {
-                    log.debug("Pushing to Pushgateway");
-                    pushGateway.pushAdd(activationsCounter, OPENWHISK);
-                    pushGateway.pushAdd(durationCounter, OPENWHISK);
-                } catch (IOException e) {
-                    log.error("Error occurred when pushing", e);
-                }
-                break;
-
-            case EVENT_TYPE_METRIC:
-                break;
+            log.debug(String.format("Received metric from source: %s, namespace: %s - %s",
+                    event.getSource(), event.getNamespace(), event.getEvent().toString()));
+        }
+
+        namespaceMetrics.record(event.getNamespace(), event.getMetricName(), event.getMetricValue(),
+                event.getCluster());
+        if (pushScheduler != null) {
+            pushScheduler.markDirty();
         }
     }
 
     /**
      * Maps CLI options passed
      */
-    private static class Config {
+    static class Config {
 
-        @Option(name = CMD_OPTION_NAME_KAFKA, required = true, usage = "IP and port of Kafka server")
+        @Option(name = CMD_OPTION_NAME_KAFKA, usage = "IP and port of Kafka server. Required unless event sources are given")
         private String kafkaServer;
 
-        @Option(name = CMD_OPTION_NAME_TOPIC, usage = "Kafka topic to listen for events")
+        @Option(name = CMD_OPTION_NAME_TOPIC, usage = "Comma separated Kafka topics to listen for events, or a topic pattern prefixed with regex:")
         private String kafkaTopic = DEFAULT_KAFKA_TOPIC;
 
+        @Option(name = CMD_OPTION_NAME_SOURCE, usage = "Additional event source written as cluster=servers/topics. Its events are labelled with the cluster. Can be repeated")
+        private List<String> sources = new ArrayList<>();
+
         @Option(name = CMD_OPTION_NAME_APP, usage = "Kafka streams app ID. Will be used as the consumer group name as well.")
         private String applicationId = DEFAULT_APPLICATION_ID;
 
-        @Option(name = CMD_OPTION_NAME_PUSHGATEWAY, required = true, usage = "IP and port of Prometheus Pushgateway")
+        @Option(name = CMD_OPTION_NAME_PUSHGATEWAY, usage = "IP and port of Prometheus Pushgateway. Required unless running in pull-only mode or sending to StatsD")
         private String pushGateway;
 
+        @Option(name = CMD_OPTION_NAME_MAX_ACTIONS, usage = "Maximum number of actions per namespace with their own series at a time. Other actions are folded into a single series. 0 disables the limit")
+        private int maxActionsPerNamespace = DEFAULT_MAX_ACTIONS_PER_NAMESPACE;
+
+        @Option(name = CMD_OPTION_NAME_DURATION_BUCKETS, usage = "Comma separated upper bounds in milliseconds of the activation duration histogram buckets")
+        private String durationBuckets = DEFAULT_DURATION_BUCKETS;
+
+        @Option(name = CMD_OPTION_NAME_PULL_ONLY, usage = "Serve metrics only on /metrics for scraping, without pushing to Pushgateway")
+        private boolean pullOnly;
+
+        @Option(name = CMD_OPTION_NAME_INSTANCE, usage = "Name of this exporter instance, unique among the replicas. Used as the Pushgateway grouping key and the remote write instance label. Defaults to the host name")
+        private String instance;
+
+        @Option(name = CMD_OPTION_NAME_PUSH_INTERVAL, usage = "Maximum time between two pushes to Pushgateway in milliseconds")
+        private long pushInterval = DEFAULT_PUSH_INTERVAL_MILLIS;
+
+        @Option(name = CMD_OPTION_NAME_PUSH_THRESHOLD, usage = "Number of metric updates which triggers an early push to Pushgateway")
+        private long pushThreshold = DEFAULT_PUSH_THRESHOLD;
+
+        private final CollectorConfig collectorConfig = new CollectorConfig();
+
+        private final StatsdConfig statsdConfig = new StatsdConfig();
+
+        private final RemoteWriteConfig remoteWriteConfig = new RemoteWriteConfig();
+
+        private final DeadLetterConfig deadLetterConfig = new DeadLetterConfig();
+
         /**
          * Gets Kafka Server IP
          *
@@ -223,6 +530,24 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
             this.kafkaTopic = kafkaTopic;
         }
 
+        /**
+         * Gets the additional event sources
+         *
+         * @return Event sources written as cluster=servers/topics
+         */
+        public List<String> getSources() {
+            return sources;
+        }
+
+        /**
+         * Sets the additional event sources
+         *
+         * @param sources Event sources written as cluster=servers/topics
+         */
+        public void setSources(List<String> sources) {
+            this.sources = sources;
+        }
+
         /**
          * Gets Application ID
          *
@@ -258,5 +583,164 @@ public class OpenwhiskStatsExporter implements OpenwhiskEventListener {
         public void setPushGateway(String pushGateway) {
             this.pushGateway = pushGateway;
         }
+
+        /**
+         * Gets maximum number of action series per namespace
+         *
+         * @return Maximum number of action series
+         */
+        public int getMaxActionsPerNamespace() {
+            return maxActionsPerNamespace;
+        }
+
+        /**
+         * Sets maximum number of action series per namespace
+         *
+         * @param maxActionsPerNamespace Maximum number of action series
+         */
+        public void setMaxActionsPerNamespace(int maxActionsPerNamespace) {
+            this.maxActionsPerNamespace = maxActionsPerNamespace;
+        }
+
+        /**
+         * Gets activation duration histogram bucket bounds
+         *
+         * @return Comma separated bucket bounds in milliseconds
+         */
+        public String getDurationBuckets() {
+            return durationBuckets;
+        }
+
+        /**
+         * Sets activation duration histogram bucket bounds
+         *
+         * @param durationBuckets Comma separated bucket bounds in milliseconds
+         */
+        public void setDurationBuckets(String durationBuckets) {
+            this.durationBuckets = durationBuckets;
+        }
+
+        /**
+         * Checks whether metrics are only served for scraping
+         *
+         * @return True if nothing is pushed to Pushgateway
+         */
+        public boolean isPullOnly() {
+            return pullOnly;
+        }
+
+        /**
+         * Sets whether metrics are only served for scraping
+         *
+         * @param pullOnly True to disable pushing to Pushgateway
+         */
+        public void setPullOnly(boolean pullOnly) {
+            this.pullOnly = pullOnly;
+        }
+
+        /**
+         * Gets the name of this exporter instance
+         *
+         * @return Instance name, null to use the host name
+         */
+        public String getInstance() {
+            return instance;
+        }
+
+        /**
+         * Sets the name of this exporter instance
+         *
+         * @param instance Instance name
+         */
+        public void setInstance(String instance) {
+            this.instance = instance;
+        }
+
+        /**
+         * Gets Pushgateway push interval
+         *
+         * @return Push interval in milliseconds
+         */
+        public long getPushInterval() {
+            return pushInterval;
+        }
+
+        /**
+         * Sets Pushgateway push interval
+         *
+         * @param pushInterval Push interval in milliseconds
+         */
+        public void setPushInterval(long pushInterval) {
+            this.pushInterval = pushInterval;
+        }
+
+        /**
+         * Gets number of metric updates which triggers an early push
+         *
+         * @return Push threshold
+         */
+        public long getPushThreshold() {
+            return pushThreshold;
+        }
+
+        /**
+         * Sets number of metric updates which triggers an early push
+         *
+         * @param pushThreshold Push threshold
+         */
+        public void setPushThreshold(long pushThreshold) {
+            this.pushThreshold = pushThreshold;
+        }
+
+        /**
+         * Gets the options of the event collector
+         *
+         * @return Collector options
+         */
+        public CollectorConfig getCollectorConfig() {
+            return collectorConfig;
+        }
+
+        /**
+         * Gets the options of the StatsD sink
+         *
+         * @return StatsD options
+         */
+        public StatsdConfig getStatsdConfig() {
+            return statsdConfig;
+        }
+
+        /**
+         * Gets the options of the remote write sink
+         *
+         * @return Remote write options
+         */
+        public RemoteWriteConfig getRemoteWriteConfig() {
+            return remoteWriteConfig;
+        }
+
+        /**
+         * Gets the options of the dead letter output
+         *
+         * @return Dead letter options
+         */
+        public DeadLetterConfig getDeadLetterConfig() {
+            return deadLetterConfig;
+        }
+
+        /**
+         * Creates the parser of the exporter's options and of the options of the features it configures
+         *
+         * @return Parser
+         */
+        CmdLineParser newParser() {
+            CmdLineParser parser = new CmdLineParser(this);
+            ClassParser featureParser = new ClassParser();
+            featureParser.parse(collectorConfig, parser);
+            featureParser.parse(statsdConfig, parser);
+            featureParser.parse(remoteWriteConfig, parser);
+            featureParser.parse(deadLetterConfig, parser);
+            return parser;
+        }
     }
 }
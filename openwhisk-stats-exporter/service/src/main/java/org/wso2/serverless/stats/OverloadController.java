@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.serverless.stats.metrics.PipelineMetrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import static org.wso2.serverless.stats.Constants.MAX_SAMPLING_FACTOR;
+import static org.wso2.serverless.stats.Constants.SHEDDING_CHECK_INTERVAL_MILLIS;
+import static org.wso2.serverless.stats.Constants.SHEDDING_EXIT_RATIO;
+
+/**
+ * Sheds load when the exporter falls behind, so that the exported metrics stay fresh at the cost of being
+ * approximate.
+ * <p>
+ * Every {@link Constants#SHEDDING_CHECK_INTERVAL_MILLIS} the consumer lag summed over all assigned partitions
+ * and the largest sampled processing delay, the time from producing an event until processing it, are compared
+ * with their thresholds. While either is above its threshold and not shrinking, the sampling factor is doubled,
+ * up to {@link Constants#MAX_SAMPLING_FACTOR}. Once the watched ones are below a quarter of their thresholds it
+ * is halved again until all activations are kept.
+ * <p>
+ * Sampling is deterministic: an activation is kept if the low bits of its mixed activation ID hash are zero, so
+ * every replica and every replay keeps the same activations, and the activations kept at a factor are a subset
+ * of the ones kept at half of it. Kept activations are scaled by the factor, so counts and sums stay unbiased.
+ * Metric events are never shed.
+ * <p>
+ * Sampling happens before the durable totals, so the totals hold the same estimates as the counters and a
+ * restarted exporter continues with them. The activations added by scaling are counted in
+ * {@link Constants#EXPORTER_ESTIMATED_ACTIVATIONS_COUNTER}.
+ */
+public class OverloadController {
+
+    private static final Log log = LogFactory.getLog(OverloadController.class);
+
+    private final PipelineMetrics pipelineMetrics;
+    private final long lagThreshold;
+    private final long delayThresholdMillis;
+    private final LongAccumulator maxDelayMillis = new LongAccumulator(Math::max, 0);
+
+    private volatile int samplingFactor = 1;
+    private long lastLag;
+    private long lastDelayMillis;
+    private ScheduledExecutorService executor;
+
+    /**
+     * OverloadController watching the consumer lag reported by the pipeline metrics and the processing delay
+     *
+     * @param pipelineMetrics      Pipeline metrics to read the lag from and to record the sampling rate in
+     * @param lagThreshold         Lag in records from which load is shed, 0 to ignore the lag
+     * @param delayThresholdMillis Processing delay in milliseconds from which load is shed, 0 to ignore the delay
+     */
+    public OverloadController(PipelineMetrics pipelineMetrics, long lagThreshold, long delayThresholdMillis) {
+        if (pipelineMetrics == null) {
+            throw new IllegalArgumentException("Pipeline metrics are required");
+        }
+
+        if (lagThreshold < 0 || delayThresholdMillis < 0) {
+            throw new IllegalArgumentException("Shedding thresholds should not be negative");
+        }
+
+        if (lagThreshold == 0 && delayThresholdMillis == 0) {
+            throw new IllegalArgumentException("A lag or a delay threshold is required to shed load");
+        }
+
+        this.pipelineMetrics = pipelineMetrics;
+        this.lagThreshold = lagThreshold;
+        this.delayThresholdMillis = delayThresholdMillis;
+    }
+
+    /**
+     * Records the processing delay of a sampled event
+     *
+     * @param timestampMillis Time the event was produced, the record timestamp
+     */
+    public void processed(long timestampMillis) {
+        if (timestampMillis > 0) {
+            maxDelayMillis.accumulate(System.currentTimeMillis() - timestampMillis);
+        }
+    }
+
+    /**
+     * Samples an activation. Cheap enough to be called for every event.
+     *
+     * @param activation Single activation as decoded from a record
+     * @return The activation if all activations are kept, the activation scaled by the sampling factor if it is
+     * sampled, or null if it is shed
+     */
+    public ActivationEvent sample(ActivationEvent activation) {
+        int factor = samplingFactor;
+        if (factor == 1) {
+            return activation;
+        }
+        if ((mix(activation.getActivationIdHash()) & (factor - 1)) != 0) {
+            pipelineMetrics.shed();
+            return null;
+        }
+        pipelineMetrics.estimated(factor - 1);
+        return activation.scaled(factor);
+    }
+
+    /**
+     * Gets the number of activations a kept activation stands for
+     *
+     * @return Sampling factor, a power of two, 1 if no load is shed
+     */
+    public int getSamplingFactor() {
+        return samplingFactor;
+    }
+
+    /**
+     * Starts checking the lag and the delay periodically
+     */
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overload-controller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::check, SHEDDING_CHECK_INTERVAL_MILLIS, SHEDDING_CHECK_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compares the lag and the delay with the thresholds and adjusts the sampling factor
+     */
+    void check() {
+        long lag = lagThreshold > 0 ? pipelineMetrics.totalLag() : 0;
+        long delayMillis = maxDelayMillis.getThenReset();
+        pipelineMetrics.setProcessingDelay(delayMillis);
+
+        boolean laggingBehind = lagThreshold > 0 && lag >= lagThreshold && lag >= lastLag;
+        boolean delayed = delayThresholdMillis > 0 && delayMillis >= delayThresholdMillis
+                && delayMillis >= lastDelayMillis;
+        boolean recovered = (lagThreshold == 0 || lag <= lagThreshold / SHEDDING_EXIT_RATIO)
+                && (delayThresholdMillis == 0 || delayMillis <= delayThresholdMillis / SHEDDING_EXIT_RATIO);
+        lastLag = lag;
+        lastDelayMillis = delayMillis;
+
+        int factor = samplingFactor;
+        if ((laggingBehind || delayed) && factor < MAX_SAMPLING_FACTOR) {
+            setSamplingFactor(factor * 2);
+            log.info(String.format("Consumer lag of %d records and processing delay of %d ms, keeping one in %d "
+                    + "activations", lag, delayMillis, factor * 2));
+        } else if (recovered && factor > 1) {
+            setSamplingFactor(factor / 2);
+            log.info(String.format("Consumer lag down to %d records and processing delay to %d ms, keeping one in "
+                    + "%d activations", lag, delayMillis, factor / 2));
+        }
+    }
+
+    private void setSamplingFactor(int factor) {
+        samplingFactor = factor;
+        pipelineMetrics.setSamplingRate(1.0 / factor);
+    }
+
+    /**
+     * Stops checking and keeps all activations again
+     */
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(SHEDDING_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        setSamplingFactor(1);
+    }
+
+    /**
+     * Spreads the bits of the hash, so that its low bits are uniform even for IDs differing in few bytes
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        return hash ^ (hash >>> 16);
+    }
+}
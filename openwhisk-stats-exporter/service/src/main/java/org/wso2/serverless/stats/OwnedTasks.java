@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Tracks which tasks of an event source this instance owns, so the series of a task's durable totals are only
+ * exported by its current owner.
+ * <p>
+ * Every time a task is assigned to this instance, Kafka Streams creates new processors for it, whose totals
+ * open a new ownership with an epoch unique within the process. The totals are replayed into series labelled
+ * with the task and kept apart by the epoch. When a rebalance only suspends and resumes a task, its processors
+ * are initialized again and keep their ownership, as the counters still hold the totals.
+ * <p>
+ * An ownership ends when the task was not resumed: once the streams run again and the task is not among the
+ * active tasks of this instance, or at once when the task comes back with new processors. Its series are then
+ * revoked, i.e. no longer exported, while the new owner replays the same totals. So every task's totals are
+ * exported by one instance and summing over the instances counts them once. Activations of a revoked epoch
+ * still waiting in a listener buffer only reach the revoked series.
+ */
+class OwnedTasks {
+
+    // Epochs are unique in the process, so series of several sources can be revoked by their epoch alone
+    private static final AtomicInteger EPOCHS = new AtomicInteger();
+
+    private final BiConsumer<String, Integer> revoker;
+    private final Map<String, Integer> owned = new HashMap<>();
+
+    /**
+     * OwnedTasks of an event source
+     *
+     * @param revoker Receives the task and the epoch of every ownership which ended
+     */
+    OwnedTasks(BiConsumer<String, Integer> revoker) {
+        this.revoker = revoker;
+    }
+
+    /**
+     * Gets the epoch of the latest ownership opened in this process
+     *
+     * @return Epoch
+     */
+    static int latestEpoch() {
+        return EPOCHS.get();
+    }
+
+    /**
+     * Opens a new ownership of a task and ends the previous one of the task, if it was still open
+     *
+     * @param task Task
+     * @return Epoch of the new ownership
+     */
+    int opened(String task) {
+        int epoch = EPOCHS.incrementAndGet();
+        Integer previous;
+        synchronized (this) {
+            previous = owned.put(task, epoch);
+        }
+        if (previous != null) {
+            revoker.accept(task, previous);
+        }
+        return epoch;
+    }
+
+    /**
+     * Ends the ownerships of the tasks which are not active any more. Ownerships opened after the active tasks
+     * were read are kept, as a rebalance may have assigned their tasks meanwhile.
+     *
+     * @param active    Tasks which are active on this instance
+     * @param readEpoch {@link #latestEpoch()} before the active tasks were read
+     */
+    void retain(Set<String> active, int readEpoch) {
+        List<Map.Entry<String, Integer>> revoked = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, Integer>> iterator = owned.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Integer> ownership = iterator.next();
+                if (!active.contains(ownership.getKey()) && ownership.getValue() <= readEpoch) {
+                    revoked.add(ownership);
+                    iterator.remove();
+                }
+            }
+        }
+        for (Map.Entry<String, Integer> ownership : revoked) {
+            revoker.accept(ownership.getKey(), ownership.getValue());
+        }
+    }
+}
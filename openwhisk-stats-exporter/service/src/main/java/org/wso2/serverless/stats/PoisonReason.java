@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import java.util.Locale;
+
+/**
+ * Why a record could not be turned into an event
+ */
+public enum PoisonReason {
+
+    /**
+     * The record has no value, e.g. a tombstone
+     */
+    EMPTY,
+
+    /**
+     * The value is not a valid JSON object
+     */
+    MALFORMED,
+
+    /**
+     * The event lacks a field its metrics are built from, e.g. the duration of an activation
+     */
+    MISSING_FIELD;
+
+    /**
+     * Gets the label value of the reason
+     *
+     * @return Lower case name
+     */
+    public String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
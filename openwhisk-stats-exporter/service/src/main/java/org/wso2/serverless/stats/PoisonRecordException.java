@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+/**
+ * Thrown when a record cannot be decoded into an event or the event is not valid
+ */
+public class PoisonRecordException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final PoisonReason reason;
+
+    /**
+     * PoisonRecordException with the reason the record was rejected
+     *
+     * @param reason  Reason
+     * @param message Description of the problem
+     */
+    public PoisonRecordException(PoisonReason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    /**
+     * Gets the reason the record was rejected
+     *
+     * @return Reason
+     */
+    public PoisonReason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.PushGateway;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.serverless.stats.metrics.PipelineMetrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.wso2.serverless.stats.Constants.PUSH_MAX_BACKOFF_MILLIS;
+import static org.wso2.serverless.stats.Constants.PUSH_MIN_BACKOFF_MILLIS;
+
+/**
+ * Pushes a metrics registry to the Pushgateway in the background.
+ * A flush happens every {@link #intervalMillis} or as soon as {@link #dirtyThreshold}
+ * updates were recorded, whichever comes first. Only one flush runs at a time.
+ * <p>
+ * Updates are recorded in a striped counter, so concurrent stream threads do not contend on it.
+ * The threshold is checked by the flusher thread every {@link #checkIntervalMillis}.
+ * <p>
+ * After a failed push, neither the threshold nor the interval triggers a push until an exponential backoff
+ * from {@link Constants#PUSH_MIN_BACKOFF_MILLIS} up to {@link Constants#PUSH_MAX_BACKOFF_MILLIS} elapsed,
+ * so an unavailable Pushgateway is not retried, and logged, every check.
+ * <p>
+ * Periodic pushes can be suspended, e.g. while the exporter catches up with a backlog. Updates keep being
+ * counted and are pushed at once when pushes are resumed.
+ * <p>
+ * Every exporter instance pushes under its own grouping key, as each one only counts the partitions assigned
+ * to it. Prometheus then sums the groups. Groups of instances which left are deleted through the same thread.
+ */
+public class PushScheduler {
+
+    private static final Log log = LogFactory.getLog(PushScheduler.class);
+
+    private static final long MAX_CHECK_INTERVAL_MILLIS = 50;
+
+    private final PushGateway pushGateway;
+    private final CollectorRegistry registry;
+    private final String job;
+    private final Map<String, String> groupingKey;
+    private final long intervalMillis;
+    private final long dirtyThreshold;
+
+    private final long checkIntervalMillis;
+
+    private final LongAdder updates = new LongAdder();
+    private final AtomicBoolean stopped = new AtomicBoolean();
+    private final Object flushLock = new Object();
+
+    private volatile long pushedUpdates;
+    private volatile long lastFlushMillis;
+    private volatile PipelineMetrics pipelineMetrics;
+    private volatile boolean suspended;
+    private int consecutiveFailures;
+    private volatile long retryAtMillis;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * PushScheduler pushes the registry periodically and when enough updates are pending
+     *
+     * @param pushGateway    Pushgateway to push to
+     * @param registry       Registry to push
+     * @param job            Job name used for the push
+     * @param groupingKey    Grouping key of this instance, or null to push to the job's group
+     * @param intervalMillis Maximum time between two pushes in milliseconds
+     * @param dirtyThreshold Number of pending updates which triggers an early push
+     */
+    public PushScheduler(PushGateway pushGateway, CollectorRegistry registry, String job,
+                         Map<String, String> groupingKey, long intervalMillis, long dirtyThreshold) {
+        if (pushGateway == null) {
+            throw new IllegalArgumentException("Pushgateway is required");
+        }
+
+        if (registry == null) {
+            throw new IllegalArgumentException("Registry is required");
+        }
+
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Push interval should be positive");
+        }
+
+        if (dirtyThreshold <= 0) {
+            throw new IllegalArgumentException("Push threshold should be positive");
+        }
+
+        this.pushGateway = pushGateway;
+        this.registry = registry;
+        this.job = job;
+        this.groupingKey = groupingKey;
+        this.intervalMillis = intervalMillis;
+        this.dirtyThreshold = dirtyThreshold;
+        this.checkIntervalMillis = Math.max(1, Math.min(intervalMillis, MAX_CHECK_INTERVAL_MILLIS));
+    }
+
+    /**
+     * Starts the periodic pushes
+     */
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pushgateway-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastFlushMillis = System.currentTimeMillis();
+        executor.scheduleWithFixedDelay(this::check, checkIntervalMillis, checkIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that metrics were updated. This never blocks on the network.
+     */
+    public void markDirty() {
+        updates.increment();
+    }
+
+    /**
+     * Flushes if the threshold is reached or the interval elapsed since the last flush
+     */
+    private void check() {
+        long now = System.currentTimeMillis();
+        if (suspended || now < retryAtMillis) {
+            return;
+        }
+        long pending = updates.sum() - pushedUpdates;
+        if (pending >= dirtyThreshold || now - lastFlushMillis >= intervalMillis) {
+            flush();
+        }
+    }
+
+    /**
+     * Pushes the registry if there were updates since the last push
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            lastFlushMillis = System.currentTimeMillis();
+            // Updates recorded after this point are included in the next push
+            long total = updates.sum();
+            long pending = total - pushedUpdates;
+            if (pending == 0) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Pushing %d updates to Pushgateway", pending));
+                }
+                pushGateway.pushAdd(registry, job, groupingKey);
+                pushedUpdates = total;
+                recordPush(start, true);
+                if (consecutiveFailures > 0) {
+                    log.info(String.format("Pushed to Pushgateway again after %d failed pushes", consecutiveFailures));
+                    consecutiveFailures = 0;
+                    retryAtMillis = 0;
+                }
+            } catch (IOException e) {
+                // Keep the updates pending so that the push is retried once the backoff elapsed
+                recordPush(start, false);
+                consecutiveFailures++;
+                long backoff = backoffMillis(consecutiveFailures);
+                retryAtMillis = System.currentTimeMillis() + backoff;
+                if (consecutiveFailures == 1) {
+                    log.error("Error occurred when pushing, retrying in " + backoff + " ms", e);
+                } else {
+                    log.warn(String.format("Push %d in a row failed, retrying in %d ms: %s", consecutiveFailures,
+                            backoff, e));
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes the group of another instance from the Pushgateway in the background
+     *
+     * @param staleGroupingKey Grouping key of the group
+     */
+    public void deleteGroup(Map<String, String> staleGroupingKey) {
+        if (executor == null || stopped.get()) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                pushGateway.delete(job, staleGroupingKey);
+                log.info("Deleted the Pushgateway group " + staleGroupingKey);
+            } catch (IOException e) {
+                log.error("Error occurred when deleting the Pushgateway group " + staleGroupingKey, e);
+            }
+        });
+    }
+
+    private static long backoffMillis(int failures) {
+        // Bounded so that the shift cannot overflow before the maximum applies
+        int doublings = Math.min(failures - 1, 30);
+        return Math.min(PUSH_MIN_BACKOFF_MILLIS << doublings, PUSH_MAX_BACKOFF_MILLIS);
+    }
+
+    private void recordPush(long start, boolean success) {
+        PipelineMetrics metrics = pipelineMetrics;
+        if (metrics != null) {
+            metrics.pushed(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * Suspends or resumes the periodic pushes. Resuming pushes the pending updates right away.
+     *
+     * @param suspended True to suspend pushes
+     */
+    public void setSuspended(boolean suspended) {
+        this.suspended = suspended;
+        if (!suspended && executor != null && !stopped.get()) {
+            executor.execute(this::flush);
+        }
+    }
+
+    /**
+     * Sets the metrics to record push latency and failures in
+     *
+     * @param pipelineMetrics Pipeline metrics
+     */
+    public void setPipelineMetrics(PipelineMetrics pipelineMetrics) {
+        this.pipelineMetrics = pipelineMetrics;
+    }
+
+    /**
+     * Stops the periodic pushes and pushes the pending updates one last time
+     */
+    public void stop() {
+        if (!stopped.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+}
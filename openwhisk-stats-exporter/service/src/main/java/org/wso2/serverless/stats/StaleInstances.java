@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the exporter instances which left the consumer group, so their Pushgateway groups can be deleted.
+ * <p>
+ * Every instance remembers the members it has seen. After a rebalance the members which are gone are stale,
+ * and the instance with the smallest name among the remaining members is responsible for them, so one delete
+ * is sent per stale group. The others keep the stale instances, in case they become responsible before the
+ * deletion happened. Deleting a group twice does no harm.
+ */
+class StaleInstances {
+
+    private final String instance;
+    private final Set<String> known = new HashSet<>();
+
+    /**
+     * StaleInstances of the group this instance is a member of
+     *
+     * @param instance Name of this instance
+     */
+    StaleInstances(String instance) {
+        if (instance == null) {
+            throw new IllegalArgumentException("Instance name is required");
+        }
+        this.instance = instance;
+        known.add(instance);
+    }
+
+    /**
+     * Updates the members after a rebalance
+     *
+     * @param members Instances which are members now
+     * @return Instances which left and whose groups this instance should delete
+     */
+    synchronized List<String> update(Set<String> members) {
+        known.addAll(members);
+        if (!instance.equals(Collections.min(members))) {
+            return Collections.emptyList();
+        }
+
+        List<String> stale = new ArrayList<>();
+        for (String member : known) {
+            if (!members.contains(member)) {
+                stale.add(member);
+            }
+        }
+        known.removeAll(stale);
+        return stale;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import java.util.Arrays;
+
+/**
+ * Small direct-mapped cache of the Strings of UTF-8 byte ranges, used by the codecs so that repeated label values
+ * do not allocate new Strings. Strings are interned when they enter the cache, so equal labels decoded by
+ * different threads share one instance. Not thread safe.
+ */
+final class StringCache {
+
+    /**
+     * Longest byte range worth caching
+     */
+    static final int MAX_LENGTH = 256;
+
+    private static final int SIZE = 1024;
+
+    private final byte[][] keys = new byte[SIZE][];
+    private final String[] values = new String[SIZE];
+
+    /**
+     * Gets the slot of a byte range
+     *
+     * @param data   Bytes
+     * @param start  Start of the range
+     * @param length Length of the range
+     * @return Slot
+     */
+    static int slot(byte[] data, int start, int length) {
+        int hash = 1;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        return (hash ^ (hash >>> 16)) & (SIZE - 1);
+    }
+
+    /**
+     * Gets the cached String of a byte range
+     *
+     * @param slot   Slot of the range
+     * @param data   Bytes
+     * @param start  Start of the range
+     * @param length Length of the range
+     * @return Cached String, or null if the slot holds another range
+     */
+    String get(int slot, byte[] data, int start, int length) {
+        byte[] key = keys[slot];
+        if (key == null || key.length != length) {
+            return null;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[start + i] != key[i]) {
+                return null;
+            }
+        }
+        return values[slot];
+    }
+
+    /**
+     * Caches the String of a byte range, replacing what the slot held
+     *
+     * @param slot   Slot of the range
+     * @param data   Bytes
+     * @param start  Start of the range
+     * @param length Length of the range
+     * @param value  String of the range
+     * @return Interned String
+     */
+    String put(int slot, byte[] data, int start, int length, String value) {
+        String interned = value.intern();
+        keys[slot] = Arrays.copyOfRange(data, start, start + length);
+        values[slot] = interned;
+        return interned;
+    }
+}
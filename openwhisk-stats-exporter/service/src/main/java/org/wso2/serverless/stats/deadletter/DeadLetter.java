@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.deadletter;
+
+import org.wso2.serverless.stats.PoisonReason;
+
+/**
+ * A record which could not be turned into an event, with where it was read from and why it was rejected
+ */
+public final class DeadLetter {
+
+    private final byte[] value;
+    private final PoisonReason reason;
+    private final String error;
+    private final String cluster;
+    private final String topic;
+    private final int partition;
+    private final long offset;
+    private final long timestamp;
+
+    /**
+     * DeadLetter of a rejected record
+     *
+     * @param value     Raw record value, may be null
+     * @param reason    Reason the record was rejected
+     * @param error     Description of the problem
+     * @param cluster   Cluster label of the event source
+     * @param topic     Topic the record was read from
+     * @param partition Partition of the record
+     * @param offset    Offset of the record
+     * @param timestamp Record timestamp in milliseconds since the epoch
+     */
+    public DeadLetter(byte[] value, PoisonReason reason, String error, String cluster, String topic, int partition,
+                      long offset, long timestamp) {
+        this.value = value;
+        this.reason = reason;
+        this.error = error == null ? "" : error;
+        this.cluster = cluster;
+        this.topic = topic;
+        this.partition = partition;
+        this.offset = offset;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Gets the raw record value
+     *
+     * @return Record value, or null for a record without value
+     */
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * Gets the reason the record was rejected
+     *
+     * @return Reason
+     */
+    public PoisonReason getReason() {
+        return reason;
+    }
+
+    /**
+     * Gets the description of the problem
+     *
+     * @return Error message
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Gets the cluster label of the event source
+     *
+     * @return Cluster label, empty for the default source
+     */
+    public String getCluster() {
+        return cluster;
+    }
+
+    /**
+     * Gets the topic the record was read from
+     *
+     * @return Topic
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Gets the partition of the record
+     *
+     * @return Partition
+     */
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * Gets the offset of the record
+     *
+     * @return Offset
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Gets the record timestamp
+     *
+     * @return Timestamp in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
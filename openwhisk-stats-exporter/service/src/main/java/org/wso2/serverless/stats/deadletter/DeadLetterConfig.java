@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.deadletter;
+
+import org.kohsuke.args4j.Option;
+
+import java.io.IOException;
+
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_DEAD_LETTER_DIR;
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_DEAD_LETTER_TOPIC;
+
+/**
+ * Maps the CLI options of the dead letter output
+ */
+public class DeadLetterConfig {
+
+    @Option(name = CMD_OPTION_NAME_DEAD_LETTER_TOPIC, usage = "Kafka topic on the cluster of the first event source to send records to which cannot be decoded into a valid event")
+    private String topic;
+
+    @Option(name = CMD_OPTION_NAME_DEAD_LETTER_DIR, usage = "Directory of rolling files to write records to which cannot be decoded into a valid event, instead of a topic")
+    private String dir;
+
+    /**
+     * Checks that dead letters go to at most one output
+     *
+     * @throws IllegalArgumentException If both a topic and a directory are set
+     */
+    public void validate() {
+        if (topic != null && dir != null) {
+            throw new IllegalArgumentException("Dead letters go either to a topic or to a directory");
+        }
+    }
+
+    /**
+     * Checks whether dead letters are written
+     *
+     * @return True if a topic or a directory is set
+     */
+    public boolean isEnabled() {
+        return topic != null || dir != null;
+    }
+
+    /**
+     * Creates the dead letter queue writing to the topic or the directory
+     *
+     * @param bootstrapServers Kafka cluster to produce to the topic on
+     * @return Dead letter queue
+     */
+    public DeadLetterQueue newQueue(String bootstrapServers) {
+        return new DeadLetterQueue(newWriter(bootstrapServers));
+    }
+
+    private DeadLetterWriter newWriter(String bootstrapServers) {
+        if (topic != null) {
+            return new KafkaDeadLetterWriter(bootstrapServers, topic);
+        }
+        try {
+            return new FileDeadLetterWriter(dir);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot create dead letter directory " + dir, e);
+        }
+    }
+
+    /**
+     * Gets the dead letter topic
+     *
+     * @return Dead letter topic, or null if none is set
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * Sets the dead letter topic
+     *
+     * @param topic Dead letter topic
+     */
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * Gets the dead letter directory
+     *
+     * @return Dead letter directory, or null if none is set
+     */
+    public String getDir() {
+        return dir;
+    }
+
+    /**
+     * Sets the dead letter directory
+     *
+     * @param dir Dead letter directory
+     */
+    public void setDir(String dir) {
+        this.dir = dir;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.deadletter;
+
+import io.prometheus.client.Collector;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Hands dead letters from the stream threads to a {@link DeadLetterWriter} on a thread of its own.
+ * <p>
+ * Stream threads only offer a dead letter to a bounded queue, so a slow or failing writer never holds up the
+ * healthy events. The writer thread takes up to
+ * {@link org.wso2.serverless.stats.Constants#DEAD_LETTER_BATCH_SIZE} dead letters at a time, waiting at most
+ * {@link org.wso2.serverless.stats.Constants#DEAD_LETTER_FLUSH_INTERVAL_MILLIS} for the first one. Dead letters
+ * are dropped and counted when the queue is full, and counted as failed when their batch cannot be written.
+ */
+public class DeadLetterQueue extends Collector {
+
+    private static final Log log = LogFactory.getLog(DeadLetterQueue.class);
+
+    private static final List<String> LABEL_NAMES = Collections.singletonList(RESULT);
+
+    private final DeadLetterWriter writer;
+    private final BlockingQueue<DeadLetter> queue;
+    private final List<DeadLetter> batch = new ArrayList<>(DEAD_LETTER_BATCH_SIZE);
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Thread thread;
+
+    private volatile boolean running;
+
+    /**
+     * DeadLetterQueue with the default capacity
+     *
+     * @param writer Writer of the batches
+     */
+    public DeadLetterQueue(DeadLetterWriter writer) {
+        this(writer, DEAD_LETTER_QUEUE_CAPACITY);
+    }
+
+    /**
+     * DeadLetterQueue holding up to capacity dead letters
+     *
+     * @param writer   Writer of the batches
+     * @param capacity Maximum number of queued dead letters
+     */
+    public DeadLetterQueue(DeadLetterWriter writer, int capacity) {
+        if (writer == null) {
+            throw new IllegalArgumentException("Dead letter writer is required");
+        }
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Dead letter queue capacity should be positive");
+        }
+
+        this.writer = writer;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "dead-letter-writer");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts writing queued dead letters
+     */
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Queues a dead letter without waiting. Called concurrently by the stream threads.
+     *
+     * @param deadLetter Dead letter
+     */
+    public void offer(DeadLetter deadLetter) {
+        if (!queue.offer(deadLetter)) {
+            dropped.increment();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running || !queue.isEmpty()) {
+                DeadLetter first = queue.poll(DEAD_LETTER_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, DEAD_LETTER_BATCH_SIZE - 1);
+                write();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void write() {
+        try {
+            writer.write(batch);
+            written.add(batch.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn(String.format("Failed to write %d dead letters", batch.size()), e);
+            failed.add(batch.size());
+        }
+    }
+
+    /**
+     * Writes the queued dead letters and closes the writer. The writer is closed by the writer thread once it
+     * finished, so a write still running when the drain timeout elapsed is not cut off.
+     */
+    public void stop() {
+        running = false;
+        try {
+            thread.join(LISTENER_DRAIN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread.interrupt();
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> samples = new ArrayList<>(3);
+        samples.add(resultSample(DEAD_LETTER_WRITTEN, written));
+        samples.add(resultSample(DEAD_LETTER_DROPPED, dropped));
+        samples.add(resultSample(DEAD_LETTER_FAILED, failed));
+        return Collections.singletonList(new MetricFamilySamples(EXPORTER_DEAD_LETTERS_COUNTER, Type.COUNTER,
+                "Poison records written as dead letters, dropped on a full queue or failed to write", samples));
+    }
+
+    private static MetricFamilySamples.Sample resultSample(String result, LongAdder value) {
+        return new MetricFamilySamples.Sample(EXPORTER_DEAD_LETTERS_COUNTER, LABEL_NAMES,
+                Collections.singletonList(result), value.sum());
+    }
+}
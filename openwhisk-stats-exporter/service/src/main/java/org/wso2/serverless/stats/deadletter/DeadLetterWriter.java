@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.deadletter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Writes batches of dead letters to where they are kept for inspection and replay
+ */
+public interface DeadLetterWriter {
+
+    /**
+     * Writes a batch of dead letters. Called by a single thread.
+     *
+     * @param deadLetters Dead letters
+     * @throws IOException If the batch could not be written
+     */
+    void write(List<DeadLetter> deadLetters) throws IOException;
+
+    /**
+     * Releases the resources of the writer
+     */
+    void close();
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.deadletter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.List;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Appends dead letters as JSON lines to a file which is rolled over by size.
+ * <p>
+ * The record value is Base64 encoded, as it is not necessarily valid UTF-8. Once the file reaches the maximum
+ * size it is renamed with the suffix .1, older files move up by one and the oldest is deleted, so the directory
+ * holds at most the configured number of files.
+ */
+public class FileDeadLetterWriter implements DeadLetterWriter {
+
+    private static final Log log = LogFactory.getLog(FileDeadLetterWriter.class);
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private OutputStream output;
+    private long size;
+
+    /**
+     * FileDeadLetterWriter with the default file size and count
+     *
+     * @param directory Directory of the files
+     * @throws IOException If the directory cannot be created
+     */
+    public FileDeadLetterWriter(String directory) throws IOException {
+        this(directory, DEAD_LETTER_FILE_BYTES, DEAD_LETTER_FILES);
+    }
+
+    /**
+     * FileDeadLetterWriter keeping up to maxFiles files of about maxFileBytes
+     *
+     * @param directory    Directory of the files
+     * @param maxFileBytes Size in bytes from which the file is rolled over
+     * @param maxFiles     Number of files kept, including the current one
+     * @throws IOException If the directory cannot be created
+     */
+    public FileDeadLetterWriter(String directory, long maxFileBytes, int maxFiles) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("Dead letter directory is required");
+        }
+
+        if (maxFileBytes <= 0) {
+            throw new IllegalArgumentException("Dead letter file size should be positive");
+        }
+
+        if (maxFiles <= 0) {
+            throw new IllegalArgumentException("Number of dead letter files should be positive");
+        }
+
+        Path path = Paths.get(directory);
+        Files.createDirectories(path);
+        this.file = path.resolve(DEAD_LETTER_FILE_NAME);
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    /**
+     * Appends the batch and flushes the file
+     */
+    @Override
+    public void write(List<DeadLetter> deadLetters) throws IOException {
+        for (DeadLetter deadLetter : deadLetters) {
+            if (output == null) {
+                open();
+            }
+            byte[] line = line(deadLetter);
+            output.write(line);
+            size += line.length;
+            if (size >= maxFileBytes) {
+                roll();
+            }
+        }
+        if (output != null) {
+            output.flush();
+        }
+    }
+
+    private static byte[] line(DeadLetter deadLetter) {
+        JSONObject json = new JSONObject();
+        json.put("timestamp", deadLetter.getTimestamp());
+        json.put(REASON, deadLetter.getReason().label());
+        json.put("error", deadLetter.getError());
+        json.put(CLUSTER, deadLetter.getCluster());
+        json.put(TOPIC, deadLetter.getTopic());
+        json.put(PARTITION, deadLetter.getPartition());
+        json.put("offset", deadLetter.getOffset());
+        byte[] value = deadLetter.getValue();
+        json.put("value", value == null ? JSONObject.NULL : Base64.getEncoder().encodeToString(value));
+        return (json.toString() + '\n').getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void open() throws IOException {
+        output = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND));
+        size = Files.size(file);
+    }
+
+    /**
+     * Closes the current file and shifts the file names by one, deleting the oldest file
+     */
+    private void roll() throws IOException {
+        output.close();
+        output = null;
+        Files.deleteIfExists(rolled(maxFiles - 1));
+        for (int index = maxFiles - 2; index >= 1; index--) {
+            Path older = rolled(index);
+            if (Files.exists(older)) {
+                Files.move(older, rolled(index + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 1) {
+            Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(DEAD_LETTER_FILE_NAME + "." + index);
+    }
+
+    @Override
+    public void close() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            log.warn("Error occurred when closing the dead letter file " + file, e);
+        }
+        output = null;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.deadletter;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Produces dead letters to a Kafka topic. The record value is kept as it was read, and where it was read from
+ * and why it was rejected are added as headers, so the records can be inspected and replayed to the events topic.
+ */
+public class KafkaDeadLetterWriter implements DeadLetterWriter {
+
+    private final Producer<byte[], byte[]> producer;
+    private final String topic;
+    private final List<Future<RecordMetadata>> sends = new ArrayList<>(DEAD_LETTER_BATCH_SIZE);
+
+    /**
+     * KafkaDeadLetterWriter producing to a topic
+     *
+     * @param bootstrapServers Comma separated bootstrap servers of the cluster of the topic
+     * @param topic            Dead letter topic
+     */
+    public KafkaDeadLetterWriter(String bootstrapServers, String topic) {
+        if (bootstrapServers == null) {
+            throw new IllegalArgumentException("Bootstrap servers are required");
+        }
+
+        if (topic == null) {
+            throw new IllegalArgumentException("Dead letter topic is required");
+        }
+
+        Properties config = new Properties();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
+        config.put(ProducerConfig.LINGER_MS_CONFIG, 0);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class);
+        this.producer = new KafkaProducer<>(config);
+        this.topic = topic;
+    }
+
+    /**
+     * Sends the batch and waits until all of its records are acknowledged
+     */
+    @Override
+    public void write(List<DeadLetter> deadLetters) throws IOException {
+        sends.clear();
+        for (DeadLetter deadLetter : deadLetters) {
+            Long timestamp = deadLetter.getTimestamp() < 0 ? null : deadLetter.getTimestamp();
+            ProducerRecord<byte[], byte[]> record = new ProducerRecord<>(topic, null, timestamp, null,
+                    deadLetter.getValue());
+            Headers headers = record.headers();
+            headers.add(DEAD_LETTER_HEADER_REASON, bytes(deadLetter.getReason().label()));
+            headers.add(DEAD_LETTER_HEADER_ERROR, bytes(deadLetter.getError()));
+            headers.add(DEAD_LETTER_HEADER_CLUSTER, bytes(deadLetter.getCluster()));
+            headers.add(DEAD_LETTER_HEADER_TOPIC, bytes(deadLetter.getTopic()));
+            headers.add(DEAD_LETTER_HEADER_PARTITION, bytes(String.valueOf(deadLetter.getPartition())));
+            headers.add(DEAD_LETTER_HEADER_OFFSET, bytes(String.valueOf(deadLetter.getOffset())));
+            sends.add(producer.send(record));
+        }
+        producer.flush();
+
+        try {
+            for (Future<RecordMetadata> send : sends) {
+                send.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to produce dead letters to " + topic, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while producing dead letters to " + topic, e);
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        producer.close();
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.exposition;
+
+/**
+ * Collector which keeps its samples pre-rendered and encodes them without building
+ * {@link io.prometheus.client.Collector.MetricFamilySamples}. Used by {@link ExpositionRegistry}.
+ */
+public interface CachedExposition {
+
+    /**
+     * Encodes the metric families of the collector, including their HELP and TYPE lines
+     *
+     * @param buffer      Buffer to append to
+     * @param openMetrics Whether the OpenMetrics format is used
+     */
+    void encode(ExpositionBuffer buffer, boolean openMetrics);
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.exposition;
+
+import io.prometheus.client.Collector;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Growable direct byte buffer the exposition is encoded into. The buffer is kept and reused for the next
+ * scrape, so steady state scrapes do not allocate. Only ASCII and UTF-8 encoding needed by the exposition
+ * formats is supported.
+ */
+public class ExpositionBuffer {
+
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+    private static final double PLAIN_NOTATION_LIMIT = 1e7;
+    private static final byte[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+
+    private ByteBuffer buffer;
+
+    /**
+     * ExpositionBuffer with an initial capacity
+     *
+     * @param capacity Initial capacity in bytes
+     */
+    public ExpositionBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity should be positive");
+        }
+        buffer = ByteBuffer.allocateDirect(capacity);
+    }
+
+    /**
+     * Discards the content, keeping the capacity
+     */
+    public void clear() {
+        buffer.clear();
+    }
+
+    /**
+     * Gets the number of written bytes
+     *
+     * @return Size in bytes
+     */
+    public int size() {
+        return buffer.position();
+    }
+
+    /**
+     * Gets a read-only view of the written bytes. The view is invalidated by the next write.
+     *
+     * @return Buffer positioned at the first byte, limited to the written bytes
+     */
+    public ByteBuffer view() {
+        ByteBuffer view = buffer.duplicate();
+        view.flip();
+        return view;
+    }
+
+    /**
+     * Makes room for at least the given number of bytes, doubling the capacity if needed
+     *
+     * @param bytes Number of bytes about to be written
+     */
+    public void ensureRemaining(int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return;
+        }
+        long capacity = buffer.capacity();
+        while (capacity - buffer.position() < bytes) {
+            capacity <<= 1;
+        }
+        if (capacity > MAX_CAPACITY) {
+            if (MAX_CAPACITY - buffer.position() < bytes) {
+                throw new IllegalStateException("Exposition exceeds " + MAX_CAPACITY + " bytes");
+            }
+            capacity = MAX_CAPACITY;
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    /**
+     * Appends a single byte
+     *
+     * @param b Byte
+     */
+    public void put(byte b) {
+        ensureRemaining(1);
+        buffer.put(b);
+    }
+
+    /**
+     * Appends bytes
+     *
+     * @param bytes  Source array
+     * @param offset Offset in the array
+     * @param length Number of bytes
+     */
+    public void put(byte[] bytes, int offset, int length) {
+        ensureRemaining(length);
+        buffer.put(bytes, offset, length);
+    }
+
+    /**
+     * Appends all bytes of an array
+     *
+     * @param bytes Source array
+     */
+    public void put(byte[] bytes) {
+        put(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Copies the written bytes
+     *
+     * @return Written bytes
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.position()];
+        view().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Appends a string known to be ASCII, like metric and label names
+     *
+     * @param value ASCII string
+     */
+    public void putAscii(String value) {
+        int length = value.length();
+        ensureRemaining(length);
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    /**
+     * Appends a string as UTF-8, escaping backslashes, new lines and optionally double quotes
+     *
+     * @param value        String
+     * @param escapeQuotes Whether double quotes are escaped
+     */
+    public void putEscaped(String value, boolean escapeQuotes) {
+        int length = value.length();
+        // Worst case of a 3 byte UTF-8 sequence per char
+        ensureRemaining(length * 3);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c == '\\') {
+                    ensureRemaining(2 + (length - i) * 3);
+                    buffer.put((byte) '\\').put((byte) '\\');
+                } else if (c == '\n') {
+                    ensureRemaining(2 + (length - i) * 3);
+                    buffer.put((byte) '\\').put((byte) 'n');
+                } else if (c == '"' && escapeQuotes) {
+                    ensureRemaining(2 + (length - i) * 3);
+                    buffer.put((byte) '\\').put((byte) '"');
+                } else {
+                    buffer.put((byte) c);
+                }
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Appends a decimal number
+     *
+     * @param value Number
+     */
+    public void putLong(long value) {
+        ensureRemaining(20);
+        if (value == Long.MIN_VALUE) {
+            putAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, DIGITS[(int) (value % 10)]);
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    /**
+     * Appends a sample value. Integral values, which are the vast majority of counters and buckets,
+     * are written without going through a String. The output is the same as {@link Double#toString(double)},
+     * which only uses plain notation below 10^7.
+     *
+     * @param value Sample value
+     */
+    public void putDouble(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < PLAIN_NOTATION_LIMIT) {
+            putLong((long) value);
+            ensureRemaining(2);
+            buffer.put((byte) '.').put((byte) '0');
+        } else {
+            putAscii(Collector.doubleToGoString(value));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.exposition;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.Collector.Type;
+import io.prometheus.client.CollectorRegistry;
+
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * Encodes metric families straight into an {@link ExpositionBuffer}, without building intermediate Strings.
+ * <p>
+ * In OpenMetrics a counter's samples must end with _total. The exporter's counters keep their existing names,
+ * so counters that do not follow that rule are declared as unknown instead of being renamed. This keeps the
+ * series identical in both formats.
+ */
+public final class ExpositionEncoder {
+
+    private static final String TOTAL_SUFFIX = "_total";
+
+    private ExpositionEncoder() {
+    }
+
+    /**
+     * Encodes all metric families of a registry. An {@link ExpositionRegistry} encodes its cached collectors
+     * directly.
+     *
+     * @param registry Registry
+     * @param format   Exposition format
+     * @param buffer   Buffer to append to
+     */
+    public static void encode(CollectorRegistry registry, ExpositionFormat format, ExpositionBuffer buffer) {
+        if (registry instanceof ExpositionRegistry) {
+            ((ExpositionRegistry) registry).encode(format, buffer);
+        } else {
+            encode(registry.metricFamilySamples(), format, buffer);
+        }
+    }
+
+    /**
+     * Encodes metric families
+     *
+     * @param families Metric families, e.g. from a registry
+     * @param format   Exposition format
+     * @param buffer   Buffer to append to
+     */
+    public static void encode(Enumeration<MetricFamilySamples> families, ExpositionFormat format,
+                              ExpositionBuffer buffer) {
+        boolean openMetrics = format == ExpositionFormat.OPEN_METRICS;
+        while (families.hasMoreElements()) {
+            encode(families.nextElement(), openMetrics, buffer);
+        }
+        if (openMetrics) {
+            buffer.putAscii("# EOF\n");
+        }
+    }
+
+    /**
+     * Encodes a single metric family
+     *
+     * @param family      Metric family
+     * @param openMetrics Whether the OpenMetrics format is used
+     * @param buffer      Buffer to append to
+     */
+    public static void encode(MetricFamilySamples family, boolean openMetrics, ExpositionBuffer buffer) {
+        encodeHeader(family.name, typeName(family, openMetrics), family.help, openMetrics, buffer);
+        for (MetricFamilySamples.Sample sample : family.samples) {
+            encode(sample, buffer);
+        }
+    }
+
+    /**
+     * Encodes the HELP and TYPE lines of a family whose samples are encoded separately. The samples are
+     * expected to be named after the family, so in OpenMetrics counters are declared unknown.
+     *
+     * @param name        Family name
+     * @param type        Family type
+     * @param help        Help text
+     * @param openMetrics Whether the OpenMetrics format is used
+     * @param buffer      Buffer to append to
+     */
+    public static void encodeHeader(String name, Type type, String help, boolean openMetrics,
+                                    ExpositionBuffer buffer) {
+        encodeHeader(name, typeName(type, false, openMetrics), help, openMetrics, buffer);
+    }
+
+    private static void encodeHeader(String name, String typeName, String help, boolean openMetrics,
+                                     ExpositionBuffer buffer) {
+        buffer.putAscii("# HELP ");
+        buffer.putAscii(name);
+        buffer.put((byte) ' ');
+        buffer.putEscaped(help, openMetrics);
+        buffer.put((byte) '\n');
+
+        buffer.putAscii("# TYPE ");
+        buffer.putAscii(name);
+        buffer.put((byte) ' ');
+        buffer.putAscii(typeName);
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Encodes a single sample line
+     *
+     * @param sample Sample
+     * @param buffer Buffer to append to
+     */
+    public static void encode(MetricFamilySamples.Sample sample, ExpositionBuffer buffer) {
+        buffer.putAscii(sample.name);
+        List<String> labelNames = sample.labelNames;
+        if (!labelNames.isEmpty()) {
+            List<String> labelValues = sample.labelValues;
+            buffer.put((byte) '{');
+            for (int i = 0; i < labelNames.size(); i++) {
+                if (i > 0) {
+                    buffer.put((byte) ',');
+                }
+                buffer.putAscii(labelNames.get(i));
+                buffer.put((byte) '=');
+                buffer.put((byte) '"');
+                buffer.putEscaped(labelValues.get(i), true);
+                buffer.put((byte) '"');
+            }
+            buffer.put((byte) '}');
+        }
+        buffer.put((byte) ' ');
+        buffer.putDouble(sample.value);
+        buffer.put((byte) '\n');
+    }
+
+    private static String typeName(MetricFamilySamples family, boolean openMetrics) {
+        return typeName(family.type, openMetrics && isOpenMetricsCounter(family), openMetrics);
+    }
+
+    private static String typeName(Type type, boolean openMetricsCounter, boolean openMetrics) {
+        switch (type) {
+            case COUNTER:
+                if (openMetrics && !openMetricsCounter) {
+                    return "unknown";
+                }
+                return "counter";
+            case GAUGE:
+                return "gauge";
+            case SUMMARY:
+                return "summary";
+            case HISTOGRAM:
+                return "histogram";
+            default:
+                return openMetrics ? "unknown" : "untyped";
+        }
+    }
+
+    private static boolean isOpenMetricsCounter(MetricFamilySamples family) {
+        if (family.type != Type.COUNTER) {
+            return false;
+        }
+        String total = family.name + TOTAL_SUFFIX;
+        for (MetricFamilySamples.Sample sample : family.samples) {
+            if (!sample.name.equals(total)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.exposition;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Exposition formats served on /metrics
+ */
+public enum ExpositionFormat {
+
+    /**
+     * Prometheus text format 0.0.4
+     */
+    TEXT(CONTENT_TYPE_TEXT),
+
+    /**
+     * OpenMetrics 1.0 text format
+     */
+    OPEN_METRICS(CONTENT_TYPE_OPEN_METRICS);
+
+    private static final String OPEN_METRICS_MEDIA_TYPE = "application/openmetrics-text";
+
+    private final String contentType;
+
+    ExpositionFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Gets the Content-Type header value of the format
+     *
+     * @return Content type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Chooses the format from the Accept header of a scrape
+     *
+     * @param accept Accept header, or null
+     * @return OpenMetrics if it is accepted, the Prometheus text format otherwise
+     */
+    public static ExpositionFormat negotiate(String accept) {
+        if (accept != null && accept.contains(OPEN_METRICS_MEDIA_TYPE)) {
+            return OPEN_METRICS;
+        }
+        return TEXT;
+    }
+}
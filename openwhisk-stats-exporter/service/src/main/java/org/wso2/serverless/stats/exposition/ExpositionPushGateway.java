@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.exposition;
+
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.exporter.PushGateway;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Pushgateway client which sends an {@link ExpositionRegistry} from its cached exposition instead of
+ * rebuilding every sample. Other registries are pushed as usual.
+ */
+public class ExpositionPushGateway extends PushGateway {
+
+    private static final int TIMEOUT_MILLIS = 10 * 1000;
+    private static final int COPY_CHUNK_BYTES = 64 * 1024;
+
+    private final ExpositionBuffer body = new ExpositionBuffer(1 << 20);
+    private final byte[] chunk = new byte[COPY_CHUNK_BYTES];
+
+    /**
+     * ExpositionPushGateway for a Pushgateway address
+     *
+     * @param address Host and port of the Pushgateway
+     */
+    public ExpositionPushGateway(String address) {
+        super(address);
+    }
+
+    @Override
+    public void pushAdd(CollectorRegistry registry, String job) throws IOException {
+        pushAdd(registry, job, (Map<String, String>) null);
+    }
+
+    @Override
+    public void pushAdd(CollectorRegistry registry, String job, Map<String, String> groupingKey)
+            throws IOException {
+        if (!(registry instanceof ExpositionRegistry)) {
+            super.pushAdd(registry, job, groupingKey);
+            return;
+        }
+
+        StringBuilder url = new StringBuilder(gatewayBaseURL).append(URLEncoder.encode(job, "UTF-8"));
+        if (groupingKey != null) {
+            for (Map.Entry<String, String> entry : groupingKey.entrySet()) {
+                url.append('/').append(entry.getKey()).append('/')
+                        .append(URLEncoder.encode(entry.getValue(), "UTF-8"));
+            }
+        }
+        post(new URL(url.toString()), (ExpositionRegistry) registry);
+    }
+
+    /**
+     * Posts the exposition. Pushes of a scheduler are sequential, the lock only guards against other callers.
+     */
+    private synchronized void post(URL url, ExpositionRegistry registry) throws IOException {
+        body.clear();
+        registry.encode(ExpositionFormat.TEXT, body);
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Content-Type", CONTENT_TYPE_TEXT);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        connection.setFixedLengthStreamingMode(body.size());
+        try (OutputStream output = connection.getOutputStream()) {
+            ByteBuffer view = body.view();
+            while (view.hasRemaining()) {
+                int length = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, length);
+                output.write(chunk, 0, length);
+            }
+        }
+
+        int response = connection.getResponseCode();
+        if (response / 100 != 2) {
+            connection.disconnect();
+            throw new IOException("Response code from " + url + " was " + response);
+        }
+        try (InputStream input = connection.getInputStream()) {
+            while (input.read(chunk) >= 0) {
+                // Drain the response so that the connection is kept alive for the next push
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.exposition;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.CollectorRegistry;
+
+import java.util.Enumeration;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry which encodes {@link CachedExposition} collectors from their pre-rendered lines.
+ * <p>
+ * Other collectors are encoded from their samples as usual. The families of an optional parent registry are
+ * appended after the own collectors, e.g. a scrape registry holding the JVM metrics appends the registry which
+ * is also pushed. For everything
+ * else, like the simpleclient HTTP server, this is a normal registry whose samples include the parent's.
+ */
+public class ExpositionRegistry extends CollectorRegistry {
+
+    private final CollectorRegistry parent;
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+    /**
+     * ExpositionRegistry including the families of a parent registry
+     *
+     * @param parent Parent registry, or null
+     */
+    public ExpositionRegistry(CollectorRegistry parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public void register(Collector collector) {
+        super.register(collector);
+        collectors.add(collector);
+    }
+
+    @Override
+    public void unregister(Collector collector) {
+        super.unregister(collector);
+        collectors.remove(collector);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        collectors.clear();
+    }
+
+    @Override
+    public Enumeration<MetricFamilySamples> metricFamilySamples() {
+        if (parent == null) {
+            return super.metricFamilySamples();
+        }
+        return concat(super.metricFamilySamples(), parent.metricFamilySamples());
+    }
+
+    @Override
+    public Enumeration<MetricFamilySamples> filteredMetricFamilySamples(Set<String> includedNames) {
+        if (parent == null) {
+            return super.filteredMetricFamilySamples(includedNames);
+        }
+        return concat(super.filteredMetricFamilySamples(includedNames),
+                parent.filteredMetricFamilySamples(includedNames));
+    }
+
+    /**
+     * Encodes all metric families
+     *
+     * @param format Exposition format
+     * @param buffer Buffer to append to
+     */
+    public void encode(ExpositionFormat format, ExpositionBuffer buffer) {
+        boolean openMetrics = format == ExpositionFormat.OPEN_METRICS;
+        encodeFamilies(openMetrics, buffer);
+        if (openMetrics) {
+            buffer.putAscii("# EOF\n");
+        }
+    }
+
+    private void encodeFamilies(boolean openMetrics, ExpositionBuffer buffer) {
+        for (Collector collector : collectors) {
+            if (collector instanceof CachedExposition) {
+                ((CachedExposition) collector).encode(buffer, openMetrics);
+            } else {
+                for (MetricFamilySamples family : collector.collect()) {
+                    ExpositionEncoder.encode(family, openMetrics, buffer);
+                }
+            }
+        }
+
+        if (parent instanceof ExpositionRegistry) {
+            ((ExpositionRegistry) parent).encodeFamilies(openMetrics, buffer);
+        } else if (parent != null) {
+            Enumeration<MetricFamilySamples> families = parent.metricFamilySamples();
+            while (families.hasMoreElements()) {
+                ExpositionEncoder.encode(families.nextElement(), openMetrics, buffer);
+            }
+        }
+    }
+
+    private static <T> Enumeration<T> concat(Enumeration<T> first, Enumeration<T> second) {
+        return new Enumeration<T>() {
+            @Override
+            public boolean hasMoreElements() {
+                return first.hasMoreElements() || second.hasMoreElements();
+            }
+
+            @Override
+            public T nextElement() {
+                if (first.hasMoreElements()) {
+                    return first.nextElement();
+                }
+                if (second.hasMoreElements()) {
+                    return second.nextElement();
+                }
+                throw new NoSuchElementException();
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.exposition;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip compresses an {@link ExpositionBuffer} into another one. The deflater and the transfer arrays are
+ * kept between scrapes. Instances are not thread safe.
+ */
+public class GzipEncoder {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[CHUNK_SIZE];
+    private final byte[] output = new byte[CHUNK_SIZE];
+
+    /**
+     * Compresses the content of a buffer
+     *
+     * @param source      Uncompressed content
+     * @param destination Buffer to write the gzip stream to
+     */
+    public void encode(ExpositionBuffer source, ExpositionBuffer destination) {
+        deflater.reset();
+        crc.reset();
+        destination.put(HEADER, 0, HEADER.length);
+
+        ByteBuffer content = source.view();
+        while (content.hasRemaining()) {
+            int length = Math.min(input.length, content.remaining());
+            content.get(input, 0, length);
+            crc.update(input, 0, length);
+            deflater.setInput(input, 0, length);
+            while (!deflater.needsInput()) {
+                drain(destination);
+            }
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(destination);
+        }
+        putIntLittleEndian(destination, (int) crc.getValue());
+        putIntLittleEndian(destination, source.size());
+    }
+
+    private void drain(ExpositionBuffer destination) {
+        int length = deflater.deflate(output, 0, output.length);
+        destination.put(output, 0, length);
+    }
+
+    private static void putIntLittleEndian(ExpositionBuffer destination, int value) {
+        destination.put((byte) value);
+        destination.put((byte) (value >>> 8));
+        destination.put((byte) (value >>> 16));
+        destination.put((byte) (value >>> 24));
+    }
+
+    /**
+     * Releases the native deflater
+     */
+    public void close() {
+        deflater.end();
+    }
+}
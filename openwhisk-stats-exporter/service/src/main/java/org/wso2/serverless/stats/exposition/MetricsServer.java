@@ -0,0 +1,430 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.exposition;
+
+import io.prometheus.client.CollectorRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Serves the registry on /metrics for pull-only deployments.
+ * <p>
+ * A single selector thread accepts connections, reads requests and writes responses without blocking.
+ * Scrapes are rendered by a small pool of render threads straight into reused direct buffers, optionally
+ * gzip compressed, and handed back to the selector thread for writing. Rendering only reads the metric stores,
+ * so concurrent scrapes never block the stream threads. Connections are kept alive between scrapes.
+ */
+public class MetricsServer {
+
+    private static final Log log = LogFactory.getLog(MetricsServer.class);
+
+    private static final int MAX_REQUEST_BYTES = 8192;
+    private static final int INITIAL_BUFFER_BYTES = 1 << 20;
+    private static final int HEADER_BYTES = 512;
+    private static final byte[] END_OF_HEADERS = {'\r', '\n', '\r', '\n'};
+
+    private final CollectorRegistry registry;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final ExecutorService renderers;
+    private final BlockingQueue<Slot> slots;
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    /**
+     * MetricsServer bound to all interfaces
+     *
+     * @param port          Port to listen on, 0 for an ephemeral port
+     * @param registry      Registry to serve
+     * @param renderThreads Number of scrapes rendered concurrently
+     * @throws IOException If the port cannot be bound
+     */
+    public MetricsServer(int port, CollectorRegistry registry, int renderThreads) throws IOException {
+        if (registry == null) {
+            throw new IllegalArgumentException("Registry is required");
+        }
+
+        if (renderThreads <= 0) {
+            throw new IllegalArgumentException("Number of render threads should be positive");
+        }
+
+        this.registry = registry;
+        // Two slots per render thread, so a scrape can be rendered while the previous one is written
+        this.slots = new ArrayBlockingQueue<>(renderThreads * 2);
+        for (int i = 0; i < renderThreads * 2; i++) {
+            slots.add(new Slot());
+        }
+
+        AtomicInteger renderThreadCount = new AtomicInteger();
+        this.renderers = Executors.newFixedThreadPool(renderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "metrics-render-" + renderThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        this.selectorThread = new Thread(this::select, "metrics-server");
+        selectorThread.setDaemon(true);
+    }
+
+    /**
+     * Starts serving
+     */
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Gets the port the server listens on
+     *
+     * @return Port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops serving and closes all connections
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(LISTENER_DRAIN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderers.shutdownNow();
+
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key);
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.warn("Error occurred when closing the metrics server", e);
+        }
+        slots.forEach(slot -> slot.gzip.close());
+    }
+
+    /**
+     * Selector loop
+     */
+    private void select() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                log.error("Metrics server selector failed", e);
+                return;
+            }
+
+            Runnable task;
+            while ((task = pending.poll()) != null) {
+                task.run();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+
+                try {
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read((Connection) key.attachment());
+                    } else if (key.isWritable()) {
+                        write((Connection) key.attachment());
+                    }
+                } catch (IOException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Closing metrics connection", e);
+                    }
+                    closeQuietly(key);
+                }
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        ByteBuffer request = connection.request;
+        if (connection.channel.read(request) < 0) {
+            closeQuietly(connection.key);
+            return;
+        }
+
+        int headerEnd = indexOf(request, END_OF_HEADERS);
+        if (headerEnd < 0) {
+            if (!request.hasRemaining()) {
+                respondStatic(connection, "431 Request Header Fields Too Large");
+            }
+            return;
+        }
+
+        String requestHead = new String(request.array(), 0, headerEnd, StandardCharsets.ISO_8859_1);
+        request.clear();
+        connection.key.interestOps(0);
+
+        String[] lines = requestHead.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3) {
+            respondStatic(connection, "400 Bad Request");
+            return;
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            if (colon > 0) {
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        lines[i].substring(colon + 1).trim());
+            }
+        }
+
+        String method = requestLine[0];
+        String path = requestLine[1];
+        int query = path.indexOf('?');
+        if (query >= 0) {
+            path = path.substring(0, query);
+        }
+        String connectionHeader = headers.get("connection");
+        connection.keepAlive = "HTTP/1.1".equals(requestLine[2])
+                ? !"close".equalsIgnoreCase(connectionHeader)
+                : "keep-alive".equalsIgnoreCase(connectionHeader);
+
+        boolean head = "HEAD".equals(method);
+        if (!"GET".equals(method) && !head) {
+            respondStatic(connection, "405 Method Not Allowed");
+            return;
+        }
+        if (!METRICS_PATH.equals(path) && !"/".equals(path)) {
+            respondStatic(connection, "404 Not Found");
+            return;
+        }
+
+        ExpositionFormat format = ExpositionFormat.negotiate(headers.get("accept"));
+        String acceptEncoding = headers.get("accept-encoding");
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        renderers.execute(() -> render(connection, format, gzip, head));
+    }
+
+    /**
+     * Renders a scrape on a render thread and hands the response to the selector thread
+     */
+    private void render(Connection connection, ExpositionFormat format, boolean gzip, boolean headOnly) {
+        Slot slot;
+        try {
+            slot = slots.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        try {
+            slot.body.clear();
+            ExpositionEncoder.encode(registry, format, slot.body);
+            ExpositionBuffer payload = slot.body;
+            if (gzip) {
+                slot.compressed.clear();
+                slot.gzip.encode(slot.body, slot.compressed);
+                payload = slot.compressed;
+            }
+
+            ByteBuffer header = slot.header;
+            header.clear();
+            putAscii(header, "HTTP/1.1 200 OK\r\nContent-Type: ");
+            putAscii(header, format.getContentType());
+            putAscii(header, "\r\nContent-Length: ");
+            putAscii(header, Integer.toString(payload.size()));
+            if (gzip) {
+                putAscii(header, "\r\nContent-Encoding: gzip");
+            }
+            if (!connection.keepAlive) {
+                putAscii(header, "\r\nConnection: close");
+            }
+            putAscii(header, "\r\n\r\n");
+            header.flip();
+
+            respond(connection, headOnly ? new ByteBuffer[]{header} : new ByteBuffer[]{header, payload.view()},
+                    slot);
+        } catch (RuntimeException e) {
+            log.error("Error occurred when rendering metrics", e);
+            slots.offer(slot);
+            connection.keepAlive = false;
+            respond(connection, new ByteBuffer[]{statusResponse("500 Internal Server Error")}, null);
+        }
+    }
+
+    private void respondStatic(Connection connection, String status) {
+        connection.key.interestOps(0);
+        connection.keepAlive = false;
+        connection.response = new ByteBuffer[]{statusResponse(status)};
+        connection.key.interestOps(SelectionKey.OP_WRITE);
+    }
+
+    private void respond(Connection connection, ByteBuffer[] response, Slot slot) {
+        pending.add(() -> {
+            if (!connection.key.isValid()) {
+                if (slot != null) {
+                    slots.offer(slot);
+                }
+                return;
+            }
+            connection.response = response;
+            connection.slot = slot;
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+        });
+        selector.wakeup();
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer[] response = connection.response;
+        connection.channel.write(response);
+        if (response[response.length - 1].hasRemaining()) {
+            return;
+        }
+
+        release(connection);
+        if (connection.keepAlive) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        } else {
+            closeQuietly(connection.key);
+        }
+    }
+
+    private void release(Connection connection) {
+        connection.response = null;
+        if (connection.slot != null) {
+            slots.offer(connection.slot);
+            connection.slot = null;
+        }
+    }
+
+    private void closeQuietly(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof Connection) {
+            release((Connection) attachment);
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Error occurred when closing a metrics connection", e);
+            }
+        }
+    }
+
+    private static ByteBuffer statusResponse(String status) {
+        return ByteBuffer.wrap(("HTTP/1.1 " + status + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void putAscii(ByteBuffer buffer, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] pattern) {
+        byte[] array = buffer.array();
+        int end = buffer.position() - pattern.length;
+        for (int i = 0; i <= end; i++) {
+            int j = 0;
+            while (j < pattern.length && array[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * State of a client connection, only accessed by the selector thread
+     */
+    private static class Connection {
+
+        private final SocketChannel channel;
+        private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_BYTES);
+        private SelectionKey key;
+        private ByteBuffer[] response;
+        private Slot slot;
+        private volatile boolean keepAlive;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * Reused buffers of one scrape in flight
+     */
+    private static class Slot {
+
+        private final ExpositionBuffer body = new ExpositionBuffer(INITIAL_BUFFER_BYTES);
+        private final ExpositionBuffer compressed = new ExpositionBuffer(INITIAL_BUFFER_BYTES / 4);
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        private final GzipEncoder gzip = new GzipEncoder();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.listeners;
+
+import io.prometheus.client.Collector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Exposes the queue depth and the dropped events of {@link RingBufferEventListener}s
+ */
+public class ListenerQueueMetrics extends Collector {
+
+    private static final List<String> LABEL_NAMES = Collections.singletonList(LISTENER);
+
+    private final Set<RingBufferEventListener> listeners = new CopyOnWriteArraySet<>();
+
+    /**
+     * Adds a listener to expose
+     *
+     * @param listener Listener
+     */
+    public void add(RingBufferEventListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes an exposed listener
+     *
+     * @param listener Listener
+     */
+    public void remove(RingBufferEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> depths = new ArrayList<>();
+        List<MetricFamilySamples.Sample> drops = new ArrayList<>();
+        for (RingBufferEventListener listener : listeners) {
+            List<String> labelValues = Collections.singletonList(listener.getName());
+            depths.add(new MetricFamilySamples.Sample(LISTENER_QUEUE_DEPTH_GAUGE, LABEL_NAMES, labelValues,
+                    listener.depth()));
+            drops.add(new MetricFamilySamples.Sample(LISTENER_DROPPED_EVENTS_COUNTER, LABEL_NAMES, labelValues,
+                    listener.dropped()));
+        }
+
+        List<MetricFamilySamples> families = new ArrayList<>(2);
+        families.add(new MetricFamilySamples(LISTENER_QUEUE_DEPTH_GAUGE, Type.GAUGE,
+                "Events waiting in the buffer of a listener", depths));
+        families.add(new MetricFamilySamples(LISTENER_DROPPED_EVENTS_COUNTER, Type.COUNTER,
+                "Events dropped by the overflow policy of a listener", drops));
+        return families;
+    }
+}
@@ -18,12 +18,47 @@
 
 package org.wso2.serverless.stats.listeners;
 
-import org.wso2.serverless.stats.OpenwhiskEvent;
+import org.wso2.serverless.stats.ActivationEvent;
+import org.wso2.serverless.stats.MetricEvent;
 
 /**
- * OpenwhiskEventListener interface
+ * OpenwhiskEventListener interface. Events are decoded once and the same immutable instance is passed to
+ * every listener, so listeners must not keep state in the events.
  */
 public interface OpenwhiskEventListener {
 
-    void onEvent(OpenwhiskEvent event);
+    /**
+     * Receives an Activation event
+     *
+     * @param event Activation event
+     */
+    default void onActivation(ActivationEvent event) {
+    }
+
+    /**
+     * Receives a Metric event
+     *
+     * @param event Metric event
+     */
+    default void onMetric(MetricEvent event) {
+    }
+
+    /**
+     * Receives the restored cumulative totals of an activation series, as a single aggregated activation.
+     * Called from the stream thread of the restored task when the exporter restarts with durable totals.
+     *
+     * @param totals Totals of the series
+     */
+    default void onRestore(ActivationEvent totals) {
+    }
+
+    /**
+     * Receives the end of a task's ownership on this instance. The task's series of that epoch are exported
+     * by the new owner from now on. Called after a rebalance when the exporter keeps durable totals.
+     *
+     * @param task      Task label
+     * @param taskEpoch Epoch of the ended ownership, see {@link ActivationEvent#getTaskEpoch()}
+     */
+    default void onRevoke(String task, int taskEpoch) {
+    }
 }
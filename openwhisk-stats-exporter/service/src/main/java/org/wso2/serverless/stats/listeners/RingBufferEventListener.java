@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.listeners;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.serverless.stats.ActivationEvent;
+import org.wso2.serverless.stats.MetricEvent;
+import org.wso2.serverless.stats.OpenwhiskEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands events over to a listener through a bounded ring buffer consumed by a dedicated thread.
+ * <p>
+ * The ring is pre-allocated. Stream threads claim a slot by advancing the tail sequence, store the event and
+ * publish it by setting the slot's sequence. The consumer thread takes published events in order, so a slow
+ * listener only fills the buffer and never stalls the Kafka poll loop unless {@link OverflowPolicy#BLOCK} is used.
+ * <p>
+ * An idle consumer spins briefly, then yields, then parks for doubling periods. Once it parks it flags itself,
+ * and the next producer to publish unparks it, so an idle listener costs no CPU and still wakes up at once.
+ */
+public class RingBufferEventListener implements OpenwhiskEventListener {
+
+    private static final Log log = LogFactory.getLog(RingBufferEventListener.class);
+
+    private static final int SPINS_BEFORE_YIELD = 100;
+    private static final int YIELDS_BEFORE_PARK = 100;
+    private static final long MIN_PARK_NANOS = 50_000;
+    private static final long MAX_BLOCKED_PARK_NANOS = 1_000_000;
+    private static final long MAX_IDLE_PARK_NANOS = 100_000_000;
+
+    private final String name;
+    private final OpenwhiskEventListener delegate;
+    private final OverflowPolicy overflowPolicy;
+    private final int sampleRate;
+
+    private final int capacity;
+    private final int mask;
+    private final OpenwhiskEvent[] events;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong sampled = new AtomicLong();
+    private final Thread consumer;
+    private volatile boolean running = true;
+    private volatile boolean consumerParked;
+
+    /**
+     * RingBufferEventListener dispatching to a listener from its own thread
+     *
+     * @param name           Name of the listener, used for the consumer thread and metrics
+     * @param delegate       Listener receiving the events
+     * @param capacity       Number of buffered events, rounded up to a power of two
+     * @param overflowPolicy What to do when the buffer is full
+     * @param sampleRate     Every how many events one is kept by {@link OverflowPolicy#SAMPLE}
+     */
+    public RingBufferEventListener(String name, OpenwhiskEventListener delegate, int capacity,
+                                   OverflowPolicy overflowPolicy, int sampleRate) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("Listener is required");
+        }
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Buffer capacity should be positive");
+        }
+
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy is required");
+        }
+
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate should be positive");
+        }
+
+        this.name = name;
+        this.delegate = delegate;
+        this.overflowPolicy = overflowPolicy;
+        this.sampleRate = sampleRate;
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = this.capacity - 1;
+        this.events = new OpenwhiskEvent[this.capacity];
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+
+        consumer = new Thread(this::consume, "listener-" + name);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void onActivation(ActivationEvent event) {
+        enqueue(event);
+    }
+
+    @Override
+    public void onMetric(MetricEvent event) {
+        enqueue(event);
+    }
+
+    /**
+     * Restored totals are not subject to the overflow policy, so they are passed to the delegate directly
+     */
+    @Override
+    public void onRestore(ActivationEvent totals) {
+        delegate.onRestore(totals);
+    }
+
+    /**
+     * Revocations are passed to the delegate directly as well. Buffered activations of the revoked epoch only
+     * reach its revoked series.
+     */
+    @Override
+    public void onRevoke(String task, int taskEpoch) {
+        delegate.onRevoke(task, taskEpoch);
+    }
+
+    /**
+     * Buffers an event according to the overflow policy
+     *
+     * @param event Event
+     */
+    private void enqueue(OpenwhiskEvent event) {
+        if (!running) {
+            dropped.increment();
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                long parkNanos = MIN_PARK_NANOS;
+                while (!offer(event)) {
+                    if (!running) {
+                        dropped.increment();
+                        return;
+                    }
+                    LockSupport.parkNanos(parkNanos);
+                    parkNanos = Math.min(parkNanos * 2, MAX_BLOCKED_PARK_NANOS);
+                }
+                break;
+
+            case SAMPLE:
+                if (depth() > capacity / 2 && sampled.incrementAndGet() % sampleRate != 0) {
+                    dropped.increment();
+                    return;
+                }
+                if (!offer(event)) {
+                    dropped.increment();
+                }
+                break;
+
+            default:
+                if (!offer(event)) {
+                    dropped.increment();
+                }
+        }
+    }
+
+    /**
+     * Claims a slot and publishes the event
+     *
+     * @param event Event
+     * @return false if the buffer is full
+     */
+    private boolean offer(OpenwhiskEvent event) {
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events[index] = event;
+                    // Publishing the sequence makes the event visible to the consumer
+                    sequences.set(index, position + 1);
+                    if (consumerParked) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return true;
+                }
+            } else if (sequence < position) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Takes published events in order and passes them to the listener
+     */
+    private void consume() {
+        int idleRounds = 0;
+        long parkNanos = MIN_PARK_NANOS;
+        while (true) {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) {
+                if (!running && position == tail.get()) {
+                    return;
+                }
+                idleRounds++;
+                if (idleRounds > SPINS_BEFORE_YIELD + YIELDS_BEFORE_PARK) {
+                    consumerParked = true;
+                    // Checked again after flagging, so a producer which missed the flag has published already
+                    if (sequences.get(index) != position + 1 && running) {
+                        LockSupport.parkNanos(this, parkNanos);
+                        parkNanos = Math.min(parkNanos * 2, MAX_IDLE_PARK_NANOS);
+                    }
+                    consumerParked = false;
+                } else if (idleRounds > SPINS_BEFORE_YIELD) {
+                    Thread.yield();
+                }
+                continue;
+            }
+
+            idleRounds = 0;
+            parkNanos = MIN_PARK_NANOS;
+            OpenwhiskEvent event = events[index];
+            events[index] = null;
+            // Releases the slot for the lap after the next one
+            sequences.set(index, position + capacity);
+            head = position + 1;
+
+            try {
+                event.dispatchTo(delegate);
+            } catch (RuntimeException e) {
+                log.error("Listener " + name + " failed to process an event", e);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of events waiting in the buffer
+     *
+     * @return Queue depth
+     */
+    public long depth() {
+        return Math.max(0, tail.get() - head);
+    }
+
+    /**
+     * Gets the number of events which were dropped because of the overflow policy
+     *
+     * @return Number of dropped events
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Gets the name of the listener
+     *
+     * @return Name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the listener receiving the events
+     *
+     * @return Listener
+     */
+    public OpenwhiskEventListener getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Stops accepting events, lets the consumer thread drain the buffer and waits for it to finish
+     *
+     * @param timeoutMillis Maximum time to wait for the buffer to drain
+     */
+    public void stop(long timeoutMillis) {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
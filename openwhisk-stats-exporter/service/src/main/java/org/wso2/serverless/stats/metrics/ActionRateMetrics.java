@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Keeps sliding-window invocation rates, error ratios and a moving average of the duration per action, so
+ * dashboards can read precomputed gauges instead of running rate() over every activation series.
+ * <p>
+ * Activations are added to the same lock-free per-thread value tables as {@link ActivationMetricsStore}, counted
+ * per OpenWhisk status code class. Every {@link org.wso2.serverless.stats.Constants#RATE_BUCKET_MILLIS} a ticker
+ * thread turns the growth of the totals into a bucket of a ring per action and keeps the sum of the last 1 and
+ * 5 minutes of buckets, so the gauges are read without summing the ring. The mean duration of each bucket updates
+ * an exponentially weighted moving average with a time constant of
+ * {@link org.wso2.serverless.stats.Constants#DURATION_EWMA_WINDOW_MILLIS}; idle buckets leave it unchanged.
+ * The gauges therefore lag the activations by up to one bucket.
+ */
+public class ActionRateMetrics extends Collector {
+
+    private static final List<String> LABEL_NAMES = Arrays.asList(NAMESPACE, ACTION, KIND);
+    private static final List<String> WINDOW_LABEL_NAMES = Arrays.asList(NAMESPACE, ACTION, KIND, WINDOW);
+    private static final List<String> ERROR_LABEL_NAMES = Arrays.asList(NAMESPACE, ACTION, KIND, WINDOW,
+            STATUS_CLASS);
+    private static final List<String> CLUSTER_LABEL_NAMES = ClusterLabels.withCluster(LABEL_NAMES);
+    private static final List<String> CLUSTER_WINDOW_LABEL_NAMES = ClusterLabels.withCluster(WINDOW_LABEL_NAMES);
+    private static final List<String> CLUSTER_ERROR_LABEL_NAMES = ClusterLabels.withCluster(ERROR_LABEL_NAMES);
+    private static final int LABEL_NAMESPACE = 0;
+    private static final int LABEL_ACTION = 1;
+    private static final int LABEL_KIND = 2;
+    private static final int LABEL_CLUSTER = 3;
+    private static final int LABEL_COUNT = 4;
+
+    /**
+     * Counted status classes, indexed like the OpenWhisk status codes: success, application error,
+     * action developer error and whisk internal error
+     */
+    private static final String[] STATUS_CLASSES = {STATUS_CLASS_SUCCESS, STATUS_CLASS_APPLICATION_ERROR,
+            STATUS_CLASS_DEVELOPER_ERROR, STATUS_CLASS_INTERNAL_ERROR};
+    private static final int FIELD_DURATION_SUM = STATUS_CLASSES.length;
+    private static final int FIELDS = FIELD_DURATION_SUM + 1;
+
+    private static final long[] WINDOW_MILLIS = {60 * 1000, 5 * 60 * 1000};
+    private static final String[] WINDOW_NAMES = {"1m", "5m"};
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final SeriesIndex series = new SeriesIndex(LABEL_COUNT);
+    private final StripedLongTable values = new StripedLongTable(FIELDS);
+    private final ThreadLocal<int[]> probe = ThreadLocal.withInitial(() -> new int[LABEL_COUNT]);
+
+    private final long bucketMillis;
+    private final int[] windowBuckets = new int[WINDOW_MILLIS.length];
+    private final int ringSize;
+    private final double ewmaAlpha;
+
+    // Guarded by this, written by the ticker
+    private final List<Window> windows = new ArrayList<>();
+    private long ticks;
+
+    private ScheduledExecutorService ticker;
+
+    /**
+     * ActionRateMetrics with the default bucket width
+     */
+    public ActionRateMetrics() {
+        this(RATE_BUCKET_MILLIS);
+    }
+
+    /**
+     * ActionRateMetrics with the given bucket width, which has to divide the windows
+     *
+     * @param bucketMillis Bucket width in milliseconds
+     */
+    ActionRateMetrics(long bucketMillis) {
+        if (bucketMillis <= 0 || WINDOW_MILLIS[0] % bucketMillis != 0) {
+            throw new IllegalArgumentException("Bucket width should divide " + WINDOW_MILLIS[0] + " ms");
+        }
+
+        this.bucketMillis = bucketMillis;
+        for (int window = 0; window < WINDOW_MILLIS.length; window++) {
+            windowBuckets[window] = (int) (WINDOW_MILLIS[window] / bucketMillis);
+        }
+        this.ringSize = windowBuckets[windowBuckets.length - 1];
+        this.ewmaAlpha = 1 - Math.exp(-(double) bucketMillis / DURATION_EWMA_WINDOW_MILLIS);
+    }
+
+    /**
+     * Records activations of an action
+     *
+     * @param namespace   Namespace
+     * @param action      Action name
+     * @param kind        Action kind
+     * @param cluster     Cluster label of the event source, empty for the default source
+     * @param statusCode  OpenWhisk status code
+     * @param count       Number of activations
+     * @param durationSum Sum of the durations in milliseconds
+     */
+    public void record(String namespace, String action, String kind, String cluster, int statusCode, long count,
+                       long durationSum) {
+        int[] key = probe.get();
+        key[LABEL_NAMESPACE] = symbols.intern(namespace);
+        key[LABEL_ACTION] = symbols.intern(action);
+        key[LABEL_KIND] = symbols.intern(kind);
+        key[LABEL_CLUSTER] = symbols.intern(cluster);
+
+        int slot = series.slotOf(key);
+        StripedLongTable.Stripe stripe = values.stripe();
+        stripe.add(slot, statusClass(statusCode), count);
+        stripe.add(slot, FIELD_DURATION_SUM, durationSum);
+    }
+
+    /**
+     * Maps a status code to its class. Unknown codes are treated as internal errors.
+     */
+    private static int statusClass(int statusCode) {
+        return statusCode >= 0 && statusCode < STATUS_CLASSES.length ? statusCode : STATUS_CLASSES.length - 1;
+    }
+
+    /**
+     * Starts closing a bucket every bucket width
+     */
+    public void start() {
+        ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-ticker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, bucketMillis, bucketMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops closing buckets
+     */
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    /**
+     * Closes the current bucket of every action
+     */
+    synchronized void tick() {
+        int size = series.size();
+        while (windows.size() < size) {
+            windows.add(new Window());
+        }
+        int position = (int) (ticks % ringSize);
+        for (int slot = 0; slot < size; slot++) {
+            windows.get(slot).tick(slot, position);
+        }
+        ticks++;
+    }
+
+    /**
+     * Gets the number of actions
+     *
+     * @return Number of series
+     */
+    public int size() {
+        return series.size();
+    }
+
+    @Override
+    public synchronized List<MetricFamilySamples> collect() {
+        int size = windows.size();
+        List<MetricFamilySamples.Sample> rates = new ArrayList<>(size * WINDOW_MILLIS.length);
+        List<MetricFamilySamples.Sample> errorRatios = new ArrayList<>(
+                size * WINDOW_MILLIS.length * (STATUS_CLASSES.length - 1));
+        List<MetricFamilySamples.Sample> durations = new ArrayList<>(size);
+
+        for (int slot = 0; slot < size; slot++) {
+            Window window = windows.get(slot);
+            String namespace = symbols.symbol(series.key(slot, LABEL_NAMESPACE));
+            String action = symbols.symbol(series.key(slot, LABEL_ACTION));
+            String kind = symbols.symbol(series.key(slot, LABEL_KIND));
+            String cluster = symbols.symbol(series.key(slot, LABEL_CLUSTER));
+
+            for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+                // Until a window is full, rates are taken over the time the exporter has been ticking
+                long covered = Math.min(ticks, windowBuckets[w]) * bucketMillis;
+                long total = window.total(w);
+                rates.add(new MetricFamilySamples.Sample(ACTION_INVOCATION_RATE_GAUGE,
+                        ClusterLabels.names(cluster, WINDOW_LABEL_NAMES, CLUSTER_WINDOW_LABEL_NAMES),
+                        ClusterLabels.values(cluster, namespace, action, kind, WINDOW_NAMES[w]),
+                        covered == 0 ? 0 : total * 1000.0 / covered));
+                for (int statusClass = 1; statusClass < STATUS_CLASSES.length; statusClass++) {
+                    errorRatios.add(new MetricFamilySamples.Sample(ACTION_ERROR_RATIO_GAUGE,
+                            ClusterLabels.names(cluster, ERROR_LABEL_NAMES, CLUSTER_ERROR_LABEL_NAMES),
+                            ClusterLabels.values(cluster, namespace, action, kind, WINDOW_NAMES[w],
+                                    STATUS_CLASSES[statusClass]),
+                            total == 0 ? 0 : (double) window.sum(w, statusClass) / total));
+                }
+            }
+            durations.add(new MetricFamilySamples.Sample(ACTION_DURATION_EWMA_GAUGE,
+                    ClusterLabels.names(cluster, LABEL_NAMES, CLUSTER_LABEL_NAMES),
+                    ClusterLabels.values(cluster, namespace, action, kind), window.ewma));
+        }
+
+        List<MetricFamilySamples> families = new ArrayList<>(3);
+        families.add(new MetricFamilySamples(ACTION_INVOCATION_RATE_GAUGE, Type.GAUGE,
+                "Activations per second of an action over the window", rates));
+        families.add(new MetricFamilySamples(ACTION_ERROR_RATIO_GAUGE, Type.GAUGE,
+                "Share of the activations of an action in the window which ended with the status class",
+                errorRatios));
+        families.add(new MetricFamilySamples(ACTION_DURATION_EWMA_GAUGE, Type.GAUGE,
+                "Exponentially weighted moving average of the activation duration in milliseconds", durations));
+        return families;
+    }
+
+    /**
+     * Ring of the per bucket activation counts of an action and their sums over the windows
+     */
+    private class Window {
+
+        private final int[] buckets = new int[ringSize * STATUS_CLASSES.length];
+        private final long[] sums = new long[WINDOW_MILLIS.length * STATUS_CLASSES.length];
+        private final long[] lastTotals = new long[FIELDS];
+        private double ewma;
+
+        /**
+         * Moves the growth of the totals since the last tick into the bucket at the ring position
+         */
+        void tick(int slot, int position) {
+            long count = 0;
+            for (int statusClass = 0; statusClass < STATUS_CLASSES.length; statusClass++) {
+                long totalNow = values.sum(slot, statusClass);
+                int delta = (int) Math.min(totalNow - lastTotals[statusClass], Integer.MAX_VALUE);
+                lastTotals[statusClass] = totalNow;
+                count += delta;
+
+                for (int w = 0; w < WINDOW_MILLIS.length; w++) {
+                    int expired = (position - windowBuckets[w] + ringSize) % ringSize;
+                    // Buckets which are older than the window leave it before the new bucket enters
+                    if (ticks >= windowBuckets[w]) {
+                        sums[w * STATUS_CLASSES.length + statusClass] -=
+                                buckets[expired * STATUS_CLASSES.length + statusClass];
+                    }
+                    sums[w * STATUS_CLASSES.length + statusClass] += delta;
+                }
+                buckets[position * STATUS_CLASSES.length + statusClass] = delta;
+            }
+
+            long durationSum = values.sum(slot, FIELD_DURATION_SUM);
+            long durationDelta = durationSum - lastTotals[FIELD_DURATION_SUM];
+            lastTotals[FIELD_DURATION_SUM] = durationSum;
+            if (count > 0) {
+                double mean = (double) durationDelta / count;
+                ewma = ewma == 0 ? mean : ewma + ewmaAlpha * (mean - ewma);
+            }
+        }
+
+        long sum(int window, int statusClass) {
+            return sums[window * STATUS_CLASSES.length + statusClass];
+        }
+
+        long total(int window) {
+            long total = 0;
+            for (int statusClass = 0; statusClass < STATUS_CLASSES.length; statusClass++) {
+                total += sum(window, statusClass);
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector;
+import org.wso2.serverless.stats.exposition.CachedExposition;
+import org.wso2.serverless.stats.exposition.ExpositionBuffer;
+import org.wso2.serverless.stats.exposition.ExpositionEncoder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Renders the series of an {@link ActivationMetricsStore} as Prometheus metric families.
+ * <p>
+ * When encoded through an {@link org.wso2.serverless.stats.exposition.ExpositionRegistry}, the sample lines of
+ * every series are kept pre-rendered. A series only changes when activations are recorded for it, which always
+ * changes its count, so only series whose count moved since the last encoding are rendered again. The store
+ * writes the count of an activation last, so lines rendered for a count are never older than it. Idle series
+ * are copied from the cache, so the cost of a scrape or push follows the number of active series instead of
+ * the total number of series, at the price of keeping the rendered lines in memory.
+ */
+public class ActivationMetricsCollector extends Collector implements CachedExposition {
+
+    private static final List<String> LABEL_NAMES = Arrays.asList(NAMESPACE, SOURCE, USER_ID, ACTION, STATUS_CODE, KIND,
+            CLUSTER, TASK);
+    private static final int LINE_BYTES = 256;
+
+    private final ActivationMetricsStore store;
+    private final ExpositionBuffer scratch = new ExpositionBuffer(LINE_BYTES);
+    private byte[][] labels = new byte[0][];
+    private byte[][] durationLines = new byte[0][];
+    private byte[][] activationLines = new byte[0][];
+    private byte[][] histogramLines = new byte[0][];
+    private long[] renderedCounts = new long[0];
+
+    /**
+     * ActivationMetricsCollector exposes the activation counters of a store
+     *
+     * @param store Store to render
+     */
+    public ActivationMetricsCollector(ActivationMetricsStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("Store is required");
+        }
+        this.store = store;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        int size = store.size();
+        List<MetricFamilySamples.Sample> activations = new ArrayList<>(size);
+        List<MetricFamilySamples.Sample> durations = new ArrayList<>(size);
+        DurationBuckets buckets = store.getDurationBuckets();
+        List<MetricFamilySamples.Sample> histogram = new ArrayList<>(size * (buckets.size() + 2));
+
+        for (int slot = 0; slot < size; slot++) {
+            if (store.isRetired(slot)) {
+                continue;
+            }
+            List<String> labelNames = new ArrayList<>(ActivationMetricsStore.LABEL_COUNT);
+            List<String> labelValues = new ArrayList<>(ActivationMetricsStore.LABEL_COUNT);
+            for (int label = 0; label < ActivationMetricsStore.LABEL_COUNT; label++) {
+                if (isShown(slot, label)) {
+                    labelNames.add(LABEL_NAMES.get(label));
+                    labelValues.add(store.label(slot, label));
+                }
+            }
+            long count = store.count(slot);
+            long durationSum = store.durationSum(slot);
+            activations.add(new MetricFamilySamples.Sample(ACTIVATIONS_TOTAL_COUNTER, labelNames, labelValues,
+                    count));
+            durations.add(new MetricFamilySamples.Sample(ACTIVATION_DURATION_COUNTER, labelNames, labelValues,
+                    durationSum));
+
+            int series = slot;
+            HistogramSamples.add(histogram, ACTIVATION_DURATION_HISTOGRAM, buckets, labelNames, labelValues,
+                    bucket -> store.bucketCount(series, bucket), durationSum);
+        }
+
+        List<MetricFamilySamples> families = new ArrayList<>(3);
+        families.add(new MetricFamilySamples(ACTIVATION_DURATION_COUNTER, Type.COUNTER,
+                "Activation Duration Counter", durations));
+        families.add(new MetricFamilySamples(ACTIVATIONS_TOTAL_COUNTER, Type.COUNTER,
+                "Total Activations Counter", activations));
+        families.add(new MetricFamilySamples(ACTIVATION_DURATION_HISTOGRAM, Type.HISTOGRAM,
+                "Activation Duration Histogram in milliseconds", histogram));
+        return families;
+    }
+
+    @Override
+    public synchronized void encode(ExpositionBuffer buffer, boolean openMetrics) {
+        int size = store.size();
+        if (size > labels.length) {
+            grow(size);
+        }
+        for (int slot = 0; slot < size; slot++) {
+            if (store.isRetired(slot)) {
+                release(slot);
+                continue;
+            }
+            long count = store.count(slot);
+            if (labels[slot] == null || renderedCounts[slot] != count) {
+                render(slot, count);
+            }
+        }
+
+        ExpositionEncoder.encodeHeader(ACTIVATION_DURATION_COUNTER, Type.COUNTER, "Activation Duration Counter",
+                openMetrics, buffer);
+        for (int slot = 0; slot < size; slot++) {
+            if (durationLines[slot] != null) {
+                buffer.put(durationLines[slot]);
+            }
+        }
+        ExpositionEncoder.encodeHeader(ACTIVATIONS_TOTAL_COUNTER, Type.COUNTER, "Total Activations Counter",
+                openMetrics, buffer);
+        for (int slot = 0; slot < size; slot++) {
+            if (activationLines[slot] != null) {
+                buffer.put(activationLines[slot]);
+            }
+        }
+        ExpositionEncoder.encodeHeader(ACTIVATION_DURATION_HISTOGRAM, Type.HISTOGRAM,
+                "Activation Duration Histogram in milliseconds", openMetrics, buffer);
+        for (int slot = 0; slot < size; slot++) {
+            if (histogramLines[slot] != null) {
+                buffer.put(histogramLines[slot]);
+            }
+        }
+    }
+
+    /**
+     * Renders the lines of a series into the cache. The labels of a slot never change, so they are only
+     * rendered the first time. Empty cluster and task labels are left out.
+     */
+    private void render(int slot, long count) {
+        if (labels[slot] == null) {
+            scratch.clear();
+            for (int label = 0; label < ActivationMetricsStore.LABEL_COUNT; label++) {
+                if (!isShown(slot, label)) {
+                    continue;
+                }
+                if (label > 0) {
+                    scratch.put((byte) ',');
+                }
+                scratch.putAscii(LABEL_NAMES.get(label));
+                scratch.putAscii("=\"");
+                scratch.putEscaped(store.label(slot, label), true);
+                scratch.put((byte) '"');
+            }
+            labels[slot] = scratch.toByteArray();
+        }
+        byte[] labelBytes = labels[slot];
+        long durationSum = store.durationSum(slot);
+
+        scratch.clear();
+        putLine(ACTIVATION_DURATION_COUNTER, labelBytes, null, durationSum);
+        durationLines[slot] = scratch.toByteArray();
+
+        scratch.clear();
+        putLine(ACTIVATIONS_TOTAL_COUNTER, labelBytes, null, count);
+        activationLines[slot] = scratch.toByteArray();
+
+        scratch.clear();
+        DurationBuckets buckets = store.getDurationBuckets();
+        long cumulative = 0;
+        for (int bucket = 0; bucket < buckets.size(); bucket++) {
+            cumulative += store.bucketCount(slot, bucket);
+            putLine(ACTIVATION_DURATION_HISTOGRAM + BUCKET_SUFFIX, labelBytes, buckets.label(bucket), cumulative);
+        }
+        putLine(ACTIVATION_DURATION_HISTOGRAM + COUNT_SUFFIX, labelBytes, null, cumulative);
+        putLine(ACTIVATION_DURATION_HISTOGRAM + SUM_SUFFIX, labelBytes, null, durationSum);
+        histogramLines[slot] = scratch.toByteArray();
+
+        renderedCounts[slot] = count;
+    }
+
+    private void putLine(String name, byte[] labelBytes, String le, long value) {
+        scratch.putAscii(name);
+        scratch.put((byte) '{');
+        scratch.put(labelBytes);
+        if (le != null) {
+            scratch.put((byte) ',');
+            scratch.putAscii(LE);
+            scratch.putAscii("=\"");
+            scratch.putAscii(le);
+            scratch.put((byte) '"');
+        }
+        scratch.putAscii("} ");
+        scratch.putDouble(value);
+        scratch.put((byte) '\n');
+    }
+
+    private void grow(int size) {
+        int capacity = Math.max(size, labels.length * 2);
+        labels = Arrays.copyOf(labels, capacity);
+        durationLines = Arrays.copyOf(durationLines, capacity);
+        activationLines = Arrays.copyOf(activationLines, capacity);
+        histogramLines = Arrays.copyOf(histogramLines, capacity);
+        renderedCounts = Arrays.copyOf(renderedCounts, capacity);
+    }
+
+    /**
+     * Drops the cached lines of a retired series
+     */
+    private void release(int slot) {
+        labels[slot] = null;
+        durationLines[slot] = null;
+        activationLines[slot] = null;
+        histogramLines[slot] = null;
+    }
+
+    /**
+     * Checks whether a label is rendered. The cluster and task labels are left out when they are empty.
+     */
+    private boolean isShown(int slot, int label) {
+        return label < ActivationMetricsStore.LABEL_CLUSTER || !store.label(slot, label).isEmpty();
+    }
+}
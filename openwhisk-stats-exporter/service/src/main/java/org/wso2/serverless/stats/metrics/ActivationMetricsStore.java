@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores activation counts, duration sums and duration histograms per label tuple.
+ * <p>
+ * The cluster label is empty for activations of the default event source, which collectors render without it.
+ * The task label is only set with durable totals. Series of a task are also keyed by the task's ownership epoch,
+ * so a task which comes back to this instance starts new series, and the series of a revoked epoch are retired:
+ * collectors skip them, while their slots stay allocated.
+ * <p>
+ * Label values are interned into symbol ids and the tuple of ids is mapped to a series slot. The count, the
+ * duration sum and the histogram bucket counts of a series share the slot in primitive per-thread value tables,
+ * so recording an activation does not allocate and does not contend with other threads.
+ */
+public class ActivationMetricsStore {
+
+    public static final int LABEL_NAMESPACE = 0;
+    public static final int LABEL_SOURCE = 1;
+    public static final int LABEL_USER_ID = 2;
+    public static final int LABEL_ACTION = 3;
+    public static final int LABEL_STATUS_CODE = 4;
+    public static final int LABEL_KIND = 5;
+    public static final int LABEL_CLUSTER = 6;
+    public static final int LABEL_TASK = 7;
+    public static final int LABEL_COUNT = 8;
+
+    private static final int KEY_TASK_EPOCH = LABEL_COUNT;
+    private static final int KEY_LENGTH = LABEL_COUNT + 1;
+
+    private static final int FIELD_COUNT = 0;
+    private static final int FIELD_DURATION_SUM = 1;
+    private static final int FIELD_FIRST_BUCKET = 2;
+
+    private final DurationBuckets durationBuckets;
+    private final SymbolTable symbols = new SymbolTable();
+    private final SeriesIndex series = new SeriesIndex(KEY_LENGTH);
+    private final StripedLongTable values;
+    private final ThreadLocal<int[]> probe = ThreadLocal.withInitial(() -> new int[KEY_LENGTH]);
+    private final Set<Integer> retiredEpochs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * ActivationMetricsStore recording duration histograms with the given buckets
+     *
+     * @param durationBuckets Duration histogram buckets
+     */
+    public ActivationMetricsStore(DurationBuckets durationBuckets) {
+        if (durationBuckets == null) {
+            throw new IllegalArgumentException("Duration buckets are required");
+        }
+        this.durationBuckets = durationBuckets;
+        this.values = new StripedLongTable(FIELD_FIRST_BUCKET + durationBuckets.size());
+    }
+
+    /**
+     * Records activations of a label tuple
+     *
+     * @param namespace    Namespace
+     * @param source       Source which emitted the activations
+     * @param userId       User ID
+     * @param action       Action name
+     * @param statusCode   Activation status code
+     * @param kind         Action kind
+     * @param cluster      Cluster label of the event source, empty for the default source
+     * @param task         Task label, empty without durable totals
+     * @param taskEpoch    Ownership epoch of the task, 0 without durable totals
+     * @param count        Number of activations
+     * @param durationSum  Sum of the activation durations in milliseconds
+     * @param bucketCounts Number of activations per duration bucket, or null to count all activations
+     *                     in the bucket of the mean duration
+     */
+    public void record(String namespace, String source, String userId, String action, int statusCode,
+                       String kind, String cluster, String task, int taskEpoch, long count, long durationSum,
+                       long[] bucketCounts) {
+        int[] key = probe.get();
+        key[LABEL_NAMESPACE] = symbols.intern(namespace);
+        key[LABEL_SOURCE] = symbols.intern(source);
+        key[LABEL_USER_ID] = symbols.intern(userId);
+        key[LABEL_ACTION] = symbols.intern(action);
+        key[LABEL_STATUS_CODE] = statusCode;
+        key[LABEL_KIND] = symbols.intern(kind);
+        key[LABEL_CLUSTER] = symbols.intern(cluster);
+        key[LABEL_TASK] = symbols.intern(task);
+        key[KEY_TASK_EPOCH] = taskEpoch;
+
+        int slot = series.slotOf(key);
+        StripedLongTable.Stripe stripe = values.stripe();
+        stripe.add(slot, FIELD_DURATION_SUM, durationSum);
+
+        if (bucketCounts == null) {
+            long duration = count == 1 ? durationSum : durationSum / Math.max(count, 1);
+            stripe.add(slot, FIELD_FIRST_BUCKET + durationBuckets.indexOf(duration), count);
+        } else {
+            for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+                if (bucketCounts[bucket] != 0) {
+                    stripe.add(slot, FIELD_FIRST_BUCKET + bucket, bucketCounts[bucket]);
+                }
+            }
+        }
+        // The count is written last: a reader which sees a count also sees the other fields at least as fresh
+        stripe.add(slot, FIELD_COUNT, count);
+    }
+
+    /**
+     * Retires the series of a task's ownership epoch
+     *
+     * @param taskEpoch Revoked epoch
+     */
+    public void retire(int taskEpoch) {
+        retiredEpochs.add(taskEpoch);
+    }
+
+    /**
+     * Checks whether a series belongs to a revoked ownership epoch and is not exported any more
+     *
+     * @param slot Series slot
+     * @return True if the series is retired
+     */
+    public boolean isRetired(int slot) {
+        int epoch = series.key(slot, KEY_TASK_EPOCH);
+        return epoch != 0 && retiredEpochs.contains(epoch);
+    }
+
+    /**
+     * Gets the duration histogram buckets
+     *
+     * @return Duration buckets
+     */
+    public DurationBuckets getDurationBuckets() {
+        return durationBuckets;
+    }
+
+    /**
+     * Gets the number of series. Series occupy the slots from 0 to size - 1.
+     *
+     * @return Number of series
+     */
+    public int size() {
+        return series.size();
+    }
+
+    /**
+     * Gets a label value of a series
+     *
+     * @param slot  Series slot
+     * @param label Label index, one of the LABEL_ constants
+     * @return Label value
+     */
+    public String label(int slot, int label) {
+        int id = series.key(slot, label);
+        return label == LABEL_STATUS_CODE ? String.valueOf(id) : symbols.symbol(id);
+    }
+
+    /**
+     * Gets the number of activations of a series. The other fields of the series read afterwards include at
+     * least the activations counted.
+     *
+     * @param slot Series slot
+     * @return Number of activations
+     */
+    public long count(int slot) {
+        return values.sum(slot, FIELD_COUNT);
+    }
+
+    /**
+     * Gets the sum of the activation durations of a series
+     *
+     * @param slot Series slot
+     * @return Duration sum in milliseconds
+     */
+    public long durationSum(int slot) {
+        return values.sum(slot, FIELD_DURATION_SUM);
+    }
+
+    /**
+     * Gets the number of activations in a duration bucket of a series
+     *
+     * @param slot   Series slot
+     * @param bucket Bucket index
+     * @return Number of activations in the bucket, not cumulative
+     */
+    public long bucketCount(int slot, int bucket) {
+        return values.sum(slot, FIELD_FIRST_BUCKET + bucket);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Limits the number of actions per namespace which get their own series at a time.
+ * <p>
+ * Every namespace has a budget of actions which get their own series. All activations are counted in a
+ * Space-Saving sketch and an action is admitted to the budget only if it is a heavy hitter, i.e. its guaranteed
+ * frequency is at least 1 / budget of the namespace's activations, and the namespace saw a minimum number of
+ * activations. Activations of all other actions are folded into the {@link #OTHER_ACTION} series.
+ * <p>
+ * Every evaluation interval the admitted actions are replaced by the current top actions of the sketch. Admitted
+ * actions stay while their frequency is at least half the admission threshold, so they do not flap, and are
+ * evicted otherwise. The sketch is decayed after every evaluation, so an action which becomes heavy later
+ * displaces one which was heavy before. The series of an evicted action keeps its last value, so the number of
+ * series of a namespace grows with the actions ever admitted, while the hysteresis keeps that churn slow.
+ * <p>
+ * Activations of admitted actions, usually the bulk of them, only add to a per-action adder and do not lock the
+ * namespace. Their counts are offered to the sketch at the next evaluation. Activations of other actions update
+ * the sketch under the namespace's lock, which also evaluates the budget when it is due.
+ * <p>
+ * The guard exposes the number of folded activations and an estimate of the number of folded actions.
+ */
+public class CardinalityGuard extends Collector {
+
+    public static final String OTHER_ACTION = "__other__";
+
+    private static final int SKETCH_CAPACITY_FACTOR = 2;
+    private static final int EVICTION_RATIO = 2;
+
+    private final int budget;
+    private final long evaluationIntervalNanos;
+    private final long minActivations;
+    private final ConcurrentMap<String, NamespaceBudget> namespaces = new ConcurrentHashMap<>();
+
+    /**
+     * CardinalityGuard with a budget of action series per namespace
+     *
+     * @param budget Maximum number of action series per namespace
+     */
+    public CardinalityGuard(int budget) {
+        this(budget, CARDINALITY_GUARD_EVALUATION_MILLIS, CARDINALITY_GUARD_MIN_ACTIVATIONS);
+    }
+
+    /**
+     * CardinalityGuard with a budget of action series per namespace, re-evaluated periodically
+     *
+     * @param budget                   Maximum number of action series per namespace
+     * @param evaluationIntervalMillis Time between two evaluations of the admitted actions of a namespace
+     * @param minActivations           Activations a namespace should have seen before actions are admitted
+     */
+    public CardinalityGuard(int budget, long evaluationIntervalMillis, long minActivations) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Action budget should be positive");
+        }
+
+        if (evaluationIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Evaluation interval should be positive");
+        }
+
+        if (minActivations < 0) {
+            throw new IllegalArgumentException("Minimum activations should not be negative");
+        }
+        this.budget = budget;
+        this.evaluationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(evaluationIntervalMillis);
+        this.minActivations = minActivations;
+    }
+
+    /**
+     * Gets the action label to record activations of an action with
+     *
+     * @param namespace Namespace
+     * @param action    Action name
+     * @param count     Number of activations
+     * @return The action itself if it has its own series, {@link #OTHER_ACTION} otherwise
+     */
+    public String resolve(String namespace, String action, long count) {
+        NamespaceBudget namespaceBudget = namespaces.get(namespace == null ? "" : namespace);
+        if (namespaceBudget == null) {
+            namespaceBudget = namespaces.computeIfAbsent(namespace == null ? "" : namespace,
+                    key -> new NamespaceBudget());
+        }
+        return namespaceBudget.resolve(action == null ? "" : action, count);
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<String> labelNames = Collections.singletonList(NAMESPACE);
+        List<MetricFamilySamples.Sample> foldedActivations = new ArrayList<>();
+        List<MetricFamilySamples.Sample> foldedActions = new ArrayList<>();
+
+        namespaces.forEach((namespace, namespaceBudget) -> {
+            List<String> labelValues = Collections.singletonList(namespace);
+            synchronized (namespaceBudget) {
+                foldedActivations.add(new MetricFamilySamples.Sample(FOLDED_ACTIVATIONS_TOTAL_COUNTER,
+                        labelNames, labelValues, namespaceBudget.foldedActivations));
+                foldedActions.add(new MetricFamilySamples.Sample(FOLDED_ACTIONS_GAUGE,
+                        labelNames, labelValues, namespaceBudget.estimateFoldedActions()));
+            }
+        });
+
+        List<MetricFamilySamples> families = new ArrayList<>(2);
+        families.add(new MetricFamilySamples(FOLDED_ACTIVATIONS_TOTAL_COUNTER, Type.COUNTER,
+                "Activations folded into the " + OTHER_ACTION + " action series", foldedActivations));
+        families.add(new MetricFamilySamples(FOLDED_ACTIONS_GAUGE, Type.GAUGE,
+                "Estimated number of actions folded into the " + OTHER_ACTION + " action series", foldedActions));
+        return families;
+    }
+
+    /**
+     * Admitted actions and heavy hitter state of a namespace
+     */
+    private class NamespaceBudget {
+
+        private static final int FOLDED_REGISTERS = 256;
+
+        private final ConcurrentMap<String, AdmittedAction> admitted = new ConcurrentHashMap<>();
+        private final LongAdder admittedActivations = new LongAdder();
+        private final SpaceSavingSketch sketch = new SpaceSavingSketch(budget * SKETCH_CAPACITY_FACTOR);
+        private final byte[] foldedRegisters = new byte[FOLDED_REGISTERS];
+        private long offeredAdmittedActivations;
+        private long foldedActivations;
+        private long nextEvaluationNanos = System.nanoTime() + evaluationIntervalNanos;
+
+        String resolve(String action, long count) {
+            AdmittedAction admittedAction = admitted.get(action);
+            if (admittedAction != null) {
+                admittedAction.activations.add(count);
+                admittedActivations.add(count);
+                return action;
+            }
+            return admitOrFold(action, count);
+        }
+
+        private synchronized String admitOrFold(String action, long count) {
+            long now = System.nanoTime();
+            if (now - nextEvaluationNanos >= 0) {
+                evaluate();
+                nextEvaluationNanos = now + evaluationIntervalNanos;
+            }
+
+            AdmittedAction admittedAction = admitted.get(action);
+            if (admittedAction != null) {
+                admittedAction.activations.add(count);
+                admittedActivations.add(count);
+                return action;
+            }
+            long frequency = sketch.offer(action, count);
+            if (admitted.size() < budget && isHeavyHitter(frequency, 1)) {
+                admitted.put(action, new AdmittedAction());
+                return action;
+            }
+
+            foldedActivations += count;
+            int hash = mix(action.hashCode());
+            int register = hash >>> 24;
+            byte rank = (byte) Math.min(Integer.numberOfLeadingZeros(hash << 8) + 1, 25);
+            if (rank > foldedRegisters[register]) {
+                foldedRegisters[register] = rank;
+            }
+            return OTHER_ACTION;
+        }
+
+        /**
+         * Offers the activations of the admitted actions since the last evaluation to the sketch, replaces the
+         * admitted actions with the current top actions and decays the sketch. Activations which reach an action
+         * while it is evicted are not offered.
+         */
+        private void evaluate() {
+            long admittedTotal = admittedActivations.sum();
+            for (Map.Entry<String, AdmittedAction> entry : admitted.entrySet()) {
+                long offered = entry.getValue().offer();
+                if (offered != 0) {
+                    sketch.offer(entry.getKey(), offered);
+                }
+            }
+            offeredAdmittedActivations = admittedTotal;
+
+            Set<String> top = new HashSet<>();
+            for (Map.Entry<String, Long> entry : sketch.guaranteedCounts().entrySet()) {
+                if (top.size() == budget) {
+                    break;
+                }
+                String action = entry.getKey();
+                if (isHeavyHitter(entry.getValue(), admitted.containsKey(action) ? EVICTION_RATIO : 1)) {
+                    top.add(action);
+                }
+            }
+            admitted.keySet().retainAll(top);
+            for (String action : top) {
+                admitted.computeIfAbsent(action, key -> new AdmittedAction());
+            }
+            sketch.decay();
+        }
+
+        /**
+         * Checks whether a frequency is at least the given fraction of the admission threshold. The total includes
+         * the activations of admitted actions which were not offered to the sketch yet.
+         */
+        private boolean isHeavyHitter(long frequency, int ratio) {
+            long total = sketch.total() + admittedActivations.sum() - offeredAdmittedActivations;
+            return total >= minActivations && frequency * budget * ratio >= total;
+        }
+
+        /**
+         * Estimates the number of distinct folded actions with HyperLogLog
+         *
+         * @return Estimated number of folded actions
+         */
+        double estimateFoldedActions() {
+            double sum = 0;
+            int zeros = 0;
+            for (byte rank : foldedRegisters) {
+                sum += 1.0 / (1L << rank);
+                if (rank == 0) {
+                    zeros++;
+                }
+            }
+
+            double alpha = 0.7213 / (1 + 1.079 / FOLDED_REGISTERS);
+            double estimate = alpha * FOLDED_REGISTERS * FOLDED_REGISTERS / sum;
+            if (estimate <= 2.5 * FOLDED_REGISTERS && zeros > 0) {
+                // Linear counting is more accurate for small cardinalities
+                return FOLDED_REGISTERS * Math.log((double) FOLDED_REGISTERS / zeros);
+            }
+            return estimate;
+        }
+
+        /**
+         * Activations of an admitted action, counted without locking the namespace
+         */
+        private class AdmittedAction {
+
+            private final LongAdder activations = new LongAdder();
+            private long offered;
+
+            /**
+             * Takes the activations since the last offer. Only called under the namespace's lock.
+             *
+             * @return Number of activations not offered to the sketch yet
+             */
+            long offer() {
+                long total = activations.sum();
+                long delta = total - offered;
+                offered = total;
+                return delta;
+            }
+        }
+
+        private int mix(int hash) {
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            hash *= 0xc2b2ae35;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.wso2.serverless.stats.Constants.CLUSTER;
+
+/**
+ * Appends the cluster label of the event source to label tuples. The default source has an empty cluster label,
+ * which is left out, so an exporter reading a single cluster keeps exposing the same series.
+ */
+final class ClusterLabels {
+
+    private ClusterLabels() {
+    }
+
+    /**
+     * Appends the cluster label name
+     *
+     * @param names Label names
+     * @return Label names followed by the cluster label name
+     */
+    static List<String> withCluster(List<String> names) {
+        List<String> withCluster = new ArrayList<>(names.size() + 1);
+        withCluster.addAll(names);
+        withCluster.add(CLUSTER);
+        return Collections.unmodifiableList(withCluster);
+    }
+
+    /**
+     * Selects the label names of a cluster
+     *
+     * @param cluster      Cluster label
+     * @param names        Label names without the cluster
+     * @param clusterNames Label names followed by the cluster
+     * @return Label names for the cluster
+     */
+    static List<String> names(String cluster, List<String> names, List<String> clusterNames) {
+        return cluster.isEmpty() ? names : clusterNames;
+    }
+
+    /**
+     * Builds the label values of a cluster
+     *
+     * @param cluster Cluster label
+     * @param values  Label values without the cluster
+     * @return Label values, followed by the cluster unless it is empty
+     */
+    static List<String> values(String cluster, String... values) {
+        if (cluster.isEmpty()) {
+            return Arrays.asList(values);
+        }
+        String[] withCluster = Arrays.copyOf(values, values.length + 1);
+        withCluster[values.length] = cluster;
+        return Arrays.asList(withCluster);
+    }
+}
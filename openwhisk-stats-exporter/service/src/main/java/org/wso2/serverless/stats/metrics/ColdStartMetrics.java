@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Records cold starts and the wait and init time distributions of activations per namespace, action and kind.
+ * <p>
+ * Uses the same symbol table, series index and per-thread value tables as {@link ActivationMetricsStore}.
+ * The label tuple leaves out source, user and status code, which do not influence how an action starts.
+ * Like the activation counters, the series of durable totals carry the task and task epoch they were read by,
+ * and the series of a revoked epoch are retired.
+ */
+public class ColdStartMetrics extends Collector {
+
+    private static final List<String> LABEL_NAMES = Arrays.asList(NAMESPACE, ACTION, KIND, CLUSTER, TASK);
+    private static final int LABEL_NAMESPACE = 0;
+    private static final int LABEL_ACTION = 1;
+    private static final int LABEL_KIND = 2;
+    private static final int LABEL_CLUSTER = 3;
+    private static final int LABEL_TASK = 4;
+    private static final int LABEL_COUNT = 5;
+    private static final int KEY_TASK_EPOCH = LABEL_COUNT;
+    private static final int KEY_LENGTH = LABEL_COUNT + 1;
+
+    private static final int FIELD_COLD_STARTS = 0;
+    private static final int FIELD_WAIT_TIME_SUM = 1;
+    private static final int FIELD_INIT_TIME_SUM = 2;
+    private static final int FIELD_FIRST_WAIT_TIME_BUCKET = 3;
+
+    private final DurationBuckets buckets;
+    private final int firstInitTimeBucket;
+    private final SymbolTable symbols = new SymbolTable();
+    private final SeriesIndex series = new SeriesIndex(KEY_LENGTH);
+    private final StripedLongTable values;
+    private final ThreadLocal<int[]> probe = ThreadLocal.withInitial(() -> new int[KEY_LENGTH]);
+    private final Set<Integer> retiredEpochs = ConcurrentHashMap.newKeySet();
+
+    /**
+     * ColdStartMetrics recording wait and init time histograms with the given buckets
+     *
+     * @param buckets Histogram buckets in milliseconds
+     */
+    public ColdStartMetrics(DurationBuckets buckets) {
+        if (buckets == null) {
+            throw new IllegalArgumentException("Buckets are required");
+        }
+        this.buckets = buckets;
+        this.firstInitTimeBucket = FIELD_FIRST_WAIT_TIME_BUCKET + buckets.size();
+        this.values = new StripedLongTable(firstInitTimeBucket + buckets.size());
+    }
+
+    /**
+     * Records the start of activations
+     *
+     * @param namespace       Namespace
+     * @param action          Action name
+     * @param kind            Action kind
+     * @param cluster         Cluster label of the event source, empty for the default source
+     * @param task            Task which read the activations, empty without durable totals
+     * @param taskEpoch       Ownership epoch of the task, 0 without durable totals
+     * @param count           Number of activations
+     * @param waitTimeSum     Sum of the wait times in milliseconds
+     * @param coldStarts      Number of activations which were cold starts
+     * @param initTimeSum     Sum of the init times of the cold starts in milliseconds
+     * @param waitTimeBuckets Number of activations per wait time bucket, or null to use the mean wait time
+     * @param initTimeBuckets Number of cold starts per init time bucket, or null to use the mean init time
+     */
+    public void record(String namespace, String action, String kind, String cluster, String task, int taskEpoch,
+                       long count, long waitTimeSum, long coldStarts, long initTimeSum, long[] waitTimeBuckets,
+                       long[] initTimeBuckets) {
+        int[] key = probe.get();
+        key[LABEL_NAMESPACE] = symbols.intern(namespace);
+        key[LABEL_ACTION] = symbols.intern(action);
+        key[LABEL_KIND] = symbols.intern(kind);
+        key[LABEL_CLUSTER] = symbols.intern(cluster);
+        key[LABEL_TASK] = symbols.intern(task);
+        key[KEY_TASK_EPOCH] = taskEpoch;
+
+        int slot = series.slotOf(key);
+        StripedLongTable.Stripe stripe = values.stripe();
+        stripe.add(slot, FIELD_WAIT_TIME_SUM, waitTimeSum);
+        addToBuckets(stripe, slot, FIELD_FIRST_WAIT_TIME_BUCKET, count, waitTimeSum, waitTimeBuckets);
+
+        if (coldStarts != 0) {
+            stripe.add(slot, FIELD_COLD_STARTS, coldStarts);
+            stripe.add(slot, FIELD_INIT_TIME_SUM, initTimeSum);
+            addToBuckets(stripe, slot, firstInitTimeBucket, coldStarts, initTimeSum, initTimeBuckets);
+        }
+    }
+
+    private void addToBuckets(StripedLongTable.Stripe stripe, int slot, int firstBucket, long count, long sum,
+                              long[] bucketCounts) {
+        if (bucketCounts == null) {
+            long value = count == 1 ? sum : sum / Math.max(count, 1);
+            stripe.add(slot, firstBucket + buckets.indexOf(value), count);
+            return;
+        }
+        for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+            if (bucketCounts[bucket] != 0) {
+                stripe.add(slot, firstBucket + bucket, bucketCounts[bucket]);
+            }
+        }
+    }
+
+    /**
+     * Retires the series of a task epoch, so they are no longer exposed
+     *
+     * @param taskEpoch Ownership epoch of a revoked task
+     */
+    public void retire(int taskEpoch) {
+        retiredEpochs.add(taskEpoch);
+    }
+
+    /**
+     * Gets the number of series
+     *
+     * @return Number of series
+     */
+    public int size() {
+        return series.size();
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        int size = series.size();
+        List<MetricFamilySamples.Sample> coldStarts = new ArrayList<>(size);
+        List<MetricFamilySamples.Sample> waitTimes = new ArrayList<>(size * (buckets.size() + 2));
+        List<MetricFamilySamples.Sample> initTimes = new ArrayList<>(size * (buckets.size() + 2));
+
+        for (int slot = 0; slot < size; slot++) {
+            int epoch = series.key(slot, KEY_TASK_EPOCH);
+            if (epoch != 0 && retiredEpochs.contains(epoch)) {
+                continue;
+            }
+            List<String> labelNames = new ArrayList<>(LABEL_COUNT);
+            List<String> labelValues = new ArrayList<>(LABEL_COUNT);
+            for (int label = 0; label < LABEL_COUNT; label++) {
+                String value = symbols.symbol(series.key(slot, label));
+                if (label < LABEL_CLUSTER || !value.isEmpty()) {
+                    labelNames.add(LABEL_NAMES.get(label));
+                    labelValues.add(value);
+                }
+            }
+            int index = slot;
+
+            coldStarts.add(new MetricFamilySamples.Sample(ACTIVATION_COLD_STARTS_COUNTER, labelNames, labelValues,
+                    values.sum(slot, FIELD_COLD_STARTS)));
+            HistogramSamples.add(waitTimes, ACTIVATION_WAIT_TIME_HISTOGRAM, buckets, labelNames, labelValues,
+                    bucket -> values.sum(index, FIELD_FIRST_WAIT_TIME_BUCKET + bucket),
+                    values.sum(slot, FIELD_WAIT_TIME_SUM));
+            HistogramSamples.add(initTimes, ACTIVATION_INIT_TIME_HISTOGRAM, buckets, labelNames, labelValues,
+                    bucket -> values.sum(index, firstInitTimeBucket + bucket),
+                    values.sum(slot, FIELD_INIT_TIME_SUM));
+        }
+
+        List<MetricFamilySamples> families = new ArrayList<>(3);
+        families.add(new MetricFamilySamples(ACTIVATION_COLD_STARTS_COUNTER, Type.COUNTER,
+                "Activations which had to initialize a container", coldStarts));
+        families.add(new MetricFamilySamples(ACTIVATION_WAIT_TIME_HISTOGRAM, Type.HISTOGRAM,
+                "Activation Wait Time Histogram in milliseconds", waitTimes));
+        families.add(new MetricFamilySamples(ACTIVATION_INIT_TIME_HISTOGRAM, Type.HISTOGRAM,
+                "Cold Start Init Time Histogram in milliseconds", initTimes));
+        return families;
+    }
+}
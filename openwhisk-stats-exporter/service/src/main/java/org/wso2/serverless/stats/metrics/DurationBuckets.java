@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector;
+
+import java.util.Arrays;
+
+/**
+ * Upper bounds of the activation duration histogram buckets.
+ * The last bucket has no upper bound and catches all larger durations.
+ */
+public class DurationBuckets {
+
+    private static final String INFINITY_LABEL = "+Inf";
+
+    private final long[] upperBounds;
+    private final String[] labels;
+
+    /**
+     * DurationBuckets with the given upper bounds
+     *
+     * @param upperBounds Strictly increasing upper bounds in milliseconds
+     */
+    public DurationBuckets(long... upperBounds) {
+        if (upperBounds == null || upperBounds.length == 0) {
+            throw new IllegalArgumentException("At least one bucket bound is required");
+        }
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("Bucket bounds should be strictly increasing");
+            }
+        }
+
+        this.upperBounds = upperBounds.clone();
+        this.labels = new String[upperBounds.length + 1];
+        for (int i = 0; i < upperBounds.length; i++) {
+            labels[i] = Collector.doubleToGoString(upperBounds[i]);
+        }
+        labels[upperBounds.length] = INFINITY_LABEL;
+    }
+
+    /**
+     * Parses comma separated bucket bounds
+     *
+     * @param upperBounds Comma separated upper bounds in milliseconds
+     * @return Duration buckets
+     */
+    public static DurationBuckets parse(String upperBounds) {
+        if (upperBounds == null) {
+            throw new IllegalArgumentException("Bucket bounds are required");
+        }
+        try {
+            return new DurationBuckets(Arrays.stream(upperBounds.split(","))
+                    .map(String::trim)
+                    .mapToLong(Long::parseLong)
+                    .toArray());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid bucket bounds: " + upperBounds, e);
+        }
+    }
+
+    /**
+     * Gets the bucket of a duration
+     *
+     * @param duration Duration in milliseconds
+     * @return Index of the first bucket whose upper bound is not less than the duration
+     */
+    public int indexOf(long duration) {
+        int low = 0;
+        int high = upperBounds.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (upperBounds[middle] < duration) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Gets the number of buckets including the unbounded one
+     *
+     * @return Number of buckets
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * Gets the "le" label value of a bucket
+     *
+     * @param index Bucket index
+     * @return Upper bound label
+     */
+    public String label(int index) {
+        return labels[index];
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector.MetricFamilySamples.Sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntToLongFunction;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Renders histogram bucket counts as Prometheus histogram samples
+ */
+final class HistogramSamples {
+
+    private HistogramSamples() {
+    }
+
+    /**
+     * Adds the cumulative bucket, count and sum samples of a histogram series
+     *
+     * @param samples      Samples to add to
+     * @param name         Histogram name
+     * @param buckets      Histogram buckets
+     * @param labelNames   Label names of the series
+     * @param labelValues  Label values of the series
+     * @param bucketCounts Gets the non cumulative count of a bucket
+     * @param sum          Sum of the observed values
+     */
+    static void add(List<Sample> samples, String name, DurationBuckets buckets, List<String> labelNames,
+                    List<String> labelValues, IntToLongFunction bucketCounts, long sum) {
+        List<String> bucketLabelNames = new ArrayList<>(labelNames);
+        bucketLabelNames.add(LE);
+
+        long cumulative = 0;
+        for (int bucket = 0; bucket < buckets.size(); bucket++) {
+            cumulative += bucketCounts.applyAsLong(bucket);
+            List<String> bucketLabelValues = new ArrayList<>(labelValues);
+            bucketLabelValues.add(buckets.label(bucket));
+            samples.add(new Sample(name + BUCKET_SUFFIX, bucketLabelNames, bucketLabelValues, cumulative));
+        }
+        // The count is taken from the buckets so that it matches the +Inf bucket of this scrape
+        samples.add(new Sample(name + COUNT_SUFFIX, labelNames, labelValues, cumulative));
+        samples.add(new Sample(name + SUM_SUFFIX, labelNames, labelValues, sum));
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Records the OpenWhisk Metric events of namespaces.
+ * <p>
+ * {@link org.wso2.serverless.stats.Constants#METRIC_CONCURRENT_ACTIVATIONS} is exposed as a gauge of the last
+ * reported value. The rate limit metrics are counted per limit, any other metric is summed up per metric name.
+ */
+public class NamespaceMetrics extends Collector {
+
+    private static final List<String> NAMESPACE_LABEL_NAMES = Collections.singletonList(NAMESPACE);
+    private static final List<String> LIMIT_LABEL_NAMES = Arrays.asList(NAMESPACE, LIMIT);
+    private static final List<String> METRIC_LABEL_NAMES = Arrays.asList(NAMESPACE, METRIC);
+    private static final List<String> CLUSTER_NAMESPACE_LABEL_NAMES = ClusterLabels.withCluster(NAMESPACE_LABEL_NAMES);
+    private static final List<String> CLUSTER_LIMIT_LABEL_NAMES = ClusterLabels.withCluster(LIMIT_LABEL_NAMES);
+    private static final List<String> CLUSTER_METRIC_LABEL_NAMES = ClusterLabels.withCluster(METRIC_LABEL_NAMES);
+
+    private static final int LABEL_NAMESPACE = 0;
+    private static final int LABEL_METRIC = 1;
+    private static final int LABEL_CLUSTER = 2;
+    private static final int LABEL_COUNT = 3;
+
+    private static final int FIELD_VALUE_SUM = 0;
+    private static final int FIELDS = 1;
+
+    private static final int SEGMENT_SHIFT = 6;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final SeriesIndex series = new SeriesIndex(LABEL_COUNT);
+    private final StripedLongTable values = new StripedLongTable(FIELDS);
+    private final ThreadLocal<int[]> probe = ThreadLocal.withInitial(() -> new int[LABEL_COUNT]);
+    private volatile AtomicLongArray[] lastValues = new AtomicLongArray[0];
+
+    /**
+     * Records a Metric event
+     *
+     * @param namespace   Namespace
+     * @param metricName  Metric name
+     * @param metricValue Metric value
+     * @param cluster     Cluster label of the event source, empty for the default source
+     */
+    public void record(String namespace, String metricName, long metricValue, String cluster) {
+        int[] key = probe.get();
+        key[LABEL_NAMESPACE] = symbols.intern(namespace);
+        key[LABEL_METRIC] = symbols.intern(metricName);
+        key[LABEL_CLUSTER] = symbols.intern(cluster);
+
+        int slot = series.slotOf(key);
+        values.stripe().add(slot, FIELD_VALUE_SUM, metricValue);
+        lastValues(slot).set(slot & SEGMENT_MASK, metricValue);
+    }
+
+    /**
+     * Gets the segment of last values holding a slot. Segments are never copied, so concurrent sets are not lost.
+     */
+    private AtomicLongArray lastValues(int slot) {
+        int segment = slot >>> SEGMENT_SHIFT;
+        AtomicLongArray[] current = lastValues;
+        if (segment < current.length) {
+            return current[segment];
+        }
+        synchronized (this) {
+            current = lastValues;
+            if (segment >= current.length) {
+                AtomicLongArray[] grown = Arrays.copyOf(current, segment + 1);
+                for (int i = current.length; i < grown.length; i++) {
+                    grown[i] = new AtomicLongArray(1 << SEGMENT_SHIFT);
+                }
+                lastValues = grown;
+                current = grown;
+            }
+            return current[segment];
+        }
+    }
+
+    /**
+     * Gets the number of (namespace, metric, cluster) series
+     *
+     * @return Number of series
+     */
+    public int size() {
+        return series.size();
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> concurrentActivations = new ArrayList<>();
+        List<MetricFamilySamples.Sample> rateLimited = new ArrayList<>();
+        List<MetricFamilySamples.Sample> other = new ArrayList<>();
+
+        int size = series.size();
+        for (int slot = 0; slot < size; slot++) {
+            String namespace = symbols.symbol(series.key(slot, LABEL_NAMESPACE));
+            String metricName = symbols.symbol(series.key(slot, LABEL_METRIC));
+            String cluster = symbols.symbol(series.key(slot, LABEL_CLUSTER));
+
+            switch (metricName) {
+                case METRIC_CONCURRENT_ACTIVATIONS:
+                    concurrentActivations.add(new MetricFamilySamples.Sample(CONCURRENT_ACTIVATIONS_GAUGE,
+                            ClusterLabels.names(cluster, NAMESPACE_LABEL_NAMES, CLUSTER_NAMESPACE_LABEL_NAMES),
+                            ClusterLabels.values(cluster, namespace),
+                            lastValues(slot).get(slot & SEGMENT_MASK)));
+                    break;
+
+                case METRIC_CONCURRENT_RATE_LIMIT:
+                case METRIC_TIMED_RATE_LIMIT:
+                    rateLimited.add(new MetricFamilySamples.Sample(RATE_LIMITED_ACTIVATIONS_COUNTER,
+                            ClusterLabels.names(cluster, LIMIT_LABEL_NAMES, CLUSTER_LIMIT_LABEL_NAMES),
+                            ClusterLabels.values(cluster, namespace, metricName),
+                            values.sum(slot, FIELD_VALUE_SUM)));
+                    break;
+
+                default:
+                    other.add(new MetricFamilySamples.Sample(METRIC_EVENTS_VALUE_COUNTER,
+                            ClusterLabels.names(cluster, METRIC_LABEL_NAMES, CLUSTER_METRIC_LABEL_NAMES),
+                            ClusterLabels.values(cluster, namespace, metricName),
+                            values.sum(slot, FIELD_VALUE_SUM)));
+            }
+        }
+
+        List<MetricFamilySamples> families = new ArrayList<>(3);
+        families.add(new MetricFamilySamples(CONCURRENT_ACTIVATIONS_GAUGE, Type.GAUGE,
+                "Concurrent activations of a namespace", concurrentActivations));
+        families.add(new MetricFamilySamples(RATE_LIMITED_ACTIVATIONS_COUNTER, Type.COUNTER,
+                "Activations rejected by a rate limit", rateLimited));
+        families.add(new MetricFamilySamples(METRIC_EVENTS_VALUE_COUNTER, Type.COUNTER,
+                "Sum of the values of other OpenWhisk metric events", other));
+        return families;
+    }
+}
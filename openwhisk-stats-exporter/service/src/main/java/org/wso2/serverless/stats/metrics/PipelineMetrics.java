@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.wso2.serverless.stats.PoisonReason;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Metrics of the exporter's own pipeline: consumed events, decode, listener and push latency,
+ * push failures, consumer lag, the number of series per metric and how long the exporter took to
+ * restore its state and become ready, whether it is catching up with a backlog, and whether it sheds load.
+ * <p>
+ * Counters are {@link LongAdder}s, so stream threads do not contend. Decode and listener latency are only
+ * measured for a random sample of the events, the other events do not read the clock at all.
+ * Latencies are recorded in microseconds.
+ */
+public class PipelineMetrics extends Collector {
+
+    private static final DurationBuckets LATENCY_BUCKETS = new DurationBuckets(
+            1, 5, 10, 50, 100, 500, 1000, 5000, 10000, 50000, 100000, 500000, 1000000, 5000000);
+    private static final List<String> TYPE_LABEL_NAMES = Collections.singletonList(TYPE);
+    private static final List<String> LISTENER_LABEL_NAMES = Collections.singletonList(LISTENER);
+    private static final List<String> METRIC_LABEL_NAMES = Collections.singletonList(METRIC);
+    private static final List<String> PARTITION_LABEL_NAMES = Arrays.asList(TOPIC, PARTITION);
+    private static final List<String> CLUSTER_PARTITION_LABEL_NAMES = Arrays.asList(TOPIC, PARTITION, CLUSTER);
+    private static final List<String> STORE_LABEL_NAMES = Collections.singletonList(STORE);
+    private static final List<String> MODE_LABEL_NAMES = Collections.singletonList(MODE);
+    private static final List<String> REASON_LABEL_NAMES = Collections.singletonList(REASON);
+    private static final PoisonReason[] POISON_REASONS = PoisonReason.values();
+    private static final String RECORDS_LAG = "records-lag";
+
+    private final int sampleRate;
+    private final LongAdder activations = new LongAdder();
+    private final LongAdder metrics = new LongAdder();
+    private final LongAdder unknown = new LongAdder();
+    private final LongAdder[] poisoned = new LongAdder[POISON_REASONS.length];
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> listenerLatency = new ConcurrentHashMap<>();
+    private final LatencyHistogram pushLatency = new LatencyHistogram();
+    private final LongAdder pushFailures = new LongAdder();
+    private final Map<String, IntSupplier> seriesCounts = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> restoredRecords = new ConcurrentHashMap<>();
+    private volatile long rebalanceStartNanos;
+    private volatile double readySeconds;
+    private volatile boolean catchingUp;
+    private final LongAdder catchUpSwitches = new LongAdder();
+    private final LongAdder normalSwitches = new LongAdder();
+    private volatile double catchUpRate;
+    private volatile double samplingRate = 1;
+    private final LongAdder shed = new LongAdder();
+    private final LongAdder estimated = new LongAdder();
+    private volatile long processingDelayMillis;
+    private volatile Supplier<Map<MetricName, ? extends Metric>> consumerMetrics = Collections::emptyMap;
+
+    /**
+     * PipelineMetrics timing one in sampleRate events
+     *
+     * @param sampleRate Every how many events the latency is measured
+     */
+    public PipelineMetrics(int sampleRate) {
+        if (sampleRate <= 0) {
+            throw new IllegalArgumentException("Sample rate should be positive");
+        }
+        this.sampleRate = sampleRate;
+        for (int reason = 0; reason < poisoned.length; reason++) {
+            poisoned[reason] = new LongAdder();
+        }
+    }
+
+    /**
+     * Starts timing if the current event is sampled
+     *
+     * @return Start time in nanoseconds, or 0 if the event is not sampled
+     */
+    public long startTimer() {
+        if (ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a decoded event
+     *
+     * @param eventType Event type, or null if the type is missing
+     * @param start     Value returned by {@link #startTimer()}
+     */
+    public void decoded(String eventType, long start) {
+        if (EVENT_TYPE_ACTIVATION.equals(eventType)) {
+            activations.increment();
+        } else if (EVENT_TYPE_METRIC.equals(eventType)) {
+            metrics.increment();
+        } else {
+            unknown.increment();
+        }
+
+        if (start != 0) {
+            decodeLatency.observe(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records a record which could not be decoded or did not hold a valid event
+     *
+     * @param reason Reason the record was rejected
+     */
+    public void poisoned(PoisonReason reason) {
+        poisoned[reason.ordinal()].increment();
+    }
+
+    /**
+     * Records the time a listener took to handle a sampled event
+     *
+     * @param listener Listener name
+     * @param start    Value returned by {@link #startTimer()}, must not be 0
+     */
+    public void listened(String listener, long start) {
+        long nanos = System.nanoTime() - start;
+        listenerLatency.computeIfAbsent(listener, name -> new LatencyHistogram()).observe(nanos);
+    }
+
+    /**
+     * Records a push to the Pushgateway
+     *
+     * @param nanos   Time the push took
+     * @param success Whether the push succeeded
+     */
+    public void pushed(long nanos, boolean success) {
+        pushLatency.observe(nanos);
+        if (!success) {
+            pushFailures.increment();
+        }
+    }
+
+    /**
+     * Records state store records restored from a changelog
+     *
+     * @param store   Store name
+     * @param records Number of restored records
+     */
+    public void restored(String store, long records) {
+        restoredRecords.computeIfAbsent(store, name -> new LongAdder()).add(records);
+    }
+
+    /**
+     * Records that the streams started or rebalance, which includes restoring state
+     */
+    public void rebalancing() {
+        rebalanceStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Records that the streams are processing again after starting or rebalancing
+     */
+    public void running() {
+        long start = rebalanceStartNanos;
+        if (start != 0) {
+            readySeconds = (System.nanoTime() - start) / 1e9;
+            rebalanceStartNanos = 0;
+        }
+    }
+
+    /**
+     * Records a switch between catch-up and normal mode
+     *
+     * @param catchingUp True if the exporter switched to catch-up mode
+     */
+    public void modeSwitched(boolean catchingUp) {
+        this.catchingUp = catchingUp;
+        (catchingUp ? catchUpSwitches : normalSwitches).increment();
+        if (!catchingUp) {
+            catchUpRate = 0;
+        }
+    }
+
+    /**
+     * Sets the rate at which records are consumed while catching up
+     *
+     * @param recordsPerSecond Consumed records per second
+     */
+    public void setCatchUpRate(double recordsPerSecond) {
+        this.catchUpRate = recordsPerSecond;
+    }
+
+    /**
+     * Sets the fraction of the activations which are kept while the exporter sheds load
+     *
+     * @param samplingRate Sampling rate, 1 if all activations are kept
+     */
+    public void setSamplingRate(double samplingRate) {
+        this.samplingRate = samplingRate;
+    }
+
+    /**
+     * Records an activation which was dropped because the exporter sheds load
+     */
+    public void shed() {
+        shed.increment();
+    }
+
+    /**
+     * Records the activations a kept activation is counted for in addition to itself while the exporter
+     * sheds load
+     *
+     * @param activations Estimated activations
+     */
+    public void estimated(long activations) {
+        estimated.add(activations);
+    }
+
+    /**
+     * Sets how long after they were produced the events were processed in the last check interval
+     *
+     * @param processingDelayMillis Largest sampled delay in milliseconds
+     */
+    public void setProcessingDelay(long processingDelayMillis) {
+        this.processingDelayMillis = processingDelayMillis;
+    }
+
+    /**
+     * Gets the number of consumed records of all types
+     *
+     * @return Consumed records
+     */
+    public long consumed() {
+        return activations.sum() + metrics.sum() + unknown.sum() + poisonedTotal();
+    }
+
+    /**
+     * Gets the consumer lag summed over all assigned partitions
+     *
+     * @return Records behind the end of the partitions, 0 before the first fetch
+     */
+    public long totalLag() {
+        long total = 0;
+        for (Map.Entry<MetricName, ? extends Metric> entry : consumerMetrics.get().entrySet()) {
+            double lag = partitionLag(entry.getKey(), entry.getValue());
+            if (!Double.isNaN(lag)) {
+                total += (long) lag;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Reads the lag of a partition from a Kafka client metric
+     *
+     * @return Lag, or NaN if the metric is not a known partition lag
+     */
+    private static double partitionLag(MetricName name, Metric metric) {
+        if (!RECORDS_LAG.equals(name.name()) || !name.tags().containsKey(PARTITION)) {
+            return Double.NaN;
+        }
+        Object value = metric.metricValue();
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    /**
+     * Exposes the number of series of a metric
+     *
+     * @param metric Metric name
+     * @param size   Gets the current number of series
+     */
+    public void addSeriesCount(String metric, IntSupplier size) {
+        seriesCounts.put(metric, size);
+    }
+
+    /**
+     * Sets where the per-partition consumer lag is read from
+     *
+     * @param consumerMetrics Gets the Kafka client metrics
+     */
+    public void setConsumerMetrics(Supplier<Map<MetricName, ? extends Metric>> consumerMetrics) {
+        this.consumerMetrics = consumerMetrics;
+    }
+
+    private long poisonedTotal() {
+        long total = 0;
+        for (LongAdder adder : poisoned) {
+            total += adder.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples> families = new ArrayList<>(8);
+
+        List<MetricFamilySamples.Sample> consumed = new ArrayList<>(4);
+        consumed.add(typeSample(EVENT_TYPE_ACTIVATION, activations));
+        consumed.add(typeSample(EVENT_TYPE_METRIC, metrics));
+        consumed.add(typeSample(UNKNOWN, unknown));
+        consumed.add(new MetricFamilySamples.Sample(EXPORTER_EVENTS_CONSUMED_COUNTER, TYPE_LABEL_NAMES,
+                Collections.singletonList(MALFORMED), poisonedTotal()));
+        families.add(new MetricFamilySamples(EXPORTER_EVENTS_CONSUMED_COUNTER, Type.COUNTER,
+                "Records consumed from Kafka per event type", consumed));
+
+        List<MetricFamilySamples.Sample> poison = new ArrayList<>(POISON_REASONS.length);
+        for (PoisonReason reason : POISON_REASONS) {
+            poison.add(new MetricFamilySamples.Sample(EXPORTER_POISON_RECORDS_COUNTER, REASON_LABEL_NAMES,
+                    Collections.singletonList(reason.label()), poisoned[reason.ordinal()].sum()));
+        }
+        families.add(new MetricFamilySamples(EXPORTER_POISON_RECORDS_COUNTER, Type.COUNTER,
+                "Records skipped because they could not be decoded or did not hold a valid event", poison));
+
+        families.add(histogram(EXPORTER_DECODE_LATENCY_HISTOGRAM, "Sampled time to decode a record in microseconds",
+                Collections.emptyList(), Collections.singletonMap(Collections.emptyList(), decodeLatency)));
+
+        Map<List<String>, LatencyHistogram> listeners = new LinkedHashMap<>();
+        listenerLatency.forEach((name, histogram) -> listeners.put(Collections.singletonList(name), histogram));
+        families.add(histogram(EXPORTER_LISTENER_LATENCY_HISTOGRAM,
+                "Sampled time a listener takes to handle an event in microseconds", LISTENER_LABEL_NAMES, listeners));
+
+        families.add(histogram(EXPORTER_PUSH_LATENCY_HISTOGRAM, "Time to push to the Pushgateway in microseconds",
+                Collections.emptyList(), Collections.singletonMap(Collections.emptyList(), pushLatency)));
+        families.add(new MetricFamilySamples(EXPORTER_PUSH_FAILURES_COUNTER, Type.COUNTER,
+                "Failed pushes to the Pushgateway", Collections.singletonList(new MetricFamilySamples.Sample(
+                EXPORTER_PUSH_FAILURES_COUNTER, Collections.emptyList(), Collections.emptyList(),
+                pushFailures.sum()))));
+
+        List<MetricFamilySamples.Sample> lags = new ArrayList<>();
+        for (Map.Entry<MetricName, ? extends Metric> entry : consumerMetrics.get().entrySet()) {
+            double lag = partitionLag(entry.getKey(), entry.getValue());
+            if (!Double.isNaN(lag)) {
+                Map<String, String> tags = entry.getKey().tags();
+                String cluster = tags.get(CLUSTER);
+                lags.add(cluster == null
+                        ? new MetricFamilySamples.Sample(EXPORTER_CONSUMER_LAG_GAUGE, PARTITION_LABEL_NAMES,
+                                Arrays.asList(tags.get(TOPIC), tags.get(PARTITION)), lag)
+                        : new MetricFamilySamples.Sample(EXPORTER_CONSUMER_LAG_GAUGE, CLUSTER_PARTITION_LABEL_NAMES,
+                                Arrays.asList(tags.get(TOPIC), tags.get(PARTITION), cluster), lag));
+            }
+        }
+        families.add(new MetricFamilySamples(EXPORTER_CONSUMER_LAG_GAUGE, Type.GAUGE,
+                "Records behind the end of a partition", lags));
+
+        List<MetricFamilySamples.Sample> series = new ArrayList<>(seriesCounts.size());
+        seriesCounts.forEach((metric, size) -> series.add(new MetricFamilySamples.Sample(EXPORTER_SERIES_GAUGE,
+                METRIC_LABEL_NAMES, Collections.singletonList(metric), size.getAsInt())));
+        families.add(new MetricFamilySamples(EXPORTER_SERIES_GAUGE, Type.GAUGE,
+                "Series exported per metric", series));
+
+        List<MetricFamilySamples.Sample> restored = new ArrayList<>(restoredRecords.size());
+        restoredRecords.forEach((store, records) -> restored.add(new MetricFamilySamples.Sample(
+                EXPORTER_RESTORED_RECORDS_COUNTER, STORE_LABEL_NAMES, Collections.singletonList(store),
+                records.sum())));
+        families.add(new MetricFamilySamples(EXPORTER_RESTORED_RECORDS_COUNTER, Type.COUNTER,
+                "State store records restored from changelogs", restored));
+        families.add(gauge(EXPORTER_READY_TIME_GAUGE,
+                "Seconds from the last start or rebalance, including restoring state, until events were processed",
+                readySeconds));
+
+        families.add(gauge(EXPORTER_CATCH_UP_GAUGE, "1 while the exporter catches up with a backlog, 0 otherwise",
+                catchingUp ? 1 : 0));
+        families.add(new MetricFamilySamples(EXPORTER_MODE_SWITCHES_COUNTER, Type.COUNTER,
+                "Switches into catch-up and back into normal mode", Arrays.asList(
+                new MetricFamilySamples.Sample(EXPORTER_MODE_SWITCHES_COUNTER, MODE_LABEL_NAMES,
+                        Collections.singletonList(MODE_CATCH_UP), catchUpSwitches.sum()),
+                new MetricFamilySamples.Sample(EXPORTER_MODE_SWITCHES_COUNTER, MODE_LABEL_NAMES,
+                        Collections.singletonList(MODE_NORMAL), normalSwitches.sum()))));
+        families.add(gauge(EXPORTER_CATCH_UP_RATE_GAUGE, "Records consumed per second while catching up",
+                catchUpRate));
+        families.add(gauge(EXPORTER_SAMPLING_RATE_GAUGE,
+                "Fraction of the activations kept while shedding load, 1 if all activations are processed",
+                samplingRate));
+        families.add(new MetricFamilySamples(EXPORTER_SHED_ACTIVATIONS_COUNTER, Type.COUNTER,
+                "Activations dropped while shedding load, the kept ones are counted for them",
+                Collections.singletonList(new MetricFamilySamples.Sample(EXPORTER_SHED_ACTIVATIONS_COUNTER,
+                        Collections.emptyList(), Collections.emptyList(), shed.sum()))));
+        families.add(new MetricFamilySamples(EXPORTER_ESTIMATED_ACTIVATIONS_COUNTER, Type.COUNTER,
+                "Activations counted by scaling the kept ones while shedding load, durable totals include them",
+                Collections.singletonList(new MetricFamilySamples.Sample(EXPORTER_ESTIMATED_ACTIVATIONS_COUNTER,
+                        Collections.emptyList(), Collections.emptyList(), estimated.sum()))));
+        families.add(gauge(EXPORTER_PROCESSING_DELAY_GAUGE,
+                "Largest sampled time in milliseconds from producing an event until processing it",
+                processingDelayMillis));
+        return families;
+    }
+
+    private static MetricFamilySamples gauge(String name, String help, double value) {
+        return new MetricFamilySamples(name, Type.GAUGE, help, Collections.singletonList(
+                new MetricFamilySamples.Sample(name, Collections.emptyList(), Collections.emptyList(), value)));
+    }
+
+    private static MetricFamilySamples.Sample typeSample(String type, LongAdder count) {
+        return new MetricFamilySamples.Sample(EXPORTER_EVENTS_CONSUMED_COUNTER, TYPE_LABEL_NAMES,
+                Collections.singletonList(type), count.sum());
+    }
+
+    private static MetricFamilySamples histogram(String name, String help, List<String> labelNames,
+                                                 Map<List<String>, LatencyHistogram> histograms) {
+        List<MetricFamilySamples.Sample> samples = new ArrayList<>();
+        histograms.forEach((labelValues, histogram) -> HistogramSamples.add(samples, name, LATENCY_BUCKETS,
+                labelNames, labelValues, bucket -> histogram.buckets[bucket].sum(), histogram.sumMicros.sum()));
+        return new MetricFamilySamples(name, Type.HISTOGRAM, help, samples);
+    }
+
+    /**
+     * Latency distribution in microseconds
+     */
+    private static class LatencyHistogram {
+
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.size()];
+        private final LongAdder sumMicros = new LongAdder();
+
+        LatencyHistogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(long nanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+            buckets[LATENCY_BUCKETS.indexOf(micros)].increment();
+            sumMicros.add(micros);
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Maps fixed size tuples of symbol ids to dense series slots.
+ * <p>
+ * Lookups probe an open addressing table without locking and without allocating. Adding a series takes a lock,
+ * writes the key and then publishes the slot, so concurrent readers either miss the entry or see it completely.
+ * Tables are never modified after they have been replaced by a resized copy.
+ */
+class SeriesIndex {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int arity;
+
+    private volatile Table table;
+    private volatile int[] keys;
+    private volatile int size;
+
+    /**
+     * SeriesIndex for tuples of the given size
+     *
+     * @param arity Number of ids per tuple
+     */
+    SeriesIndex(int arity) {
+        this.arity = arity;
+        this.table = new Table(INITIAL_CAPACITY, arity);
+        this.keys = new int[INITIAL_CAPACITY * arity];
+    }
+
+    /**
+     * Gets the slot of a tuple, adding it if it is not known yet
+     *
+     * @param key Tuple of symbol ids. Not retained.
+     * @return Series slot
+     */
+    int slotOf(int[] key) {
+        int slot = table.find(key, hash(key, arity));
+        if (slot != EMPTY) {
+            return slot;
+        }
+        return add(key);
+    }
+
+    /**
+     * Gets the slot of a tuple without adding it
+     *
+     * @param key Tuple of symbol ids
+     * @return Series slot or -1 if the tuple is not known
+     */
+    int find(int[] key) {
+        return table.find(key, hash(key, arity));
+    }
+
+    private synchronized int add(int[] key) {
+        int hash = hash(key, arity);
+        Table current = table;
+        int slot = current.find(key, hash);
+        if (slot != EMPTY) {
+            return slot;
+        }
+
+        slot = size;
+        if ((slot + 1) * 2 > current.capacity) {
+            current = current.resize(current.capacity * 2, keys, slot);
+        }
+
+        int[] currentKeys = keys;
+        if ((slot + 1) * arity > currentKeys.length) {
+            currentKeys = Arrays.copyOf(currentKeys, currentKeys.length * 2);
+        }
+        System.arraycopy(key, 0, currentKeys, slot * arity, arity);
+        keys = currentKeys;
+
+        current.insert(key, hash, slot);
+        table = current;
+        size = slot + 1;
+        return slot;
+    }
+
+    /**
+     * Gets an id of the tuple of a slot
+     *
+     * @param slot  Series slot
+     * @param index Position in the tuple
+     * @return Symbol id
+     */
+    int key(int slot, int index) {
+        return keys[slot * arity + index];
+    }
+
+    /**
+     * Gets the number of series
+     *
+     * @return Number of series
+     */
+    int size() {
+        return size;
+    }
+
+    private static int hash(int[] key, int arity) {
+        int hash = 1;
+        for (int i = 0; i < arity; i++) {
+            hash = 31 * hash + key[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Open addressing table with linear probing
+     */
+    private static class Table {
+
+        private final int capacity;
+        private final int arity;
+        private final int[] keys;
+        private final AtomicIntegerArray slots;
+
+        Table(int capacity, int arity) {
+            this.capacity = capacity;
+            this.arity = arity;
+            this.keys = new int[capacity * arity];
+            this.slots = new AtomicIntegerArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                slots.lazySet(i, EMPTY);
+            }
+        }
+
+        int find(int[] key, int hash) {
+            int mask = capacity - 1;
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                int slot = slots.get(index);
+                if (slot == EMPTY) {
+                    return EMPTY;
+                }
+                if (matches(index, key)) {
+                    return slot;
+                }
+            }
+        }
+
+        void insert(int[] key, int hash, int slot) {
+            int mask = capacity - 1;
+            int index = hash & mask;
+            while (slots.get(index) != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            System.arraycopy(key, 0, keys, index * arity, arity);
+            // Publishing the slot makes the key written above visible to readers
+            slots.set(index, slot);
+        }
+
+        Table resize(int newCapacity, int[] slotKeys, int size) {
+            Table resized = new Table(newCapacity, arity);
+            int[] key = new int[arity];
+            for (int slot = 0; slot < size; slot++) {
+                System.arraycopy(slotKeys, slot * arity, key, 0, arity);
+                resized.insert(key, hash(key, arity), slot);
+            }
+            return resized;
+        }
+
+        private boolean matches(int index, int[] key) {
+            int offset = index * arity;
+            for (int i = 0; i < arity; i++) {
+                if (keys[offset + i] != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving heavy hitter sketch.
+ * <p>
+ * Tracks at most {@link #capacity} items. When a new item arrives while the sketch is full, it replaces the item
+ * with the smallest count and inherits that count as its error. Every item with a true frequency above
+ * total / capacity is guaranteed to be tracked. Not thread safe.
+ */
+class SpaceSavingSketch {
+
+    private final int capacity;
+    private final Map<String, Entry> entries;
+    private final Entry[] heap;
+    private int size;
+    private long total;
+
+    /**
+     * SpaceSavingSketch tracking up to the given number of items
+     *
+     * @param capacity Maximum number of tracked items
+     */
+    SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Sketch capacity should be positive");
+        }
+        this.capacity = capacity;
+        this.entries = new HashMap<>(capacity * 2);
+        this.heap = new Entry[capacity];
+    }
+
+    /**
+     * Counts occurrences of an item
+     *
+     * @param item  Item
+     * @param count Number of occurrences
+     * @return Guaranteed lower bound of the item's frequency
+     */
+    long offer(String item, long count) {
+        total += count;
+
+        Entry entry = entries.get(item);
+        if (entry == null) {
+            if (size < capacity) {
+                entry = new Entry(item, size);
+                entry.count = count;
+                heap[size++] = entry;
+                entries.put(item, entry);
+                siftUp(entry.index);
+                return count;
+            }
+
+            // Replace the item with the smallest count
+            entry = heap[0];
+            entries.remove(entry.item);
+            entry.item = item;
+            entry.error = entry.count;
+            entries.put(item, entry);
+        }
+
+        entry.count += count;
+        siftDown(entry.index);
+        return entry.count - entry.error;
+    }
+
+    /**
+     * Gets the total number of counted occurrences
+     *
+     * @return Total count
+     */
+    long total() {
+        return total;
+    }
+
+    /**
+     * Gets the tracked items with the guaranteed lower bounds of their frequencies
+     *
+     * @return Items and frequencies, in descending order of frequency
+     */
+    Map<String, Long> guaranteedCounts() {
+        List<Entry> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(heap[i]);
+        }
+        sorted.sort((a, b) -> Long.compare(b.count - b.error, a.count - a.error));
+
+        Map<String, Long> counts = new LinkedHashMap<>(sorted.size() * 2);
+        for (Entry entry : sorted) {
+            counts.put(entry.item, entry.count - entry.error);
+        }
+        return counts;
+    }
+
+    /**
+     * Halves all counts, so that recent occurrences weigh more than old ones. Halving keeps the heap order.
+     */
+    void decay() {
+        total /= 2;
+        for (int i = 0; i < size; i++) {
+            heap[i].count /= 2;
+            heap[i].error /= 2;
+        }
+    }
+
+    private void siftUp(int index) {
+        Entry entry = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= entry.count) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = entry;
+        entry.index = index;
+    }
+
+    private void siftDown(int index) {
+        Entry entry = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= entry.count) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = entry;
+        entry.index = index;
+    }
+
+    /**
+     * Tracked item with its estimated count and the overestimation error
+     */
+    private static class Entry {
+
+        private String item;
+        private long count;
+        private long error;
+        private int index;
+
+        Entry(String item, int index) {
+            this.item = item;
+            this.index = index;
+        }
+    }
+}
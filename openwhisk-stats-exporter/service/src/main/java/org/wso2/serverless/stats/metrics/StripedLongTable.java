@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Table of long values with a fixed number of fields per series slot.
+ * <p>
+ * Every writing thread gets its own stripe, so updates never contend and need no atomic read-modify-write.
+ * Stripes are written with ordered stores and merged when the values are read at scrape or push time.
+ */
+class StripedLongTable {
+
+    private static final int SEGMENT_SHIFT = 10;
+    private static final int SEGMENT_SLOTS = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SLOTS - 1;
+
+    private final int fields;
+    private final List<Stripe> stripes = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Stripe> localStripe = ThreadLocal.withInitial(this::newStripe);
+
+    /**
+     * StripedLongTable with the given number of fields per slot
+     *
+     * @param fields Number of values per slot
+     */
+    StripedLongTable(int fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * Gets the stripe of the calling thread
+     *
+     * @return Stripe to write to
+     */
+    Stripe stripe() {
+        return localStripe.get();
+    }
+
+    /**
+     * Sums a field of a slot over all stripes
+     *
+     * @param slot  Series slot
+     * @param field Field index
+     * @return Merged value
+     */
+    long sum(int slot, int field) {
+        long sum = 0;
+        for (Stripe stripe : stripes) {
+            sum += stripe.get(slot, field);
+        }
+        return sum;
+    }
+
+    private Stripe newStripe() {
+        Stripe stripe = new Stripe();
+        stripes.add(stripe);
+        return stripe;
+    }
+
+    /**
+     * Values written by a single thread
+     */
+    class Stripe {
+
+        private volatile AtomicLongArray[] segments = new AtomicLongArray[0];
+
+        /**
+         * Adds to a field of a slot. Must only be called by the owning thread.
+         *
+         * @param slot  Series slot
+         * @param field Field index
+         * @param delta Value to add
+         */
+        void add(int slot, int field, long delta) {
+            AtomicLongArray segment = segment(slot);
+            int index = (slot & SEGMENT_MASK) * fields + field;
+            segment.lazySet(index, segment.get(index) + delta);
+        }
+
+        long get(int slot, int field) {
+            AtomicLongArray[] current = segments;
+            int segment = slot >>> SEGMENT_SHIFT;
+            if (segment >= current.length) {
+                return 0;
+            }
+            return current[segment].get((slot & SEGMENT_MASK) * fields + field);
+        }
+
+        private AtomicLongArray segment(int slot) {
+            AtomicLongArray[] current = segments;
+            int segment = slot >>> SEGMENT_SHIFT;
+            if (segment >= current.length) {
+                current = grow(segment);
+            }
+            return current[segment];
+        }
+
+        private AtomicLongArray[] grow(int segment) {
+            AtomicLongArray[] grown = Arrays.copyOf(segments, segment + 1);
+            for (int i = segments.length; i < grown.length; i++) {
+                grown[i] = new AtomicLongArray(SEGMENT_SLOTS * fields);
+            }
+            segments = grown;
+            return grown;
+        }
+    }
+}
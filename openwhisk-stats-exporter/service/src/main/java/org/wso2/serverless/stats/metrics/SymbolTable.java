@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Interns label values into dense int symbol ids.
+ * Lookups of known values are lock-free, adding a new value takes a lock.
+ */
+public class SymbolTable {
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] symbols = new String[64];
+    private volatile int size;
+
+    /**
+     * Gets the id of a value, adding it if it is not known yet. A null value is interned as the empty string.
+     *
+     * @param value Label value
+     * @return Symbol id
+     */
+    public int intern(String value) {
+        String key = value == null ? "" : value;
+        Integer id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        return add(key);
+    }
+
+    private synchronized int add(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+
+        int next = size;
+        String[] current = symbols;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[next] = value;
+        symbols = current;
+        size = next + 1;
+        ids.put(value, next);
+        return next;
+    }
+
+    /**
+     * Gets the value of a symbol id
+     *
+     * @param id Symbol id
+     * @return Label value
+     */
+    public String symbol(int id) {
+        if (id >= size) {
+            throw new IllegalArgumentException("Unknown symbol id " + id);
+        }
+        return symbols[id];
+    }
+
+    /**
+     * Gets the number of interned values
+     *
+     * @return Number of symbols
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.remotewrite;
+
+import io.prometheus.client.CollectorRegistry;
+import org.kohsuke.args4j.Option;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_REMOTE_WRITE;
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_REMOTE_WRITE_BATCH_SIZE;
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_REMOTE_WRITE_INTERVAL;
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_REMOTE_WRITE_SHARDS;
+import static org.wso2.serverless.stats.Constants.DEFAULT_REMOTE_WRITE_BATCH_SIZE;
+import static org.wso2.serverless.stats.Constants.DEFAULT_REMOTE_WRITE_INTERVAL_MILLIS;
+import static org.wso2.serverless.stats.Constants.DEFAULT_REMOTE_WRITE_SHARDS;
+
+/**
+ * Maps the CLI options of the remote write sink
+ */
+public class RemoteWriteConfig {
+
+    @Option(name = CMD_OPTION_NAME_REMOTE_WRITE, usage = "URL of a Prometheus remote write endpoint to write the metrics to")
+    private String url;
+
+    @Option(name = CMD_OPTION_NAME_REMOTE_WRITE_INTERVAL, usage = "Interval of sampling the metrics for remote write in milliseconds")
+    private long interval = DEFAULT_REMOTE_WRITE_INTERVAL_MILLIS;
+
+    @Option(name = CMD_OPTION_NAME_REMOTE_WRITE_SHARDS, usage = "Number of remote write queues, each sending one request at a time")
+    private int shards = DEFAULT_REMOTE_WRITE_SHARDS;
+
+    @Option(name = CMD_OPTION_NAME_REMOTE_WRITE_BATCH_SIZE, usage = "Maximum number of samples in a remote write request")
+    private int batchSize = DEFAULT_REMOTE_WRITE_BATCH_SIZE;
+
+    /**
+     * Checks whether metrics are written remotely
+     *
+     * @return True if a remote write endpoint is configured
+     */
+    public boolean isEnabled() {
+        return url != null;
+    }
+
+    /**
+     * Creates the remote write sink of a registry
+     *
+     * @param registry Registry to sample
+     * @param instance Instance label of all series, or null to leave it out
+     * @return Remote write sink
+     */
+    public RemoteWriteSink newSink(CollectorRegistry registry, String instance) {
+        try {
+            return new RemoteWriteSink(new URL(url), registry, instance, interval, shards, batchSize);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid remote write URL " + url, e);
+        }
+    }
+
+    /**
+     * Gets the remote write endpoint
+     *
+     * @return URL, or null if metrics are not written remotely
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Sets the remote write endpoint
+     *
+     * @param url URL
+     */
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Gets the remote write sampling interval
+     *
+     * @return Interval in milliseconds
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the remote write sampling interval
+     *
+     * @param interval Interval in milliseconds
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    /**
+     * Gets the number of remote write queues
+     *
+     * @return Number of shards
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Sets the number of remote write queues
+     *
+     * @param shards Number of shards
+     */
+    public void setShards(int shards) {
+        this.shards = shards;
+    }
+
+    /**
+     * Gets the maximum number of samples in a remote write request
+     *
+     * @return Batch size
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the maximum number of samples in a remote write request
+     *
+     * @param batchSize Batch size
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.remotewrite;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.CollectorRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.wso2.serverless.stats.Constants.CONTENT_TYPE_PROTOBUF;
+import static org.wso2.serverless.stats.Constants.EXPORTER_REMOTE_WRITE_RETRIES_COUNTER;
+import static org.wso2.serverless.stats.Constants.EXPORTER_REMOTE_WRITE_SAMPLES_COUNTER;
+import static org.wso2.serverless.stats.Constants.INSTANCE;
+import static org.wso2.serverless.stats.Constants.JOB;
+import static org.wso2.serverless.stats.Constants.LISTENER_DRAIN_TIMEOUT_MILLIS;
+import static org.wso2.serverless.stats.Constants.METRIC_NAME_LABEL;
+import static org.wso2.serverless.stats.Constants.OPENWHISK;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_DROPPED;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_FAILED;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_MAX_ATTEMPTS;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_MAX_BACKOFF_MILLIS;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_MIN_BACKOFF_MILLIS;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_SENT;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_SHARD_CAPACITY;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_VERSION;
+import static org.wso2.serverless.stats.Constants.RESULT;
+
+/**
+ * Writes the metrics of a registry to a Prometheus remote write endpoint, next to or instead of pushing to
+ * Pushgateway.
+ * <p>
+ * Every interval all samples of the registry are taken with the same timestamp and encoded as remote write
+ * time series. Each series is queued on a shard chosen by its labels, so the samples of a series are sent in
+ * order. Every shard has a bounded queue and one sender thread, which bounds the number of concurrent requests.
+ * A sender takes up to the batch size of samples, wraps them in a snappy compressed WriteRequest and posts it.
+ * Server errors, throttling and connection failures are retried with exponential backoff. Client errors are not
+ * retried. Samples are dropped and counted when their shard's queue is full, which happens when the endpoint
+ * is slower than the exporter.
+ * <p>
+ * Series carry the job and, when several exporter instances share the load, the name of this instance, so the
+ * series of the instances do not overwrite each other and can be summed.
+ */
+public class RemoteWriteSink extends Collector {
+
+    private static final Log log = LogFactory.getLog(RemoteWriteSink.class);
+
+    private static final int TIMEOUT_MILLIS = 10 * 1000;
+    private static final long POLL_MILLIS = 100;
+    private static final List<String> LABEL_NAMES = Collections.singletonList(RESULT);
+
+    private final URL url;
+    private final CollectorRegistry registry;
+    private final String instance;
+    private final long intervalMillis;
+    private final int batchSize;
+    private final Shard[] shards;
+    private final LongAdder sentSamples = new LongAdder();
+    private final LongAdder droppedSamples = new LongAdder();
+    private final LongAdder failedSamples = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    private volatile boolean running;
+    private ScheduledExecutorService sampler;
+
+    /**
+     * RemoteWriteSink writing the metrics of a registry
+     *
+     * @param url            Remote write endpoint
+     * @param registry       Registry to sample
+     * @param instance       Instance label of all series, or null to leave it out
+     * @param intervalMillis Sampling interval in milliseconds
+     * @param shardCount     Number of shards, and so of concurrent requests
+     * @param batchSize      Maximum number of samples per request
+     */
+    public RemoteWriteSink(URL url, CollectorRegistry registry, String instance, long intervalMillis,
+                           int shardCount, int batchSize) {
+        if (url == null) {
+            throw new IllegalArgumentException("Remote write URL is required");
+        }
+
+        if (registry == null) {
+            throw new IllegalArgumentException("Registry is required");
+        }
+
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Remote write interval should be positive");
+        }
+
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Number of remote write shards should be positive");
+        }
+
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Remote write batch size should be positive");
+        }
+
+        this.url = url;
+        this.registry = registry;
+        this.instance = instance;
+        this.intervalMillis = intervalMillis;
+        this.batchSize = batchSize;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    /**
+     * Starts sampling the registry and the sender of every shard
+     */
+    public void start() {
+        running = true;
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "remote-write-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Takes the samples of the registry and queues them on their shards
+     */
+    void sample() {
+        long timestamp = System.currentTimeMillis();
+        Enumeration<MetricFamilySamples> families = registry.metricFamilySamples();
+        while (families.hasMoreElements()) {
+            for (MetricFamilySamples.Sample sample : families.nextElement().samples) {
+                List<String> labels = labels(sample);
+                byte[] timeSeries = WriteRequestEncoder.timeSeries(labels, sample.value, timestamp);
+                Shard shard = shards[(labels.hashCode() & Integer.MAX_VALUE) % shards.length];
+                if (!shard.queue.offer(timeSeries)) {
+                    droppedSamples.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the labels of a sample including the metric name, the job and the instance, sorted by name as remote
+     * write requires
+     */
+    private List<String> labels(MetricFamilySamples.Sample sample) {
+        int fixed = instance == null ? 2 : 3;
+        int count = sample.labelNames.size() + fixed;
+        String[] names = new String[count];
+        String[] values = new String[count];
+        names[0] = METRIC_NAME_LABEL;
+        values[0] = sample.name;
+        names[1] = JOB;
+        values[1] = OPENWHISK;
+        if (instance != null) {
+            names[2] = INSTANCE;
+            values[2] = instance;
+        }
+        for (int i = fixed; i < count; i++) {
+            names[i] = sample.labelNames.get(i - fixed);
+            values[i] = sample.labelValues.get(i - fixed);
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> names[a].compareTo(names[b]));
+
+        List<String> labels = new ArrayList<>(count * 2);
+        for (int index : order) {
+            labels.add(names[index]);
+            labels.add(values[index]);
+        }
+        return labels;
+    }
+
+    /**
+     * Stops sampling, takes a last sample and waits until the shards sent what is queued
+     */
+    public void stop() {
+        if (sampler == null) {
+            return;
+        }
+        sampler.shutdown();
+        try {
+            sampler.awaitTermination(intervalMillis, TimeUnit.MILLISECONDS);
+            sample();
+            running = false;
+            for (Shard shard : shards) {
+                shard.thread.join(LISTENER_DRAIN_TIMEOUT_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Shard shard : shards) {
+            shard.thread.interrupt();
+        }
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples.Sample> samples = new ArrayList<>(3);
+        samples.add(resultSample(REMOTE_WRITE_SENT, sentSamples));
+        samples.add(resultSample(REMOTE_WRITE_DROPPED, droppedSamples));
+        samples.add(resultSample(REMOTE_WRITE_FAILED, failedSamples));
+
+        List<MetricFamilySamples> families = new ArrayList<>(2);
+        families.add(new MetricFamilySamples(EXPORTER_REMOTE_WRITE_SAMPLES_COUNTER, Type.COUNTER,
+                "Samples sent to the remote write endpoint, dropped on a full queue or failed to send", samples));
+        families.add(new MetricFamilySamples(EXPORTER_REMOTE_WRITE_RETRIES_COUNTER, Type.COUNTER,
+                "Remote write requests which were retried", Collections.singletonList(
+                new MetricFamilySamples.Sample(EXPORTER_REMOTE_WRITE_RETRIES_COUNTER, Collections.emptyList(),
+                        Collections.emptyList(), retries.sum()))));
+        return families;
+    }
+
+    private static MetricFamilySamples.Sample resultSample(String result, LongAdder value) {
+        return new MetricFamilySamples.Sample(EXPORTER_REMOTE_WRITE_SAMPLES_COUNTER, LABEL_NAMES,
+                Collections.singletonList(result), value.sum());
+    }
+
+    /**
+     * Queue of time series and the thread sending them
+     */
+    private class Shard {
+
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(REMOTE_WRITE_SHARD_CAPACITY);
+        private final List<byte[]> batch = new ArrayList<>(batchSize);
+        private final WriteRequestEncoder request = new WriteRequestEncoder(1 << 16);
+        private byte[] compressed = new byte[0];
+        private final Thread thread;
+
+        Shard(int index) {
+            thread = new Thread(this::run, "remote-write-shard-" + index);
+            thread.setDaemon(true);
+        }
+
+        private void run() {
+            try {
+                while (running || !queue.isEmpty()) {
+                    byte[] first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                    send();
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Sends the batch, retrying recoverable failures with exponential backoff
+         */
+        private void send() throws InterruptedException {
+            request.clear();
+            for (byte[] timeSeries : batch) {
+                request.add(timeSeries);
+            }
+            int length;
+            try {
+                int maxLength = Snappy.maxCompressedLength(request.size());
+                if (compressed.length < maxLength) {
+                    compressed = new byte[maxLength];
+                }
+                length = Snappy.rawCompress(request.array(), 0, request.size(), compressed, 0);
+            } catch (IOException e) {
+                log.error("Failed to compress a remote write request", e);
+                failedSamples.add(batch.size());
+                return;
+            }
+
+            long backoffMillis = REMOTE_WRITE_MIN_BACKOFF_MILLIS;
+            for (int attempt = 1; ; attempt++) {
+                int response;
+                try {
+                    response = post(length);
+                } catch (IOException e) {
+                    log.debug("Remote write request failed", e);
+                    response = -1;
+                }
+
+                if (response / 100 == 2) {
+                    sentSamples.add(batch.size());
+                    return;
+                }
+                boolean recoverable = response < 0 || response / 100 == 5 || response == 429;
+                if (!recoverable || attempt == REMOTE_WRITE_MAX_ATTEMPTS) {
+                    log.warn(String.format("Dropping %d samples, remote write to %s returned %s after %d attempts",
+                            batch.size(), url, response < 0 ? "no response" : String.valueOf(response), attempt));
+                    failedSamples.add(batch.size());
+                    return;
+                }
+                retries.increment();
+                Thread.sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, REMOTE_WRITE_MAX_BACKOFF_MILLIS);
+            }
+        }
+
+        private int post(int length) throws IOException {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestProperty("Content-Type", CONTENT_TYPE_PROTOBUF);
+            connection.setRequestProperty("Content-Encoding", "snappy");
+            connection.setRequestProperty("X-Prometheus-Remote-Write-Version", REMOTE_WRITE_VERSION);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setFixedLengthStreamingMode(length);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(compressed, 0, length);
+            }
+
+            int response = connection.getResponseCode();
+            InputStream input = response / 100 == 2 ? connection.getInputStream() : connection.getErrorStream();
+            if (input != null) {
+                try (InputStream drained = input) {
+                    byte[] chunk = new byte[1024];
+                    while (drained.read(chunk) >= 0) {
+                        // Drain the response so that the connection is kept alive for the next request
+                    }
+                }
+            }
+            return response;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.remotewrite;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes the protobuf messages of the Prometheus remote write protocol without a protobuf runtime:
+ * <pre>
+ * message WriteRequest { repeated TimeSeries timeseries = 1; }
+ * message TimeSeries   { repeated Label labels = 1; repeated Sample samples = 2; }
+ * message Label        { string name = 1; string value = 2; }
+ * message Sample       { double value = 1; int64 timestamp = 2; }
+ * </pre>
+ * A time series is encoded once into its own byte array when it is sampled. A write request is the
+ * concatenation of its time series as length-delimited field 1, so batching does not encode again.
+ */
+public final class WriteRequestEncoder {
+
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    private static final byte TIMESERIES_TAG = tag(1, WIRE_TYPE_LENGTH_DELIMITED);
+    private static final byte LABEL_TAG = tag(1, WIRE_TYPE_LENGTH_DELIMITED);
+    private static final byte SAMPLE_TAG = tag(2, WIRE_TYPE_LENGTH_DELIMITED);
+    private static final byte LABEL_NAME_TAG = tag(1, WIRE_TYPE_LENGTH_DELIMITED);
+    private static final byte LABEL_VALUE_TAG = tag(2, WIRE_TYPE_LENGTH_DELIMITED);
+    private static final byte SAMPLE_VALUE_TAG = tag(1, WIRE_TYPE_FIXED64);
+    private static final byte SAMPLE_TIMESTAMP_TAG = tag(2, WIRE_TYPE_VARINT);
+
+    private byte[] bytes;
+    private int size;
+
+    /**
+     * WriteRequestEncoder with an initial capacity
+     *
+     * @param capacity Initial capacity in bytes
+     */
+    public WriteRequestEncoder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Encoder capacity should be positive");
+        }
+        this.bytes = new byte[capacity];
+    }
+
+    private static byte tag(int field, int wireType) {
+        return (byte) (field << 3 | wireType);
+    }
+
+    /**
+     * Encodes a TimeSeries message with a single sample
+     *
+     * @param labels          Label names and values, alternating and sorted by name
+     * @param value           Sample value
+     * @param timestampMillis Sample timestamp in milliseconds since the epoch
+     * @return Encoded message
+     */
+    public static byte[] timeSeries(List<String> labels, double value, long timestampMillis) {
+        if (labels.size() % 2 != 0) {
+            throw new IllegalArgumentException("Labels should be name and value pairs");
+        }
+
+        int labelCount = labels.size() / 2;
+        byte[][] encoded = new byte[labels.size()][];
+        int[] labelSizes = new int[labelCount];
+        int size = 0;
+        for (int label = 0; label < labelCount; label++) {
+            byte[] name = labels.get(label * 2).getBytes(StandardCharsets.UTF_8);
+            byte[] labelValue = labels.get(label * 2 + 1).getBytes(StandardCharsets.UTF_8);
+            encoded[label * 2] = name;
+            encoded[label * 2 + 1] = labelValue;
+            labelSizes[label] = 1 + varintSize(name.length) + name.length
+                    + 1 + varintSize(labelValue.length) + labelValue.length;
+            size += 1 + varintSize(labelSizes[label]) + labelSizes[label];
+        }
+        int sampleSize = 1 + Long.BYTES + 1 + varintSize(timestampMillis);
+        size += 1 + varintSize(sampleSize) + sampleSize;
+
+        WriteRequestEncoder encoder = new WriteRequestEncoder(size);
+        for (int label = 0; label < labelCount; label++) {
+            encoder.put(LABEL_TAG);
+            encoder.putVarint(labelSizes[label]);
+            encoder.putBytes(LABEL_NAME_TAG, encoded[label * 2]);
+            encoder.putBytes(LABEL_VALUE_TAG, encoded[label * 2 + 1]);
+        }
+        encoder.put(SAMPLE_TAG);
+        encoder.putVarint(sampleSize);
+        encoder.put(SAMPLE_VALUE_TAG);
+        encoder.putFixed64(Double.doubleToRawLongBits(value));
+        encoder.put(SAMPLE_TIMESTAMP_TAG);
+        encoder.putVarint(timestampMillis);
+        return encoder.bytes;
+    }
+
+    /**
+     * Discards the encoded write request, keeping the capacity
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Appends an encoded time series to the write request
+     *
+     * @param timeSeries TimeSeries message from {@link #timeSeries(List, double, long)}
+     */
+    public void add(byte[] timeSeries) {
+        put(TIMESERIES_TAG);
+        putVarint(timeSeries.length);
+        putBytes(timeSeries);
+    }
+
+    /**
+     * Gets the array holding the write request. Only valid up to {@link #size()} until the next change.
+     *
+     * @return Backing array
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Gets the size of the write request
+     *
+     * @return Size in bytes
+     */
+    public int size() {
+        return size;
+    }
+
+    private void put(byte b) {
+        ensureRemaining(1);
+        bytes[size++] = b;
+    }
+
+    private void putBytes(byte tag, byte[] value) {
+        put(tag);
+        putVarint(value.length);
+        putBytes(value);
+    }
+
+    private void putBytes(byte[] value) {
+        ensureRemaining(value.length);
+        System.arraycopy(value, 0, bytes, size, value.length);
+        size += value.length;
+    }
+
+    private void putVarint(long value) {
+        ensureRemaining(varintSize(value));
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    private void putFixed64(long value) {
+        ensureRemaining(Long.BYTES);
+        for (int i = 0; i < Long.BYTES; i++) {
+            bytes[size++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    private void ensureRemaining(int length) {
+        if (bytes.length - size < length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+        }
+    }
+
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+}
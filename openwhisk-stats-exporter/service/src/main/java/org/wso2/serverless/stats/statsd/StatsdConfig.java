@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.statsd;
+
+import org.kohsuke.args4j.Option;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_STATSD;
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_STATSD_FORMAT;
+import static org.wso2.serverless.stats.Constants.CMD_OPTION_NAME_STATSD_PACKET_SIZE;
+import static org.wso2.serverless.stats.Constants.DEFAULT_STATSD_PACKET_SIZE;
+
+/**
+ * Maps the CLI options of the StatsD sink
+ */
+public class StatsdConfig {
+
+    @Option(name = CMD_OPTION_NAME_STATSD, usage = "Host and port of a StatsD server to send activations to over UDP")
+    private String address;
+
+    @Option(name = CMD_OPTION_NAME_STATSD_FORMAT, usage = "Line format sent to StatsD: STATSD without tags, or DOGSTATSD with tags")
+    private StatsdFormat format = StatsdFormat.DOGSTATSD;
+
+    @Option(name = CMD_OPTION_NAME_STATSD_PACKET_SIZE, usage = "Maximum size in bytes of a StatsD datagram. Should fit the MTU of the network")
+    private int packetSize = DEFAULT_STATSD_PACKET_SIZE;
+
+    /**
+     * Checks whether activations are sent to StatsD
+     *
+     * @return True if a StatsD server is configured
+     */
+    public boolean isEnabled() {
+        return address != null;
+    }
+
+    /**
+     * Opens the channel to the StatsD server
+     *
+     * @return StatsD sink
+     */
+    public StatsdSink newSink() {
+        int separator = address.lastIndexOf(':');
+        if (separator <= 0 || separator == address.length() - 1) {
+            throw new IllegalArgumentException("StatsD address should be host:port, was " + address);
+        }
+
+        try {
+            InetSocketAddress socketAddress = new InetSocketAddress(address.substring(0, separator),
+                    Integer.parseInt(address.substring(separator + 1)));
+            return new StatsdSink(socketAddress, format, packetSize);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("StatsD port should be a number, was " + address, e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open the StatsD channel", e);
+        }
+    }
+
+    /**
+     * Gets the address of the StatsD server
+     *
+     * @return Host and port, or null if nothing is sent to StatsD
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Sets the address of the StatsD server
+     *
+     * @param address Host and port
+     */
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    /**
+     * Gets the line format sent to StatsD
+     *
+     * @return StatsD format
+     */
+    public StatsdFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Sets the line format sent to StatsD
+     *
+     * @param format StatsD format
+     */
+    public void setFormat(StatsdFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Gets the maximum size of a StatsD datagram
+     *
+     * @return Packet size in bytes
+     */
+    public int getPacketSize() {
+        return packetSize;
+    }
+
+    /**
+     * Sets the maximum size of a StatsD datagram
+     *
+     * @param packetSize Packet size in bytes
+     */
+    public void setPacketSize(int packetSize) {
+        this.packetSize = packetSize;
+    }
+}
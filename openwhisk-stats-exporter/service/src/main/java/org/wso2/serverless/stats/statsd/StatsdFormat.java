@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.statsd;
+
+/**
+ * Line format written by a {@link StatsdSink}
+ */
+public enum StatsdFormat {
+
+    /**
+     * Plain StatsD without tags. Each metric is aggregated over all label values.
+     */
+    STATSD,
+
+    /**
+     * DogStatsD, with the labels of the Prometheus metrics as tags. Also understood by the Prometheus
+     * StatsD exporter, which turns the tags into labels.
+     */
+    DOGSTATSD
+}
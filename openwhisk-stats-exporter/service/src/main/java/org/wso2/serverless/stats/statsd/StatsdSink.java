@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats.statsd;
+
+import io.prometheus.client.Collector;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.wso2.serverless.stats.ActivationEvent;
+import org.wso2.serverless.stats.MetricEvent;
+import org.wso2.serverless.stats.listeners.OpenwhiskEventListener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.wso2.serverless.stats.Constants.ACTION;
+import static org.wso2.serverless.stats.Constants.CLUSTER;
+import static org.wso2.serverless.stats.Constants.EXPORTER_STATSD_DROPPED_PACKETS_COUNTER;
+import static org.wso2.serverless.stats.Constants.EXPORTER_STATSD_PACKETS_COUNTER;
+import static org.wso2.serverless.stats.Constants.KIND;
+import static org.wso2.serverless.stats.Constants.LIMIT;
+import static org.wso2.serverless.stats.Constants.METRIC;
+import static org.wso2.serverless.stats.Constants.METRIC_CONCURRENT_ACTIVATIONS;
+import static org.wso2.serverless.stats.Constants.METRIC_CONCURRENT_RATE_LIMIT;
+import static org.wso2.serverless.stats.Constants.METRIC_TIMED_RATE_LIMIT;
+import static org.wso2.serverless.stats.Constants.NAMESPACE;
+import static org.wso2.serverless.stats.Constants.OPENWHISK;
+import static org.wso2.serverless.stats.Constants.SOURCE;
+import static org.wso2.serverless.stats.Constants.STATSD_ACTIVATIONS;
+import static org.wso2.serverless.stats.Constants.STATSD_COLD_STARTS;
+import static org.wso2.serverless.stats.Constants.STATSD_CONCURRENT_ACTIVATIONS;
+import static org.wso2.serverless.stats.Constants.STATSD_DURATION;
+import static org.wso2.serverless.stats.Constants.STATSD_FLUSH_INTERVAL_MILLIS;
+import static org.wso2.serverless.stats.Constants.STATSD_INIT_TIME;
+import static org.wso2.serverless.stats.Constants.STATSD_METRIC_EVENTS_VALUE;
+import static org.wso2.serverless.stats.Constants.STATSD_RATE_LIMITED_ACTIVATIONS;
+import static org.wso2.serverless.stats.Constants.STATSD_WAIT_TIME;
+import static org.wso2.serverless.stats.Constants.STATUS_CODE;
+import static org.wso2.serverless.stats.Constants.USER_ID;
+
+/**
+ * Sends activations and namespace metrics as StatsD or DogStatsD lines over UDP, as an alternative to pushing
+ * to Pushgateway.
+ * <p>
+ * Lines are packed into datagrams of up to the packet size, which should fit the MTU of the path to the StatsD
+ * server. Every thread calling the listener packs into its own packet buffer, so stream threads do not contend.
+ * A packet is sent when the next line does not fit, and partially filled packets are sent every
+ * {@link org.wso2.serverless.stats.Constants#STATSD_FLUSH_INTERVAL_MILLIS}. The channel is non-blocking:
+ * a packet the socket cannot take right away is dropped and counted instead of waiting, like any lost datagram.
+ * <p>
+ * StatsD servers compute rates and distributions themselves, so activations are sent as deltas: counts as
+ * counters and durations as timers. An aggregated activation is sent as its mean duration with a sample rate
+ * of one over its count, which makes the server count it that many times. Restored totals are not sent again.
+ */
+public class StatsdSink extends Collector implements OpenwhiskEventListener {
+
+    private static final Log log = LogFactory.getLog(StatsdSink.class);
+
+    private static final int MIN_PACKET_SIZE = 64;
+    private static final int MAX_PACKET_SIZE = 65507;
+    private static final byte[] COUNTER = "|c".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GAUGE = "|g".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMER = "|ms".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SAMPLE_RATE = "|@".getBytes(StandardCharsets.US_ASCII);
+    private static final int SAMPLE_RATE_DIGITS = 9;
+    private static final long SAMPLE_RATE_SCALE = 1000000000L;
+    private static final byte[] TAGS = "|#".getBytes(StandardCharsets.US_ASCII);
+
+    private final StatsdFormat format;
+    private final int packetSize;
+    private final DatagramChannel channel;
+    private final byte[] activations = name(STATSD_ACTIVATIONS);
+    private final byte[] durations = name(STATSD_DURATION);
+    private final byte[] waitTimes = name(STATSD_WAIT_TIME);
+    private final byte[] coldStarts = name(STATSD_COLD_STARTS);
+    private final byte[] initTimes = name(STATSD_INIT_TIME);
+    private final byte[] concurrentActivations = name(STATSD_CONCURRENT_ACTIVATIONS);
+    private final byte[] rateLimitedActivations = name(STATSD_RATE_LIMITED_ACTIVATIONS);
+    private final byte[] metricValues = name(STATSD_METRIC_EVENTS_VALUE);
+    private final List<Packet> packets = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Packet> localPacket = ThreadLocal.withInitial(this::newPacket);
+    private final LongAdder sentPackets = new LongAdder();
+    private final LongAdder droppedPackets = new LongAdder();
+
+    private ScheduledExecutorService flusher;
+
+    /**
+     * StatsdSink sending to a StatsD server
+     *
+     * @param address    Address of the StatsD server
+     * @param format     Line format
+     * @param packetSize Maximum datagram payload in bytes
+     * @throws IOException If the channel cannot be opened
+     */
+    public StatsdSink(InetSocketAddress address, StatsdFormat format, int packetSize) throws IOException {
+        if (address == null || address.isUnresolved()) {
+            throw new IllegalArgumentException("StatsD address cannot be resolved: " + address);
+        }
+
+        if (format == null) {
+            throw new IllegalArgumentException("StatsD format is required");
+        }
+
+        if (packetSize < MIN_PACKET_SIZE || packetSize > MAX_PACKET_SIZE) {
+            throw new IllegalArgumentException("StatsD packet size should be between " + MIN_PACKET_SIZE
+                    + " and " + MAX_PACKET_SIZE + " bytes");
+        }
+
+        this.format = format;
+        this.packetSize = packetSize;
+        this.channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(address);
+    }
+
+    private static byte[] name(String name) {
+        return (OPENWHISK + '.' + name + ':').getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private Packet newPacket() {
+        Packet packet = new Packet();
+        packets.add(packet);
+        return packet;
+    }
+
+    /**
+     * Starts sending partially filled packets periodically
+     */
+    public void start() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "statsd-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, STATSD_FLUSH_INTERVAL_MILLIS, STATSD_FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends the lines packed so far
+     */
+    public void flush() {
+        for (Packet packet : packets) {
+            synchronized (packet) {
+                packet.send();
+            }
+        }
+    }
+
+    /**
+     * Sends the remaining lines and closes the channel
+     */
+    public void stop() {
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(STATSD_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Error occurred when closing the StatsD channel", e);
+        }
+    }
+
+    /**
+     * Sends the count, duration and wait time of an activation, and the init time of its cold starts.
+     * Called concurrently by the stream threads.
+     *
+     * @param event Activation event
+     */
+    @Override
+    public void onActivation(ActivationEvent event) {
+        Packet packet = localPacket.get();
+        synchronized (packet) {
+            packet.clearTags();
+            packet.tag(NAMESPACE, event.getNamespace());
+            packet.tag(SOURCE, event.getSource());
+            packet.tag(USER_ID, event.getUserId());
+            packet.tag(ACTION, event.getActionName());
+            packet.tag(STATUS_CODE, Integer.toString(event.getStatusCode()));
+            packet.tag(KIND, event.getKind());
+            packet.clusterTag(event.getCluster());
+
+            long count = Math.max(event.getCount(), 1);
+            packet.line(activations, count, COUNTER, 1);
+            packet.line(durations, event.getDuration() / count, TIMER, count);
+            packet.line(waitTimes, event.getWaitTime() / count, TIMER, count);
+            long coldStartCount = event.getColdStarts();
+            if (coldStartCount > 0) {
+                packet.line(coldStarts, coldStartCount, COUNTER, 1);
+                packet.line(initTimes, event.getInitTime() / coldStartCount, TIMER, coldStartCount);
+            }
+        }
+    }
+
+    /**
+     * Sends a namespace metric the way {@link org.wso2.serverless.stats.metrics.NamespaceMetrics} records it
+     *
+     * @param event Metric event
+     */
+    @Override
+    public void onMetric(MetricEvent event) {
+        Packet packet = localPacket.get();
+        String metricName = event.getMetricName();
+        synchronized (packet) {
+            packet.clearTags();
+            packet.tag(NAMESPACE, event.getNamespace());
+            packet.clusterTag(event.getCluster());
+            if (METRIC_CONCURRENT_ACTIVATIONS.equals(metricName)) {
+                packet.line(concurrentActivations, Math.max(event.getMetricValue(), 0), GAUGE, 1);
+            } else if (METRIC_CONCURRENT_RATE_LIMIT.equals(metricName) || METRIC_TIMED_RATE_LIMIT.equals(metricName)) {
+                packet.tag(LIMIT, metricName);
+                packet.line(rateLimitedActivations, event.getMetricValue(), COUNTER, 1);
+            } else {
+                packet.tag(METRIC, metricName);
+                packet.line(metricValues, event.getMetricValue(), COUNTER, 1);
+            }
+        }
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        List<MetricFamilySamples> families = new ArrayList<>(2);
+        families.add(new MetricFamilySamples(EXPORTER_STATSD_PACKETS_COUNTER, Type.COUNTER,
+                "Datagrams sent to the StatsD server", Collections.singletonList(
+                new MetricFamilySamples.Sample(EXPORTER_STATSD_PACKETS_COUNTER, Collections.emptyList(),
+                        Collections.emptyList(), sentPackets.sum()))));
+        families.add(new MetricFamilySamples(EXPORTER_STATSD_DROPPED_PACKETS_COUNTER, Type.COUNTER,
+                "Datagrams dropped because the socket was busy or failed, or a line did not fit a datagram",
+                Collections.singletonList(new MetricFamilySamples.Sample(EXPORTER_STATSD_DROPPED_PACKETS_COUNTER,
+                        Collections.emptyList(), Collections.emptyList(), droppedPackets.sum()))));
+        return families;
+    }
+
+    /**
+     * Datagram being packed by one thread, and the tags of the event it is encoding. Guarded by its own monitor,
+     * which is only contended when the flusher sends it.
+     */
+    private class Packet {
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(packetSize);
+        private byte[] tags = new byte[MIN_PACKET_SIZE];
+        private int tagsLength;
+
+        void clearTags() {
+            tagsLength = 0;
+        }
+
+        /**
+         * Adds a tag to the lines of the current event. Ignored by plain StatsD.
+         */
+        void tag(String key, String value) {
+            if (format != StatsdFormat.DOGSTATSD) {
+                return;
+            }
+            if (tagsLength == 0) {
+                for (byte b : TAGS) {
+                    putTagByte(b);
+                }
+            } else {
+                putTagByte((byte) ',');
+            }
+            putTagString(key);
+            putTagByte((byte) ':');
+            putTagString(value == null ? "" : value);
+        }
+
+        /**
+         * Adds the cluster tag, unless the event comes from the default source
+         */
+        void clusterTag(String cluster) {
+            if (!cluster.isEmpty()) {
+                tag(CLUSTER, cluster);
+            }
+        }
+
+        private void putTagString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            for (byte b : bytes) {
+                // Separators of the line format cannot be escaped
+                putTagByte(b == ',' || b == '|' || b == '\n' || b == '\r' ? (byte) '_' : b);
+            }
+        }
+
+        private void putTagByte(byte b) {
+            if (tagsLength == tags.length) {
+                tags = Arrays.copyOf(tags, tags.length * 2);
+            }
+            tags[tagsLength++] = b;
+        }
+
+        /**
+         * Packs a line, sending the packet first if the line does not fit
+         */
+        void line(byte[] name, long value, byte[] type, long samples) {
+            long rateFraction = 0;
+            int rateDigits = 0;
+            if (samples > 1) {
+                // 1 / samples as the digits after "0.", rounded to nanos and without trailing zeros
+                rateFraction = Math.max(1, (SAMPLE_RATE_SCALE + samples / 2) / samples);
+                rateDigits = SAMPLE_RATE_DIGITS;
+                while (rateFraction % 10 == 0) {
+                    rateFraction /= 10;
+                    rateDigits--;
+                }
+            }
+            int length = name.length + digits(value) + type.length + tagsLength
+                    + (rateDigits == 0 ? 0 : SAMPLE_RATE.length + 2 + rateDigits);
+            if (length > packetSize) {
+                droppedPackets.increment();
+                return;
+            }
+
+            int separator = buffer.position() == 0 ? 0 : 1;
+            if (buffer.remaining() < length + separator) {
+                send();
+                separator = 0;
+            }
+            if (separator == 1) {
+                buffer.put((byte) '\n');
+            }
+            buffer.put(name);
+            putLong(value);
+            buffer.put(type);
+            if (rateDigits != 0) {
+                buffer.put(SAMPLE_RATE);
+                buffer.put((byte) '0');
+                buffer.put((byte) '.');
+                putFraction(rateFraction, rateDigits);
+            }
+            buffer.put(tags, 0, tagsLength);
+        }
+
+        private void putFraction(long fraction, int digits) {
+            int end = buffer.position() + digits;
+            for (int i = end - 1; i >= buffer.position(); i--) {
+                buffer.put(i, (byte) ('0' + fraction % 10));
+                fraction /= 10;
+            }
+            buffer.position(end);
+        }
+
+        private void putLong(long value) {
+            int end = buffer.position() + digits(value);
+            if (value < 0) {
+                buffer.put((byte) '-');
+            }
+            for (int i = end - 1; i >= buffer.position(); i--) {
+                buffer.put(i, (byte) ('0' + Math.abs(value % 10)));
+                value /= 10;
+            }
+            buffer.position(end);
+        }
+
+        /**
+         * Sends the packed lines without waiting for the socket
+         */
+        void send() {
+            if (buffer.position() == 0) {
+                return;
+            }
+            buffer.flip();
+            try {
+                if (channel.write(buffer) > 0) {
+                    sentPackets.increment();
+                } else {
+                    droppedPackets.increment();
+                }
+            } catch (IOException e) {
+                droppedPackets.increment();
+                if (log.isDebugEnabled()) {
+                    log.debug("Failed to send a StatsD packet", e);
+                }
+            } finally {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Counts the characters of a number, including the sign
+     */
+    private static int digits(long value) {
+        int digits = value < 0 ? 2 : 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BinaryEventCodecTest {
+
+    private final BinaryEventCodec codec = new BinaryEventCodec("east");
+
+    @Test
+    public void roundTripsActivations() {
+        ActivationEvent activation = new ActivationEvent("invoker0", "guest", "user", 2, "guest/h\u00e9llo",
+                "nodejs:8", Long.MAX_VALUE, -1, 300);
+
+        ActivationEvent decoded = (ActivationEvent) codec.decode(codec.encode(activation));
+
+        assertEquals("east", decoded.getCluster());
+        assertEquals("invoker0", decoded.getSource());
+        assertEquals("guest", decoded.getNamespace());
+        assertEquals("user", decoded.getUserId());
+        assertEquals(2, decoded.getStatusCode());
+        assertEquals("guest/h\u00e9llo", decoded.getActionName());
+        assertEquals("nodejs:8", decoded.getKind());
+        assertEquals(Long.MAX_VALUE, decoded.getDuration());
+        assertEquals(-1, decoded.getWaitTime());
+        assertEquals(300, decoded.getInitTime());
+        assertEquals(1, decoded.getColdStarts());
+        assertEquals(activation.getActivationIdHash(), decoded.getActivationIdHash());
+    }
+
+    @Test
+    public void roundTripsMissingStrings() {
+        ActivationEvent activation = new ActivationEvent(null, "guest", null, 0, "guest/hello", null, 1, 0, 0);
+
+        ActivationEvent decoded = (ActivationEvent) codec.decode(codec.encode(activation));
+
+        assertNull(decoded.getSource());
+        assertNull(decoded.getUserId());
+        assertNull(decoded.getKind());
+        assertEquals("guest/hello", decoded.getActionName());
+    }
+
+    @Test
+    public void roundTripsMetrics() {
+        MetricEvent metric = new MetricEvent("controller0", "guest", "user", "ConcurrentInvocations", -12);
+
+        MetricEvent decoded = (MetricEvent) codec.decode(codec.encode(metric));
+
+        assertEquals("controller0", decoded.getSource());
+        assertEquals("guest", decoded.getNamespace());
+        assertEquals("ConcurrentInvocations", decoded.getMetricName());
+        assertEquals(-12, decoded.getMetricValue());
+    }
+
+    @Test
+    public void decodesSameEventsAsJson() {
+        byte[] json = ("{\"body\":{\"statusCode\":0,\"duration\":42,\"name\":\"guest/hello\",\"waitTime\":7,"
+                + "\"initTime\":0,\"kind\":\"python:3\",\"activationId\":\"a1b2c3\"},\"eventType\":\"Activation\","
+                + "\"source\":\"invoker0\",\"userId\":\"user\",\"namespace\":\"guest\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        ActivationEvent fromJson = (ActivationEvent) new OpenwhiskEventDecoder("east").decode(json);
+
+        byte[] binary = codec.encode(fromJson);
+        ActivationEvent fromBinary = (ActivationEvent) codec.decode(binary);
+
+        assertTrue(binary.length < json.length);
+        assertEquals(fromJson.getSource(), fromBinary.getSource());
+        assertEquals(fromJson.getNamespace(), fromBinary.getNamespace());
+        assertEquals(fromJson.getUserId(), fromBinary.getUserId());
+        assertEquals(fromJson.getActionName(), fromBinary.getActionName());
+        assertEquals(fromJson.getKind(), fromBinary.getKind());
+        assertEquals(fromJson.getDuration(), fromBinary.getDuration());
+        assertEquals(fromJson.getWaitTime(), fromBinary.getWaitTime());
+        assertEquals(fromJson.getActivationIdHash(), fromBinary.getActivationIdHash());
+        assertArrayEquals(binary, codec.encode(fromBinary));
+    }
+
+    @Test
+    public void detectsBinaryEvents() {
+        assertTrue(codec.detects(codec.encode(new MetricEvent("c", "guest", "u", "m", 1))));
+        assertFalse(codec.detects("{}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(codec.detects(new byte[0]));
+    }
+
+    @Test
+    public void ignoresUnknownEventTypes() {
+        assertNull(codec.decode(new byte[]{BinaryEventCodec.MAGIC, BinaryEventCodec.VERSION, 9}));
+    }
+
+    @Test
+    public void rejectsEmptyValues() {
+        assertPoison(null, PoisonReason.EMPTY);
+        assertPoison(new byte[0], PoisonReason.EMPTY);
+    }
+
+    @Test
+    public void rejectsForeignHeaders() {
+        assertPoison("{}".getBytes(StandardCharsets.UTF_8), PoisonReason.MALFORMED);
+        assertPoison(new byte[]{BinaryEventCodec.MAGIC, BinaryEventCodec.VERSION}, PoisonReason.MALFORMED);
+        assertPoison(new byte[]{BinaryEventCodec.MAGIC, 2, 1}, PoisonReason.MALFORMED);
+    }
+
+    @Test
+    public void rejectsTruncatedEvents() {
+        byte[] value = codec.encode(new ActivationEvent("invoker0", "guest", "user", 0, "guest/hello", "java",
+                1000, 10, 0));
+        for (int length = 3; length < value.length; length++) {
+            assertPoison(Arrays.copyOf(value, length), PoisonReason.MALFORMED);
+        }
+    }
+
+    @Test
+    public void rejectsTrailingContent() {
+        byte[] value = codec.encode(new MetricEvent("controller0", "guest", "user", "ConcurrentInvocations", 1));
+        assertPoison(Arrays.copyOf(value, value.length + 1), PoisonReason.MALFORMED);
+    }
+
+    @Test
+    public void rejectsInvalidLengths() {
+        byte[] header = {BinaryEventCodec.MAGIC, BinaryEventCodec.VERSION, 2};
+        // A varint of more than ten bytes
+        assertPoison(concat(header, new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, -1, -1, 1}), PoisonReason.MALFORMED);
+        // A string longer than the event
+        assertPoison(concat(header, new byte[]{100, 'a'}), PoisonReason.MALFORMED);
+        // A string length which does not fit into a long
+        assertPoison(concat(header, new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, -1, 1}), PoisonReason.MALFORMED);
+    }
+
+    @Test
+    public void rejectsEventsWithoutRequiredFields() {
+        byte[] value = codec.encode(new ActivationEvent("invoker0", null, "user", 0, "guest/hello", "java", 1, 0, 0));
+        assertPoison(value, PoisonReason.MISSING_FIELD);
+
+        value = codec.encode(new MetricEvent("controller0", "guest", "user", null, 1));
+        assertPoison(value, PoisonReason.MISSING_FIELD);
+    }
+
+    private void assertPoison(byte[] value, PoisonReason reason) {
+        try {
+            codec.decode(value);
+            fail("Expected a poison record for " + Arrays.toString(value));
+        } catch (PoisonRecordException e) {
+            assertEquals(reason, e.getReason());
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] value = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, value, first.length, second.length);
+        return value;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+import org.junit.Test;
+import org.wso2.serverless.stats.metrics.PipelineMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CatchUpControllerTest {
+
+    private final PipelineMetrics pipelineMetrics = new PipelineMetrics(1);
+    private final ConsumerLag lag = new ConsumerLag(pipelineMetrics);
+    private final CatchUpController controller = new CatchUpController(pipelineMetrics, 1000);
+    private final List<Boolean> modes = new ArrayList<>();
+
+    @Test
+    public void entersAtThresholdAndLeavesBelowATenth() {
+        controller.addModeListener(modes::add);
+
+        lag.set(999);
+        controller.check();
+        assertFalse(controller.isCatchingUp());
+
+        lag.set(1000);
+        controller.check();
+        assertTrue(controller.isCatchingUp());
+
+        for (long remaining : new long[]{5000, 500, 101}) {
+            lag.set(remaining);
+            controller.check();
+            assertTrue(controller.isCatchingUp());
+        }
+
+        lag.set(100);
+        controller.check();
+        assertFalse(controller.isCatchingUp());
+
+        lag.set(999);
+        controller.check();
+        assertFalse(controller.isCatchingUp());
+        assertEquals(Arrays.asList(true, false), modes);
+    }
+
+    @Test
+    public void switchesBackToNormalWhenStopped() {
+        controller.addModeListener(modes::add);
+        lag.set(2000);
+        controller.check();
+
+        controller.stop();
+
+        assertFalse(controller.isCatchingUp());
+        assertEquals(Arrays.asList(true, false), modes);
+    }
+
+    @Test
+    public void keepsNotifyingWhenAListenerFails() {
+        controller.addModeListener(catchingUp -> {
+            throw new IllegalStateException("Failing listener");
+        });
+        controller.addModeListener(modes::add);
+        lag.set(1000);
+
+        controller.check();
+
+        assertTrue(controller.isCatchingUp());
+        assertEquals(Collections.singletonList(true), modes);
+    }
+
+    @Test
+    public void staysNormalWhenStoppedInNormalMode() {
+        controller.addModeListener(modes::add);
+
+        controller.stop();
+
+        assertFalse(controller.isCatchingUp());
+        assertEquals(Collections.emptyList(), modes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNonPositiveLag() {
+        new CatchUpController(pipelineMetrics, 0);
+    }
+}
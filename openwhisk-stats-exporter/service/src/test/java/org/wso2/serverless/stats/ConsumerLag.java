@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.wso2.serverless.stats.metrics.PipelineMetrics;
+
+import java.util.Collections;
+
+import static org.wso2.serverless.stats.Constants.PARTITION;
+
+/**
+ * Reports a consumer lag to {@link PipelineMetrics} the way the lag metric of a Kafka consumer does
+ */
+class ConsumerLag implements Metric {
+
+    private static final MetricName NAME = new MetricName("records-lag", "consumer-fetch-manager-metrics", "",
+            Collections.singletonMap(PARTITION, "0"));
+
+    private volatile long lag;
+
+    /**
+     * ConsumerLag read by the given pipeline metrics
+     *
+     * @param pipelineMetrics Pipeline metrics
+     */
+    ConsumerLag(PipelineMetrics pipelineMetrics) {
+        pipelineMetrics.setConsumerMetrics(() -> Collections.singletonMap(NAME, this));
+    }
+
+    void set(long lag) {
+        this.lag = lag;
+    }
+
+    @Override
+    public MetricName metricName() {
+        return NAME;
+    }
+
+    @Override
+    @Deprecated
+    public double value() {
+        return lag;
+    }
+
+    @Override
+    public Object metricValue() {
+        return (double) lag;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generates synthetic Activation and Metric events in the format OpenWhisk writes to the events topic.
+ * Actions are picked from a Zipf distribution, so a few actions receive most of the activations
+ * like in a real deployment.
+ */
+public class EventGenerator {
+
+    private static final String[] KINDS = {"nodejs:6", "nodejs:8", "python:3", "java", "php:7.1", "swift:4.1"};
+    private static final String[] METRICS = {Constants.METRIC_CONCURRENT_ACTIVATIONS,
+            Constants.METRIC_CONCURRENT_RATE_LIMIT, Constants.METRIC_TIMED_RATE_LIMIT};
+    private static final int SOURCES = 4;
+    private static final double COLD_START_RATIO = 0.05;
+    private static final double ERROR_RATIO = 0.03;
+
+    private final Random random;
+    private final int actionsPerNamespace;
+    private final double metricRatio;
+    private final String[] namespaces;
+    private final String[] userIds;
+    private final String[] actionNames;
+    private final String[] kinds;
+    private final double[] cumulative;
+
+    /**
+     * EventGenerator creating events for the given label space
+     *
+     * @param namespaces          Number of namespaces
+     * @param actionsPerNamespace Number of actions per namespace
+     * @param skew                Zipf exponent of the action popularity, 0 for a uniform distribution
+     * @param metricRatio         Share of Metric events
+     * @param seed                Random seed, so runs can be repeated
+     */
+    public EventGenerator(int namespaces, int actionsPerNamespace, double skew, double metricRatio, long seed) {
+        if (namespaces <= 0 || actionsPerNamespace <= 0) {
+            throw new IllegalArgumentException("Number of namespaces and actions should be positive");
+        }
+
+        if (skew < 0) {
+            throw new IllegalArgumentException("Skew cannot be negative");
+        }
+
+        if (metricRatio < 0 || metricRatio > 1) {
+            throw new IllegalArgumentException("Metric ratio should be between 0 and 1");
+        }
+
+        this.random = new Random(seed);
+        this.actionsPerNamespace = actionsPerNamespace;
+        this.metricRatio = metricRatio;
+        this.namespaces = new String[namespaces];
+        this.userIds = new String[namespaces];
+        for (int i = 0; i < namespaces; i++) {
+            this.namespaces[i] = "namespace-" + i;
+            this.userIds[i] = new UUID(seed, i).toString();
+        }
+
+        int actions = namespaces * actionsPerNamespace;
+        this.actionNames = new String[actions];
+        this.kinds = new String[actions];
+        this.cumulative = new double[actions];
+        double sum = 0;
+        for (int i = 0; i < actions; i++) {
+            actionNames[i] = this.namespaces[i / actionsPerNamespace] + "/action-" + (i % actionsPerNamespace);
+            kinds[i] = KINDS[i % KINDS.length];
+            sum += 1 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < actions; i++) {
+            cumulative[i] /= sum;
+        }
+
+        // Popular actions should not all belong to the first namespace
+        shuffle();
+    }
+
+    private void shuffle() {
+        for (int i = actionNames.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String name = actionNames[i];
+            actionNames[i] = actionNames[j];
+            actionNames[j] = name;
+            String kind = kinds[i];
+            kinds[i] = kinds[j];
+            kinds[j] = kind;
+        }
+    }
+
+    /**
+     * Checks whether the next event should be a Metric event
+     *
+     * @return true for a Metric event
+     */
+    public boolean nextIsMetric() {
+        return random.nextDouble() < metricRatio;
+    }
+
+    /**
+     * Creates the record value of an Activation event
+     *
+     * @param timestamp Event timestamp
+     * @return UTF-8 encoded JSON
+     */
+    public byte[] activation(long timestamp) {
+        int action = Arrays.binarySearch(cumulative, random.nextDouble());
+        if (action < 0) {
+            action = Math.min(-action - 1, cumulative.length - 1);
+        }
+        String name = actionNames[action];
+        int namespace = Integer.parseInt(name.substring("namespace-".length(), name.indexOf('/')));
+
+        int statusCode = random.nextDouble() < ERROR_RATIO ? 1 + random.nextInt(3) : 0;
+        long initTime = random.nextDouble() < COLD_START_RATIO ? 300 + random.nextInt(700) : 0;
+        long duration = (long) Math.exp(3 + random.nextGaussian()) + initTime;
+        long waitTime = (long) Math.exp(1.5 + random.nextGaussian());
+
+        String json = "{\"body\":{\"statusCode\":" + statusCode
+                + ",\"duration\":" + duration
+                + ",\"name\":\"" + name
+                + "\",\"waitTime\":" + waitTime
+                + ",\"initTime\":" + initTime
+                + ",\"kind\":\"" + kinds[action]
+                + "\",\"conductor\":false,\"memory\":256,\"activationId\":\"" + Long.toHexString(random.nextLong())
+                + "\"},\"eventType\":\"Activation\",\"source\":\"invoker" + random.nextInt(SOURCES)
+                + "\",\"userId\":\"" + userIds[namespace]
+                + "\",\"namespace\":\"" + namespaces[namespace]
+                + "\",\"timestamp\":" + timestamp + "}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the record value of a Metric event
+     *
+     * @param timestamp Event timestamp
+     * @return UTF-8 encoded JSON
+     */
+    public byte[] metric(long timestamp) {
+        int namespace = random.nextInt(namespaces.length);
+        String metric = METRICS[random.nextInt(METRICS.length)];
+        long value = Constants.METRIC_CONCURRENT_ACTIVATIONS.equals(metric) ? random.nextInt(100) : 1;
+
+        String json = "{\"body\":{\"metricName\":\"" + metric
+                + "\",\"metricValue\":" + value
+                + "},\"eventType\":\"Metric\",\"source\":\"controller0\",\"userId\":\"" + userIds[namespace]
+                + "\",\"namespace\":\"" + namespaces[namespace]
+                + "\",\"timestamp\":" + timestamp + "}";
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the number of distinct actions
+     *
+     * @return Number of actions
+     */
+    public int getActions() {
+        return namespaces.length * actionsPerNamespace;
+    }
+}
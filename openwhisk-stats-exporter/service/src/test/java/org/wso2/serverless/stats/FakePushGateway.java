@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * In-process stand-in for the Prometheus Pushgateway. Accepts pushes on an ephemeral port, counts them and
+ * reports the total number of activations found in each pushed body.
+ */
+public class FakePushGateway {
+
+    private static final Log log = LogFactory.getLog(FakePushGateway.class);
+
+    private static final String ACTIVATIONS_TOTAL_PREFIX = Constants.ACTIVATIONS_TOTAL_COUNTER + "{";
+
+    private final HttpServer server;
+    private final LongConsumer activationsPushed;
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong pushedBytes = new AtomicLong();
+
+    /**
+     * FakePushGateway listening on localhost
+     *
+     * @param activationsPushed Receives the activation total of every push
+     * @throws IOException If the server cannot be started
+     */
+    public FakePushGateway(LongConsumer activationsPushed) throws IOException {
+        this.activationsPushed = activationsPushed;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/metrics/job/", this::handle);
+    }
+
+    /**
+     * Starts accepting pushes
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Gets the address to configure the exporter with
+     *
+     * @return host:port
+     */
+    public String getAddress() {
+        return "localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Gets the number of received pushes
+     *
+     * @return Number of pushes
+     */
+    public long getPushes() {
+        return pushes.get();
+    }
+
+    /**
+     * Gets the number of received bytes
+     *
+     * @return Pushed bytes
+     */
+    public long getPushedBytes() {
+        return pushedBytes.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long total = 0;
+        long bytes = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                bytes += line.length() + 1;
+                if (line.startsWith(ACTIVATIONS_TOTAL_PREFIX)) {
+                    total += (long) Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to read pushed metrics", e);
+        }
+
+        pushes.incrementAndGet();
+        pushedBytes.addAndGet(bytes);
+        activationsPushed.accept(total);
+        exchange.sendResponseHeaders(202, -1);
+        exchange.close();
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for a Prometheus remote write endpoint. Decodes the snappy compressed WriteRequests,
+ * checks that the labels of every series are sorted and named, and keeps the last value of every
+ * activation total series. Every n-th request can be answered with 503 to exercise retries.
+ */
+public class FakeRemoteWriteReceiver {
+
+    private static final Log log = LogFactory.getLog(FakeRemoteWriteReceiver.class);
+
+    private static final String PATH = "/api/v1/write";
+
+    private final HttpServer server;
+    private final int failEvery;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+    private final AtomicLong invalidSeries = new AtomicLong();
+    private final Map<String, Double> activationTotals = new ConcurrentHashMap<>();
+
+    /**
+     * FakeRemoteWriteReceiver listening on localhost
+     *
+     * @param failEvery Answer every n-th request with 503, 0 to accept all requests
+     * @throws IOException If the server cannot be started
+     */
+    public FakeRemoteWriteReceiver(int failEvery) throws IOException {
+        this.failEvery = failEvery;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(PATH, this::handle);
+    }
+
+    /**
+     * Starts accepting requests
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops the server
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * Gets the URL to configure the exporter with
+     *
+     * @return Remote write URL
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + PATH;
+    }
+
+    /**
+     * Gets the number of received requests, including the failed ones
+     *
+     * @return Number of requests
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * Gets the number of accepted samples
+     *
+     * @return Number of samples
+     */
+    public long getSamples() {
+        return samples.get();
+    }
+
+    /**
+     * Gets the number of received compressed bytes
+     *
+     * @return Received bytes
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Gets the number of series with unsorted labels or without a metric name
+     *
+     * @return Number of invalid series
+     */
+    public long getInvalidSeries() {
+        return invalidSeries.get();
+    }
+
+    /**
+     * Gets the sum of the last written values of all activation total series
+     *
+     * @return Total activations
+     */
+    public long getActivationsWritten() {
+        long total = 0;
+        for (double value : activationTotals.values()) {
+            total += (long) value;
+        }
+        return total;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] compressed = readAll(exchange.getRequestBody());
+        long request = requests.incrementAndGet();
+        receivedBytes.addAndGet(compressed.length);
+        if (failEvery > 0 && request % failEvery == 0) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        int status = 204;
+        try {
+            if (!"snappy".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                status = 400;
+            } else {
+                decodeWriteRequest(Snappy.uncompress(compressed));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to decode a remote write request", e);
+            status = 400;
+        }
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    private void decodeWriteRequest(byte[] bytes) {
+        Reader reader = new Reader(bytes, 0, bytes.length);
+        while (reader.hasMore()) {
+            int tag = (int) reader.varint();
+            if (tag != (1 << 3 | 2)) {
+                throw new IllegalStateException("Unexpected WriteRequest field tag " + tag);
+            }
+            decodeTimeSeries(reader.message());
+        }
+    }
+
+    private void decodeTimeSeries(Reader reader) {
+        List<String> labels = new ArrayList<>();
+        String name = null;
+        double value = 0;
+        while (reader.hasMore()) {
+            int tag = (int) reader.varint();
+            Reader field = reader.message();
+            if (tag == (1 << 3 | 2)) {
+                field.varint();
+                String labelName = field.string();
+                field.varint();
+                String labelValue = field.string();
+                labels.add(labelName);
+                labels.add(labelValue);
+                if (Constants.METRIC_NAME_LABEL.equals(labelName)) {
+                    name = labelValue;
+                }
+            } else if (tag == (2 << 3 | 2)) {
+                field.varint();
+                value = Double.longBitsToDouble(field.fixed64());
+                samples.incrementAndGet();
+            } else {
+                throw new IllegalStateException("Unexpected TimeSeries field tag " + tag);
+            }
+        }
+
+        boolean sorted = true;
+        for (int i = 2; i < labels.size(); i += 2) {
+            sorted &= labels.get(i - 2).compareTo(labels.get(i)) < 0;
+        }
+        if (!sorted || name == null) {
+            invalidSeries.incrementAndGet();
+        } else if (Constants.ACTIVATIONS_TOTAL_COUNTER.equals(name)) {
+            activationTotals.put(labels.toString(), value);
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int length;
+        try (InputStream body = input) {
+            while ((length = body.read(chunk)) >= 0) {
+                bytes.write(chunk, 0, length);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads protobuf wire format fields from a region of an array
+     */
+    private static class Reader {
+
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        Reader(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        boolean hasMore() {
+            return position < end;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        long fixed64() {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value |= (bytes[position++] & 0xFFL) << (i * 8);
+            }
+            return value;
+        }
+
+        Reader message() {
+            int length = (int) varint();
+            Reader message = new Reader(bytes, position, position + length);
+            position += length;
+            return message;
+        }
+
+        String string() {
+            int length = (int) varint();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
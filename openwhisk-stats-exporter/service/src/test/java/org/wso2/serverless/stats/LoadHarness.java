@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.wso2.serverless.stats;
+
+import io.prometheus.client.CollectorRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.streams.StreamsConfig;
+import org.apache.kafka.streams.TopologyTestDriver;
+import org.apache.kafka.streams.test.ConsumerRecordFactory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.wso2.serverless.stats.exposition.ExpositionBuffer;
+import org.wso2.serverless.stats.exposition.ExpositionEncoder;
+import org.wso2.serverless.stats.exposition.ExpositionFormat;
+import org.wso2.serverless.stats.exposition.ExpositionRegistry;
+import org.wso2.serverless.stats.listeners.OverflowPolicy;
+import org.wso2.serverless.stats.remotewrite.RemoteWriteSink;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.wso2.serverless.stats.Constants.*;
+
+/**
+ * Load harness running the exporter against synthetic events on a single machine.
+ * <p>
+ * A producer thread generates events with {@link EventGenerator} at the configured rate into an in-memory topic.
+ * A consumer thread pipes them through the collector topology with the Kafka Streams {@link TopologyTestDriver},
+ * so no broker is needed. The exporter pushes to a {@link FakePushGateway}. Every second the harness reports
+ * produced and consumed events/sec, lag, end-to-end latency from producing an activation until it is part of
+ * a push, the time of the last scrape and heap usage.
+ * <p>
+ * With -remoteWrite the registry is also written to a {@link FakeRemoteWriteReceiver}, which fails every
+ * -remoteWriteFailEvery-th request to exercise the retries.
+ * <p>
+ * Run the main method from the test classpath, e.g. with -rate 50000 -duration 60 -namespaces 100 -actions 100.
+ */
+public class LoadHarness {
+
+    private static final Log log = LogFactory.getLog(LoadHarness.class);
+
+    private static final long MARKER_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long WALL_CLOCK_STEP_MILLIS = 100;
+    private static final int PRODUCE_BATCH = 256;
+
+    private final Options options;
+    private final BlockingQueue<byte[]> topic;
+    private final AtomicLong produced = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final AtomicLong activationsProduced = new AtomicLong();
+    private final ConcurrentLinkedQueue<long[]> markers = new ConcurrentLinkedQueue<>();
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> allLatencies = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean producing = true;
+    private volatile boolean consuming = true;
+    private volatile long lastScrapeMillis;
+    private volatile long lastScrapeBytes;
+
+    private LoadHarness(Options options) {
+        this.options = options;
+        this.topic = new ArrayBlockingQueue<>(options.topicCapacity);
+    }
+
+    /**
+     * Main method to start the harness
+     *
+     * @param args Commandline arguments
+     * @throws Exception If the harness fails
+     */
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        CmdLineParser parser = new CmdLineParser(options);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            parser.printUsage(System.err);
+            return;
+        }
+        new LoadHarness(options).run();
+    }
+
+    private void run() throws Exception {
+        FakePushGateway pushGateway = new FakePushGateway(this::onPush);
+        pushGateway.start();
+
+        OpenwhiskStatsExporter.Config config = new OpenwhiskStatsExporter.Config();
+        config.setPushGateway(pushGateway.getAddress());
+        config.setPushInterval(options.pushInterval);
+        config.setMaxActionsPerNamespace(options.maxActionsPerNamespace);
+        CollectorRegistry registry = new ExpositionRegistry(null);
+        OpenwhiskStatsExporter exporter = new OpenwhiskStatsExporter(config);
+
+        OpenwhiskEventCollector collector = new OpenwhiskEventCollector(DEFAULT_APPLICATION_ID,
+                DEFAULT_KAFKA_TOPIC, "localhost:9092");
+        collector.setDurationBuckets(exporter.initMetrics(registry));
+        collector.setAggregationWindow(options.aggregationWindow);
+        collector.setAsyncDispatch(options.dispatchBuffer, OverflowPolicy.BLOCK, DEFAULT_SAMPLE_RATE);
+        collector.getListenerQueueMetrics().register(registry);
+        collector.addListener(exporter);
+        exporter.getPushScheduler().start();
+
+        FakeRemoteWriteReceiver remoteWriteReceiver = null;
+        RemoteWriteSink remoteWriteSink = null;
+        if (options.remoteWrite) {
+            remoteWriteReceiver = new FakeRemoteWriteReceiver(options.remoteWriteFailEvery);
+            remoteWriteReceiver.start();
+            remoteWriteSink = new RemoteWriteSink(new URL(remoteWriteReceiver.getUrl()), registry, null,
+                    options.remoteWriteInterval, DEFAULT_REMOTE_WRITE_SHARDS, DEFAULT_REMOTE_WRITE_BATCH_SIZE);
+            remoteWriteSink.register(registry);
+            remoteWriteSink.start();
+        }
+
+        log.info(String.format("Load harness: rate %s events/sec, %d namespaces x %d actions, skew %.2f, "
+                        + "metric ratio %.2f, aggregation window %d ms, push interval %d ms",
+                options.rate > 0 ? String.valueOf(options.rate) : "unbounded", options.namespaces,
+                options.actions, options.skew, options.metricRatio, options.aggregationWindow,
+                options.pushInterval));
+
+        Thread producer = new Thread(this::produce, "harness-producer");
+        Thread consumer = new Thread(() -> consume(collector), "harness-consumer");
+        producer.start();
+        consumer.start();
+
+        Thread scraper = new Thread(() -> scrape(registry), "harness-scraper");
+        scraper.setDaemon(true);
+        scraper.start();
+
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long startNanos = System.nanoTime();
+        long lastNanos = startNanos;
+        long lastProduced = 0;
+        long lastConsumed = 0;
+        long maxLag = 0;
+        long maxHeap = 0;
+        long endNanos = startNanos + TimeUnit.SECONDS.toNanos(options.duration);
+        while (System.nanoTime() < endNanos) {
+            Thread.sleep(1000);
+
+            long now = System.nanoTime();
+            long producedNow = produced.get();
+            long consumedNow = consumed.get();
+            long lag = producedNow - consumedNow;
+            long heap = memory.getHeapMemoryUsage().getUsed();
+            maxLag = Math.max(maxLag, lag);
+            maxHeap = Math.max(maxHeap, heap);
+
+            long[] interval = drainLatencies(latencies);
+            log.info(String.format("%3ds produced %d/s, consumed %d/s, lag %d, latency p50 %d ms p99 %d ms, "
+                            + "last scrape %d ms (%d KB), pushes %d, heap %d MB",
+                    TimeUnit.NANOSECONDS.toSeconds(now - startNanos),
+                    perSecond(producedNow - lastProduced, now - lastNanos),
+                    perSecond(consumedNow - lastConsumed, now - lastNanos), lag,
+                    percentile(interval, 0.5), percentile(interval, 0.99), lastScrapeMillis,
+                    lastScrapeBytes / 1024, pushGateway.getPushes(), heap >> 20));
+            lastNanos = now;
+            lastProduced = producedNow;
+            lastConsumed = consumedNow;
+        }
+
+        producing = false;
+        producer.join();
+        while (consumed.get() < produced.get() && consumer.isAlive()) {
+            Thread.sleep(10);
+        }
+        consuming = false;
+        consumer.join();
+        long elapsedNanos = System.nanoTime() - startNanos;
+        collector.removeListener(exporter);
+        exporter.getPushScheduler().stop();
+        pushGateway.stop();
+        if (remoteWriteSink != null) {
+            remoteWriteSink.stop();
+            remoteWriteReceiver.stop();
+            log.info(String.format("Remote write: %d requests (%d KB), %d samples, %d invalid series, "
+                            + "%d activations written",
+                    remoteWriteReceiver.getRequests(), remoteWriteReceiver.getReceivedBytes() / 1024,
+                    remoteWriteReceiver.getSamples(), remoteWriteReceiver.getInvalidSeries(),
+                    remoteWriteReceiver.getActivationsWritten()));
+        }
+
+        long[] total = drainLatencies(allLatencies);
+        log.info(String.format("Sustained %d events/sec over %d s, latency p50 %d ms p99 %d ms max %d ms, "
+                        + "max lag %d, max heap %d MB, %d pushes (%d KB)",
+                perSecond(consumed.get(), elapsedNanos),
+                TimeUnit.NANOSECONDS.toSeconds(elapsedNanos), percentile(total, 0.5), percentile(total, 0.99),
+                percentile(total, 1), maxLag, maxHeap >> 20, pushGateway.getPushes(),
+                pushGateway.getPushedBytes() / 1024));
+    }
+
+    /**
+     * Generates events at the configured rate. Blocks when the in-memory topic is full, so a slow exporter
+     * shows up as lag and a lower produce rate.
+     */
+    private void produce() {
+        EventGenerator generator = new EventGenerator(options.namespaces, options.actions, options.skew,
+                options.metricRatio, options.seed);
+        long startNanos = System.nanoTime();
+        long nextMarker = startNanos;
+        try {
+            while (producing) {
+                long now = System.nanoTime();
+                if (options.rate > 0) {
+                    long due = (now - startNanos) * options.rate / TimeUnit.SECONDS.toNanos(1);
+                    if (produced.get() >= due) {
+                        TimeUnit.MICROSECONDS.sleep(100);
+                        continue;
+                    }
+                }
+
+                for (int i = 0; i < PRODUCE_BATCH; i++) {
+                    long timestamp = System.currentTimeMillis();
+                    if (generator.nextIsMetric()) {
+                        topic.put(generator.metric(timestamp));
+                    } else {
+                        topic.put(generator.activation(timestamp));
+                        activationsProduced.incrementAndGet();
+                    }
+                    produced.incrementAndGet();
+                }
+
+                if (now >= nextMarker) {
+                    markers.add(new long[]{activationsProduced.get(), System.nanoTime()});
+                    nextMarker = now + MARKER_INTERVAL_NANOS;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pipes the produced events through the collector topology
+     *
+     * @param collector Collector
+     */
+    private void consume(OpenwhiskEventCollector collector) {
+        Properties properties = new Properties();
+        properties.put(StreamsConfig.APPLICATION_ID_CONFIG, DEFAULT_APPLICATION_ID);
+        properties.put(StreamsConfig.BOOTSTRAP_SERVERS_CONFIG, "localhost:9092");
+        try {
+            properties.put(StreamsConfig.STATE_DIR_CONFIG,
+                    Files.createTempDirectory("load-harness").toString());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the state directory", e);
+        }
+
+        ConsumerRecordFactory<byte[], byte[]> records = new ConsumerRecordFactory<>(DEFAULT_KAFKA_TOPIC,
+                new ByteArraySerializer(), new ByteArraySerializer());
+        long wallClock = System.currentTimeMillis();
+        TopologyTestDriver driver = new TopologyTestDriver(collector.buildTopology(), properties, wallClock);
+        try {
+            while (consuming) {
+                byte[] value = topic.poll(WALL_CLOCK_STEP_MILLIS, TimeUnit.MILLISECONDS);
+                if (value != null) {
+                    driver.pipeInput(records.create(value));
+                    consumed.incrementAndGet();
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - wallClock >= WALL_CLOCK_STEP_MILLIS) {
+                    driver.advanceWallClockTime(now - wallClock);
+                    wallClock = now;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            driver.close();
+        }
+    }
+
+    /**
+     * Renders the registry like a Prometheus scrape in the configured interval
+     *
+     * @param registry Registry of the exporter
+     */
+    private void scrape(CollectorRegistry registry) {
+        ExpositionBuffer buffer = new ExpositionBuffer(1 << 20);
+        try {
+            while (consuming) {
+                Thread.sleep(options.scrapeInterval);
+                long start = System.nanoTime();
+                buffer.clear();
+                ExpositionEncoder.encode(registry, ExpositionFormat.TEXT, buffer);
+                lastScrapeMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                lastScrapeBytes = buffer.size();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Records the latency of all markers whose activations are included in a push
+     *
+     * @param activationsPushed Total number of activations in the push
+     */
+    private void onPush(long activationsPushed) {
+        long now = System.nanoTime();
+        long[] marker;
+        while ((marker = markers.peek()) != null && marker[0] <= activationsPushed) {
+            markers.poll();
+            long latency = TimeUnit.NANOSECONDS.toMillis(now - marker[1]);
+            latencies.add(latency);
+            allLatencies.add(latency);
+        }
+    }
+
+    private static long[] drainLatencies(List<Long> source) {
+        synchronized (source) {
+            long[] values = new long[source.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = source.get(i);
+            }
+            source.clear();
+            Arrays.sort(values);
+            return values;
+        }
+    }
+
+    private static long perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : count * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+    }
+
+    /**
+     * Maps CLI options passed
+     */
+    private static class Options {
+
+        @Option(name = "-rate", usage = "Events produced per second, 0 to produce as fast as possible")
+        private long rate = 10000;
+
+        @Option(name = "-duration", usage = "Duration of the run in seconds")
+        private int duration = 30;
+
+        @Option(name = "-namespaces", usage = "Number of namespaces")
+        private int namespaces = 20;
+
+        @Option(name = "-actions", usage = "Number of actions per namespace")
+        private int actions = 25;
+
+        @Option(name = "-skew", usage = "Zipf exponent of the action popularity, 0 for uniform")
+        private double skew = 1.0;
+
+        @Option(name = "-metricRatio", usage = "Share of Metric events")
+        private double metricRatio = 0.05;
+
+        @Option(name = "-seed", usage = "Random seed of the event generator")
+        private long seed = 42;
+
+        @Option(name = "-scrapeInterval", usage = "Interval of rendering the registry like a Prometheus scrape in milliseconds")
+        private long scrapeInterval = 15000;
+
+        @Option(name = "-topicCapacity", usage = "Number of events the in-memory topic can hold")
+        private int topicCapacity = 1_000_000;
+
+        @Option(name = CMD_OPTION_NAME_AGGREGATION_WINDOW, usage = "Activation pre-aggregation window in milliseconds")
+        private long aggregationWindow;
+
+        @Option(name = CMD_OPTION_NAME_PUSH_INTERVAL, usage = "Pushgateway push interval in milliseconds")
+        private long pushInterval = DEFAULT_PUSH_INTERVAL_MILLIS;
+
+        @Option(name = CMD_OPTION_NAME_MAX_ACTIONS, usage = "Maximum number of actions per namespace")
+        private int maxActionsPerNamespace = DEFAULT_MAX_ACTIONS_PER_NAMESPACE;
+
+        @Option(name = CMD_OPTION_NAME_DISPATCH_BUFFER, usage = "Number of events buffered for each listener")
+        private int dispatchBuffer;
+
+        @Option(name = "-remoteWrite", usage = "Also write the metrics to a fake remote write endpoint")
+        private boolean remoteWrite;
+
+        @Option(name = CMD_OPTION_NAME_REMOTE_WRITE_INTERVAL, usage = "Remote write sampling interval in milliseconds")
+        private long remoteWriteInterval = 1000;
+
+        @Option(name = "-remoteWriteFailEvery", usage = "Every how many remote write requests one fails with 503, 0 for none")
+        private int remoteWriteFailEvery = 10;
+    }
+}
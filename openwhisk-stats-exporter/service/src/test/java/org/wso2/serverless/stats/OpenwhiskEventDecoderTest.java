@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class OpenwhiskEventDecoderTest {
+
+    private static final String ACTIVATION = "{\"body\":{\"statusCode\":1,\"duration\":42,\"name\":\"guest/hello\","
+            + "\"waitTime\":7,\"initTime\":300,\"kind\":\"nodejs:8\",\"conductor\":false,\"memory\":256,"
+            + "\"activationId\":\"a1b2c3\",\"causedBy\":null,\"size\":[1,2.5e3,{\"x\":true}]},"
+            + "\"eventType\":\"Activation\",\"source\":\"invoker0\",\"userId\":\"user\",\"namespace\":\"guest\","
+            + "\"timestamp\":1531390033787}";
+
+    private final OpenwhiskEventDecoder decoder = new OpenwhiskEventDecoder("east");
+
+    @Test
+    public void decodesActivation() {
+        ActivationEvent event = (ActivationEvent) decoder.decode(bytes(ACTIVATION));
+
+        assertEquals("east", event.getCluster());
+        assertEquals("invoker0", event.getSource());
+        assertEquals("guest", event.getNamespace());
+        assertEquals("user", event.getUserId());
+        assertEquals(1, event.getStatusCode());
+        assertEquals("guest/hello", event.getActionName());
+        assertEquals("nodejs:8", event.getKind());
+        assertEquals(42, event.getDuration());
+        assertEquals(7, event.getWaitTime());
+        assertEquals(300, event.getInitTime());
+        assertEquals(1, event.getCount());
+        assertEquals(1, event.getColdStarts());
+    }
+
+    @Test
+    public void decodesMetric() {
+        MetricEvent event = (MetricEvent) decoder.decode(bytes("{\"body\":{\"metricName\":\"ConcurrentInvocations\","
+                + "\"metricValue\":12},\"eventType\":\"Metric\",\"source\":\"controller0\",\"userId\":\"user\","
+                + "\"namespace\":\"guest\",\"timestamp\":1531390033787}"));
+
+        assertEquals("guest", event.getNamespace());
+        assertEquals("ConcurrentInvocations", event.getMetricName());
+        assertEquals(12, event.getMetricValue());
+    }
+
+    @Test
+    public void decodesEscapedStrings() {
+        ActivationEvent event = (ActivationEvent) decoder.decode(bytes(ACTIVATION
+                .replace("guest/hello", "guest/h\\u00e9llo\\\"\\/\\n")));
+
+        assertEquals("guest/h\u00e9llo\"/\n", event.getActionName());
+    }
+
+    @Test
+    public void servesRepeatedStringsFromCache() {
+        ActivationEvent first = (ActivationEvent) decoder.decode(bytes(ACTIVATION));
+        ActivationEvent second = (ActivationEvent) decoder.decode(bytes(ACTIVATION));
+
+        assertSame(first.getNamespace(), second.getNamespace());
+        assertSame(first.getActionName(), second.getActionName());
+    }
+
+    @Test
+    public void hashesActivationIdOnly() {
+        ActivationEvent event = (ActivationEvent) decoder.decode(bytes(ACTIVATION));
+        ActivationEvent retried = (ActivationEvent) decoder.decode(bytes(ACTIVATION.replace("invoker0", "invoker1")));
+        ActivationEvent other = (ActivationEvent) decoder.decode(bytes(ACTIVATION.replace("a1b2c3", "d4e5f6")));
+
+        assertEquals(event.getActivationIdHash(), retried.getActivationIdHash());
+        assertNotEquals(event.getActivationIdHash(), other.getActivationIdHash());
+    }
+
+    @Test
+    public void ignoresUnknownEventTypes() {
+        assertNull(decoder.decode(bytes("{\"eventType\":\"Unknown\",\"namespace\":\"guest\"}")));
+        assertNull(decoder.decode(bytes("{}")));
+    }
+
+    @Test
+    public void rejectsEmptyValues() {
+        assertPoison(null, PoisonReason.EMPTY);
+    }
+
+    @Test
+    public void rejectsMalformedValues() {
+        assertPoison(bytes(""), PoisonReason.MALFORMED);
+        assertPoison(bytes("[]"), PoisonReason.MALFORMED);
+        assertPoison(bytes(ACTIVATION.substring(0, ACTIVATION.length() - 1)), PoisonReason.MALFORMED);
+        assertPoison(bytes(ACTIVATION + "}"), PoisonReason.MALFORMED);
+        assertPoison(bytes(ACTIVATION.replace("\"duration\":42", "\"duration\":\"42\"")), PoisonReason.MALFORMED);
+        assertPoison(bytes(ACTIVATION.replace("guest/hello", "guest/\\u00zz")), PoisonReason.MALFORMED);
+    }
+
+    @Test
+    public void rejectsEventsWithoutRequiredFields() {
+        assertPoison(bytes(ACTIVATION.replace("\"duration\":42,", "")), PoisonReason.MISSING_FIELD);
+        assertPoison(bytes(ACTIVATION.replace("\"namespace\":\"guest\",", "")), PoisonReason.MISSING_FIELD);
+        assertPoison(bytes("{\"body\":{\"metricName\":\"ConcurrentInvocations\"},\"eventType\":\"Metric\","
+                + "\"namespace\":\"guest\"}"), PoisonReason.MISSING_FIELD);
+    }
+
+    @Test
+    public void decodesAfterPoisonRecord() {
+        assertPoison(bytes("{\"eventType\":"), PoisonReason.MALFORMED);
+
+        ActivationEvent event = (ActivationEvent) decoder.decode(bytes(ACTIVATION));
+        assertEquals("guest/hello", event.getActionName());
+    }
+
+    @Test
+    public void detectsJsonObjects() {
+        assertTrue(decoder.detects(bytes(" \n{}")));
+        assertEquals(false, decoder.detects(bytes("[]")));
+        assertEquals(false, decoder.detects(new byte[0]));
+    }
+
+    private void assertPoison(byte[] value, PoisonReason reason) {
+        try {
+            decoder.decode(value);
+            fail("Expected a poison record");
+        } catch (PoisonRecordException e) {
+            assertEquals(reason, e.getReason());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
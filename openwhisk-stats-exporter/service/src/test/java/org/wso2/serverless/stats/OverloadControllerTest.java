@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+import org.junit.Test;
+import org.wso2.serverless.stats.metrics.PipelineMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.wso2.serverless.stats.Constants.MAX_SAMPLING_FACTOR;
+
+public class OverloadControllerTest {
+
+    private final PipelineMetrics pipelineMetrics = new PipelineMetrics(1);
+    private final ConsumerLag lag = new ConsumerLag(pipelineMetrics);
+
+    @Test
+    public void doublesWhileLagIsHighAndNotShrinking() {
+        OverloadController controller = new OverloadController(pipelineMetrics, 1000, 0);
+
+        assertEquals(1, check(controller, 999));
+        assertEquals(2, check(controller, 1000));
+        assertEquals(4, check(controller, 1200));
+        assertEquals(4, check(controller, 1100));
+        assertEquals(8, check(controller, 1150));
+    }
+
+    @Test
+    public void halvesOnceLagIsBelowAQuarter() {
+        OverloadController controller = new OverloadController(pipelineMetrics, 1000, 0);
+        check(controller, 1000);
+        check(controller, 1000);
+
+        assertEquals(4, check(controller, 251));
+        assertEquals(2, check(controller, 250));
+        assertEquals(1, check(controller, 0));
+        assertEquals(1, check(controller, 0));
+    }
+
+    @Test
+    public void capsTheSamplingFactor() {
+        OverloadController controller = new OverloadController(pipelineMetrics, 1000, 0);
+        for (int i = 0; i < 10; i++) {
+            check(controller, 1000 + i);
+        }
+
+        assertEquals(MAX_SAMPLING_FACTOR, controller.getSamplingFactor());
+    }
+
+    @Test
+    public void shedsOnProcessingDelay() {
+        OverloadController controller = new OverloadController(pipelineMetrics, 0, 1000);
+        controller.processed(System.currentTimeMillis() - 5000);
+        controller.processed(System.currentTimeMillis() - 10);
+        controller.check();
+        assertEquals(2, controller.getSamplingFactor());
+
+        // The largest delay is reset by every check
+        controller.check();
+        assertEquals(1, controller.getSamplingFactor());
+    }
+
+    @Test
+    public void keepsNestedSubsetsScaledByTheFactor() {
+        OverloadController controller = new OverloadController(pipelineMetrics, 1000, 0);
+        List<ActivationEvent> activations = new ArrayList<>();
+        for (int i = 0; i < 4096; i++) {
+            activations.add(new ActivationEvent("invoker0", "guest", "user", 0, "hello", "nodejs:8", i, 10, 0));
+        }
+        ActivationEvent first = activations.get(0);
+        assertSame(first, controller.sample(first));
+
+        check(controller, 1000);
+        List<ActivationEvent> keptAtTwo = new ArrayList<>();
+        for (ActivationEvent activation : activations) {
+            ActivationEvent kept = controller.sample(activation);
+            if (kept != null) {
+                assertEquals(2, kept.getCount());
+                assertEquals(activation.getDuration() * 2, kept.getDuration());
+                assertEquals(20, kept.getWaitTime());
+                keptAtTwo.add(activation);
+            }
+        }
+        assertEquals(2048, keptAtTwo.size(), 2048 * 0.1);
+
+        check(controller, 1000);
+        int keptAtFour = 0;
+        for (ActivationEvent activation : activations) {
+            ActivationEvent kept = controller.sample(activation);
+            if (kept != null) {
+                assertTrue(keptAtTwo.contains(activation));
+                assertEquals(4, kept.getCount());
+                keptAtFour++;
+            }
+        }
+        assertEquals(1024, keptAtFour, 1024 * 0.15);
+    }
+
+    @Test
+    public void keepsAllActivationsWhenStopped() {
+        OverloadController controller = new OverloadController(pipelineMetrics, 1000, 0);
+        check(controller, 1000);
+        ActivationEvent activation = new ActivationEvent("invoker0", "guest", "user", 0, "hello", "nodejs:8", 1, 0,
+                0);
+
+        controller.stop();
+
+        assertEquals(1, controller.getSamplingFactor());
+        ActivationEvent kept = controller.sample(activation);
+        assertNotNull(kept);
+        assertEquals(1, kept.getCount());
+    }
+
+    @Test
+    public void neverShedsAtFactorOne() {
+        OverloadController controller = new OverloadController(pipelineMetrics, 1000, 0);
+        for (int i = 0; i < 100; i++) {
+            ActivationEvent activation = new ActivationEvent("invoker0", "guest", "user", 0, "hello", "nodejs:8",
+                    i, 0, 0);
+            assertSame(activation, controller.sample(activation));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingThresholds() {
+        new OverloadController(pipelineMetrics, 0, 0);
+    }
+
+    private int check(OverloadController controller, long currentLag) {
+        lag.set(currentLag);
+        controller.check();
+        return controller.getSamplingFactor();
+    }
+}
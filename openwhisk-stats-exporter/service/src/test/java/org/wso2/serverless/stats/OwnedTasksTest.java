@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OwnedTasksTest {
+
+    private final List<String> revoked = new ArrayList<>();
+    private final OwnedTasks tasks = new OwnedTasks((task, epoch) -> revoked.add(task + "@" + epoch));
+
+    @Test
+    public void opensUniqueEpochs() {
+        int first = tasks.opened("0_0");
+        int second = tasks.opened("0_1");
+
+        assertTrue(second > first);
+        assertEquals(second, OwnedTasks.latestEpoch());
+        assertEquals(Collections.emptyList(), revoked);
+    }
+
+    @Test
+    public void revokesPreviousOwnershipWhenReopened() {
+        int first = tasks.opened("0_0");
+        tasks.opened("0_0");
+
+        assertEquals(Collections.singletonList("0_0@" + first), revoked);
+    }
+
+    @Test
+    public void revokesTasksWhichAreNotActive() {
+        int kept = tasks.opened("0_0");
+        int moved = tasks.opened("0_1");
+
+        tasks.retain(new HashSet<>(Collections.singletonList("0_0")), OwnedTasks.latestEpoch());
+        tasks.retain(new HashSet<>(Collections.singletonList("0_0")), OwnedTasks.latestEpoch());
+
+        assertEquals(Collections.singletonList("0_1@" + moved), revoked);
+        tasks.opened("0_0");
+        assertEquals(Arrays.asList("0_1@" + moved, "0_0@" + kept), revoked);
+    }
+
+    @Test
+    public void keepsOwnershipsOpenedAfterReading() {
+        int readEpoch = OwnedTasks.latestEpoch();
+        tasks.opened("0_2");
+
+        tasks.retain(Collections.emptySet(), readEpoch);
+
+        assertEquals(Collections.emptyList(), revoked);
+    }
+}
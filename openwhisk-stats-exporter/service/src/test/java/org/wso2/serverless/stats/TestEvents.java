@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats;
+
+/**
+ * Builds events which can only be read from records, for the tests of other packages
+ */
+public final class TestEvents {
+
+    private TestEvents() {
+    }
+
+    /**
+     * Builds an aggregated activation of the guest namespace
+     *
+     * @param cluster     Cluster label, empty for the default source
+     * @param count       Number of activations
+     * @param durationSum Sum of the durations in milliseconds
+     * @param waitTimeSum Sum of the wait times in milliseconds
+     * @param coldStarts  Number of cold starts
+     * @param initTimeSum Sum of the init times in milliseconds
+     * @return Aggregated activation
+     */
+    public static ActivationEvent aggregate(String cluster, long count, long durationSum, long waitTimeSum,
+                                            long coldStarts, long initTimeSum) {
+        return new ActivationEvent(null, cluster, "invoker0", "guest", "user", 0, "hello", "nodejs:8", durationSum,
+                waitTimeSum, initTimeSum, count, coldStarts, null, null, null);
+    }
+
+    /**
+     * Builds a namespace metric read from an event source
+     *
+     * @param cluster     Cluster label, empty for the default source
+     * @param namespace   Namespace
+     * @param metricName  Metric name
+     * @param metricValue Metric value
+     * @return Metric event
+     */
+    public static MetricEvent metric(String cluster, String namespace, String metricName, long metricValue) {
+        return new MetricEvent(null, cluster, "controller0", namespace, "user", metricName, metricValue);
+    }
+}
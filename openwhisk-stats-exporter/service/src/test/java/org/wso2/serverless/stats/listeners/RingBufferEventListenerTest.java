@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.listeners;
+
+import org.junit.After;
+import org.junit.Test;
+import org.wso2.serverless.stats.ActivationEvent;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferEventListenerTest {
+
+    private static final int CAPACITY = 8;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final BlockingListener delegate = new BlockingListener();
+    private RingBufferEventListener listener;
+
+    @After
+    public void release() {
+        delegate.release.countDown();
+        if (listener != null) {
+            listener.stop(TIMEOUT_MILLIS);
+        }
+    }
+
+    @Test
+    public void deliversEventsInOrder() throws InterruptedException {
+        // The capacity is rounded up to a power of two
+        listener = new RingBufferEventListener("test", delegate, CAPACITY - 3, OverflowPolicy.DROP_NEWEST, 1);
+        delegate.release.countDown();
+        for (int i = 0; i < 1000; i++) {
+            while (listener.depth() >= CAPACITY) {
+                Thread.yield();
+            }
+            listener.onActivation(activation(i));
+        }
+
+        delegate.awaitReceived(1000);
+        assertEquals(0, listener.dropped());
+        assertInOrder(1000);
+    }
+
+    @Test
+    public void dropsNewestEventsWhenFull() throws InterruptedException {
+        listener = new RingBufferEventListener("test", delegate, CAPACITY, OverflowPolicy.DROP_NEWEST, 1);
+        fillBuffer();
+
+        for (int i = CAPACITY + 1; i < CAPACITY + 6; i++) {
+            listener.onActivation(activation(i));
+        }
+        assertEquals(5, listener.dropped());
+        assertEquals(CAPACITY, listener.depth());
+
+        delegate.release.countDown();
+        delegate.awaitReceived(CAPACITY + 1);
+        assertInOrder(CAPACITY + 1);
+    }
+
+    @Test
+    public void samplesWhenMoreThanHalfFull() throws InterruptedException {
+        listener = new RingBufferEventListener("test", delegate, CAPACITY, OverflowPolicy.SAMPLE, 2);
+        listener.onActivation(activation(0));
+        delegate.awaitBlocked();
+
+        // Up to half of the buffer everything is kept, then every second event until the buffer is full
+        for (int i = 1; i <= CAPACITY / 2; i++) {
+            listener.onActivation(activation(i));
+        }
+        assertEquals(0, listener.dropped());
+        for (int i = CAPACITY / 2 + 1; i <= 2 * CAPACITY; i++) {
+            listener.onActivation(activation(i));
+        }
+        // One more is kept at half, three of the next six are sampled, the rest does not fit
+        assertEquals(CAPACITY, listener.depth());
+        assertEquals(CAPACITY, listener.dropped());
+
+        delegate.release.countDown();
+        delegate.awaitReceived(CAPACITY + 1);
+    }
+
+    @Test
+    public void blocksProducerWhenFull() throws InterruptedException {
+        listener = new RingBufferEventListener("test", delegate, CAPACITY, OverflowPolicy.BLOCK, 1);
+        fillBuffer();
+
+        Thread producer = new Thread(() -> listener.onActivation(activation(CAPACITY + 1)));
+        producer.start();
+        producer.join(200);
+        assertTrue("Producer waits for a free slot", producer.isAlive());
+
+        delegate.release.countDown();
+        producer.join(TIMEOUT_MILLIS);
+        delegate.awaitReceived(CAPACITY + 2);
+        assertEquals(0, listener.dropped());
+        assertInOrder(CAPACITY + 2);
+    }
+
+    @Test
+    public void drainsBufferWhenStopped() throws InterruptedException {
+        listener = new RingBufferEventListener("test", delegate, CAPACITY, OverflowPolicy.DROP_NEWEST, 1);
+        fillBuffer();
+
+        Thread stopper = new Thread(() -> listener.stop(TIMEOUT_MILLIS));
+        stopper.start();
+        delegate.release.countDown();
+        stopper.join(TIMEOUT_MILLIS);
+
+        assertEquals(CAPACITY + 1, delegate.received.size());
+        listener.onActivation(activation(CAPACITY + 1));
+        assertEquals(1, listener.dropped());
+    }
+
+    @Test
+    public void passesRestoredTotalsDirectly() {
+        listener = new RingBufferEventListener("test", delegate, CAPACITY, OverflowPolicy.DROP_NEWEST, 1);
+        ActivationEvent totals = activation(0);
+        listener.onRestore(totals);
+
+        assertSame(totals, delegate.restored);
+    }
+
+    @Test
+    public void keepsConsumingAfterListenerFailure() throws InterruptedException {
+        delegate.release.countDown();
+        OpenwhiskEventListener failing = new OpenwhiskEventListener() {
+            @Override
+            public void onActivation(ActivationEvent event) {
+                if (event.getDuration() == 0) {
+                    throw new IllegalStateException("Failing listener");
+                }
+                delegate.onActivation(event);
+            }
+        };
+        listener = new RingBufferEventListener("test", failing, CAPACITY, OverflowPolicy.DROP_NEWEST, 1);
+        listener.onActivation(activation(0));
+        listener.onActivation(activation(1));
+
+        delegate.awaitReceived(1);
+        assertEquals(1, delegate.received.get(0).getDuration());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new RingBufferEventListener("test", delegate, 0, OverflowPolicy.BLOCK, 1);
+    }
+
+    /**
+     * Makes the consumer block on the first event and fills the buffer behind it
+     */
+    private void fillBuffer() throws InterruptedException {
+        listener.onActivation(activation(0));
+        delegate.awaitBlocked();
+        for (int i = 1; i <= CAPACITY; i++) {
+            listener.onActivation(activation(i));
+        }
+        assertEquals(0, listener.dropped());
+    }
+
+    private void assertInOrder(int count) {
+        assertEquals(count, delegate.received.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, delegate.received.get(i).getDuration());
+        }
+    }
+
+    private static ActivationEvent activation(long sequence) {
+        return new ActivationEvent("invoker0", "guest", "user", 0, "guest/hello", "nodejs:8", sequence, 0, 0);
+    }
+
+    /**
+     * Listener which blocks until released and records the events it received
+     */
+    private static class BlockingListener implements OpenwhiskEventListener {
+
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<ActivationEvent> received = new CopyOnWriteArrayList<>();
+        private volatile ActivationEvent restored;
+
+        @Override
+        public void onActivation(ActivationEvent event) {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(event);
+        }
+
+        @Override
+        public void onRestore(ActivationEvent totals) {
+            restored = totals;
+        }
+
+        void awaitBlocked() throws InterruptedException {
+            assertTrue(blocked.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        }
+
+        void awaitReceived(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (received.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(count, received.size());
+        }
+    }
+}
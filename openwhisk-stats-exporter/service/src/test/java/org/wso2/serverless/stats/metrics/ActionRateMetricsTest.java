@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.wso2.serverless.stats.Constants.ACTION_DURATION_EWMA_GAUGE;
+import static org.wso2.serverless.stats.Constants.ACTION_ERROR_RATIO_GAUGE;
+import static org.wso2.serverless.stats.Constants.ACTION_INVOCATION_RATE_GAUGE;
+import static org.wso2.serverless.stats.Constants.DURATION_EWMA_WINDOW_MILLIS;
+import static org.wso2.serverless.stats.Constants.STATUS_CLASS_APPLICATION_ERROR;
+import static org.wso2.serverless.stats.Constants.STATUS_CLASS_DEVELOPER_ERROR;
+import static org.wso2.serverless.stats.Constants.STATUS_CLASS_INTERNAL_ERROR;
+
+public class ActionRateMetricsTest {
+
+    // A 1 minute window of 2 buckets and a 5 minute window of 10 buckets
+    private static final long BUCKET_MILLIS = 30 * 1000;
+    private static final double DELTA = 1e-9;
+
+    private final ActionRateMetrics metrics = new ActionRateMetrics(BUCKET_MILLIS);
+
+    @Test
+    public void ratesOverTheTimeTickedUntilWindowsAreFull() {
+        metrics.record("guest", "hello", "nodejs:8", "", 0, 60, 600);
+        metrics.tick();
+
+        assertEquals(2.0, rate("1m"), DELTA);
+        assertEquals(2.0, rate("5m"), DELTA);
+
+        metrics.tick();
+        assertEquals(1.0, rate("1m"), DELTA);
+        assertEquals(1.0, rate("5m"), DELTA);
+    }
+
+    @Test
+    public void expiresBucketsWhichLeaveTheWindow() {
+        metrics.record("guest", "hello", "nodejs:8", "", 0, 60, 600);
+        metrics.tick();
+        metrics.tick();
+        metrics.tick();
+
+        assertEquals(0.0, rate("1m"), DELTA);
+        assertEquals(60 * 1000.0 / (3 * BUCKET_MILLIS), rate("5m"), DELTA);
+
+        for (int tick = 3; tick < 10; tick++) {
+            metrics.tick();
+        }
+        assertEquals(0.2, rate("5m"), DELTA);
+
+        metrics.record("guest", "hello", "nodejs:8", "", 0, 30, 300);
+        metrics.tick();
+        assertEquals(0.1, rate("5m"), DELTA);
+        assertEquals(0.5, rate("1m"), DELTA);
+    }
+
+    @Test
+    public void sumsTheWindowAcrossTheRing() {
+        for (int tick = 0; tick < 25; tick++) {
+            metrics.record("guest", "hello", "nodejs:8", "", 0, tick, 0);
+            metrics.tick();
+        }
+
+        // The last 2 and 10 buckets hold 23 + 24 and 15 + ... + 24 activations
+        assertEquals(47 * 1000.0 / (2 * BUCKET_MILLIS), rate("1m"), DELTA);
+        assertEquals(195 * 1000.0 / (10 * BUCKET_MILLIS), rate("5m"), DELTA);
+    }
+
+    @Test
+    public void splitsErrorRatiosByStatusClass() {
+        metrics.record("guest", "hello", "nodejs:8", "", 0, 6, 0);
+        metrics.record("guest", "hello", "nodejs:8", "", 1, 1, 0);
+        metrics.record("guest", "hello", "nodejs:8", "", 2, 3, 0);
+        metrics.record("guest", "hello", "nodejs:8", "", 42, 2, 0);
+        metrics.tick();
+
+        assertEquals(1.0 / 12, errorRatio(STATUS_CLASS_APPLICATION_ERROR), DELTA);
+        assertEquals(3.0 / 12, errorRatio(STATUS_CLASS_DEVELOPER_ERROR), DELTA);
+        assertEquals(2.0 / 12, errorRatio(STATUS_CLASS_INTERNAL_ERROR), DELTA);
+    }
+
+    @Test
+    public void averagesBucketMeansAndSkipsIdleBuckets() {
+        double alpha = 1 - Math.exp(-(double) BUCKET_MILLIS / DURATION_EWMA_WINDOW_MILLIS);
+        metrics.record("guest", "hello", "nodejs:8", "", 0, 4, 400);
+        metrics.tick();
+        assertEquals(100, value(ACTION_DURATION_EWMA_GAUGE, "guest", "hello", "nodejs:8"), DELTA);
+
+        metrics.tick();
+        assertEquals(100, value(ACTION_DURATION_EWMA_GAUGE, "guest", "hello", "nodejs:8"), DELTA);
+
+        metrics.record("guest", "hello", "nodejs:8", "", 0, 2, 400);
+        metrics.tick();
+        assertEquals(100 + alpha * 100, value(ACTION_DURATION_EWMA_GAUGE, "guest", "hello", "nodejs:8"), DELTA);
+    }
+
+    @Test
+    public void labelsActionsOfOtherClusters() {
+        metrics.record("guest", "hello", "nodejs:8", "east", 0, 30, 0);
+        metrics.tick();
+
+        assertEquals(1.0, value(ACTION_INVOCATION_RATE_GAUGE, "guest", "hello", "nodejs:8", "1m", "east"), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsBucketsWhichDoNotDivideTheWindows() {
+        new ActionRateMetrics(7000);
+    }
+
+    private double rate(String window) {
+        return value(ACTION_INVOCATION_RATE_GAUGE, "guest", "hello", "nodejs:8", window);
+    }
+
+    private double errorRatio(String statusClass) {
+        return value(ACTION_ERROR_RATIO_GAUGE, "guest", "hello", "nodejs:8", "1m", statusClass);
+    }
+
+    private double value(String name, String... labelValues) {
+        for (MetricFamilySamples family : metrics.collect()) {
+            for (MetricFamilySamples.Sample sample : family.samples) {
+                if (sample.name.equals(name) && sample.labelValues.equals(Arrays.asList(labelValues))) {
+                    return sample.value;
+                }
+            }
+        }
+        throw new AssertionError("No sample " + name + " " + Arrays.toString(labelValues));
+    }
+}
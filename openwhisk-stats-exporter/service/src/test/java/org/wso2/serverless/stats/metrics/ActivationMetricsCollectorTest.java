@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector;
+import org.junit.Test;
+import org.wso2.serverless.stats.exposition.ExpositionBuffer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.wso2.serverless.stats.Constants.ACTIVATIONS_TOTAL_COUNTER;
+import static org.wso2.serverless.stats.Constants.ACTIVATION_DURATION_COUNTER;
+import static org.wso2.serverless.stats.Constants.ACTIVATION_DURATION_HISTOGRAM;
+import static org.wso2.serverless.stats.Constants.COUNT_SUFFIX;
+
+public class ActivationMetricsCollectorTest {
+
+    private final ActivationMetricsStore store = new ActivationMetricsStore(new DurationBuckets(10, 100));
+    private final ActivationMetricsCollector collector = new ActivationMetricsCollector(store);
+
+    @Test
+    public void leavesOutEmptyClusterAndTask() {
+        store.record("guest", "invoker0", "user", "hello", 0, "nodejs:6", "", "", 0, 2, 30, null);
+
+        String exposition = encode();
+
+        assertTrue(exposition.contains("activations_total_counter{namespace=\"guest\",source=\"invoker0\","
+                + "userId=\"user\",action=\"hello\",statusCode=\"0\",kind=\"nodejs:6\"} 2.0\n"));
+        assertEquals(Arrays.asList("namespace", "source", "userId", "action", "statusCode", "kind"),
+                activationSamples().get(0).labelNames);
+    }
+
+    @Test
+    public void labelsSeriesWithTask() {
+        store.record("guest", "invoker0", "user", "hello", 0, "nodejs:6", "", "0_1", 1, 1, 5, null);
+
+        assertTrue(encode().contains(",kind=\"nodejs:6\",task=\"0_1\"} 1.0\n"));
+        assertEquals("0_1", activationSamples().get(0).labelValues.get(6));
+    }
+
+    @Test
+    public void dropsSeriesOfRetiredEpochs() {
+        store.record("guest", "invoker0", "user", "hello", 0, "nodejs:6", "", "0_1", 1, 1, 5, null);
+        store.record("guest", "invoker0", "user", "hello", 0, "nodejs:6", "", "0_1", 2, 3, 5, null);
+        assertTrue(encode().contains("task=\"0_1\"} 1.0\n"));
+
+        store.retire(1);
+
+        String exposition = encode();
+        assertFalse(exposition.contains("task=\"0_1\"} 1.0\n"));
+        assertTrue(exposition.contains("task=\"0_1\"} 3.0\n"));
+        List<Collector.MetricFamilySamples.Sample> samples = activationSamples();
+        assertEquals(1, samples.size());
+        assertEquals(3, samples.get(0).value, 0);
+    }
+
+    @Test
+    public void neverCachesLinesOlderThanTheCount() throws Exception {
+        int threads = 4;
+        int activations = 20000;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicBoolean stale = new AtomicBoolean();
+        Thread[] writers = new Thread[threads];
+        for (int thread = 0; thread < threads; thread++) {
+            writers[thread] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < activations; i++) {
+                    store.record("guest", "invoker0", "user", "hello", 0, "nodejs:6", "", "", 0, 1, 1, null);
+                }
+            });
+            writers[thread].start();
+        }
+
+        Thread encoder = new Thread(() -> {
+            while (writing.get()) {
+                String exposition = encode();
+                if (exposition.contains(ACTIVATIONS_TOTAL_COUNTER + "{") && value(exposition,
+                        ACTIVATION_DURATION_COUNTER) < value(exposition, ACTIVATIONS_TOTAL_COUNTER)) {
+                    stale.set(true);
+                }
+            }
+        });
+        encoder.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        encoder.join();
+
+        assertFalse("Duration sums are never older than the count", stale.get());
+        String exposition = encode();
+        double total = threads * activations;
+        assertEquals(total, value(exposition, ACTIVATIONS_TOTAL_COUNTER), 0);
+        assertEquals(total, value(exposition, ACTIVATION_DURATION_COUNTER), 0);
+        assertEquals(total, value(exposition, ACTIVATION_DURATION_HISTOGRAM + COUNT_SUFFIX), 0);
+    }
+
+    private static double value(String exposition, String name) {
+        for (String line : exposition.split("\n")) {
+            if (line.startsWith(name + "{")) {
+                return Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        throw new AssertionError("No line of " + name);
+    }
+
+    private String encode() {
+        ExpositionBuffer buffer = new ExpositionBuffer(1024);
+        collector.encode(buffer, false);
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private List<Collector.MetricFamilySamples.Sample> activationSamples() {
+        for (Collector.MetricFamilySamples family : collector.collect()) {
+            if (family.name.equals(ACTIVATIONS_TOTAL_COUNTER)) {
+                return family.samples;
+            }
+        }
+        throw new AssertionError("No activation counter");
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.metrics;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.wso2.serverless.stats.Constants.FOLDED_ACTIONS_GAUGE;
+import static org.wso2.serverless.stats.Constants.FOLDED_ACTIVATIONS_TOTAL_COUNTER;
+import static org.wso2.serverless.stats.metrics.CardinalityGuard.OTHER_ACTION;
+
+public class CardinalityGuardTest {
+
+    private static final long NEVER = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void foldsEverythingBelowMinimumActivations() {
+        CardinalityGuard guard = new CardinalityGuard(4, NEVER, 100);
+        for (int i = 0; i < 99; i++) {
+            assertEquals(OTHER_ACTION, guard.resolve("ns", "hot", 1));
+        }
+
+        assertEquals("hot", guard.resolve("ns", "hot", 1));
+        assertEquals(99.0, sample(guard, FOLDED_ACTIVATIONS_TOTAL_COUNTER, "ns"), 0);
+    }
+
+    @Test
+    public void admitsHeavyHittersWithinBudget() {
+        CardinalityGuard guard = new CardinalityGuard(2, NEVER, 0);
+        for (int i = 0; i < 1000; i++) {
+            guard.resolve("ns", "a", 1);
+            guard.resolve("ns", "b", 1);
+            guard.resolve("ns", "c", 1);
+            guard.resolve("ns", "tail-" + i, 1);
+        }
+
+        int admitted = 0;
+        for (String action : new String[]{"a", "b", "c"}) {
+            if (action.equals(guard.resolve("ns", action, 1))) {
+                admitted++;
+            }
+        }
+        assertEquals(2, admitted);
+        assertEquals(OTHER_ACTION, guard.resolve("ns", "tail-0", 1));
+    }
+
+    @Test
+    public void keepsBudgetsPerNamespace() {
+        CardinalityGuard guard = new CardinalityGuard(1, NEVER, 0);
+        assertEquals("a", guard.resolve("first", "a", 10));
+        assertEquals("a", guard.resolve("second", "a", 10));
+        assertEquals(OTHER_ACTION, guard.resolve("first", "b", 1));
+    }
+
+    @Test
+    public void evictsActionsWhichAreNoLongerHeavy() throws InterruptedException {
+        CardinalityGuard guard = new CardinalityGuard(4, 1, 100);
+        for (int i = 0; i < 200; i++) {
+            guard.resolve("ns", "old", 1);
+        }
+        assertEquals("old", guard.resolve("ns", "old", 1));
+
+        for (int round = 0; round < 8; round++) {
+            Thread.sleep(5);
+            for (int i = 0; i < 400; i++) {
+                guard.resolve("ns", "new", 1);
+                guard.resolve("ns", "tail-" + round + "-" + i, 1);
+            }
+        }
+
+        Thread.sleep(5);
+        assertEquals("new", guard.resolve("ns", "new", 1));
+        assertEquals(OTHER_ACTION, guard.resolve("ns", "old", 1));
+    }
+
+    @Test
+    public void keepsAdmittedActionsWhichStayHeavy() throws InterruptedException {
+        CardinalityGuard guard = new CardinalityGuard(4, 1, 0);
+        for (int i = 0; i < 200; i++) {
+            guard.resolve("ns", "hot", 1);
+        }
+
+        for (int round = 0; round < 8; round++) {
+            Thread.sleep(5);
+            for (int i = 0; i < 400; i++) {
+                assertEquals("hot", guard.resolve("ns", "hot", 1));
+                guard.resolve("ns", "tail-" + round + "-" + i, 1);
+            }
+        }
+
+        Thread.sleep(5);
+        assertEquals(OTHER_ACTION, guard.resolve("ns", "tail-0-0", 1));
+        assertEquals("hot", guard.resolve("ns", "hot", 1));
+    }
+
+    @Test
+    public void estimatesFoldedActions() {
+        CardinalityGuard guard = new CardinalityGuard(1, NEVER, Long.MAX_VALUE);
+        for (int i = 0; i < 10; i++) {
+            guard.resolve("small", "action-" + i, 1);
+        }
+        for (int i = 0; i < 20000; i++) {
+            guard.resolve("large", "action-" + i, 1);
+            guard.resolve("large", "action-" + i, 1);
+        }
+
+        assertEquals(10, sample(guard, FOLDED_ACTIONS_GAUGE, "small"), 1);
+        assertEquals(20000, sample(guard, FOLDED_ACTIONS_GAUGE, "large"), 20000 * 0.15);
+        assertEquals(40000, sample(guard, FOLDED_ACTIVATIONS_TOTAL_COUNTER, "large"), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyBudget() {
+        new CardinalityGuard(0);
+    }
+
+    private static double sample(CardinalityGuard guard, String name, String namespace) {
+        for (MetricFamilySamples family : guard.collect()) {
+            for (MetricFamilySamples.Sample sample : family.samples) {
+                if (sample.name.equals(name) && sample.labelValues.get(0).equals(namespace)) {
+                    return sample.value;
+                }
+            }
+        }
+        throw new AssertionError("No sample " + name + " for " + namespace);
+    }
+}
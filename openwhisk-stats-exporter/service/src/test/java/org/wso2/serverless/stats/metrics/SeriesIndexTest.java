@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SeriesIndexTest {
+
+    @Test
+    public void assignsDenseSlots() {
+        SeriesIndex index = new SeriesIndex(2);
+
+        assertEquals(0, index.slotOf(new int[]{1, 2}));
+        assertEquals(1, index.slotOf(new int[]{2, 1}));
+        assertEquals(0, index.slotOf(new int[]{1, 2}));
+        assertEquals(2, index.size());
+        assertEquals(2, index.key(1, 0));
+        assertEquals(1, index.key(1, 1));
+    }
+
+    @Test
+    public void findsWithoutAdding() {
+        SeriesIndex index = new SeriesIndex(3);
+        index.slotOf(new int[]{1, 2, 3});
+
+        assertEquals(0, index.find(new int[]{1, 2, 3}));
+        assertEquals(-1, index.find(new int[]{3, 2, 1}));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void keepsSlotsWhenResizing() {
+        SeriesIndex index = new SeriesIndex(2);
+        int series = 10000;
+        for (int i = 0; i < series; i++) {
+            assertEquals(i, index.slotOf(new int[]{i, i % 7}));
+        }
+
+        assertEquals(series, index.size());
+        for (int i = 0; i < series; i++) {
+            assertEquals(i, index.find(new int[]{i, i % 7}));
+            assertEquals(i, index.key(i, 0));
+            assertEquals(i % 7, index.key(i, 1));
+        }
+    }
+
+    @Test
+    public void addsConcurrentlyWithoutLosingSeries() throws Exception {
+        SeriesIndex index = new SeriesIndex(2);
+        int threads = 8;
+        int series = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<int[]>> results = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            int offset = thread;
+            results.add(executor.submit(() -> {
+                start.await();
+                int[] slots = new int[series];
+                for (int i = 0; i < series; i++) {
+                    // Every thread adds the same series in a different order
+                    int id = (i * 7 + offset * 1009) % series;
+                    slots[id] = index.slotOf(new int[]{id, -id});
+                }
+                return slots;
+            }));
+        }
+        start.countDown();
+
+        int[] expected = results.get(0).get(30, TimeUnit.SECONDS);
+        for (Future<int[]> result : results) {
+            int[] slots = result.get(30, TimeUnit.SECONDS);
+            for (int id = 0; id < series; id++) {
+                assertEquals(expected[id], slots[id]);
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(series, index.size());
+        Set<Integer> distinct = new HashSet<>();
+        for (int id = 0; id < series; id++) {
+            int slot = expected[id];
+            assertTrue(slot >= 0 && slot < series);
+            assertTrue(distinct.add(slot));
+            assertEquals(id, index.key(slot, 0));
+            assertEquals(-id, index.key(slot, 1));
+        }
+    }
+}
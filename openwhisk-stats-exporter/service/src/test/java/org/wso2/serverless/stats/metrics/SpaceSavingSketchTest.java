@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.metrics;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpaceSavingSketchTest {
+
+    @Test
+    public void countsExactlyBelowCapacity() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(4);
+        sketch.offer("a", 3);
+        sketch.offer("b", 1);
+        assertEquals(5, sketch.offer("a", 2));
+
+        assertEquals(6, sketch.total());
+        Map<String, Long> counts = sketch.guaranteedCounts();
+        assertEquals(Long.valueOf(5), counts.get("a"));
+        assertEquals(Long.valueOf(1), counts.get("b"));
+    }
+
+    @Test
+    public void replacedItemsInheritTheSmallestCountAsError() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        sketch.offer("a", 5);
+        sketch.offer("b", 2);
+
+        assertEquals(1, sketch.offer("c", 1));
+        Map<String, Long> counts = sketch.guaranteedCounts();
+        assertEquals(2, counts.size());
+        assertEquals(Long.valueOf(5), counts.get("a"));
+        assertEquals(Long.valueOf(1), counts.get("c"));
+    }
+
+    @Test
+    public void tracksHeavyHittersInLongTail() {
+        int capacity = 20;
+        SpaceSavingSketch sketch = new SpaceSavingSketch(capacity);
+        Map<String, Long> truth = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            String item = random.nextInt(4) == 0 ? "heavy-" + random.nextInt(3) : "tail-" + random.nextInt(5000);
+            truth.merge(item, 1L, Long::sum);
+            sketch.offer(item, 1);
+        }
+
+        Map<String, Long> counts = sketch.guaranteedCounts();
+        for (int heavy = 0; heavy < 3; heavy++) {
+            assertTrue(counts.containsKey("heavy-" + heavy));
+        }
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            assertTrue("Guaranteed counts are lower bounds", entry.getValue() <= truth.get(entry.getKey()));
+        }
+        assertEquals(100000, sketch.total());
+    }
+
+    @Test
+    public void ordersGuaranteedCountsDescending() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(8);
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            sketch.offer("item-" + random.nextInt(12), 1 + random.nextInt(5));
+        }
+
+        List<Long> counts = new ArrayList<>(sketch.guaranteedCounts().values());
+        for (int i = 1; i < counts.size(); i++) {
+            assertTrue(counts.get(i - 1) >= counts.get(i));
+        }
+    }
+
+    @Test
+    public void decayHalvesCounts() {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        sketch.offer("a", 10);
+        sketch.offer("b", 4);
+        sketch.decay();
+
+        assertEquals(7, sketch.total());
+        assertEquals(Long.valueOf(5), sketch.guaranteedCounts().get("a"));
+        assertEquals(Long.valueOf(2), sketch.guaranteedCounts().get("b"));
+
+        // The smallest item is still the one replaced
+        sketch.offer("c", 1);
+        assertTrue(sketch.guaranteedCounts().containsKey("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new SpaceSavingSketch(0);
+    }
+}
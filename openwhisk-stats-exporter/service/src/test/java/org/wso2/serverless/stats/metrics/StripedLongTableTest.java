@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class StripedLongTableTest {
+
+    @Test
+    public void addsToFieldsOfSlots() {
+        StripedLongTable table = new StripedLongTable(3);
+        StripedLongTable.Stripe stripe = table.stripe();
+        stripe.add(0, 0, 5);
+        stripe.add(0, 2, 7);
+        stripe.add(0, 0, 1);
+        stripe.add(5000, 1, 9);
+
+        assertEquals(6, table.sum(0, 0));
+        assertEquals(0, table.sum(0, 1));
+        assertEquals(7, table.sum(0, 2));
+        assertEquals(9, table.sum(5000, 1));
+    }
+
+    @Test
+    public void readsUnwrittenSlotsAsZero() {
+        StripedLongTable table = new StripedLongTable(1);
+        assertEquals(0, table.sum(100000, 0));
+
+        table.stripe().add(1, 0, 1);
+        assertEquals(0, table.sum(100000, 0));
+    }
+
+    @Test
+    public void mergesStripesOfAllThreads() throws Exception {
+        StripedLongTable table = new StripedLongTable(2);
+        int threads = 8;
+        int slots = 3000;
+        int rounds = 100;
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicBoolean decreased = new AtomicBoolean();
+        Thread[] writers = new Thread[threads];
+        for (int thread = 0; thread < threads; thread++) {
+            writers[thread] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                StripedLongTable.Stripe stripe = table.stripe();
+                for (int round = 0; round < rounds; round++) {
+                    for (int slot = 0; slot < slots; slot++) {
+                        stripe.add(slot, 0, 1);
+                        stripe.add(slot, 1, slot);
+                    }
+                }
+            });
+            writers[thread].start();
+        }
+
+        Thread reader = new Thread(() -> {
+            long last = 0;
+            while (writing.get()) {
+                long sum = table.sum(slots - 1, 0);
+                if (sum < last) {
+                    decreased.set(true);
+                }
+                last = sum;
+            }
+        });
+        reader.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        reader.join();
+
+        assertFalse("Sums never decrease", decreased.get());
+
+        for (int slot = 0; slot < slots; slot++) {
+            assertEquals(threads * rounds, table.sum(slot, 0));
+            assertEquals((long) threads * rounds * slot, table.sum(slot, 1));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.remotewrite;
+
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import org.junit.After;
+import org.junit.Test;
+import org.wso2.serverless.stats.FakeRemoteWriteReceiver;
+
+import java.io.IOException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.wso2.serverless.stats.Constants.ACTIVATIONS_TOTAL_COUNTER;
+import static org.wso2.serverless.stats.Constants.EXPORTER_REMOTE_WRITE_RETRIES_COUNTER;
+import static org.wso2.serverless.stats.Constants.EXPORTER_REMOTE_WRITE_SAMPLES_COUNTER;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_FAILED;
+import static org.wso2.serverless.stats.Constants.REMOTE_WRITE_SENT;
+
+public class RemoteWriteSinkTest {
+
+    private static final long INTERVAL_MILLIS = 60 * 60 * 1000;
+    private static final int SERIES = 250;
+
+    private final CollectorRegistry registry = new CollectorRegistry();
+    private FakeRemoteWriteReceiver receiver;
+
+    @After
+    public void stopReceiver() {
+        if (receiver != null) {
+            receiver.stop();
+        }
+    }
+
+    @Test
+    public void writesSnappyCompressedSamples() throws IOException {
+        receiver = startReceiver(0);
+        long activations = registerActivations();
+        RemoteWriteSink sink = new RemoteWriteSink(new URL(receiver.getUrl()), registry, "exporter-0",
+                INTERVAL_MILLIS, 2, 100);
+        sink.start();
+        sink.stop();
+
+        assertEquals(SERIES, receiver.getSamples());
+        assertEquals(0, receiver.getInvalidSeries());
+        assertEquals(activations, receiver.getActivationsWritten());
+        assertTrue("Batches of at most 100 samples", receiver.getRequests() >= 3);
+        assertEquals(SERIES, result(sink, REMOTE_WRITE_SENT), 0);
+        assertEquals(0, result(sink, REMOTE_WRITE_FAILED), 0);
+    }
+
+    @Test
+    public void retriesFailedRequests() throws IOException {
+        receiver = startReceiver(2);
+        long activations = registerActivations();
+        RemoteWriteSink sink = new RemoteWriteSink(new URL(receiver.getUrl()), registry, null,
+                INTERVAL_MILLIS, 1, 50);
+        sink.start();
+        sink.stop();
+
+        assertEquals(activations, receiver.getActivationsWritten());
+        assertEquals(SERIES, result(sink, REMOTE_WRITE_SENT), 0);
+        assertTrue(sample(sink, EXPORTER_REMOTE_WRITE_RETRIES_COUNTER, null) > 0);
+    }
+
+    private static FakeRemoteWriteReceiver startReceiver(int failEvery) throws IOException {
+        FakeRemoteWriteReceiver receiver = new FakeRemoteWriteReceiver(failEvery);
+        receiver.start();
+        return receiver;
+    }
+
+    private long registerActivations() {
+        Counter counter = Counter.build(ACTIVATIONS_TOTAL_COUNTER, "Activations")
+                .labelNames("namespace", "action").register(registry);
+        long activations = 0;
+        for (int i = 0; i < SERIES; i++) {
+            counter.labels("guest", "action-" + i).inc(i + 1);
+            activations += i + 1;
+        }
+        return activations;
+    }
+
+    private static double result(RemoteWriteSink sink, String result) {
+        return sample(sink, EXPORTER_REMOTE_WRITE_SAMPLES_COUNTER, result);
+    }
+
+    private static double sample(RemoteWriteSink sink, String name, String result) {
+        for (MetricFamilySamples family : sink.collect()) {
+            for (MetricFamilySamples.Sample sample : family.samples) {
+                if (sample.name.equals(name) && (result == null || sample.labelValues.contains(result))) {
+                    return sample.value;
+                }
+            }
+        }
+        throw new AssertionError("No sample " + name);
+    }
+}
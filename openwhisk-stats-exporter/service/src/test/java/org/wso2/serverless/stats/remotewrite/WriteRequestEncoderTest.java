@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.remotewrite;
+
+import org.junit.Test;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class WriteRequestEncoderTest {
+
+    @Test
+    public void encodesTimeSeries() {
+        byte[] timeSeries = WriteRequestEncoder.timeSeries(Arrays.asList("__name__", "m", "job", "j"), 1.0, 1);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        // Label { name = "__name__", value = "m" }
+        write(expected, 0x0A, 13, 0x0A, 8);
+        write(expected, "__name__");
+        write(expected, 0x12, 1);
+        write(expected, "m");
+        // Label { name = "job", value = "j" }
+        write(expected, 0x0A, 8, 0x0A, 3);
+        write(expected, "job");
+        write(expected, 0x12, 1);
+        write(expected, "j");
+        // Sample { value = 1.0, timestamp = 1 }
+        write(expected, 0x12, 11, 0x09, 0, 0, 0, 0, 0, 0, 0xF0, 0x3F, 0x10, 1);
+
+        assertArrayEquals(expected.toByteArray(), timeSeries);
+    }
+
+    @Test
+    public void encodesLongValuesWithMultiByteLengths() {
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'v');
+        String value = new String(chars);
+        long timestamp = 1531390033787L;
+
+        byte[] timeSeries = WriteRequestEncoder.timeSeries(Arrays.asList("l", value), -0.5, timestamp);
+
+        Reader reader = new Reader(timeSeries);
+        assertEquals(0x0A, reader.varint());
+        Reader label = reader.message();
+        assertEquals(0x0A, label.varint());
+        assertEquals("l", label.string());
+        assertEquals(0x12, label.varint());
+        assertEquals(value, label.string());
+        assertEquals(0x12, reader.varint());
+        Reader sample = reader.message();
+        assertEquals(0x09, sample.varint());
+        assertEquals(-0.5, Double.longBitsToDouble(sample.fixed64()), 0);
+        assertEquals(0x10, sample.varint());
+        assertEquals(timestamp, sample.varint());
+        assertEquals(timeSeries.length, reader.position);
+    }
+
+    @Test
+    public void concatenatesTimeSeriesIntoWriteRequest() throws IOException {
+        byte[] first = WriteRequestEncoder.timeSeries(Arrays.asList("__name__", "a"), 1, 1);
+        byte[] second = WriteRequestEncoder.timeSeries(Arrays.asList("__name__", "b"), 2, 2);
+        WriteRequestEncoder encoder = new WriteRequestEncoder(4);
+        encoder.add(first);
+        encoder.add(second);
+
+        Reader reader = new Reader(Snappy.uncompress(
+                Snappy.compress(Arrays.copyOf(encoder.array(), encoder.size()))));
+        assertEquals(0x0A, reader.varint());
+        assertArrayEquals(first, reader.bytes());
+        assertEquals(0x0A, reader.varint());
+        assertArrayEquals(second, reader.bytes());
+        assertEquals(encoder.size(), reader.position);
+
+        encoder.clear();
+        assertEquals(0, encoder.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnpairedLabels() {
+        WriteRequestEncoder.timeSeries(Collections.singletonList("__name__"), 1, 1);
+    }
+
+    private static void write(ByteArrayOutputStream output, int... bytes) {
+        for (int b : bytes) {
+            output.write(b);
+        }
+    }
+
+    private static void write(ByteArrayOutputStream output, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Reads protobuf wire format fields
+     */
+    private static class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long varint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        long fixed64() {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value |= (bytes[position++] & 0xFFL) << (i * 8);
+            }
+            return value;
+        }
+
+        byte[] bytes() {
+            int length = (int) varint();
+            byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+            position += length;
+            return value;
+        }
+
+        String string() {
+            return new String(bytes(), StandardCharsets.UTF_8);
+        }
+
+        Reader message() {
+            return new Reader(bytes());
+        }
+    }
+}
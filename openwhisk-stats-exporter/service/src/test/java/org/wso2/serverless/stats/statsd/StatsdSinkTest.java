@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018, WSO2 Inc. (http://www.wso2.org) All Rights Reserved.
+ *
+ * WSO2 Inc. licenses this file to you under the Apache License,
+ * Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.wso2.serverless.stats.statsd;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.wso2.serverless.stats.ActivationEvent;
+import org.wso2.serverless.stats.TestEvents;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.wso2.serverless.stats.Constants.EXPORTER_STATSD_DROPPED_PACKETS_COUNTER;
+import static org.wso2.serverless.stats.Constants.METRIC_CONCURRENT_ACTIVATIONS;
+import static org.wso2.serverless.stats.Constants.METRIC_TIMED_RATE_LIMIT;
+
+public class StatsdSinkTest {
+
+    private static final int RECEIVE_TIMEOUT_MILLIS = 5000;
+
+    private DatagramSocket server;
+    private StatsdSink sink;
+
+    @Before
+    public void openServer() throws IOException {
+        server = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        server.setSoTimeout(RECEIVE_TIMEOUT_MILLIS);
+    }
+
+    @After
+    public void closeServer() {
+        if (sink != null) {
+            sink.stop();
+        }
+        server.close();
+    }
+
+    @Test
+    public void sendsSingleActivationWithoutSampleRate() throws IOException {
+        sink = newSink(StatsdFormat.STATSD, 1432);
+        sink.onActivation(new ActivationEvent("invoker0", "guest", "user", 0, "hello", "nodejs:8", 300, 12, 0));
+        sink.flush();
+
+        assertEquals("openwhisk.activations:1|c\n"
+                + "openwhisk.duration:300|ms\n"
+                + "openwhisk.wait_time:12|ms", receive());
+    }
+
+    @Test
+    public void sendsAggregatesAsMeansWithSampleRate() throws IOException {
+        sink = newSink(StatsdFormat.STATSD, 1432);
+        sink.onActivation(TestEvents.aggregate("", 3, 300, 30, 0, 0));
+        sink.onActivation(TestEvents.aggregate("", 8, 80, 0, 4, 2000));
+        sink.onActivation(TestEvents.aggregate("", 1000, 1000, 0, 0, 0));
+        sink.flush();
+
+        assertEquals("openwhisk.activations:3|c\n"
+                + "openwhisk.duration:100|ms|@0.333333333\n"
+                + "openwhisk.wait_time:10|ms|@0.333333333\n"
+                + "openwhisk.activations:8|c\n"
+                + "openwhisk.duration:10|ms|@0.125\n"
+                + "openwhisk.wait_time:0|ms|@0.125\n"
+                + "openwhisk.cold_starts:4|c\n"
+                + "openwhisk.init_time:500|ms|@0.25\n"
+                + "openwhisk.activations:1000|c\n"
+                + "openwhisk.duration:1|ms|@0.001\n"
+                + "openwhisk.wait_time:0|ms|@0.001", receive());
+    }
+
+    @Test
+    public void roundsTinySampleRatesToNanos() throws IOException {
+        sink = newSink(StatsdFormat.STATSD, 1432);
+        sink.onActivation(TestEvents.aggregate("", 3000000000L, 0, 0, 0, 0));
+        sink.flush();
+
+        assertTrue(receive().contains("openwhisk.duration:0|ms|@0.000000001\n"));
+    }
+
+    @Test
+    public void sendsNegativeValues() throws IOException {
+        sink = newSink(StatsdFormat.STATSD, 1432);
+        sink.onMetric(TestEvents.metric("", "guest", "custom", -120));
+        sink.onMetric(TestEvents.metric("", "guest", "custom", Long.MIN_VALUE));
+        sink.onMetric(TestEvents.metric("", "guest", METRIC_CONCURRENT_ACTIVATIONS, -3));
+        sink.flush();
+
+        assertEquals("openwhisk.metric_events_value:-120|c\n"
+                + "openwhisk.metric_events_value:-9223372036854775808|c\n"
+                + "openwhisk.concurrent_activations:0|g", receive());
+    }
+
+    @Test
+    public void tagsDogStatsdLinesAndReplacesSeparators() throws IOException {
+        sink = newSink(StatsdFormat.DOGSTATSD, 1432);
+        sink.onMetric(TestEvents.metric("east", "gu,e|st", METRIC_TIMED_RATE_LIMIT, 2));
+        sink.flush();
+
+        assertEquals("openwhisk.rate_limited_activations:2|c|#namespace:gu_e_st,cluster:east,limit:"
+                + METRIC_TIMED_RATE_LIMIT, receive());
+    }
+
+    @Test
+    public void splitsLinesIntoPackets() throws IOException {
+        sink = newSink(StatsdFormat.STATSD, 80);
+        for (int i = 0; i < 10; i++) {
+            sink.onMetric(TestEvents.metric("", "guest", METRIC_CONCURRENT_ACTIVATIONS, i));
+        }
+        sink.flush();
+
+        for (int i = 0; i < 10; i += 2) {
+            String received = receive();
+            assertTrue(received.length() <= 80);
+            assertEquals("openwhisk.concurrent_activations:" + i + "|g\n"
+                    + "openwhisk.concurrent_activations:" + (i + 1) + "|g", received);
+        }
+    }
+
+    @Test
+    public void dropsLinesLargerThanPacket() throws IOException {
+        sink = newSink(StatsdFormat.DOGSTATSD, 64);
+        sink.onMetric(TestEvents.metric("", "a-namespace-with-a-name-longer-than-a-packet", "custom", 1));
+        sink.onMetric(TestEvents.metric("", "guest", METRIC_CONCURRENT_ACTIVATIONS, 1));
+        sink.flush();
+
+        assertEquals("openwhisk.concurrent_activations:1|g|#namespace:guest", receive());
+        assertEquals(1, sink.collect().stream()
+                .filter(family -> family.name.equals(EXPORTER_STATSD_DROPPED_PACKETS_COUNTER))
+                .mapToDouble(family -> family.samples.get(0).value).sum(), 0);
+    }
+
+    private StatsdSink newSink(StatsdFormat format, int packetSize) throws IOException {
+        return new StatsdSink(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort()),
+                format, packetSize);
+    }
+
+    private String receive() throws IOException {
+        byte[] buffer = new byte[65536];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+            server.receive(packet);
+        } catch (SocketTimeoutException e) {
+            fail("No packet received");
+        }
+        return new String(packet.getData(), 0, packet.getLength(), StandardCharsets.UTF_8);
+    }
+}